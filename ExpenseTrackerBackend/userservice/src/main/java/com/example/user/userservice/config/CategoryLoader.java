@@ -2,6 +2,7 @@ package com.example.user.userservice.config;
 
 import com.example.user.userservice.entity.Category;
 import com.example.user.userservice.repository.CategoryRepository;
+import com.example.user.userservice.service.CategoryCache;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -12,7 +13,7 @@ import java.util.List;
 public class CategoryLoader {
 
     @Bean
-    CommandLineRunner loadCategories(CategoryRepository categoryRepository) {
+    CommandLineRunner loadCategories(CategoryRepository categoryRepository, CategoryCache categoryCache) {
         return args -> {
             List<String> categories = List.of(
                     "Food & Dining",
@@ -35,6 +36,8 @@ public class CategoryLoader {
                                 Category.builder().name(categoryName).build()
                         ));
             }
+
+            categoryCache.refresh();
         };
     }
 }
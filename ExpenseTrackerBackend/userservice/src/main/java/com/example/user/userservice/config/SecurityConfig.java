@@ -38,7 +38,9 @@ public class SecurityConfig {
             		.requestMatchers("/api/user/test-email").permitAll()
             		.requestMatchers("/api/user/categories/test").permitAll()
             		.requestMatchers("/swagger-ui.html", "/v3/api-docs/**", "/swagger-ui/**").permitAll()
+            		.requestMatchers("/api/user/files/signed/**").permitAll() // HMAC signature checked by FileController
             		.requestMatchers("/api/user/*/receipts/**").authenticated()
+            		.requestMatchers("/api/user/voice-expense/live").permitAll() // JWT checked by the handshake interceptor
             		.requestMatchers("/api/user/voice-expense/**").authenticated()
             		.requestMatchers("/api/user/goals/**").authenticated()
                 .anyRequest().authenticated()
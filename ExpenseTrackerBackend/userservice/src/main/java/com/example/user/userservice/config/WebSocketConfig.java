@@ -0,0 +1,69 @@
+package com.example.user.userservice.config;
+
+import com.example.user.userservice.controller.VoiceTranscriptWebSocketHandler;
+import com.example.user.userservice.security.JwtTokenProvider;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+@Configuration
+@EnableWebSocket
+@RequiredArgsConstructor
+@Slf4j
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final VoiceTranscriptWebSocketHandler voiceTranscriptWebSocketHandler;
+    private final JwtTokenProvider jwtTokenProvider;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(voiceTranscriptWebSocketHandler, "/api/user/voice-expense/live")
+                .addInterceptors(new JwtHandshakeInterceptor())
+                .setAllowedOriginPatterns("*");
+    }
+
+    /**
+     * Browsers cannot set headers on a WebSocket handshake, so the JWT may also come as a
+     * {@code token} query parameter. The user ID is taken from the token, never from the client.
+     */
+    private class JwtHandshakeInterceptor implements HandshakeInterceptor {
+
+        @Override
+        public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                       WebSocketHandler wsHandler, Map<String, Object> attributes) {
+            String token = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+            if (token != null && token.startsWith("Bearer ")) {
+                token = token.substring(7);
+            } else {
+                token = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams().getFirst("token");
+            }
+
+            if (token == null || !jwtTokenProvider.validateToken(token)) {
+                log.warn("Rejected live voice handshake without a valid token");
+                return false;
+            }
+            Long userId = jwtTokenProvider.getUserIdFromToken(token);
+            if (userId == null) {
+                return false;
+            }
+            attributes.put(VoiceTranscriptWebSocketHandler.USER_ID, userId);
+            return true;
+        }
+
+        @Override
+        public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Exception exception) {
+        }
+    }
+}
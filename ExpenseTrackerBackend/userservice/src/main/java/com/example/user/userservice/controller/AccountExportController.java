@@ -0,0 +1,55 @@
+package com.example.user.userservice.controller;
+
+import com.example.user.userservice.service.AccountExportService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDate;
+
+/**
+ * Full-account download. The ZIP is written while it is sent, on an async request thread, so a
+ * large account neither holds a Tomcat worker nor ends up in memory or on disk.
+ */
+@RestController
+@RequestMapping("/api/user/export")
+@RequiredArgsConstructor
+@Slf4j
+public class AccountExportController {
+
+    private final AccountExportService accountExportService;
+
+    @GetMapping
+    public ResponseEntity<StreamingResponseBody> exportAccount(@RequestHeader("X-User-Id") Long userId) {
+        if (!accountExportService.tryAcquire(userId)) {
+            log.warn("Export for user ID: {} refused, too many exports running", userId);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .build();
+        }
+        log.info("Exporting account of user ID: {}", userId);
+
+        StreamingResponseBody body = out -> {
+            try {
+                accountExportService.writeArchive(userId, out);
+            } finally {
+                accountExportService.release();
+            }
+        };
+        String fileName = "expense-tracker-export-" + userId + "-" + LocalDate.now() + ".zip";
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(fileName).build().toString())
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .body(body);
+    }
+}
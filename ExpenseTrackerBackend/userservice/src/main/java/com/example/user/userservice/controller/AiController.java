@@ -2,12 +2,27 @@ package com.example.user.userservice.controller;
 
 import com.example.user.userservice.dto.ParseExpenseRequest;
 import com.example.user.userservice.dto.ParsedExpenseResponse;
+import com.example.user.userservice.service.AiCallBulkhead;
+import com.example.user.userservice.service.AiCallLedger;
 import com.example.user.userservice.service.AiExpenseParserService;
+import com.example.user.userservice.service.AiProviderRouter;
+import com.example.user.userservice.service.CategoryBackfillService;
+import com.example.user.userservice.service.CategoryCache;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/ai")
@@ -16,6 +31,13 @@ import org.springframework.web.bind.annotation.*;
 public class AiController {
 
     private final AiExpenseParserService aiExpenseParserService;
+    private final AiCallBulkhead aiCallBulkhead;
+    private final AiProviderRouter aiProviderRouter;
+    private final AiCallLedger aiCallLedger;
+    private final CategoryBackfillService categoryBackfillService;
+
+    @Value("${app.admin.token:}")
+    private String adminToken;
 
     @PostMapping("/parse-expense")
     public ResponseEntity<ParsedExpenseResponse> parseExpense(
@@ -29,4 +51,80 @@ public class AiController {
         log.info("Expense parsed and created successfully with ID: {}", response.getExpenseId());
         return ResponseEntity.ok(response);
     }
+
+    @PostMapping(value = "/parse-expense/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamParseExpense(
+            @Valid @RequestBody ParseExpenseRequest request,
+            @RequestHeader("X-User-Id") Long userId) {
+
+        log.info("Streaming parse preview for user ID: {}", userId);
+
+        return aiExpenseParserService.streamParsePreview(request, userId);
+    }
+
+    @GetMapping("/suggest-category")
+    public ResponseEntity<Map<String, Object>> suggestCategory(
+            @RequestParam("text") String text,
+            @RequestHeader("X-User-Id") Long userId) {
+
+        return ResponseEntity.ok(aiExpenseParserService.suggestCategory(userId, text));
+    }
+
+    @GetMapping("/metrics/bulkhead")
+    public ResponseEntity<Map<String, Map<String, Number>>> getBulkheadMetrics() {
+        return ResponseEntity.ok(aiCallBulkhead.snapshot());
+    }
+
+    @GetMapping("/metrics/providers")
+    public ResponseEntity<Map<String, Map<String, Number>>> getProviderHealth() {
+        return ResponseEntity.ok(aiProviderRouter.snapshot());
+    }
+
+    @PostMapping("/backfill/categories")
+    public ResponseEntity<Map<String, Object>> startCategoryBackfill(
+            @RequestHeader(value = "X-Admin-Token", required = false) String token) {
+
+        if (!isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        log.info("Starting category backfill for '{}' expenses", CategoryCache.OTHERS);
+        return ResponseEntity.accepted().body(categoryBackfillService.start());
+    }
+
+    @PostMapping("/backfill/categories/pause")
+    public ResponseEntity<Map<String, Object>> pauseCategoryBackfill(
+            @RequestHeader(value = "X-Admin-Token", required = false) String token) {
+
+        if (!isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(categoryBackfillService.pause());
+    }
+
+    @GetMapping("/backfill/categories")
+    public ResponseEntity<Map<String, Object>> getCategoryBackfillStatus(
+            @RequestHeader(value = "X-Admin-Token", required = false) String token) {
+
+        if (!isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(categoryBackfillService.status());
+    }
+
+    @GetMapping("/metrics/ledger")
+    public ResponseEntity<Map<String, Object>> getLedgerMetrics(
+            @RequestParam(value = "days", defaultValue = "7") int days) {
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("buffer", aiCallLedger.snapshot());
+        metrics.put("daily", aiCallLedger.dailyStats(days));
+        return ResponseEntity.ok(metrics);
+    }
+
+    // No roles in this service yet; admin operations require the shared token and are off when it is unset
+    private boolean isAdmin(String token) {
+        return adminToken != null && !adminToken.isBlank() && MessageDigest.isEqual(
+                adminToken.getBytes(StandardCharsets.UTF_8),
+                (token == null ? "" : token).getBytes(StandardCharsets.UTF_8));
+    }
 }
@@ -4,7 +4,10 @@ import com.example.user.userservice.dto.ExpenseRequest;
 import com.example.user.userservice.dto.ExpenseRequestWithBase64Receipt;
 import com.example.user.userservice.dto.ExpenseResponse;
 import com.example.user.userservice.dto.ExpenseSummaryResponse;
+import com.example.user.userservice.service.Base64ReceiptStreamReader;
 import com.example.user.userservice.service.ExpenseService;
+import com.example.user.userservice.service.FileStorageService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -15,6 +18,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.Date;
 import java.util.HashMap;
@@ -28,6 +32,8 @@ import java.util.Map;
 public class ExpenseController {
 
     private final ExpenseService expenseService;
+    private final Base64ReceiptStreamReader base64ReceiptStreamReader;
+    private final FileStorageService fileStorageService;
 
     @PostMapping
     public ResponseEntity<ExpenseResponse> createExpense(
@@ -47,24 +53,37 @@ public class ExpenseController {
     public ResponseEntity<ExpenseResponse> createExpenseWithReceipt(
             @RequestHeader("X-User-Id") Long userId,
             @RequestPart("expense") @Valid ExpenseRequest request,
-            @RequestPart(value = "receipt", required = false) MultipartFile receipt) {
+            @RequestPart(value = "receipt", required = false) MultipartFile receipt,
+            @RequestParam(value = "rejectDuplicate", defaultValue = "false") boolean rejectDuplicate) {
         
         log.info("Creating expense with receipt for user ID: {} with name: {}", userId, request.getName());
         
-        ExpenseResponse response = expenseService.createExpenseWithReceipt(userId, request, receipt);
+        // A receipt that looks already added is flagged in possibleDuplicateIds, or refused with 409 when rejectDuplicate=true
+        ExpenseResponse response = expenseService.createExpenseWithReceipt(userId, request, receipt, rejectDuplicate);
         
         log.info("Expense with receipt created successfully with ID: {}", response.getId());
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
+    // Same JSON as ExpenseRequestWithBase64Receipt, read as a stream so the receipt is decoded straight into storage
     @PostMapping(value = "/with-base64-receipt", consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<ExpenseResponse> createExpenseWithBase64Receipt(
             @RequestHeader("X-User-Id") Long userId,
-            @RequestBody @Valid ExpenseRequestWithBase64Receipt request) {
+            HttpServletRequest httpRequest) throws IOException {
         
+        Base64ReceiptStreamReader.Body body = base64ReceiptStreamReader.read(httpRequest.getInputStream());
+        ExpenseRequestWithBase64Receipt request = body.request();
         log.info("Creating expense with base64 receipt for user ID: {} with name: {}", userId, request.getName());
         
-        ExpenseResponse response = expenseService.createExpenseWithBase64Receipt(userId, request, request.getBase64Receipt(), request.getFileName());
+        ExpenseResponse response;
+        try {
+            response = expenseService.createExpenseWithStagedReceipt(
+                    userId, request, body.receipt(), request.getFileName(), body.contentType());
+        } catch (RuntimeException e) {
+            // Storing consumes the staged receipt; it is left over only when creation failed first
+            fileStorageService.discardStagedUpload(body.receipt());
+            throw e;
+        }
         
         log.info("Expense with base64 receipt created successfully with ID: {}", response.getId());
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
@@ -1,61 +1,262 @@
 package com.example.user.userservice.controller;
 
-import com.example.user.userservice.service.FileStorageService;
+import com.example.user.userservice.security.ReceiptUrlSigner;
+import com.example.user.userservice.service.ReceiptStorageBackend;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.HttpRange;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
 
+/**
+ * Serves stored receipts. Every stored name is unique and never rewritten (content hashes,
+ * timestamp+UUID names, variants of either), so responses carry a strong ETag and an immutable
+ * Cache-Control: repeat views are answered from the browser cache or with a bodiless 304.
+ * Single byte ranges are honoured for large PDFs. Bodies go out through Tomcat's sendfile when
+ * the connector supports it, otherwise via {@link FileChannel#transferTo}.
+ * <p>
+ * When the {@link ReceiptStorageBackend} is remote (S3), the request is answered with a redirect
+ * to a short-lived presigned URL: the bytes go from the object store to the client and never
+ * through this instance.
+ * <p>
+ * {@code /signed/...} is the same file behind a {@link ReceiptUrlSigner} URL, as the API hands them
+ * out. It skips the JWT filter and the user lookup: the signature and expiry are the whole check,
+ * and the response is public-cacheable until the URL expires.
+ */
 @RestController
 @RequestMapping("/api/user/files")
 @RequiredArgsConstructor
 @Slf4j
 public class FileController {
 
-    private final FileStorageService fileStorageService;
-
-    @Value("${app.file.upload-dir:uploads}")
-    private String uploadDir;
-
-    @GetMapping("/{filePath:.+}")
-    public ResponseEntity<Resource> serveFileFromController(@PathVariable String filePath) {
-        log.debug("Serving file: {}", filePath);
-
-        try {
-            Path file = Paths.get(uploadDir, filePath);
-            Resource resource = new UrlResource(file.toUri());
-
-            if (resource.exists() && resource.isReadable()) {
-                String contentType = determineContentType(filePath);
-                
-                log.info("File served successfully: {}", filePath);
-                return ResponseEntity.ok()
-                        .contentType(MediaType.parseMediaType(contentType))
-                        .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + resource.getFilename() + "\"")
-                        .body(resource);
-            } else {
-                log.warn("File not found or not readable: {}", filePath);
-                return ResponseEntity.notFound().build();
+    private static final Pattern CONTENT_HASH_NAME = Pattern.compile("[0-9a-f]{64}\\.[a-z0-9]+");
+    private static final String IMMUTABLE_CACHE_CONTROL = "private, max-age=31536000, immutable";
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final ReceiptStorageBackend storageBackend;
+    private final ReceiptUrlSigner receiptUrlSigner;
+
+    @Value("${app.file.presign-ttl-seconds:300}")
+    private long presignTtlSeconds;
+
+    // {*filePath} spans segments, so receipts/{userId}/... paths resolve
+    @RequestMapping(value = "/{*filePath}", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void serveFileFromController(@PathVariable String filePath,
+                                        HttpServletRequest request,
+                                        HttpServletResponse response) throws IOException {
+        String relativePath = filePath.startsWith("/") ? filePath.substring(1) : filePath;
+        log.debug("Serving file: {}", relativePath);
+        serve(relativePath, IMMUTABLE_CACHE_CONTROL, request, response);
+    }
+
+    @RequestMapping(value = "/signed/{*filePath}", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void serveSignedFile(@PathVariable String filePath,
+                                @RequestParam(required = false) Long expires,
+                                @RequestParam(required = false) String signature,
+                                HttpServletRequest request,
+                                HttpServletResponse response) throws IOException {
+        String relativePath = filePath.startsWith("/") ? filePath.substring(1) : filePath;
+        if (expires == null || !receiptUrlSigner.verify(relativePath, expires, signature)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        // The URL is the credential, so shared caches may keep the bytes exactly as long as it is valid
+        serve(relativePath, "public, max-age=" + receiptUrlSigner.secondsUntil(expires) + ", immutable", request, response);
+    }
+
+    private void serve(String relativePath, String cacheControl,
+                       HttpServletRequest request, HttpServletResponse response) throws IOException {
+
+        if (!isServableKey(relativePath)) {
+            log.warn("Refusing to serve path: {}", relativePath);
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        Optional<Path> localFile = storageBackend.localPath(relativePath);
+        if (localFile.isEmpty()) {
+            serveFromBackend(relativePath, request, response);
+            return;
+        }
+
+        Path file = localFile.get();
+        if (!Files.isRegularFile(file) || !Files.isReadable(file)) {
+            log.warn("File not found or not readable: {}", relativePath);
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long length = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String etag = etag(file, attributes);
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        // Sets ETag/Last-Modified and answers If-None-Match / If-Modified-Since with 304
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+
+        response.setContentType(determineContentType(relativePath));
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + file.getFileName() + "\"");
+
+        long start = 0;
+        long end = length - 1;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && length > 0 && ifRangeMatches(request.getHeader(HttpHeaders.IF_RANGE), etag)) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
             }
-        } catch (MalformedURLException e) {
-            log.error("Error serving file: {}", filePath, e);
-            return ResponseEntity.badRequest().build();
+            // Multipart byteranges are not worth it for receipts; several ranges get the whole file
+            if (ranges.size() == 1) {
+                HttpRange range = ranges.get(0);
+                try {
+                    start = range.getRangeStart(length);
+                    end = range.getRangeEnd(length);
+                } catch (IllegalArgumentException e) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                if (start >= length) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = length == 0 ? 0 : end - start + 1;
+        response.setContentLengthLong(count);
+        if ("HEAD".equals(request.getMethod()) || count == 0) {
+            return;
         }
+        writeBody(file, start, count, request, response);
+        log.debug("File served: {} ({} of {} bytes)", relativePath, count, length);
+    }
+
+    /**
+     * Remote backend: redirect to a presigned URL, cacheable for half its lifetime so the browser
+     * never follows an expired one. A backend without presigning is streamed through as a fallback.
+     */
+    private void serveFromBackend(String key, HttpServletRequest request,
+                                  HttpServletResponse response) throws IOException {
+        Duration ttl = Duration.ofSeconds(presignTtlSeconds);
+        Optional<String> presigned = storageBackend.presignGet(key, ttl);
+        if (presigned.isPresent()) {
+            // No HEAD first: a missing object is the store's 404, one round trip fewer per view
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=" + ttl.dividedBy(2).toSeconds());
+            response.setStatus(HttpServletResponse.SC_FOUND);
+            response.setHeader(HttpHeaders.LOCATION, presigned.get());
+            return;
+        }
+
+        Optional<ReceiptStorageBackend.ObjectInfo> info = storageBackend.stat(key);
+        if (info.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setHeader(HttpHeaders.CACHE_CONTROL, IMMUTABLE_CACHE_CONTROL);
+        response.setContentType(determineContentType(key));
+        response.setContentLengthLong(info.get().size());
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+        try (InputStream in = storageBackend.get(key)) {
+            in.transferTo(response.getOutputStream());
+        }
+    }
+
+    private void writeBody(Path file, long start, long count,
+                           HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat sends the file from the kernel page cache after this handler returns
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + count);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ServletOutputStream out = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, target);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * A content-addressed original's name is its SHA-256, the strongest tag there is. Anything
+     * else is tagged by inode, size and mtime, which change whenever the bytes could have.
+     */
+    private String etag(Path file, BasicFileAttributes attributes) {
+        String name = file.getFileName().toString();
+        if (CONTENT_HASH_NAME.matcher(name).matches()) {
+            return "\"" + name.substring(0, 64) + "\"";
+        }
+        Object fileKey = attributes.fileKey();
+        int keyHash = fileKey != null ? fileKey.hashCode() : 0;
+        return "\"" + Integer.toHexString(keyHash) + "-" + Long.toHexString(attributes.size())
+                + "-" + Long.toHexString(attributes.lastModifiedTime().toMillis()) + "\"";
+    }
+
+    // Upload temp files and variant temp files live under dot-names; ".." never leaves the root
+    private boolean isServableKey(String key) {
+        if (key.isEmpty()) {
+            return false;
+        }
+        for (String part : key.split("/", -1)) {
+            if (part.isEmpty() || part.startsWith(".") || part.contains("\\")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // If-Range with a stale or weak validator means: ignore Range, send the whole file
+    private boolean ifRangeMatches(String ifRange, String etag) {
+        return ifRange == null || ifRange.equals(etag);
     }
 
     private String determineContentType(String filePath) {
         String extension = getFileExtension(filePath).toLowerCase();
-        
+
         return switch (extension) {
             case "jpg", "jpeg" -> "image/jpeg";
             case "png" -> "image/png";
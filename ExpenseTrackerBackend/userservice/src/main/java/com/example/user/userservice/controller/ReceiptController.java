@@ -1,14 +1,32 @@
 package com.example.user.userservice.controller;
 
+import com.example.user.userservice.dto.ExpenseRequest;
+import com.example.user.userservice.dto.ReceiptBatchResponse;
+import com.example.user.userservice.dto.ReceiptResponse;
+import com.example.user.userservice.entity.Receipt;
+import com.example.user.userservice.exception.ExpenseException;
 import com.example.user.userservice.service.ExpenseService;
+import com.example.user.userservice.service.ReceiptBatchService;
+import com.example.user.userservice.service.ReceiptService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/user/{userId}/receipts")
@@ -17,91 +35,113 @@ import java.util.Map;
 public class ReceiptController {
 
     private final ExpenseService expenseService;
+    private final ReceiptService receiptService;
+    private final ReceiptBatchService receiptBatchService;
+    private final ObjectMapper objectMapper;
 
     @GetMapping
-    public ResponseEntity<List<Map<String, Object>>> getReceipts(@PathVariable Long userId) {
+    public ResponseEntity<List<ReceiptResponse>> getReceipts(@PathVariable Long userId) {
         log.info("Fetching receipts for user ID: {}", userId);
-        
-        try {
-            // Get all expenses with receipts for the user
-            List<Map<String, Object>> receipts = expenseService.getReceiptsByUser(userId);
-            
-            log.info("Retrieved {} receipts for user ID: {}", receipts.size(), userId);
-            return ResponseEntity.ok(receipts);
-        } catch (Exception e) {
-            log.error("Error fetching receipts for user ID: {}", userId, e);
-            return ResponseEntity.internalServerError().build();
+
+        List<ReceiptResponse> receipts = new ArrayList<>(receiptService.getReceipts(userId));
+        // Expenses saved with a receipt image have no receipts row of their own; list them alongside
+        Set<Long> linkedExpenseIds = new HashSet<>();
+        Set<String> imagePaths = new HashSet<>();
+        for (ReceiptResponse receipt : receipts) {
+            if (receipt.getExpenseId() != null) {
+                linkedExpenseIds.add(receipt.getExpenseId());
+            }
+            if (receipt.getImageUrl() != null) {
+                imagePaths.add(receipt.getImageUrl());
+            }
         }
+        for (Map<String, Object> expense : expenseService.getReceiptsByUser(userId)) {
+            if (!linkedExpenseIds.contains((Long) expense.get("id")) && !imagePaths.contains((String) expense.get("receiptPath"))) {
+                receipts.add(fromExpense(userId, expense));
+            }
+        }
+        receipts.sort(Comparator.comparing(ReceiptResponse::getCreatedAt,
+                Comparator.nullsLast(Comparator.reverseOrder())));
+
+        log.info("Retrieved {} receipts for user ID: {}", receipts.size(), userId);
+        return ResponseEntity.ok(receipts);
     }
 
-    @PostMapping
-    public ResponseEntity<Map<String, Object>> createReceipt(@PathVariable Long userId, @RequestBody Map<String, Object> receiptData) {
-        log.info("Creating receipt for user ID: {} with data: {}", userId, receiptData);
-        
-        try {
-            // Extract the base64 image data and extracted text
-            String imageUrl = (String) receiptData.get("imageUrl");
-            String fileName = (String) receiptData.get("fileName");
-            Object extractedDataObj = receiptData.get("extractedData");
-            
-            // Convert extracted data to string if it's an object
-            String extractedDataJson = null;
-            if (extractedDataObj instanceof Map) {
-                extractedDataJson = new com.fasterxml.jackson.databind.ObjectMapper().writeValueAsString(extractedDataObj);
-            } else if (extractedDataObj instanceof String) {
-                extractedDataJson = (String) extractedDataObj;
+    @GetMapping("/{receiptId}")
+    public ResponseEntity<ReceiptResponse> getReceipt(@PathVariable Long userId, @PathVariable Long receiptId) {
+        return ResponseEntity.ok(receiptService.getReceipt(userId, receiptId));
+    }
+
+    /**
+     * Stores the image and returns the PENDING receipt at once; poll {@code GET /{receiptId}} for
+     * the result of processing.
+     */
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ReceiptResponse> createReceipt(@PathVariable Long userId, @RequestBody Map<String, Object> receiptData) {
+        log.info("Creating receipt for user ID: {}", userId);
+
+        ReceiptResponse response = receiptService.createReceipt(userId, (String) receiptData.get("imageUrl"),
+                (String) receiptData.get("fileName"), toJson(receiptData.get("extractedData")));
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+    }
+
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ReceiptResponse> uploadReceipt(@PathVariable Long userId,
+                                                         @RequestParam("file") MultipartFile file,
+                                                         @RequestParam(value = "extractedData", required = false) String extractedData) {
+        log.info("Uploading receipt {} for user ID: {}", file.getOriginalFilename(), userId);
+
+        ReceiptResponse response = receiptService.createReceipt(userId, file, extractedData);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+    }
+
+    /**
+     * Uploads many receipts at once; {@code files} may include ZIP archives of images.
+     * {@code expenses} is a JSON object of expense data keyed by file name; files listed there
+     * become expenses, the rest receipts only. Poll {@code GET /batch/{batchId}} with a
+     * client-chosen {@code batchId} for progress while the upload runs.
+     */
+    @PostMapping(value = "/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ReceiptBatchResponse> uploadReceiptBatch(@PathVariable Long userId,
+                                                                   @RequestParam("files") List<MultipartFile> files,
+                                                                   @RequestParam(value = "expenses", required = false) String expenses,
+                                                                   @RequestParam(value = "batchId", required = false) String batchId,
+                                                                   @RequestParam(value = "allowDuplicate", defaultValue = "false") boolean allowDuplicate) {
+        log.info("Uploading a batch of {} receipt files for user ID: {}", files.size(), userId);
+
+        Map<String, ExpenseRequest> expenseData = null;
+        if (expenses != null && !expenses.isBlank()) {
+            try {
+                expenseData = objectMapper.readValue(expenses, new TypeReference<Map<String, ExpenseRequest>>() { });
+            } catch (JsonProcessingException e) {
+                throw new ExpenseException("expenses must be a JSON object of expense data by file name");
             }
-            
-            // Create a mock receipt response for the frontend
-            Map<String, Object> response = new HashMap<>();
-            response.put("id", System.currentTimeMillis()); // Mock ID
-            response.put("fileName", fileName);
-            response.put("imageUrl", imageUrl);
-            response.put("extractedData", extractedDataJson);
-            response.put("status", "COMPLETED");
-            response.put("createdAt", System.currentTimeMillis());
-            response.put("userId", userId);
-            
-            log.info("Created mock receipt with ID: {} for user: {}", response.get("id"), userId);
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            log.error("Error creating receipt for user ID: {}", userId, e);
-            return ResponseEntity.internalServerError().build();
         }
+        return ResponseEntity.ok(receiptBatchService.upload(userId, batchId, files, expenseData, allowDuplicate));
+    }
+
+    @GetMapping("/batch/{batchId}")
+    public ResponseEntity<ReceiptBatchResponse> getReceiptBatch(@PathVariable Long userId, @PathVariable String batchId) {
+        return ResponseEntity.ok(receiptBatchService.getBatch(userId, batchId));
     }
 
     @PutMapping("/{receiptId}")
-    public ResponseEntity<Map<String, Object>> updateReceipt(@PathVariable Long userId, @PathVariable String receiptId, @RequestBody Map<String, Object> receiptData) {
-        log.info("Updating receipt {} for user ID: {} with data: {}", receiptId, userId, receiptData);
-        
-        try {
-            // For now, just return the updated data
-            Map<String, Object> response = new HashMap<>();
-            response.put("id", receiptId);
-            response.put("fileName", receiptData.get("fileName"));
-            response.put("imageUrl", receiptData.get("imageUrl"));
-            response.put("status", "COMPLETED");
-            response.put("createdAt", System.currentTimeMillis());
-            response.put("userId", userId);
-            
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            log.error("Error updating receipt {} for user ID: {}", receiptId, userId, e);
-            return ResponseEntity.internalServerError().build();
-        }
+    public ResponseEntity<ReceiptResponse> updateReceipt(@PathVariable Long userId, @PathVariable Long receiptId, @RequestBody Map<String, Object> receiptData) {
+        log.info("Updating receipt {} for user ID: {}", receiptId, userId);
+
+        Object expenseId = receiptData.get("expenseId");
+        ReceiptResponse response = receiptService.updateReceipt(userId, receiptId, (String) receiptData.get("fileName"),
+                toJson(receiptData.get("extractedData")),
+                expenseId == null ? null : Long.valueOf(expenseId.toString()));
+        return ResponseEntity.ok(response);
     }
 
     @DeleteMapping("/{receiptId}")
-    public ResponseEntity<Void> deleteReceipt(@PathVariable Long userId, @PathVariable String receiptId) {
+    public ResponseEntity<Void> deleteReceipt(@PathVariable Long userId, @PathVariable Long receiptId) {
         log.info("Deleting receipt {} for user ID: {}", receiptId, userId);
-        
-        try {
-            // For now, just return success since we're not creating separate receipt entities
-            return ResponseEntity.noContent().build();
-        } catch (Exception e) {
-            log.error("Error deleting receipt {} for user ID: {}", receiptId, userId, e);
-            return ResponseEntity.internalServerError().build();
-        }
+
+        receiptService.deleteReceipt(userId, receiptId);
+        return ResponseEntity.noContent().build();
     }
 
     @GetMapping("/debug")
@@ -178,4 +218,37 @@ public class ReceiptController {
             return ResponseEntity.internalServerError().body(errorResponse);
         }
     }
+
+    // A receipt attached directly to an expense, shown as LINKED; it has no receipt ID, only the expense's
+    private ReceiptResponse fromExpense(Long userId, Map<String, Object> expense) {
+        String receiptPath = (String) expense.get("receiptPath");
+        LocalDate date = (LocalDate) expense.get("date");
+        Map<String, Object> extractedData = new HashMap<>();
+        extractedData.put("merchant", expense.get("name"));
+        extractedData.put("amount", expense.get("amount"));
+        extractedData.put("date", date == null ? null : date.toString());
+        extractedData.put("confidence", 1);
+        return ReceiptResponse.builder()
+                .userId(userId)
+                .fileName(receiptPath.substring(receiptPath.lastIndexOf('/') + 1))
+                .imageUrl(receiptPath)
+                .status(Receipt.LINKED)
+                .extractedData(toJson(extractedData))
+                .expenseId((Long) expense.get("id"))
+                .attempts(0)
+                .createdAt(date == null ? null : date.atStartOfDay())
+                .build();
+    }
+
+    // The web client sends extracted data either as an object or already serialized
+    private String toJson(Object extractedData) {
+        if (extractedData == null || extractedData instanceof String) {
+            return (String) extractedData;
+        }
+        try {
+            return objectMapper.writeValueAsString(extractedData);
+        } catch (JsonProcessingException e) {
+            throw new ExpenseException("extractedData must be valid JSON");
+        }
+    }
 }
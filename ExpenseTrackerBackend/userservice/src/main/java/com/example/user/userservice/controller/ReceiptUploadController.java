@@ -0,0 +1,95 @@
+package com.example.user.userservice.controller;
+
+import com.example.user.userservice.dto.ReceiptUploadInitRequest;
+import com.example.user.userservice.dto.ReceiptUploadStatusResponse;
+import com.example.user.userservice.service.ResumableReceiptUploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+/**
+ * Resumable alternative to {@code POST /api/user/expenses/{expenseId}/receipt}:
+ * <ol>
+ *   <li>{@code POST .../uploads} with the file name and size returns an upload ID and chunk size</li>
+ *   <li>{@code PUT .../uploads/{uploadId}/chunks/{index}} with the raw chunk bytes and an
+ *       {@code X-Chunk-SHA256} header, in any order, retrying only what failed</li>
+ *   <li>{@code GET .../uploads/{uploadId}} lists the chunks still missing after a dropped connection</li>
+ *   <li>{@code POST .../uploads/{uploadId}/complete} attaches the receipt to the expense</li>
+ * </ol>
+ */
+@RestController
+@RequestMapping("/api/user/expenses/{expenseId}/receipt/uploads")
+@RequiredArgsConstructor
+@Slf4j
+public class ReceiptUploadController {
+
+    private final ResumableReceiptUploadService resumableReceiptUploadService;
+
+    @PostMapping
+    public ResponseEntity<ReceiptUploadStatusResponse> initiateUpload(
+            @RequestHeader("X-User-Id") Long userId,
+            @PathVariable Long expenseId,
+            @Valid @RequestBody ReceiptUploadInitRequest request) {
+
+        log.info("Starting resumable receipt upload for expense ID: {} and user ID: {}", expenseId, userId);
+
+        ReceiptUploadStatusResponse response = resumableReceiptUploadService.initiate(userId, expenseId, request);
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    }
+
+    @PutMapping(value = "/{uploadId}/chunks/{index}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<ReceiptUploadStatusResponse> uploadChunk(
+            @RequestHeader("X-User-Id") Long userId,
+            @PathVariable Long expenseId,
+            @PathVariable String uploadId,
+            @PathVariable int index,
+            @RequestHeader("X-Chunk-SHA256") String sha256,
+            HttpServletRequest request) throws IOException {
+
+        log.debug("Receiving chunk {} of upload {} for expense ID: {}", index, uploadId, expenseId);
+
+        ReceiptUploadStatusResponse response = resumableReceiptUploadService.writeChunk(
+                userId, expenseId, uploadId, index, sha256, request.getInputStream());
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<ReceiptUploadStatusResponse> getUploadStatus(
+            @RequestHeader("X-User-Id") Long userId,
+            @PathVariable Long expenseId,
+            @PathVariable String uploadId) {
+
+        return ResponseEntity.ok(resumableReceiptUploadService.status(userId, expenseId, uploadId));
+    }
+
+    @PostMapping("/{uploadId}/complete")
+    public ResponseEntity<ReceiptUploadStatusResponse> completeUpload(
+            @RequestHeader("X-User-Id") Long userId,
+            @PathVariable Long expenseId,
+            @PathVariable String uploadId) {
+
+        log.info("Completing resumable receipt upload {} for expense ID: {}", uploadId, expenseId);
+
+        ReceiptUploadStatusResponse response = resumableReceiptUploadService.complete(userId, expenseId, uploadId);
+
+        log.info("Receipt uploaded successfully for expense ID: {} at path: {}", expenseId, response.getReceiptPath());
+        return ResponseEntity.ok(response);
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<Void> abortUpload(
+            @RequestHeader("X-User-Id") Long userId,
+            @PathVariable Long expenseId,
+            @PathVariable String uploadId) {
+
+        resumableReceiptUploadService.abort(userId, expenseId, uploadId);
+        return ResponseEntity.noContent().build();
+    }
+}
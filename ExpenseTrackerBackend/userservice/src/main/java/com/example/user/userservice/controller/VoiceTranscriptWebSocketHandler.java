@@ -0,0 +1,249 @@
+package com.example.user.userservice.controller;
+
+import com.example.user.userservice.dto.ExpenseRequest;
+import com.example.user.userservice.dto.ExpenseResponse;
+import com.example.user.userservice.dto.VoiceExpenseRequest;
+import com.example.user.userservice.dto.VoiceExpenseResponse;
+import com.example.user.userservice.service.CategoryCache;
+import com.example.user.userservice.service.ExpenseCategoryClassifier;
+import com.example.user.userservice.service.ExpenseService;
+import com.example.user.userservice.service.IncrementalVoiceParser;
+import com.example.user.userservice.service.IncrementalVoiceParser.Categorization;
+import com.example.user.userservice.service.IncrementalVoiceParser.ParsedExpense;
+import com.example.user.userservice.service.IncrementalVoiceParser.Preview;
+import com.example.user.userservice.service.MerchantCategoryMemory;
+import com.example.user.userservice.service.VoiceExpenseService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Live voice entry: the client streams partial transcripts while the user speaks
+ * ({@code {"type":"partial","text":"..."}}) and gets debounced {@code preview} messages from the
+ * deterministic parser. On {@code {"type":"final"}} the fast parse is saved directly when it is
+ * confident; otherwise the transcript goes through the regular LLM voice flow.
+ */
+@Component
+@Slf4j
+public class VoiceTranscriptWebSocketHandler extends TextWebSocketHandler {
+
+    public static final String USER_ID = "userId";
+
+    private static final int SEND_TIME_LIMIT_MS = 5000;
+    private static final int SEND_BUFFER_LIMIT = 64 * 1024;
+    private static final int MAX_TRANSCRIPT_CHARS = 2000;
+
+    private final VoiceExpenseService voiceExpenseService;
+    private final ExpenseService expenseService;
+    private final MerchantCategoryMemory merchantCategoryMemory;
+    private final ExpenseCategoryClassifier expenseCategoryClassifier;
+    private final CategoryCache categoryCache;
+    private final ObjectMapper objectMapper;
+    private final ScheduledExecutorService debouncer;
+    private final Map<String, LiveSession> sessions = new ConcurrentHashMap<>();
+
+    @Value("${ai.voice-live.debounce-ms:250}")
+    private long debounceMs;
+
+    @Value("${ai.voice-live.min-confidence:0.75}")
+    private double minConfidence;
+
+    public VoiceTranscriptWebSocketHandler(VoiceExpenseService voiceExpenseService,
+                                           ExpenseService expenseService,
+                                           MerchantCategoryMemory merchantCategoryMemory,
+                                           ExpenseCategoryClassifier expenseCategoryClassifier,
+                                           CategoryCache categoryCache,
+                                           ObjectMapper objectMapper,
+                                           @Value("${ai.voice-live.threads:2}") int threads) {
+        this.voiceExpenseService = voiceExpenseService;
+        this.expenseService = expenseService;
+        this.merchantCategoryMemory = merchantCategoryMemory;
+        this.expenseCategoryClassifier = expenseCategoryClassifier;
+        this.categoryCache = categoryCache;
+        this.objectMapper = objectMapper;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.debouncer = Executors.newScheduledThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "voice-live-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        debouncer.shutdownNow();
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        Long userId = (Long) session.getAttributes().get(USER_ID);
+        WebSocketSession concurrentSession =
+                new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, SEND_BUFFER_LIMIT);
+        sessions.put(session.getId(), new LiveSession(userId, concurrentSession,
+                new IncrementalVoiceParser(text -> categorize(userId, text))));
+        log.debug("Live voice session {} opened for user {}", session.getId(), userId);
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        LiveSession live = sessions.get(session.getId());
+        if (live == null) {
+            return;
+        }
+
+        JsonNode payload = objectMapper.readTree(message.getPayload());
+        String type = payload.path("type").asText("partial");
+        String text = payload.path("text").asText("");
+        if (text.length() > MAX_TRANSCRIPT_CHARS) {
+            text = text.substring(0, MAX_TRANSCRIPT_CHARS);
+        }
+
+        if ("final".equals(type)) {
+            live.cancelPending();
+            try {
+                finish(live, text.isEmpty() ? live.latestText : text);
+            } catch (Exception e) {
+                log.error("Failed to finish live voice session {}: {}", session.getId(), e.getMessage(), e);
+                live.send(Map.of("type", "error", "message", "Failed to process voice expense: " + e.getMessage()));
+            }
+        } else {
+            live.latestText = text;
+            live.schedulePreview();
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        LiveSession live = sessions.remove(session.getId());
+        if (live != null) {
+            live.cancelPending();
+        }
+    }
+
+    private Categorization categorize(Long userId, String text) {
+        return merchantCategoryMemory.lookup(userId, text)
+                .map(categoryId -> new Categorization(categoryId, 0.9, "MEMORY"))
+                .or(() -> expenseCategoryClassifier.suggest(text)
+                        .map(prediction -> new Categorization(prediction.categoryId(), prediction.confidence(), "CLASSIFIER")))
+                .orElseGet(() -> new Categorization(categoryCache.snapshot().othersId(), 0.3, "RULES"));
+    }
+
+    private void finish(LiveSession live, String transcript) throws IOException {
+        Preview preview;
+        synchronized (live.parser) {
+            preview = live.parser.update(transcript, LocalDate.now());
+        }
+
+        VoiceExpenseResponse response;
+        if (preview.confidence() >= minConfidence) {
+            List<ExpenseRequest> requests = new ArrayList<>();
+            for (ParsedExpense expense : preview.expenses()) {
+                requests.add(ExpenseRequest.builder()
+                        .name(expense.name())
+                        .amount(expense.amount())
+                        .categoryId(expense.categoryId())
+                        .date(expense.date())
+                        .description(transcript)
+                        .source("VOICE_LIVE")
+                        .build());
+            }
+            List<ExpenseResponse> created = expenseService.createExpenses(live.userId, requests);
+            response = VoiceExpenseResponse.builder()
+                    .success(true)
+                    .message(created.size() + " expense(s) created from live voice input")
+                    .expense(created.get(0))
+                    .expenses(created)
+                    .parsedText(transcript)
+                    .confidence("High")
+                    .build();
+        } else {
+            // Low confidence: confirm with the LLM through the regular voice flow
+            VoiceExpenseRequest request = new VoiceExpenseRequest();
+            request.setUserId(live.userId);
+            request.setVoiceText(transcript);
+            response = voiceExpenseService.processVoiceExpense(request);
+        }
+
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", "result");
+        message.put("response", response);
+        live.send(message);
+    }
+
+    private final class LiveSession {
+
+        private final Long userId;
+        private final WebSocketSession session;
+        private final IncrementalVoiceParser parser;
+        private volatile String latestText = "";
+        private ScheduledFuture<?> pending;
+
+        private LiveSession(Long userId, WebSocketSession session, IncrementalVoiceParser parser) {
+            this.userId = userId;
+            this.session = session;
+            this.parser = parser;
+        }
+
+        /**
+         * Restarts the debounce timer; only the last update of a burst is parsed.
+         */
+        private synchronized void schedulePreview() {
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            pending = debouncer.schedule(this::sendPreview, debounceMs, TimeUnit.MILLISECONDS);
+        }
+
+        private synchronized void cancelPending() {
+            if (pending != null) {
+                pending.cancel(false);
+                pending = null;
+            }
+        }
+
+        private void sendPreview() {
+            try {
+                Preview preview;
+                synchronized (parser) {
+                    preview = parser.update(latestText, LocalDate.now());
+                }
+                Map<String, Object> message = new LinkedHashMap<>();
+                message.put("type", "preview");
+                message.put("transcript", preview.transcript());
+                message.put("expenses", preview.expenses());
+                message.put("confidence", preview.confidence());
+                send(message);
+            } catch (Exception e) {
+                log.warn("Failed to send live voice preview: {}", e.getMessage());
+            }
+        }
+
+        private void send(Map<String, Object> message) throws IOException {
+            if (session.isOpen()) {
+                session.sendMessage(new TextMessage(objectMapper.writeValueAsString(message)));
+            }
+        }
+    }
+}
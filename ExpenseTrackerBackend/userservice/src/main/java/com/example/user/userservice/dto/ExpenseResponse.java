@@ -25,9 +25,12 @@ public class ExpenseResponse {
     private LocalDate date;
     private String source;
     private String receiptPath;
+    private String receiptThumbnailUrl; // small gallery image, the original until generated
+    private String receiptPreviewUrl; // medium image for the detail view
     private String paymentMethod;
     private String tags;
     private List<String> tagList; // parsed tags
     private String formattedDate; // formatted date string
     private String formattedAmount; // formatted amount with currency
+    private List<Long> possibleDuplicateIds; // on create with a receipt: expenses whose receipt looks like this one
 }
@@ -0,0 +1,25 @@
+package com.example.user.userservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReceiptBatchItemResult {
+
+    private Integer index;
+    private String fileName;
+    private String status; // QUEUED, STORED, EXTRACTED, then CREATED, RECEIPT_ONLY, DUPLICATE or FAILED
+    private Long receiptId;
+    private Long expenseId;
+    private String receiptUrl;
+    private Long categoryId; // as given, or suggested by processing
+    private String categorySource; // REQUEST, MEMORY or CLASSIFIER
+    private String error;
+    private Long storeMs;
+    private Long extractMs;
+}
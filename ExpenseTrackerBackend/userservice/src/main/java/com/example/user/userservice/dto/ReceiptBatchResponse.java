@@ -0,0 +1,26 @@
+package com.example.user.userservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReceiptBatchResponse {
+
+    private String batchId;
+    private String status; // RUNNING, COMPLETED, FAILED (nothing created)
+    private Integer total;
+    private Integer finished; // files past extraction, for progress while RUNNING
+    private Integer created; // expenses created
+    private Integer receiptsOnly; // stored as receipts without expense data, to complete later
+    private Integer duplicates;
+    private Integer failed;
+    private Long elapsedMs;
+    private List<ReceiptBatchItemResult> items; // in upload order
+}
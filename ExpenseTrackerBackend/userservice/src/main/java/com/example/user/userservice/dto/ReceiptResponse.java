@@ -0,0 +1,27 @@
+package com.example.user.userservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReceiptResponse {
+
+    private Long id;
+    private Long userId;
+    private String fileName;
+    private String imageUrl; // storage path, served under /api/user/files/
+    private String status; // PENDING, PROCESSING, EXTRACTED, LINKED, FAILED
+    private String extractedData; // JSON
+    private Long expenseId; // set once LINKED
+    private Integer attempts;
+    private String lastError;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
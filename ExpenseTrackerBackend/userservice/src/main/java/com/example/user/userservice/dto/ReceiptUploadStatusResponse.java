@@ -0,0 +1,27 @@
+package com.example.user.userservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReceiptUploadStatusResponse {
+
+    private String uploadId;
+    private Long expenseId;
+    private String fileName;
+    private Long totalSize;
+    private Integer chunkSize;
+    private Integer chunkCount;
+    private List<Integer> missingChunks; // still to PUT; empty when complete can be called
+    private Long receivedBytes;
+    private LocalDateTime expiresAt; // refreshed by every chunk
+    private String receiptPath; // set once completed
+}
@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @Builder
 @AllArgsConstructor
@@ -12,7 +14,8 @@ import lombok.NoArgsConstructor;
 public class VoiceExpenseResponse {
     private boolean success;
     private String message;
-    private ExpenseResponse expense;
+    private ExpenseResponse expense; // first expense, kept for single-expense clients
+    private List<ExpenseResponse> expenses;
     private String parsedText;
     private String confidence;
 }
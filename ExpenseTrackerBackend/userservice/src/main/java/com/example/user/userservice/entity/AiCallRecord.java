@@ -0,0 +1,57 @@
+package com.example.user.userservice.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row of the AI call ledger. Rows are written in JDBC batches by
+ * {@code AiCallLedger}; the entity only declares the table for schema management.
+ */
+@Entity
+@Table(name = "ai_call_ledger", indexes = @Index(name = "idx_ai_call_ledger_created_at", columnList = "created_at"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AiCallRecord {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false, length = 32)
+    private String purpose; // e.g. "voice-parse", "text-parse"
+
+    @Column(nullable = false, length = 32)
+    private String provider; // "gemini", "huggingface", or "regex" for fallbacks
+
+    @Column(length = 128)
+    private String model;
+
+    @Column(name = "prompt_chars", nullable = false)
+    private Integer promptChars;
+
+    @Column(name = "response_chars", nullable = false)
+    private Integer responseChars;
+
+    @Column(name = "prompt_tokens")
+    private Integer promptTokens;
+
+    @Column(name = "completion_tokens")
+    private Integer completionTokens;
+
+    @Column(name = "latency_ms", nullable = false)
+    private Long latencyMs;
+
+    @Column(nullable = false, length = 16)
+    private String outcome; // SUCCESS, PARSE_ERROR, PROVIDER_ERROR, REJECTED, FALLBACK
+
+    @Column(name = "fallback_used", nullable = false)
+    private Boolean fallbackUsed;
+}
@@ -0,0 +1,72 @@
+package com.example.user.userservice.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Progress of a bulk re-categorization run over the "Others" category. The row is the
+ * checkpoint: it is updated in the same transaction as each page of category changes,
+ * so a restarted job resumes after {@code lastExpenseId} without redoing work.
+ */
+@Entity
+@Table(name = "category_backfill_jobs")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CategoryBackfillJob {
+
+    public static final String RUNNING = "RUNNING";
+    public static final String PAUSED = "PAUSED";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 16)
+    private String status; // RUNNING, PAUSED, COMPLETED, FAILED
+
+    @Column(name = "source_category_id", nullable = false)
+    private Long sourceCategoryId; // the "Others" category being drained
+
+    @Column(name = "last_expense_id", nullable = false)
+    private Long lastExpenseId; // keyset checkpoint, every expense up to this ID has been processed
+
+    @Column(nullable = false)
+    private Long scanned;
+
+    @Column(name = "by_classifier", nullable = false)
+    private Long byClassifier;
+
+    @Column(name = "by_ai", nullable = false)
+    private Long byAi;
+
+    @Column(nullable = false)
+    private Long unchanged; // still "Others" after classification
+
+    @Column(nullable = false)
+    private Long failed; // rows whose AI call failed, counted per attempt; the checkpoint stops before them so they are retried
+
+    @Column(name = "last_error", length = 512)
+    private String lastError;
+
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+    }
+}
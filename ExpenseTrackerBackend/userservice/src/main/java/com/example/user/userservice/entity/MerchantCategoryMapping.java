@@ -0,0 +1,42 @@
+package com.example.user.userservice.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "merchant_category_mappings",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"user_id", "merchant_key"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MerchantCategoryMapping {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId; // plain ID, the mapping is only ever read per user
+
+    @Column(name = "merchant_key", nullable = false, length = 64)
+    private String merchantKey; // normalized token, e.g. "mcdonalds", "uber"
+
+    @Column(name = "category_id", nullable = false)
+    private Long categoryId;
+
+    @Column(nullable = false)
+    private Integer hits; // how often the user kept this category for the key
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.user.userservice.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * An uploaded receipt and where it is in processing:
+ * PENDING, then PROCESSING while a worker holds it, then EXTRACTED, and LINKED once an expense
+ * is made from it. A failed attempt goes back to PENDING with a later {@code nextAttemptAt},
+ * and to FAILED once the attempts run out. Workers on any instance claim PENDING rows with
+ * {@code FOR UPDATE SKIP LOCKED}.
+ */
+@Entity
+@Table(name = "receipts", indexes = {
+        @Index(name = "idx_receipts_user_id", columnList = "user_id"),
+        @Index(name = "idx_receipts_status_next_attempt", columnList = "status, next_attempt_at"),
+        @Index(name = "idx_receipts_image_url", columnList = "image_url")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Receipt {
+
+    public static final String PENDING = "PENDING";
+    public static final String PROCESSING = "PROCESSING";
+    public static final String EXTRACTED = "EXTRACTED";
+    public static final String LINKED = "LINKED";
+    public static final String FAILED = "FAILED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId; // plain ID, receipts are only ever read per user
+
+    @Column(name = "file_name")
+    private String fileName;
+
+    @Column(name = "image_url", length = 500)
+    private String imageUrl; // storage path of the image, as FileStorageService returned it
+
+    @Column(nullable = false, length = 16)
+    private String status; // PENDING, PROCESSING, EXTRACTED, LINKED, FAILED
+
+    @Column(name = "extracted_data", columnDefinition = "TEXT")
+    private String extractedData; // JSON: the client's OCR fields plus what processing added
+
+    @Column(name = "expense_id")
+    private Long expenseId; // set once LINKED
+
+    @Column(nullable = false)
+    private Integer attempts;
+
+    @Column(name = "last_error", length = 512)
+    private String lastError;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "claimed_at")
+    private LocalDateTime claimedAt; // when the current PROCESSING claim was taken; stale claims are requeued
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = createdAt;
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
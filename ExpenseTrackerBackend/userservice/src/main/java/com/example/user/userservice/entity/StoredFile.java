@@ -0,0 +1,64 @@
+package com.example.user.userservice.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A content-addressed file on disk and how many expenses reference it. Identical uploads share
+ * one file; it is deleted when the last reference is released.
+ */
+@Entity
+@Table(name = "stored_files", uniqueConstraints = @UniqueConstraint(columnNames = "path"), indexes = {
+        @Index(name = "idx_stored_files_phash_band0", columnList = "phash_band0, path"),
+        @Index(name = "idx_stored_files_phash_band1", columnList = "phash_band1, path"),
+        @Index(name = "idx_stored_files_phash_band2", columnList = "phash_band2, path"),
+        @Index(name = "idx_stored_files_phash_band3", columnList = "phash_band3, path")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StoredFile {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 255)
+    private String path; // relative to app.file.upload-dir, e.g. receipts/7/3f/3fa9...e1.jpg
+
+    @Column(nullable = false, length = 64)
+    private String sha256;
+
+    @Column(name = "size_bytes", nullable = false)
+    private Long sizeBytes;
+
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount;
+
+    // dHash of an image (ReceiptPerceptualHasher), null for PDFs and files stored before hashing
+    @Column(name = "perceptual_hash")
+    private Long perceptualHash;
+
+    // Its four 16-bit bands, indexed for multi-index near-duplicate lookups
+    @Column(name = "phash_band0")
+    private Integer phashBand0;
+
+    @Column(name = "phash_band1")
+    private Integer phashBand1;
+
+    @Column(name = "phash_band2")
+    private Integer phashBand2;
+
+    @Column(name = "phash_band3")
+    private Integer phashBand3;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
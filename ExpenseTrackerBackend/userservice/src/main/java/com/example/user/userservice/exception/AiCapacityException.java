@@ -0,0 +1,20 @@
+package com.example.user.userservice.exception;
+
+/**
+ * Thrown when an AI provider compartment is saturated and the call is rejected
+ */
+public class AiCapacityException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String provider;
+
+    public AiCapacityException(String provider, String message) {
+        super(message);
+        this.provider = provider;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+}
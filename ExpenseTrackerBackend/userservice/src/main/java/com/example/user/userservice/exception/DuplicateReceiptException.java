@@ -0,0 +1,24 @@
+package com.example.user.userservice.exception;
+
+import com.example.user.userservice.dto.ExpenseResponse;
+
+import java.util.List;
+
+/**
+ * Thrown when a receipt looks like one already attached to another of the user's expenses
+ */
+public class DuplicateReceiptException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient List<ExpenseResponse> duplicates;
+
+    public DuplicateReceiptException(String message, List<ExpenseResponse> duplicates) {
+        super(message);
+        this.duplicates = duplicates;
+    }
+
+    public List<ExpenseResponse> getDuplicates() {
+        return duplicates;
+    }
+}
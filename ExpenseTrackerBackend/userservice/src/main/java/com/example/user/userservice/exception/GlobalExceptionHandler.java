@@ -1,6 +1,7 @@
 package com.example.user.userservice.exception;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -66,6 +67,17 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
     }
 
+    // Handle likely duplicate receipts refused with rejectDuplicate=true: the client shows the matches and may resubmit without it
+    @ExceptionHandler(DuplicateReceiptException.class)
+    public ResponseEntity<Map<String, Object>> handleDuplicateReceiptException(DuplicateReceiptException ex) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        error.put("duplicates", ex.getDuplicates());
+
+        log.warn("DuplicateReceiptException thrown: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+    }
+
     // Handle file storage exceptions
     @ExceptionHandler(FileStorageException.class)
     public ResponseEntity<Map<String, String>> handleFileStorageException(FileStorageException ex) {
@@ -78,6 +90,18 @@ public class GlobalExceptionHandler {
 
 
 
+    // Handle saturated AI providers
+    @ExceptionHandler(AiCapacityException.class)
+    public ResponseEntity<Map<String, String>> handleAiCapacityException(AiCapacityException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+
+        log.warn("AiCapacityException thrown for provider {}: {}", ex.getProvider(), ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "2")
+                .body(error);
+    }
+
     // Handle goal exceptions
     @ExceptionHandler(GoalException.class)
     public ResponseEntity<Map<String, String>> handleGoalException(GoalException ex) {
@@ -0,0 +1,25 @@
+package com.example.user.userservice.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.user.userservice.entity.CategoryBackfillJob;
+
+@Repository
+public interface CategoryBackfillJobRepository extends JpaRepository<CategoryBackfillJob, Long> {
+    Optional<CategoryBackfillJob> findFirstByStatusInOrderByIdDesc(Collection<String> statuses);
+    Optional<CategoryBackfillJob> findFirstByOrderByIdDesc();
+
+    // Takes a paused job, or a running one whose instance stopped checkpointing; of concurrent claims only one matches
+    @Modifying
+    @Query("UPDATE CategoryBackfillJob j SET j.status = 'RUNNING', j.finishedAt = NULL, j.updatedAt = :now " +
+           "WHERE j.id = :id AND (j.status = 'PAUSED' OR (j.status = 'RUNNING' AND j.updatedAt < :staleBefore))")
+    int claim(@Param("id") Long id, @Param("now") LocalDateTime now, @Param("staleBefore") LocalDateTime staleBefore);
+}
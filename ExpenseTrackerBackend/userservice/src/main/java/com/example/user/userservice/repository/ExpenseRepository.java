@@ -1,10 +1,16 @@
 package com.example.user.userservice.repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
+import jakarta.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -24,8 +30,65 @@ public interface ExpenseRepository extends JpaRepository<Expense, Long> {
     @Query("SELECT e FROM Expense e WHERE e.user.id = :userId AND e.category.id = :categoryId AND FUNCTION('DATE_FORMAT', e.date, '%Y-%m') = :month")
     List<Expense> findByUserAndCategoryAndMonth(@Param("userId") Long userId, @Param("categoryId") Long categoryId, @Param("month") String month);
     
+    @Query("SELECT e FROM Expense e WHERE e.user.id = :userId AND e.receiptPath IN :receiptPaths")
+    List<Expense> findByUserIdAndReceiptPathIn(@Param("userId") Long userId, @Param("receiptPaths") Collection<String> receiptPaths);
+
     @Query("SELECT e FROM Expense e WHERE e.user = :user AND e.receiptPath IS NOT NULL")
     List<Expense> findByUserAndReceiptPathIsNotNull(@Param("user") User user);
     
     long countByCategory(Category category);
+
+    // Keyset-paged name/description -> category pairs for the category classifier. Only categories the user
+    // or the LLM chose are labels; regex fallbacks and the memory/classifier's own picks would feed back into it
+    @Query("SELECT e.id AS id, e.name AS name, e.description AS description, e.category.id AS categoryId FROM Expense e " +
+           "WHERE e.id > :afterId AND (e.source IS NULL OR e.source IN ('manual', 'AI', 'receipt')) ORDER BY e.id")
+    List<CategoryTrainingRow> findCategoryTrainingRows(@Param("afterId") Long afterId, Pageable pageable);
+
+    // Keyset-paged rows of one category for the re-categorization backfill; (category_id, id) is covered by the FK index
+    @Query("SELECT e.id AS id, e.name AS name, e.description AS description, e.category.id AS categoryId FROM Expense e " +
+           "WHERE e.category.id = :categoryId AND e.id > :afterId ORDER BY e.id")
+    List<CategoryTrainingRow> findRowsInCategory(@Param("categoryId") Long categoryId, @Param("afterId") Long afterId,
+                                                 Pageable pageable);
+
+    // Keyset-paged receipt paths under one storage directory for the orphan sweeper; a prefix LIKE is a range scan on idx_expenses_receipt_path
+    @Query("SELECT e.receiptPath FROM Expense e WHERE e.receiptPath LIKE :pathPattern AND e.receiptPath > :afterPath " +
+           "ORDER BY e.receiptPath")
+    List<String> findReceiptPaths(@Param("pathPattern") String pathPattern, @Param("afterPath") String afterPath,
+                                  Pageable pageable);
+
+    // Account export: a server-side cursor (MySQL streams rows with fetch size Integer.MIN_VALUE), read inside a read-only transaction
+    @QueryHints({@QueryHint(name = "org.hibernate.fetchSize", value = "-2147483648"),
+                 @QueryHint(name = "org.hibernate.readOnly", value = "true")})
+    @Query("SELECT e.id AS id, e.date AS date, e.name AS name, e.description AS description, e.amount AS amount, " +
+           "c.name AS category, e.paymentMethod AS paymentMethod, e.tags AS tags, e.source AS source, " +
+           "e.receiptPath AS receiptPath FROM Expense e LEFT JOIN e.category c WHERE e.user.id = :userId ORDER BY e.date, e.id")
+    Stream<ExpenseExportRow> streamExportRows(@Param("userId") Long userId);
+
+    // Keyset-paged distinct image paths of one user across expenses and receipt records, for the account export
+    @Query(value = "(SELECT receipt_path AS path FROM expenses WHERE receipt_path LIKE :pathPattern AND receipt_path > :afterPath " +
+                   "AND user_id = :userId ORDER BY receipt_path LIMIT :limit) " +
+                   "UNION (SELECT image_url FROM receipts WHERE image_url LIKE :pathPattern AND image_url > :afterPath " +
+                   "AND user_id = :userId ORDER BY image_url LIMIT :limit) ORDER BY path LIMIT :limit", nativeQuery = true)
+    List<String> findArchivePaths(@Param("userId") Long userId, @Param("pathPattern") String pathPattern,
+                                  @Param("afterPath") String afterPath, @Param("limit") int limit);
+
+    interface ExpenseExportRow {
+        Long getId();
+        LocalDate getDate();
+        String getName();
+        String getDescription();
+        Double getAmount();
+        String getCategory();
+        String getPaymentMethod();
+        String getTags();
+        String getSource();
+        String getReceiptPath();
+    }
+
+    interface CategoryTrainingRow {
+        Long getId();
+        String getName();
+        String getDescription();
+        Long getCategoryId();
+    }
 }
@@ -0,0 +1,15 @@
+package com.example.user.userservice.repository;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.example.user.userservice.entity.MerchantCategoryMapping;
+
+@Repository
+public interface MerchantCategoryMappingRepository extends JpaRepository<MerchantCategoryMapping, Long> {
+    List<MerchantCategoryMapping> findByUserId(Long userId);
+    Optional<MerchantCategoryMapping> findByUserIdAndMerchantKey(Long userId, String merchantKey);
+}
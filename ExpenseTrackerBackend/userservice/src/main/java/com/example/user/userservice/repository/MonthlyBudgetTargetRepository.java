@@ -1,6 +1,7 @@
 package com.example.user.userservice.repository;
 
 import java.time.YearMonth;
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -13,4 +14,5 @@ import com.example.user.userservice.entity.User;
 public interface MonthlyBudgetTargetRepository extends JpaRepository<MonthlyBudgetTarget, Long> {
     Optional<MonthlyBudgetTarget> findByUserAndMonthAndIsActiveTrue(User user, String month);
     Optional<MonthlyBudgetTarget> findByUserAndMonth(User user, String month);
+    List<MonthlyBudgetTarget> findByUserOrderByMonth(User user);
 }
@@ -0,0 +1,88 @@
+package com.example.user.userservice.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.user.userservice.entity.Receipt;
+
+@Repository
+public interface ReceiptRepository extends JpaRepository<Receipt, Long> {
+    List<Receipt> findByUserIdOrderByCreatedAtDesc(Long userId);
+    Optional<Receipt> findByIdAndUserId(Long id, Long userId);
+
+    // Edits hold the row so a worker finishing meanwhile applies its result after them, not under them
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM Receipt r WHERE r.id = :id AND r.userId = :userId")
+    Optional<Receipt> findForUpdate(@Param("id") Long id, @Param("userId") Long userId);
+
+    // Due PENDING rows, locked for the surrounding transaction; rows another instance holds are skipped, not waited on
+    @Query(value = "SELECT id FROM receipts WHERE status = 'PENDING' AND next_attempt_at <= :now " +
+                   "ORDER BY next_attempt_at, id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> lockDueIds(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Modifying
+    @Query("UPDATE Receipt r SET r.status = 'PROCESSING', r.claimedAt = :now, r.attempts = r.attempts + 1, " +
+           "r.updatedAt = :now WHERE r.id IN :ids AND r.status = 'PENDING'")
+    int markProcessing(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    // The finishing updates only apply while the worker's own claim stands: a requeued row is not overwritten by a late worker
+    @Modifying
+    @Query("UPDATE Receipt r SET r.status = 'EXTRACTED', r.extractedData = :extractedData, r.lastError = NULL, " +
+           "r.claimedAt = NULL, r.updatedAt = CURRENT_TIMESTAMP WHERE r.id = :id AND r.status = 'PROCESSING' " +
+           "AND r.claimedAt = :claimedAt")
+    int markExtracted(@Param("id") Long id, @Param("claimedAt") LocalDateTime claimedAt,
+                      @Param("extractedData") String extractedData);
+
+    @Modifying
+    @Query("UPDATE Receipt r SET r.status = :status, r.lastError = :error, r.nextAttemptAt = :nextAttemptAt, " +
+           "r.claimedAt = NULL, r.updatedAt = CURRENT_TIMESTAMP WHERE r.id = :id AND r.status = 'PROCESSING' " +
+           "AND r.claimedAt = :claimedAt")
+    int markAttemptFailed(@Param("id") Long id, @Param("claimedAt") LocalDateTime claimedAt,
+                          @Param("status") String status, @Param("error") String error,
+                          @Param("nextAttemptAt") LocalDateTime nextAttemptAt);
+
+    // Claims of a worker that died with its instance
+    @Modifying
+    @Query("UPDATE Receipt r SET r.status = 'PENDING', r.claimedAt = NULL, r.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE r.status = 'PROCESSING' AND r.claimedAt < :cutoff")
+    int requeueStale(@Param("cutoff") LocalDateTime cutoff);
+
+    // Keyset-paged image paths under one storage directory for the orphan sweeper, like ExpenseRepository.findReceiptPaths
+    @Query("SELECT r.imageUrl FROM Receipt r WHERE r.imageUrl LIKE :pathPattern AND r.imageUrl > :afterPath " +
+           "ORDER BY r.imageUrl")
+    List<String> findImagePaths(@Param("pathPattern") String pathPattern, @Param("afterPath") String afterPath,
+                                Pageable pageable);
+
+    // Account export cursor, like ExpenseRepository.streamExportRows
+    @QueryHints({@QueryHint(name = "org.hibernate.fetchSize", value = "-2147483648"),
+                 @QueryHint(name = "org.hibernate.readOnly", value = "true")})
+    @Query("SELECT r.id AS id, r.fileName AS fileName, r.imageUrl AS imageUrl, r.status AS status, " +
+           "r.extractedData AS extractedData, r.expenseId AS expenseId, r.createdAt AS createdAt " +
+           "FROM Receipt r WHERE r.userId = :userId ORDER BY r.id")
+    Stream<ReceiptExportRow> streamExportRows(@Param("userId") Long userId);
+
+    interface ReceiptExportRow {
+        Long getId();
+        String getFileName();
+        String getImageUrl();
+        String getStatus();
+        String getExtractedData();
+        Long getExpenseId();
+        LocalDateTime getCreatedAt();
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.user.userservice.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.user.userservice.entity.StoredFile;
+
+@Repository
+public interface StoredFileRepository extends JpaRepository<StoredFile, Long> {
+    Optional<StoredFile> findByPath(String path);
+    boolean existsByPath(String path);
+
+    /**
+     * Atomic upsert: concurrent uploads of the same bytes both count without a unique-key race.
+     * MySQL only ({@code ON DUPLICATE KEY UPDATE}); another database needs its own upsert here
+     * ({@code ON CONFLICT (path) DO UPDATE} on PostgreSQL, {@code MERGE} elsewhere).
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO stored_files (path, sha256, size_bytes, ref_count, created_at, updated_at) " +
+                   "VALUES (:path, :sha256, :sizeBytes, 1, NOW(6), NOW(6)) " +
+                   "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1, updated_at = NOW(6)", nativeQuery = true)
+    int addReference(@Param("path") String path, @Param("sha256") String sha256, @Param("sizeBytes") long sizeBytes);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE StoredFile f SET f.refCount = f.refCount - 1, f.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE f.path = :path AND f.refCount > 0")
+    int releaseReference(@Param("path") String path);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM StoredFile f WHERE f.path = :path AND f.refCount <= 0")
+    int deleteIfUnreferenced(@Param("path") String path);
+
+    // Orphan sweeper: drops a leaked count, but waits on and then spares a row an in-flight upload just touched
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM StoredFile f WHERE f.path = :path AND f.updatedAt < :cutoff")
+    int deleteIfUntouchedSince(@Param("path") String path, @Param("cutoff") LocalDateTime cutoff);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE StoredFile f SET f.perceptualHash = :hash, f.phashBand0 = :band0, f.phashBand1 = :band1, " +
+           "f.phashBand2 = :band2, f.phashBand3 = :band3 WHERE f.path = :path")
+    int setPerceptualHash(@Param("path") String path, @Param("hash") long hash, @Param("band0") int band0,
+                          @Param("band1") int band1, @Param("band2") int band2, @Param("band3") int band3);
+
+    // Multi-index candidates: files under one user directory sharing a near band; the caller checks the full distance
+    @Query("SELECT f.path AS path, f.perceptualHash AS perceptualHash FROM StoredFile f " +
+           "WHERE f.path LIKE :pathPattern AND f.path <> :excludedPath AND (f.phashBand0 IN :band0 " +
+           "OR f.phashBand1 IN :band1 OR f.phashBand2 IN :band2 OR f.phashBand3 IN :band3)")
+    List<PerceptualHashRow> findHashCandidates(@Param("pathPattern") String pathPattern,
+                                               @Param("excludedPath") String excludedPath,
+                                               @Param("band0") Collection<Integer> band0,
+                                               @Param("band1") Collection<Integer> band1,
+                                               @Param("band2") Collection<Integer> band2,
+                                               @Param("band3") Collection<Integer> band3);
+
+    interface PerceptualHashRow {
+        String getPath();
+        Long getPerceptualHash();
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.user.userservice.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.util.Base64;
+
+/**
+ * Signs receipt URLs so image loads are authorized by the URL alone: an HMAC-SHA256 over the
+ * stored path and an expiry, checked without a JWT or a user lookup.
+ * <p>
+ * Expiries are rounded up to whole {@code ttl} windows, so every URL for a file is the same
+ * for a whole window and browsers and intermediaries can cache it. A URL stays valid for
+ * between one and two windows.
+ * <p>
+ * The key is its own property, {@code app.file.url-signing-key}, so it can be rotated without
+ * logging everyone out. Without one the signer is disabled and no URL verifies.
+ */
+@Component
+public class ReceiptUrlSigner {
+
+    public static final String SIGNED_PATH = "/api/user/files/signed/";
+
+    private final SecretKeySpec key;
+    private final long ttlSeconds;
+    private final Clock clock;
+    // Mac instances are not thread-safe; one keyed instance per thread saves the init on every URL
+    private final ThreadLocal<Mac> macs;
+
+    public ReceiptUrlSigner(@Value("${app.file.url-signing-key:}") String secret,
+                            @Value("${app.file.signed-url-ttl-seconds:86400}") long ttlSeconds) {
+        this(secret, ttlSeconds, Clock.systemUTC());
+    }
+
+    ReceiptUrlSigner(String secret, long ttlSeconds, Clock clock) {
+        this.key = secret == null || secret.isBlank() ? null
+                : new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        this.ttlSeconds = Math.max(60, ttlSeconds);
+        this.clock = clock;
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 not available", e);
+            }
+        });
+    }
+
+    public boolean isEnabled() {
+        return key != null;
+    }
+
+    /**
+     * {@code /api/user/files/signed/<path>?expires=<epoch seconds>&signature=<base64url>}
+     */
+    public String signedUrl(String path) {
+        if (key == null) {
+            throw new IllegalStateException("Signed receipt URLs need app.file.url-signing-key");
+        }
+        long now = clock.instant().getEpochSecond();
+        long expires = (now / ttlSeconds + 2) * ttlSeconds;
+        return SIGNED_PATH + path + "?expires=" + expires
+                + "&signature=" + signature(path, expires);
+    }
+
+    public boolean verify(String path, long expires, String signature) {
+        if (key == null || signature == null || expires < clock.instant().getEpochSecond()) {
+            return false;
+        }
+        return MessageDigest.isEqual(signature(path, expires).getBytes(StandardCharsets.US_ASCII),
+                signature.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Seconds until {@code expires}, never negative.
+     */
+    public long secondsUntil(long expires) {
+        return Math.max(0, expires - clock.instant().getEpochSecond());
+    }
+
+    private String signature(String path, long expires) {
+        Mac mac = macs.get();
+        byte[] digest = mac.doFinal((path + "\n" + expires).getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    }
+}
@@ -0,0 +1,376 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.entity.Budget;
+import com.example.user.userservice.entity.Goal;
+import com.example.user.userservice.entity.MonthlyBudgetTarget;
+import com.example.user.userservice.entity.User;
+import com.example.user.userservice.exception.ExpenseException;
+import com.example.user.userservice.repository.BudgetRepository;
+import com.example.user.userservice.repository.ExpenseRepository;
+import com.example.user.userservice.repository.ExpenseRepository.ExpenseExportRow;
+import com.example.user.userservice.repository.GoalRepository;
+import com.example.user.userservice.repository.MonthlyBudgetTargetRepository;
+import com.example.user.userservice.repository.ReceiptRepository;
+import com.example.user.userservice.repository.ReceiptRepository.ReceiptExportRow;
+import com.example.user.userservice.repository.UserRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a user's whole account as a ZIP straight to the response: {@code expenses.csv},
+ * {@code receipts.json}, {@code budgets.json}, {@code monthly-budget-targets.json},
+ * {@code goals.json}, every receipt image under {@code receipts/}, and a {@code manifest.json}.
+ * <p>
+ * Expenses and receipt records come from server-side cursors, one row at a time. Images are
+ * listed in keyset pages, so no cursor stays open while a slow client receives megabytes of
+ * images, and each is copied from storage in buffer-sized pieces. Heap use is the same for a
+ * ten-row account and a multi-gigabyte one, nothing goes through temp files, and the first bytes
+ * leave before the first query is done. Concurrent exports are capped by {@code app.export.max-concurrent}.
+ */
+@Service
+@Slf4j
+public class AccountExportService {
+
+    private static final String RECEIPTS_ROOT = "receipts/";
+    private static final int MAX_LISTED_MISSING = 100;
+
+    private final UserRepository userRepository;
+    private final ExpenseRepository expenseRepository;
+    private final ReceiptRepository receiptRepository;
+    private final BudgetRepository budgetRepository;
+    private final MonthlyBudgetTargetRepository monthlyBudgetTargetRepository;
+    private final GoalRepository goalRepository;
+    private final ReceiptStorageBackend storageBackend;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Semaphore slots;
+
+    @Value("${app.export.page-size:500}")
+    private int pageSize;
+
+    public AccountExportService(UserRepository userRepository,
+                                ExpenseRepository expenseRepository,
+                                ReceiptRepository receiptRepository,
+                                BudgetRepository budgetRepository,
+                                MonthlyBudgetTargetRepository monthlyBudgetTargetRepository,
+                                GoalRepository goalRepository,
+                                ReceiptStorageBackend storageBackend,
+                                ObjectMapper objectMapper,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${app.export.max-concurrent:2}") int maxConcurrent) {
+        this.userRepository = userRepository;
+        this.expenseRepository = expenseRepository;
+        this.receiptRepository = receiptRepository;
+        this.budgetRepository = budgetRepository;
+        this.monthlyBudgetTargetRepository = monthlyBudgetTargetRepository;
+        this.goalRepository = goalRepository;
+        this.storageBackend = storageBackend;
+        this.objectMapper = objectMapper;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.slots = new Semaphore(Math.max(1, maxConcurrent));
+    }
+
+    /**
+     * Takes one export slot, or returns false when {@code max-concurrent} exports are running.
+     * A taken slot must be given back with {@link #release()}.
+     */
+    public boolean tryAcquire(Long userId) {
+        if (!userRepository.existsById(userId)) {
+            throw new ExpenseException("User not found with ID: " + userId);
+        }
+        return slots.tryAcquire();
+    }
+
+    public void release() {
+        slots.release();
+    }
+
+    public void writeArchive(Long userId, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        ZipOutputStream zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+        zip.setLevel(Deflater.BEST_SPEED);
+        // The generator and writers must never close the ZIP underneath the next entry
+        OutputStream entry = new FilterOutputStream(zip) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                zip.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+
+        try {
+            zip.putNextEntry(new ZipEntry("expenses.csv"));
+            long expenses = writeExpenses(userId, entry);
+            zip.closeEntry();
+
+            zip.putNextEntry(new ZipEntry("receipts.json"));
+            long receipts = writeReceipts(userId, entry);
+            zip.closeEntry();
+
+            User user = userRepository.getReferenceById(userId);
+            zip.putNextEntry(new ZipEntry("budgets.json"));
+            writeBudgets(user, entry);
+            zip.closeEntry();
+
+            zip.putNextEntry(new ZipEntry("monthly-budget-targets.json"));
+            writeMonthlyTargets(user, entry);
+            zip.closeEntry();
+
+            zip.putNextEntry(new ZipEntry("goals.json"));
+            writeGoals(user, entry);
+            zip.closeEntry();
+
+            ImageCounts images = writeImages(userId, zip);
+
+            zip.setLevel(Deflater.BEST_SPEED);
+            zip.putNextEntry(new ZipEntry("manifest.json"));
+            try (JsonGenerator json = objectMapper.getFactory().createGenerator(entry)) {
+                json.writeStartObject();
+                json.writeNumberField("userId", userId);
+                json.writeStringField("exportedAt", LocalDateTime.now().toString());
+                json.writeNumberField("expenses", expenses);
+                json.writeNumberField("receipts", receipts);
+                json.writeNumberField("images", images.copied());
+                json.writeNumberField("imageBytes", images.bytes());
+                json.writeArrayFieldStart("missingImages");
+                for (String missing : images.missing()) {
+                    json.writeString(missing);
+                }
+                json.writeEndArray();
+                json.writeEndObject();
+            }
+            zip.closeEntry();
+            zip.finish();
+            out.flush();
+            log.info("Exported account {}: {} expenses, {} receipts, {} images ({} bytes) in {} ms", userId,
+                    expenses, receipts, images.copied(), images.bytes(), (System.nanoTime() - start) / 1_000_000);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private long writeExpenses(Long userId, OutputStream entry) {
+        return readOnlyTransaction.execute(status -> {
+            Writer csv = new BufferedWriter(new OutputStreamWriter(entry, StandardCharsets.UTF_8));
+            long rows = 0;
+            try (Stream<ExpenseExportRow> stream = expenseRepository.streamExportRows(userId)) {
+                csv.write("id,date,name,description,amount,category,payment_method,tags,source,receipt_file\r\n");
+                for (Iterator<ExpenseExportRow> it = stream.iterator(); it.hasNext(); rows++) {
+                    ExpenseExportRow row = it.next();
+                    csv.write(String.join(",",
+                            String.valueOf(row.getId()),
+                            row.getDate() == null ? "" : row.getDate().toString(),
+                            csvText(row.getName()),
+                            csvText(row.getDescription()),
+                            row.getAmount() == null ? "" : row.getAmount().toString(),
+                            csvText(row.getCategory()),
+                            csvText(row.getPaymentMethod()),
+                            csvText(row.getTags()),
+                            csvText(row.getSource()),
+                            csvText(archivePath(userId, row.getReceiptPath()))));
+                    csv.write("\r\n");
+                }
+                csv.flush();
+                return rows;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private long writeReceipts(Long userId, OutputStream entry) {
+        return readOnlyTransaction.execute(status -> {
+            long rows = 0;
+            try (Stream<ReceiptExportRow> stream = receiptRepository.streamExportRows(userId);
+                 JsonGenerator json = objectMapper.getFactory().createGenerator(entry)) {
+                json.writeStartArray();
+                for (Iterator<ReceiptExportRow> it = stream.iterator(); it.hasNext(); rows++) {
+                    ReceiptExportRow row = it.next();
+                    json.writeStartObject();
+                    json.writeNumberField("id", row.getId());
+                    json.writeStringField("fileName", row.getFileName());
+                    json.writeStringField("imageFile", archivePath(userId, row.getImageUrl()));
+                    json.writeStringField("status", row.getStatus());
+                    if (row.getExtractedData() != null && !row.getExtractedData().isBlank()) {
+                        // Validated JSON on the way in: embedded as is, not re-parsed
+                        json.writeFieldName("extractedData");
+                        json.writeRawValue(row.getExtractedData());
+                    }
+                    if (row.getExpenseId() != null) {
+                        json.writeNumberField("expenseId", row.getExpenseId());
+                    }
+                    json.writeStringField("createdAt", String.valueOf(row.getCreatedAt()));
+                    json.writeEndObject();
+                }
+                json.writeEndArray();
+                return rows;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // Budgets, targets and goals are a handful of rows per user: plain lists
+    private void writeBudgets(User user, OutputStream entry) {
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (JsonGenerator json = objectMapper.getFactory().createGenerator(entry)) {
+                json.writeStartArray();
+                for (Budget budget : budgetRepository.findByUser(user)) {
+                    json.writeStartObject();
+                    json.writeNumberField("id", budget.getId());
+                    json.writeStringField("category", budget.getCategory() == null ? null : budget.getCategory().getName());
+                    json.writeStringField("month", budget.getMonth());
+                    json.writeObjectField("limitAmount", budget.getLimitAmount());
+                    json.writeEndObject();
+                }
+                json.writeEndArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void writeMonthlyTargets(User user, OutputStream entry) {
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (JsonGenerator json = objectMapper.getFactory().createGenerator(entry)) {
+                json.writeStartArray();
+                for (MonthlyBudgetTarget target : monthlyBudgetTargetRepository.findByUserOrderByMonth(user)) {
+                    json.writeStartObject();
+                    json.writeNumberField("id", target.getId());
+                    json.writeStringField("month", target.getMonth());
+                    json.writeObjectField("targetAmount", target.getTargetAmount());
+                    json.writeObjectField("active", target.getIsActive());
+                    json.writeEndObject();
+                }
+                json.writeEndArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void writeGoals(User user, OutputStream entry) {
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (JsonGenerator json = objectMapper.getFactory().createGenerator(entry)) {
+                json.writeStartArray();
+                for (Goal goal : goalRepository.findByUserOrderByCreatedAtDesc(user)) {
+                    json.writeStartObject();
+                    json.writeNumberField("id", goal.getId());
+                    json.writeStringField("title", goal.getTitle());
+                    json.writeStringField("description", goal.getDescription());
+                    json.writeObjectField("targetAmount", goal.getTargetAmount());
+                    json.writeObjectField("currentAmount", goal.getCurrentAmount());
+                    json.writeStringField("type", goal.getType() == null ? null : goal.getType().name());
+                    json.writeStringField("status", goal.getStatus() == null ? null : goal.getStatus().name());
+                    json.writeStringField("targetDate", goal.getTargetDate() == null ? null : goal.getTargetDate().toString());
+                    json.writeStringField("createdAt", String.valueOf(goal.getCreatedAt()));
+                    json.writeEndObject();
+                }
+                json.writeEndArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private record ImageCounts(long copied, long bytes, List<String> missing) {
+    }
+
+    /**
+     * Copies every image the user's expenses or receipts reference, each once. Images are already
+     * compressed, so they are stored without deflating.
+     */
+    private ImageCounts writeImages(Long userId, ZipOutputStream zip) throws IOException {
+        zip.setLevel(Deflater.NO_COMPRESSION);
+        String directory = RECEIPTS_ROOT + userId + "/";
+        long copied = 0;
+        long bytes = 0;
+        List<String> missing = new ArrayList<>();
+        String after = "";
+        while (true) {
+            List<String> page = expenseRepository.findArchivePaths(userId, directory + "%", after, pageSize);
+            for (String path : page) {
+                InputStream in;
+                try {
+                    in = storageBackend.get(path);
+                } catch (IOException e) {
+                    log.warn("Receipt image {} missing from export of account {}: {}", path, userId, e.getMessage());
+                    if (missing.size() < MAX_LISTED_MISSING) {
+                        missing.add(path);
+                    }
+                    continue;
+                }
+                try (in) {
+                    zip.putNextEntry(new ZipEntry(archivePath(userId, path)));
+                    bytes += in.transferTo(zip);
+                    zip.closeEntry();
+                    copied++;
+                }
+            }
+            if (page.size() < pageSize) {
+                return new ImageCounts(copied, bytes, missing);
+            }
+            after = page.get(page.size() - 1);
+        }
+    }
+
+    /**
+     * Name of a stored image inside the archive: {@code receipts/ab/<sha256>.jpg}, without the user directory.
+     */
+    static String archivePath(Long userId, String storedPath) {
+        if (storedPath == null || storedPath.isBlank()) {
+            return null;
+        }
+        String directory = RECEIPTS_ROOT + userId + "/";
+        if (storedPath.startsWith(directory)) {
+            return RECEIPTS_ROOT + storedPath.substring(directory.length());
+        }
+        return RECEIPTS_ROOT + storedPath.substring(storedPath.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * RFC 4180 field. Text that a spreadsheet would run as a formula is prefixed with a quote.
+     */
+    static String csvText(String value) {
+        if (value == null || value.isEmpty()) {
+            return "";
+        }
+        char first = value.charAt(0);
+        if (first == '=' || first == '+' || first == '-' || first == '@' || first == '\t' || first == '\r') {
+            value = "'" + value;
+        }
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
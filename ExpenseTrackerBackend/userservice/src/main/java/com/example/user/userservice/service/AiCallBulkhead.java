@@ -0,0 +1,167 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.exception.AiCapacityException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Per-provider concurrency limit with a bounded wait queue for outbound AI calls.
+ * Keeps a slow LLM endpoint from tying up every request thread of the service.
+ */
+@Component
+@Slf4j
+public class AiCallBulkhead {
+
+    public static final String GEMINI = "gemini";
+    public static final String HUGGING_FACE = "huggingface";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Compartment> compartments = new ConcurrentHashMap<>();
+
+    @Value("${ai.bulkhead.max-concurrent:4}")
+    private int maxConcurrent;
+
+    @Value("${ai.bulkhead.max-queued:8}")
+    private int maxQueued;
+
+    @Value("${ai.bulkhead.max-wait-ms:500}")
+    private long maxWaitMs;
+
+    public AiCallBulkhead(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> T execute(String provider, Supplier<T> call) {
+        Compartment compartment = compartment(provider);
+        compartment.acquire();
+        try {
+            return call.get();
+        } finally {
+            compartment.release();
+        }
+    }
+
+    /**
+     * Non-blocking acquire for calls whose lifetime outlives the calling thread (e.g. streams).
+     * The caller must invoke {@link #release(String)} exactly once when the call finishes.
+     */
+    public void tryAcquire(String provider) {
+        compartment(provider).tryAcquireNow();
+    }
+
+    public void release(String provider) {
+        compartment(provider).release();
+    }
+
+    /**
+     * True when nobody waits for a permit and every compartment is at most half busy.
+     * Background jobs check this so they only use capacity live requests leave idle.
+     */
+    public boolean hasHeadroom() {
+        for (Compartment compartment : compartments.values()) {
+            if (compartment.queued.get() > 0 || compartment.inFlight.get() * 2 > maxConcurrent) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Map<String, Map<String, Number>> snapshot() {
+        Map<String, Map<String, Number>> snapshot = new LinkedHashMap<>();
+        compartments.forEach((provider, compartment) -> {
+            Map<String, Number> stats = new LinkedHashMap<>();
+            stats.put("maxConcurrent", maxConcurrent);
+            stats.put("maxQueued", maxQueued);
+            stats.put("inFlight", compartment.inFlight.get());
+            stats.put("queued", compartment.queued.get());
+            stats.put("rejected", (long) compartment.rejected.count());
+            snapshot.put(provider, stats);
+        });
+        return snapshot;
+    }
+
+    private Compartment compartment(String provider) {
+        return compartments.computeIfAbsent(provider, Compartment::new);
+    }
+
+    private final class Compartment {
+
+        private final String provider;
+        private final Semaphore permits;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final Counter rejected;
+
+        private Compartment(String provider) {
+            this.provider = provider;
+            this.permits = new Semaphore(maxConcurrent, true);
+            Gauge.builder("ai.bulkhead.in_flight", inFlight, AtomicInteger::get)
+                    .tag("provider", provider)
+                    .register(meterRegistry);
+            Gauge.builder("ai.bulkhead.queued", queued, AtomicInteger::get)
+                    .tag("provider", provider)
+                    .register(meterRegistry);
+            this.rejected = Counter.builder("ai.bulkhead.rejected")
+                    .tag("provider", provider)
+                    .register(meterRegistry);
+        }
+
+        private void acquire() {
+            if (permits.tryAcquire()) {
+                inFlight.incrementAndGet();
+                return;
+            }
+
+            // Only a bounded number of callers may wait for a permit; the rest fail fast
+            if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                throw reject("wait queue is full");
+            }
+
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            } finally {
+                queued.decrementAndGet();
+            }
+
+            if (!acquired) {
+                throw reject("timed out waiting for a permit");
+            }
+            inFlight.incrementAndGet();
+        }
+
+        private void tryAcquireNow() {
+            if (!permits.tryAcquire()) {
+                throw reject("no permit available");
+            }
+            inFlight.incrementAndGet();
+        }
+
+        private void release() {
+            inFlight.decrementAndGet();
+            permits.release();
+        }
+
+        private AiCapacityException reject(String reason) {
+            rejected.increment();
+            log.warn("Rejected {} call: {} (inFlight={}, queued={})", provider, reason, inFlight.get(), queued.get());
+            return new AiCapacityException(provider, "AI provider '" + provider + "' is busy, please retry shortly");
+        }
+    }
+}
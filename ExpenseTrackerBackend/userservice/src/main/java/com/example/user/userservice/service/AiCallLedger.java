@@ -0,0 +1,213 @@
+package com.example.user.userservice.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records every AI provider call and regex fallback. Requests only append to a fixed-size
+ * in-memory ring; a scheduled flush writes the entries to {@code ai_call_ledger} in JDBC batches.
+ * When the ring is full the oldest unflushed entry is overwritten and counted as dropped.
+ */
+@Component
+@Slf4j
+public class AiCallLedger {
+
+    public static final String REGEX = "regex";
+
+    private static final String INSERT_SQL = "INSERT INTO ai_call_ledger (created_at, purpose, provider, model, "
+            + "prompt_chars, response_chars, prompt_tokens, completion_tokens, latency_ms, outcome, fallback_used) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String COUNTS_SQL = "SELECT DATE(created_at) AS day, provider, outcome, COUNT(*) AS calls, "
+            + "COALESCE(SUM(prompt_tokens), 0) AS prompt_tokens, COALESCE(SUM(completion_tokens), 0) AS completion_tokens "
+            + "FROM ai_call_ledger WHERE created_at >= ? GROUP BY DATE(created_at), provider, outcome";
+
+    // Only the rows at the p50/p95/p99 ranks of each day and provider leave the database
+    private static final String PERCENTILES_SQL = "SELECT day, provider, latency_ms, "
+            + "rn = CEIL(0.50 * n) AS is_p50, rn = CEIL(0.95 * n) AS is_p95, rn = CEIL(0.99 * n) AS is_p99 "
+            + "FROM (SELECT DATE(created_at) AS day, provider, latency_ms, "
+            + "ROW_NUMBER() OVER (PARTITION BY DATE(created_at), provider ORDER BY latency_ms) AS rn, "
+            + "COUNT(*) OVER (PARTITION BY DATE(created_at), provider) AS n "
+            + "FROM ai_call_ledger WHERE created_at >= ? AND outcome = 'SUCCESS') ranked "
+            + "WHERE rn IN (CEIL(0.50 * n), CEIL(0.95 * n), CEIL(0.99 * n))";
+
+    static final int MAX_STATS_DAYS = 90;
+
+    public enum Outcome { SUCCESS, PARSE_ERROR, PROVIDER_ERROR, REJECTED, FALLBACK, CANCELLED }
+
+    public record Entry(LocalDateTime createdAt, String purpose, String provider, String model,
+                        int promptChars, int responseChars, Integer promptTokens, Integer completionTokens,
+                        long latencyMs, Outcome outcome) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final Entry[] ring;
+    private int head;
+    private int size;
+    private long dropped;
+
+    public AiCallLedger(JdbcTemplate jdbcTemplate,
+                        @Value("${ai.ledger.capacity:4096}") int capacity,
+                        @Value("${ai.ledger.batch-size:200}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+        this.ring = new Entry[capacity];
+    }
+
+    public void record(Entry entry) {
+        synchronized (ring) {
+            if (size == ring.length) {
+                // Full: the oldest entry makes room rather than blocking the request
+                head = (head + 1) % ring.length;
+                size--;
+                dropped++;
+            }
+            ring[(head + size) % ring.length] = entry;
+            size++;
+        }
+    }
+
+    public void recordFallback(String purpose, int promptChars) {
+        record(new Entry(LocalDateTime.now(), purpose, REGEX, null, promptChars, 0, null, null, 0, Outcome.FALLBACK));
+    }
+
+    @Scheduled(fixedDelayString = "${ai.ledger.flush-interval-ms:2000}")
+    public void flush() {
+        List<Entry> pending = drain();
+        for (int from = 0; from < pending.size(); from += batchSize) {
+            List<Entry> batch = pending.subList(from, Math.min(from + batchSize, pending.size()));
+            try {
+                jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (statement, entry) -> {
+                    statement.setTimestamp(1, Timestamp.valueOf(entry.createdAt()));
+                    statement.setString(2, entry.purpose());
+                    statement.setString(3, entry.provider());
+                    statement.setString(4, entry.model());
+                    statement.setInt(5, entry.promptChars());
+                    statement.setInt(6, entry.responseChars());
+                    statement.setObject(7, entry.promptTokens(), Types.INTEGER);
+                    statement.setObject(8, entry.completionTokens(), Types.INTEGER);
+                    statement.setLong(9, entry.latencyMs());
+                    statement.setString(10, entry.outcome().name());
+                    statement.setBoolean(11, entry.outcome() == Outcome.FALLBACK);
+                });
+            } catch (RuntimeException e) {
+                // The ledger is diagnostics; losing a batch must never affect callers
+                log.warn("Failed to write {} AI ledger entries: {}", batch.size(), e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    /**
+     * Per day and provider: call counts by outcome, token totals and p50/p95/p99 latency of successful calls,
+     * for at most {@value #MAX_STATS_DAYS} days. Aggregated in the database; the JVM only sees one
+     * row per day, provider and outcome plus up to three latency rows per day and provider.
+     */
+    public List<Map<String, Object>> dailyStats(int days) {
+        int window = Math.min(Math.max(days, 1), MAX_STATS_DAYS);
+        Timestamp since = Timestamp.valueOf(LocalDate.now().minusDays(window - 1).atStartOfDay());
+        Map<String, DailyStats> stats = new TreeMap<>();
+        jdbcTemplate.query(COUNTS_SQL, rs -> {
+            String day = rs.getDate("day").toString();
+            String provider = rs.getString("provider");
+            DailyStats daily = stats.computeIfAbsent(day + "|" + provider, key -> new DailyStats(day, provider));
+            daily.outcomes.merge(rs.getString("outcome"), rs.getLong("calls"), Long::sum);
+            daily.promptTokens += rs.getLong("prompt_tokens");
+            daily.completionTokens += rs.getLong("completion_tokens");
+        }, since);
+        jdbcTemplate.query(PERCENTILES_SQL, rs -> {
+            DailyStats daily = stats.get(rs.getDate("day") + "|" + rs.getString("provider"));
+            if (daily == null) {
+                // Written between the two queries
+                return;
+            }
+            long latencyMs = rs.getLong("latency_ms");
+            if (rs.getBoolean("is_p50")) {
+                daily.p50 = latencyMs;
+            }
+            if (rs.getBoolean("is_p95")) {
+                daily.p95 = latencyMs;
+            }
+            if (rs.getBoolean("is_p99")) {
+                daily.p99 = latencyMs;
+            }
+        }, since);
+
+        List<Map<String, Object>> result = new ArrayList<>(stats.size());
+        stats.values().forEach(daily -> result.add(daily.toMap()));
+        return result;
+    }
+
+    public Map<String, Number> snapshot() {
+        synchronized (ring) {
+            Map<String, Number> snapshot = new LinkedHashMap<>();
+            snapshot.put("capacity", ring.length);
+            snapshot.put("pending", size);
+            snapshot.put("dropped", dropped);
+            return snapshot;
+        }
+    }
+
+    private List<Entry> drain() {
+        synchronized (ring) {
+            List<Entry> drained = new ArrayList<>(size);
+            while (size > 0) {
+                drained.add(ring[head]);
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                size--;
+            }
+            return drained;
+        }
+    }
+
+    private static final class DailyStats {
+
+        private final String day;
+        private final String provider;
+        private final Map<String, Long> outcomes = new TreeMap<>();
+        private long promptTokens;
+        private long completionTokens;
+        private Long p50;
+        private Long p95;
+        private Long p99;
+
+        private DailyStats(String day, String provider) {
+            this.day = day;
+            this.provider = provider;
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("day", day);
+            map.put("provider", provider);
+            map.put("calls", outcomes.values().stream().mapToLong(Long::longValue).sum());
+            map.put("outcomes", outcomes);
+            map.put("promptTokens", promptTokens);
+            map.put("completionTokens", completionTokens);
+            map.put("p50LatencyMs", p50);
+            map.put("p95LatencyMs", p95);
+            map.put("p99LatencyMs", p99);
+            return map;
+        }
+    }
+}
@@ -5,24 +5,29 @@ import com.example.user.userservice.dto.ParsedExpenseResponse;
 import com.example.user.userservice.entity.Category;
 import com.example.user.userservice.entity.Expense;
 import com.example.user.userservice.entity.User;
+import com.example.user.userservice.exception.AiCapacityException;
 import com.example.user.userservice.exception.ExpenseException;
 import com.example.user.userservice.repository.CategoryRepository;
 import com.example.user.userservice.repository.ExpenseRepository;
 import com.example.user.userservice.repository.UserRepository;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -31,14 +36,17 @@ import java.util.regex.Pattern;
 @Slf4j
 public class AiExpenseParserService {
 
-    private final WebClient hfWebClient;
+    private final AiProviderRouter aiProviderRouter;
     private final ExpenseRepository expenseRepository;
     private final CategoryRepository categoryRepository;
     private final UserRepository userRepository;
     private final ObjectMapper objectMapper;
+    private final MerchantCategoryMemory merchantCategoryMemory;
+    private final ExpenseCategoryClassifier expenseCategoryClassifier;
+    private final AiCallLedger aiCallLedger;
 
-    @Value("${hf.model}")
-    private String modelId;
+    private static final Pattern AMOUNT_PATTERN =
+            Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*(?:rs|inr|rupees)?", Pattern.CASE_INSENSITIVE);
 
     private static final String SYSTEM_PROMPT = """
             You are an expense parser. 
@@ -76,15 +84,24 @@ public class AiExpenseParserService {
             User user = userRepository.findById(userId)
                     .orElseThrow(() -> new ExpenseException("User not found with ID: " + userId));
 
-            // Try AI parsing first
+            // An unambiguous amount and date with a confident local category need no model call
+            Optional<ParsedExpenseResponse> local = createWithoutAi(request, user);
+            if (local.isPresent()) {
+                return local.get();
+            }
+
             ParsedFromAi parsed = parseWithAI(request);
             
             // Validate and normalize
             LocalDate date = ensureIsoDate(parsed.date(), request.getTimezone());
             double amount = ensurePositive(parsed.amount());
             
-            // Map category to existing categories
-            Category category = mapToKnownCategory(parsed.category());
+            // The user's own history, then the classifier, decide the category over the model's pick
+            Optional<CategoryOverride> override = categoryOverride(userId,
+                    learnableName(parsed.merchant(), request.getText()), request.getText());
+            Category category = override.map(CategoryOverride::category)
+                    .orElseGet(() -> mapToKnownCategory(parsed.category()));
+            String source = override.map(CategoryOverride::source).orElse("AI");
             
             // Create and save expense
             Expense expense = Expense.builder()
@@ -94,10 +111,14 @@ public class AiExpenseParserService {
                     .description(parsed.description())
                     .amount(amount)
                     .date(date)
-                    .source("AI")
+                    .source(source)
                     .build();
             
             Expense savedExpense = expenseRepository.save(expense);
+            if (override.isEmpty()) {
+                // Only the model's own categories teach the memory, never its guesses or the classifier's
+                merchantCategoryMemory.learn(userId, learnableName(parsed.merchant(), request.getText()), category.getId(), false);
+            }
             
             return ParsedExpenseResponse.builder()
                     .expenseId(savedExpense.getId())
@@ -109,10 +130,14 @@ public class AiExpenseParserService {
                     .date(savedExpense.getDate())
                     .description(savedExpense.getDescription())
                     .merchant(parsed.merchant())
-                    .confidence(Math.max(0, Math.min(1, parsed.confidence())))
-                    .source("AI")
+                    .confidence(override.map(CategoryOverride::confidence)
+                            .orElseGet(() -> Math.max(0, Math.min(1, parsed.confidence() == null ? 0 : parsed.confidence()))))
+                    .source(source)
                     .build();
                     
+        } catch (AiCapacityException e) {
+            log.warn("AI provider saturated, falling back to regex: {}", e.getMessage());
+            return fallbackToRegex(request, userId);
         } catch (WebClientResponseException e) {
             log.warn("AI parsing failed, falling back to regex: {}", e.getMessage());
             return fallbackToRegex(request, userId);
@@ -122,24 +147,143 @@ public class AiExpenseParserService {
         }
     }
 
+    /**
+     * Creates the expense from the text alone when its amount and date are unambiguous and the
+     * user's memory or the classifier is confident about the category; empty otherwise.
+     */
+    private Optional<ParsedExpenseResponse> createWithoutAi(ParseExpenseRequest request, User user) {
+        String text = request.getText();
+        ZoneId zone = ZoneId.of(Optional.ofNullable(request.getTimezone()).orElse("Asia/Kolkata"));
+        Optional<Double> amount = ExpenseTextExtractor.amount(text);
+        Optional<LocalDate> date = ExpenseTextExtractor.date(text, LocalDate.now(zone));
+        if (amount.isEmpty() || date.isEmpty()) {
+            return Optional.empty();
+        }
+        Optional<CategoryOverride> override = categoryOverride(user.getId(), text, text);
+        if (override.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Expense savedExpense = expenseRepository.save(Expense.builder()
+                .user(user)
+                .name(ExpenseTextExtractor.describe(text).orElseGet(() -> defaultNameFromText(text)))
+                .category(override.get().category())
+                .description(text)
+                .amount(amount.get())
+                .date(date.get())
+                .source(override.get().source())
+                .build());
+        log.debug("Parsed expense {} without the model ({})", savedExpense.getId(), override.get().source());
+
+        return Optional.of(ParsedExpenseResponse.builder()
+                .expenseId(savedExpense.getId())
+                .name(savedExpense.getName())
+                .category(savedExpense.getCategory().getName())
+                .subcategory(null)
+                .amount(savedExpense.getAmount())
+                .currency("INR")
+                .date(savedExpense.getDate())
+                .description(savedExpense.getDescription())
+                .merchant(null)
+                .confidence(override.get().confidence())
+                .source(override.get().source())
+                .build());
+    }
+
+    /**
+     * Suggests a category while the user is typing a manual expense: the user's own merchant
+     * history first, then the classifier. Never calls the LLM.
+     */
+    public Map<String, Object> suggestCategory(Long userId, String text) {
+        Map<String, Object> suggestion = new LinkedHashMap<>();
+        Optional<Long> remembered = merchantCategoryMemory.lookup(userId, text);
+        if (remembered.isPresent()) {
+            suggestion.put("categoryId", remembered.get());
+            suggestion.put("confidence", 0.9);
+            suggestion.put("source", "MEMORY");
+        } else {
+            expenseCategoryClassifier.suggest(text).ifPresent(prediction -> {
+                suggestion.put("categoryId", prediction.categoryId());
+                suggestion.put("confidence", prediction.confidence());
+                suggestion.put("source", "CLASSIFIER");
+            });
+        }
+        return suggestion;
+    }
+
+    /**
+     * Streams a parse preview without creating the expense. Each top-level field is sent as a
+     * "field" event as soon as the model has produced it, followed by a "parsed" event with the
+     * normalized result, whose category is the user's remembered or classified one when there is
+     * one, as {@link #parseAndCreateExpense} would save it. The upstream LLM stream is cancelled
+     * at the object's closing brace.
+     */
+    public Flux<ServerSentEvent<Object>> streamParsePreview(ParseExpenseRequest request, Long userId) {
+        return Flux.defer(() -> {
+            IncrementalJsonFieldParser parser = new IncrementalJsonFieldParser();
+            long start = System.nanoTime();
+
+            return aiProviderRouter.streamCompletion("text-parse-preview", SYSTEM_PROMPT, userPayload(request))
+                    .concatMap(chunk -> {
+                        List<ServerSentEvent<Object>> events = new ArrayList<>();
+                        for (Map.Entry<String, Object> field : parser.feed(chunk)) {
+                            Map<String, Object> data = new LinkedHashMap<>();
+                            data.put("field", field.getKey());
+                            data.put("value", field.getValue());
+                            data.put("elapsedMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                            events.add(ServerSentEvent.builder((Object) data).event("field").build());
+                        }
+                        if (!parser.isComplete()) {
+                            return Flux.fromIterable(events);
+                        }
+                        // The category lookups may hit the database, so off the stream's I/O thread
+                        return Flux.fromIterable(events).concatWith(Mono.fromCallable(() ->
+                                        ServerSentEvent.builder((Object) toPreview(parser.getFields(), request, userId))
+                                                .event("parsed")
+                                                .build())
+                                .subscribeOn(Schedulers.boundedElastic()));
+                    })
+                    // Cancels the upstream request as soon as the closing brace has been seen
+                    .takeUntil(event -> "parsed".equals(event.event()))
+                    .concatWith(Flux.defer(() -> parser.isComplete()
+                            ? Flux.empty()
+                            : Flux.just(errorEvent("AI stream ended before a complete expense was parsed"))))
+                    .doOnComplete(() -> log.debug("Streamed parse preview in {} ms",
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        }).onErrorResume(e -> {
+            log.warn("Streaming parse preview failed: {}", e.getMessage());
+            return Flux.just(errorEvent(e.getMessage()));
+        });
+    }
+
+    private ParsedExpenseResponse toPreview(Map<String, Object> fields, ParseExpenseRequest request, Long userId) {
+        ParsedFromAi parsed = objectMapper.convertValue(fields, ParsedFromAi.class);
+        Optional<CategoryOverride> override = categoryOverride(userId,
+                learnableName(parsed.merchant(), request.getText()), request.getText());
+        return ParsedExpenseResponse.builder()
+                .name(Optional.ofNullable(parsed.description()).orElseGet(() -> defaultNameFromText(request.getText())))
+                .category(override.map(categoryOverride -> categoryOverride.category().getName()).orElse(parsed.category()))
+                .subcategory(parsed.subcategory())
+                .amount(parsed.amount())
+                .currency(Optional.ofNullable(parsed.currency()).orElse("INR"))
+                .date(ensureIsoDate(parsed.date(), request.getTimezone()))
+                .description(parsed.description())
+                .merchant(parsed.merchant())
+                .confidence(override.map(CategoryOverride::confidence)
+                        .orElseGet(() -> parsed.confidence() == null ? 0 : Math.max(0, Math.min(1, parsed.confidence()))))
+                .source(override.map(CategoryOverride::source).orElse("AI_PREVIEW"))
+                .build();
+    }
+
+    private ServerSentEvent<Object> errorEvent(String message) {
+        return ServerSentEvent.builder((Object) Map.of("error", String.valueOf(message))).event("error").build();
+    }
+
     private ParsedFromAi parseWithAI(ParseExpenseRequest request) {
-        var body = Map.of(
-                "model", modelId,
-                "stream", false,
-                "messages", List.of(
-                        Map.of("role", "system", "content", SYSTEM_PROMPT),
-                        Map.of("role", "user", "content", userPayload(request))
-                )
-        );
-
-        String content = hfWebClient.post()
-                .uri("/v1/chat/completions")
-                .bodyValue(body)
-                .retrieve()
-                .bodyToMono(JsonNode.class)
-                .map(json -> json.path("choices").get(0).path("message").path("content").asText())
-                .block();
+        return aiProviderRouter.complete("text-parse", SYSTEM_PROMPT, userPayload(request), this::toParsedFromAi);
+    }
 
+    private ParsedFromAi toParsedFromAi(String content) {
         // Defensive: extract the first JSON object from the content
         String jsonOnly = extractJson(content);
         
@@ -151,13 +295,28 @@ public class AiExpenseParserService {
         }
     }
 
+    /**
+     * Category from the user's memory of the merchant, else from a confident classifier prediction on the text.
+     */
+    private Optional<CategoryOverride> categoryOverride(Long userId, String merchant, String text) {
+        Optional<CategoryOverride> remembered = merchantCategoryMemory.lookup(userId, merchant)
+                .flatMap(categoryRepository::findById)
+                .map(category -> new CategoryOverride(category, "MEMORY", 0.9));
+        if (remembered.isPresent()) {
+            return remembered;
+        }
+        return expenseCategoryClassifier.predict(text)
+                .flatMap(prediction -> categoryRepository.findById(prediction.categoryId())
+                        .map(category -> new CategoryOverride(category, "CLASSIFIER", prediction.confidence())));
+    }
+
     private ParsedExpenseResponse fallbackToRegex(ParseExpenseRequest request, Long userId) {
+        aiCallLedger.recordFallback("text-parse", request.getText() == null ? 0 : request.getText().length());
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new ExpenseException("User not found with ID: " + userId));
 
         // Simple regex fallback
-        Pattern amountPattern = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*(?:rs|inr|rupees)?", Pattern.CASE_INSENSITIVE);
-        Matcher matcher = amountPattern.matcher(request.getText());
+        Matcher matcher = AMOUNT_PATTERN.matcher(request.getText());
         
         if (!matcher.find()) {
             throw new ExpenseException("Could not extract amount from text");
@@ -166,8 +325,11 @@ public class AiExpenseParserService {
         double amount = Double.parseDouble(matcher.group(1));
         LocalDate date = LocalDate.now(ZoneId.of(request.getTimezone()));
         
-        Category defaultCategory = categoryRepository.findByName("Others")
-                .orElseThrow(() -> new RuntimeException("Default category 'Others' not found"));
+        // A remembered or classified category still beats "Others" when the model is unavailable
+        Category defaultCategory = categoryOverride(userId, request.getText(), request.getText())
+                .map(CategoryOverride::category)
+                .orElseGet(() -> categoryRepository.findByName("Others")
+                        .orElseThrow(() -> new RuntimeException("Default category 'Others' not found")));
         
         Expense expense = Expense.builder()
                 .user(user)
@@ -253,10 +415,17 @@ public class AiExpenseParserService {
                                 .orElseThrow(() -> new RuntimeException("Default category 'Others' not found"))));
     }
 
+    private String learnableName(String merchant, String text) {
+        return merchant != null && !merchant.isBlank() ? merchant : text;
+    }
+
     private String defaultNameFromText(String text) {
         return text.length() > 60 ? text.substring(0, 60) : text;
     }
 
+    private record CategoryOverride(Category category, String source, double confidence) {
+    }
+
     // DTO matching AI JSON response
     public record ParsedFromAi(
             Double amount,
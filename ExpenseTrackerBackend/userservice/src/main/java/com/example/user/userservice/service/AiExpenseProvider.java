@@ -0,0 +1,40 @@
+package com.example.user.userservice.service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Transport to a single LLM backend. Prompts and response parsing are shared, so any
+ * provider can serve any AI parsing call and {@link AiProviderRouter} can fail over between them.
+ */
+public interface AiExpenseProvider {
+
+    String getName();
+
+    /**
+     * Sends the prompt pair and returns the raw text completion.
+     *
+     * @param systemPrompt instructions for the model, may be null
+     * @param userPrompt   the user turn
+     */
+    String complete(String systemPrompt, String userPrompt);
+
+    /**
+     * Like {@link #complete} but also reports the model and token usage when the backend returns them.
+     */
+    default AiCompletion completeWithUsage(String systemPrompt, String userPrompt) {
+        return new AiCompletion(complete(systemPrompt, userPrompt), null, null, null);
+    }
+
+    /**
+     * Streams the completion as text deltas. Providers without a streaming API emit the
+     * whole completion as a single delta.
+     */
+    default Flux<String> streamCompletion(String systemPrompt, String userPrompt) {
+        return Flux.defer(() -> Flux.just(complete(systemPrompt, userPrompt)))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    record AiCompletion(String text, String model, Integer promptTokens, Integer completionTokens) {
+    }
+}
@@ -0,0 +1,394 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.exception.AiCapacityException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Routes AI completions to the healthiest {@link AiExpenseProvider}.
+ * Health is an EWMA of latency and error rate per provider. A failed call fails over to the
+ * next provider. With {@code ai.router.hedge-enabled}, a call slower than the provider's recent
+ * p95 is hedged to the runner-up once enough latencies are known, and the slower call is cancelled.
+ */
+@Service
+@Slf4j
+public class AiProviderRouter {
+
+    private static final int LATENCY_WINDOW = 64;
+    private static final String DEFAULT_PURPOSE = "completion";
+
+    private final List<AiExpenseProvider> providers;
+    private final AiCallLedger ledger;
+    private final Map<String, ProviderHealth> health = new LinkedHashMap<>();
+    private final boolean hedgeEnabled;
+    private final long minHedgeDelayMs;
+    private final int hedgeMinSamples;
+    private final double ewmaAlpha;
+    private final ExecutorService hedgeExecutor;
+
+    // Latency charged for a failed call that failed faster, so a provider that errors instantly never looks fast
+    @Value("${ai.router.failure-penalty-ms:5000}")
+    private long failurePenaltyMs = 5000;
+
+    public AiProviderRouter(List<AiExpenseProvider> providers,
+                            AiCallLedger ledger,
+                            @Value("${ai.router.hedge-enabled:false}") boolean hedgeEnabled,
+                            @Value("${ai.router.min-hedge-delay-ms:300}") long minHedgeDelayMs,
+                            @Value("${ai.router.hedge-min-samples:20}") int hedgeMinSamples,
+                            @Value("${ai.router.ewma-alpha:0.2}") double ewmaAlpha,
+                            @Value("${ai.router.max-threads:16}") int maxThreads) {
+        if (providers.isEmpty()) {
+            throw new IllegalStateException("No AI providers configured");
+        }
+        this.providers = List.copyOf(providers);
+        this.ledger = ledger;
+        this.hedgeEnabled = hedgeEnabled;
+        this.minHedgeDelayMs = minHedgeDelayMs;
+        this.hedgeMinSamples = hedgeMinSamples;
+        this.ewmaAlpha = ewmaAlpha;
+        this.providers.forEach(provider -> health.put(provider.getName(), new ProviderHealth()));
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.hedgeExecutor = new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread thread = new Thread(r, "ai-router-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hedgeExecutor.shutdownNow();
+    }
+
+    public String complete(String systemPrompt, String userPrompt) {
+        return complete(DEFAULT_PURPOSE, systemPrompt, userPrompt, Function.identity());
+    }
+
+    public <T> T complete(String systemPrompt, String userPrompt, Function<String, T> responseParser) {
+        return complete(DEFAULT_PURPOSE, systemPrompt, userPrompt, responseParser);
+    }
+
+    /**
+     * Returns the first completion that the parser accepts. A parser exception counts as a
+     * provider error, so a model that returns garbage loses traffic like one that times out.
+     * Every provider call, hedges included, is recorded in the {@link AiCallLedger} under {@code purpose}.
+     */
+    public <T> T complete(String purpose, String systemPrompt, String userPrompt, Function<String, T> responseParser) {
+        List<AiExpenseProvider> ranked = rankProviders();
+        AiExpenseProvider primary = ranked.get(0);
+        AiExpenseProvider secondary = ranked.size() > 1 ? ranked.get(1) : null;
+
+        // Without enough samples the p95 is meaningless and every call would be hedged
+        if (!hedgeEnabled || secondary == null || health.get(primary.getName()).samples() < hedgeMinSamples) {
+            return completeWithFailover(purpose, ranked, systemPrompt, userPrompt, responseParser);
+        }
+
+        CompletableFuture<T> primaryCall;
+        try {
+            primaryCall = invokeAsync(purpose, primary, systemPrompt, userPrompt, responseParser);
+        } catch (RejectedExecutionException e) {
+            log.debug("Hedge pool saturated, routing sequentially");
+            return completeWithFailover(purpose, ranked, systemPrompt, userPrompt, responseParser);
+        }
+
+        long hedgeDelayMs = Math.max(minHedgeDelayMs, health.get(primary.getName()).p95LatencyMs());
+        try {
+            return primaryCall.get(hedgeDelayMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.debug("{} slower than {}ms, hedging to {}", primary.getName(), hedgeDelayMs, secondary.getName());
+        } catch (ExecutionException e) {
+            log.warn("{} failed, failing over to {}: {}", primary.getName(), secondary.getName(), e.getCause().getMessage());
+            return completeWithFailover(purpose, ranked.subList(1, ranked.size()), systemPrompt, userPrompt,
+                    responseParser);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for AI provider", e);
+        }
+
+        CompletableFuture<T> hedgeCall;
+        try {
+            hedgeCall = invokeAsync(purpose, secondary, systemPrompt, userPrompt, responseParser);
+        } catch (RejectedExecutionException e) {
+            return await(primaryCall);
+        }
+        try {
+            return await(firstSuccessful(primaryCall, hedgeCall));
+        } finally {
+            // Whichever call lost is still holding a thread and a provider connection
+            primaryCall.cancel(true);
+            hedgeCall.cancel(true);
+        }
+    }
+
+    /**
+     * Streams from the healthiest provider. Streams are not hedged; the client sees partial
+     * output as it arrives and a failed stream is surfaced instead of restarted elsewhere.
+     */
+    public Flux<String> streamCompletion(String systemPrompt, String userPrompt) {
+        return streamCompletion(DEFAULT_PURPOSE, systemPrompt, userPrompt);
+    }
+
+    public Flux<String> streamCompletion(String purpose, String systemPrompt, String userPrompt) {
+        AiExpenseProvider provider = rankProviders().get(0);
+        ProviderHealth providerHealth = health.get(provider.getName());
+        int promptChars = length(systemPrompt) + length(userPrompt);
+
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicInteger responseChars = new AtomicInteger();
+            return provider.streamCompletion(systemPrompt, userPrompt)
+                    .doOnNext(delta -> responseChars.addAndGet(delta.length()))
+                    .doOnError(e -> {
+                        providerHealth.recordFailure(failureLatencyMs(start), ewmaAlpha);
+                        recordStream(purpose, provider, promptChars, responseChars.get(), start,
+                                AiCallLedger.Outcome.PROVIDER_ERROR);
+                    })
+                    // Completion and early cancellation (caller got what it needed) both count as success
+                    .doOnComplete(() -> {
+                        providerHealth.recordSuccess(elapsedMs(start), ewmaAlpha);
+                        recordStream(purpose, provider, promptChars, responseChars.get(), start,
+                                AiCallLedger.Outcome.SUCCESS);
+                    })
+                    .doOnCancel(() -> {
+                        providerHealth.recordSuccess(elapsedMs(start), ewmaAlpha);
+                        recordStream(purpose, provider, promptChars, responseChars.get(), start,
+                                AiCallLedger.Outcome.SUCCESS);
+                    });
+        });
+    }
+
+    public Map<String, Map<String, Number>> snapshot() {
+        Map<String, Map<String, Number>> snapshot = new LinkedHashMap<>();
+        health.forEach((name, providerHealth) -> snapshot.put(name, providerHealth.toMap()));
+        return snapshot;
+    }
+
+    // Package-private for tests: seed observed latency without real calls
+    void recordOutcome(String providerName, long latencyMs, boolean success) {
+        ProviderHealth providerHealth = health.get(providerName);
+        if (success) {
+            providerHealth.recordSuccess(latencyMs, ewmaAlpha);
+        } else {
+            providerHealth.recordFailure(Math.max(latencyMs, failurePenaltyMs), ewmaAlpha);
+        }
+    }
+
+    List<AiExpenseProvider> rankProviders() {
+        List<AiExpenseProvider> ranked = new ArrayList<>(providers);
+        // Stable sort keeps configuration order for providers with equal scores
+        ranked.sort(Comparator.comparingDouble(provider -> health.get(provider.getName()).score()));
+        return ranked;
+    }
+
+    private <T> T completeWithFailover(String purpose, List<AiExpenseProvider> candidates, String systemPrompt,
+                                       String userPrompt, Function<String, T> responseParser) {
+        RuntimeException lastFailure = null;
+        for (AiExpenseProvider provider : candidates) {
+            try {
+                return invoke(purpose, provider, systemPrompt, userPrompt, responseParser);
+            } catch (RuntimeException e) {
+                log.warn("AI provider {} failed: {}", provider.getName(), e.getMessage());
+                lastFailure = e;
+            }
+        }
+        throw lastFailure;
+    }
+
+    /**
+     * Runs the call on the hedge pool. Unlike a plain {@link CompletableFuture}, cancelling the
+     * returned future interrupts the thread making the call.
+     */
+    private <T> CompletableFuture<T> invokeAsync(String purpose, AiExpenseProvider provider, String systemPrompt,
+                                                 String userPrompt, Function<String, T> responseParser) {
+        CompletableFuture<T> call = new CompletableFuture<>();
+        Future<?> task = hedgeExecutor.submit(() -> {
+            try {
+                call.complete(invoke(purpose, provider, systemPrompt, userPrompt, responseParser));
+            } catch (Throwable e) {
+                call.completeExceptionally(e);
+            }
+        });
+        call.whenComplete((result, error) -> {
+            if (call.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return call;
+    }
+
+    private <T> T invoke(String purpose, AiExpenseProvider provider, String systemPrompt, String userPrompt,
+                         Function<String, T> responseParser) {
+        ProviderHealth providerHealth = health.get(provider.getName());
+        int promptChars = length(systemPrompt) + length(userPrompt);
+        long start = System.nanoTime();
+        AiExpenseProvider.AiCompletion completion;
+        try {
+            completion = provider.completeWithUsage(systemPrompt, userPrompt);
+        } catch (RuntimeException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                // A hedge we cancelled ourselves, not the provider's fault
+                record(purpose, provider, null, promptChars, start, AiCallLedger.Outcome.CANCELLED);
+                throw e;
+            }
+            // Saturation (AiCapacityException) included: the caller waited all the same
+            providerHealth.recordFailure(failureLatencyMs(start), ewmaAlpha);
+            record(purpose, provider, null, promptChars, start,
+                    e instanceof AiCapacityException ? AiCallLedger.Outcome.REJECTED : AiCallLedger.Outcome.PROVIDER_ERROR);
+            throw e;
+        }
+        try {
+            T result = responseParser.apply(completion.text());
+            providerHealth.recordSuccess(elapsedMs(start), ewmaAlpha);
+            record(purpose, provider, completion, promptChars, start, AiCallLedger.Outcome.SUCCESS);
+            return result;
+        } catch (RuntimeException e) {
+            providerHealth.recordFailure(failureLatencyMs(start), ewmaAlpha);
+            record(purpose, provider, completion, promptChars, start, AiCallLedger.Outcome.PARSE_ERROR);
+            throw e;
+        }
+    }
+
+    private void record(String purpose, AiExpenseProvider provider, AiExpenseProvider.AiCompletion completion,
+                        int promptChars, long startNanos, AiCallLedger.Outcome outcome) {
+        ledger.record(new AiCallLedger.Entry(LocalDateTime.now(), purpose, provider.getName(),
+                completion == null ? null : completion.model(), promptChars,
+                completion == null ? 0 : length(completion.text()),
+                completion == null ? null : completion.promptTokens(),
+                completion == null ? null : completion.completionTokens(),
+                elapsedMs(startNanos), outcome));
+    }
+
+    private void recordStream(String purpose, AiExpenseProvider provider, int promptChars, int responseChars,
+                              long startNanos, AiCallLedger.Outcome outcome) {
+        ledger.record(new AiCallLedger.Entry(LocalDateTime.now(), purpose, provider.getName(), null, promptChars,
+                responseChars, null, null, elapsedMs(startNanos), outcome));
+    }
+
+    private static int length(String text) {
+        return text == null ? 0 : text.length();
+    }
+
+    private long failureLatencyMs(long startNanos) {
+        return Math.max(elapsedMs(startNanos), failurePenaltyMs);
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static <T> CompletableFuture<T> firstSuccessful(CompletableFuture<T> first, CompletableFuture<T> second) {
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        for (CompletableFuture<T> call : List.of(first, second)) {
+            call.whenComplete((result, error) -> {
+                if (error == null) {
+                    winner.complete(result);
+                } else if (failures.incrementAndGet() == 2) {
+                    winner.completeExceptionally(error);
+                }
+            });
+        }
+        return winner;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static final class ProviderHealth {
+
+        private double ewmaLatencyMs;
+        private double ewmaErrorRate;
+        private long successes;
+        private long failures;
+        private final long[] latencyWindow = new long[LATENCY_WINDOW];
+        private int windowSize;
+        private int windowNext;
+
+        synchronized void recordSuccess(long latencyMs, double alpha) {
+            updateLatency(latencyMs, alpha);
+            ewmaErrorRate = (1 - alpha) * ewmaErrorRate;
+            successes++;
+            latencyWindow[windowNext] = latencyMs;
+            windowNext = (windowNext + 1) % LATENCY_WINDOW;
+            windowSize = Math.min(windowSize + 1, LATENCY_WINDOW);
+        }
+
+        /**
+         * Failures feed the latency average too (at least the failure penalty), but not the p95
+         * window, which only describes successful calls.
+         */
+        synchronized void recordFailure(long latencyMs, double alpha) {
+            updateLatency(latencyMs, alpha);
+            ewmaErrorRate = alpha + (1 - alpha) * ewmaErrorRate;
+            failures++;
+        }
+
+        private void updateLatency(long latencyMs, double alpha) {
+            ewmaLatencyMs = successes + failures == 0 ? latencyMs : alpha * latencyMs + (1 - alpha) * ewmaLatencyMs;
+        }
+
+        /**
+         * Expected time to a successful answer: latency inflated by the chance of failing.
+         * At 99% errors that is a hundred times the failure penalty, so a dead provider ranks
+         * behind any working one. Providers without samples get the lowest possible score so they are tried.
+         */
+        synchronized double score() {
+            return (ewmaLatencyMs + 1) / Math.max(0.001, 1 - ewmaErrorRate);
+        }
+
+        synchronized int samples() {
+            return windowSize;
+        }
+
+        synchronized long p95LatencyMs() {
+            if (windowSize == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latencyWindow, windowSize);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.ceil(0.95 * windowSize) - 1];
+        }
+
+        synchronized Map<String, Number> toMap() {
+            Map<String, Number> stats = new LinkedHashMap<>();
+            stats.put("ewmaLatencyMs", Math.round(ewmaLatencyMs));
+            stats.put("ewmaErrorRate", Math.round(ewmaErrorRate * 1000) / 1000.0);
+            stats.put("p95LatencyMs", p95LatencyMs());
+            stats.put("successes", successes);
+            stats.put("failures", failures);
+            return stats;
+        }
+    }
+}
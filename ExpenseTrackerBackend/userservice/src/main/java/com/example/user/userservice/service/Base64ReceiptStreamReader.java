@@ -0,0 +1,260 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.dto.ExpenseRequestWithBase64Receipt;
+import com.example.user.userservice.exception.ExpenseException;
+import com.example.user.userservice.service.FileStorageService.StagedUpload;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.stream.Collectors;
+
+/**
+ * Reads an {@link ExpenseRequestWithBase64Receipt} JSON body without ever holding the receipt in
+ * memory. Jackson parses the ordinary fields; when it reaches {@code base64Receipt} the raw bytes
+ * of that string are taken over, an optional {@code data:image/...;base64,} prefix is stripped,
+ * and the rest flows through {@link Base64#getDecoder()}{@code .wrap} straight into
+ * {@link FileStorageService#stageUpload}, which enforces the size limit as it goes. Parsing then
+ * resumes on the bytes after the string, so field order does not matter.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class Base64ReceiptStreamReader {
+
+    static final String RECEIPT_FIELD = "base64Receipt";
+    private static final String DEFAULT_CONTENT_TYPE = "image/jpeg";
+    private static final int MAX_DATA_URL_HEADER = 128;
+    // Re-opens the object so the bytes after the receipt string parse as its remaining members
+    private static final byte[] RESUME_PREFIX = "{\"\":null".getBytes(StandardCharsets.US_ASCII);
+
+    private final ObjectMapper objectMapper;
+    private final FileStorageService fileStorageService;
+    // Absent when no Bean Validation provider is on the classpath, exactly when @Valid is a no-op too
+    private final ObjectProvider<Validator> validator;
+
+    public record Body(ExpenseRequestWithBase64Receipt request, String contentType, StagedUpload receipt) {
+    }
+
+    /**
+     * Parses and validates the body and stages the decoded receipt. The caller owns the staged
+     * upload and must store or discard it.
+     */
+    public Body read(InputStream body) throws IOException {
+        ObjectNode fields = objectMapper.createObjectNode();
+        StagedUpload receipt = null;
+        String contentType = DEFAULT_CONTENT_TYPE;
+        try {
+            JsonParser parser = newParser(body);
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new ExpenseException("Request body must be a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (RECEIPT_FIELD.equals(name) && value == JsonToken.VALUE_STRING && receipt == null) {
+                    // The string's content has not been read yet: hand the unread bytes to the decoder
+                    ByteArrayOutputStream buffered = new ByteArrayOutputStream();
+                    parser.releaseBuffered(buffered);
+                    JsonStringInputStream raw = new JsonStringInputStream(new SequenceInputStream(
+                            new ByteArrayInputStream(buffered.toByteArray()), body));
+
+                    PushbackInputStream encoded = new PushbackInputStream(raw, MAX_DATA_URL_HEADER);
+                    contentType = skipDataUrlHeader(encoded, contentType);
+                    receipt = stage(encoded);
+                    raw.skipToEnd();
+
+                    parser = newParser(new SequenceInputStream(new ByteArrayInputStream(RESUME_PREFIX), raw.remaining()));
+                    parser.nextToken(); // {
+                    parser.nextToken(); // ""
+                    parser.nextToken(); // null
+                } else {
+                    fields.set(name, parser.readValueAsTree());
+                }
+            }
+
+            fields.remove(RECEIPT_FIELD);
+            ExpenseRequestWithBase64Receipt request = objectMapper.treeToValue(fields, ExpenseRequestWithBase64Receipt.class);
+            validate(request, receipt);
+            return new Body(request, contentType, receipt);
+        } catch (IOException | RuntimeException e) {
+            fileStorageService.discardStagedUpload(receipt);
+            throw e;
+        }
+    }
+
+    // Same constraints as @Valid on the DTO; the receipt itself was never bound to the field
+    private void validate(ExpenseRequestWithBase64Receipt request, StagedUpload receipt) {
+        Validator beanValidator = validator.getIfAvailable();
+        String errors = beanValidator == null ? "" : beanValidator.validate(request).stream()
+                .filter(violation -> !RECEIPT_FIELD.equals(violation.getPropertyPath().toString()))
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining(", "));
+        if (receipt == null) {
+            errors = errors.isEmpty() ? "Base64 receipt data is required" : errors + ", Base64 receipt data is required";
+        }
+        if (!errors.isEmpty()) {
+            throw new ExpenseException(errors);
+        }
+    }
+
+    private JsonParser newParser(InputStream in) throws IOException {
+        JsonParser parser = objectMapper.getFactory().createParser(in);
+        parser.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+        return parser;
+    }
+
+    private StagedUpload stage(PushbackInputStream encoded) throws IOException {
+        int first = encoded.read();
+        if (first == -1) {
+            return null;
+        }
+        encoded.unread(first);
+        return fileStorageService.stageUpload(decoding(encoded));
+    }
+
+    // Bad base64 is the client's fault: report it as a 400 rather than a storage failure
+    private static InputStream decoding(InputStream encoded) {
+        return new FilterInputStream(Base64.getDecoder().wrap(encoded)) {
+            @Override
+            public int read() throws IOException {
+                try {
+                    return super.read();
+                } catch (IOException e) {
+                    throw new ExpenseException("Invalid base64 receipt data: " + e.getMessage());
+                }
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                try {
+                    return super.read(b, off, len);
+                } catch (IOException e) {
+                    throw new ExpenseException("Invalid base64 receipt data: " + e.getMessage());
+                }
+            }
+        };
+    }
+
+    /**
+     * Consumes {@code data:<type>[;base64],} when present and returns its media type.
+     */
+    private static String skipDataUrlHeader(PushbackInputStream in, String defaultType) throws IOException {
+        byte[] head = new byte[MAX_DATA_URL_HEADER];
+        int length = 0;
+        int b;
+        while (length < head.length && (b = in.read()) != -1) {
+            head[length++] = (byte) b;
+            if (length == 5 && !"data:".equals(new String(head, 0, 5, StandardCharsets.US_ASCII))) {
+                break;
+            }
+            if (length > 5 && b == ',') {
+                String header = new String(head, 5, length - 6, StandardCharsets.US_ASCII);
+                String type = header.split(";")[0].trim();
+                return type.isEmpty() ? defaultType : type;
+            }
+        }
+        if (length >= 5 && "data:".equals(new String(head, 0, 5, StandardCharsets.US_ASCII))) {
+            throw new ExpenseException("Malformed data URL in base64 receipt");
+        }
+        in.unread(head, 0, length);
+        return defaultType;
+    }
+
+    /**
+     * The bytes of one JSON string whose opening quote has been consumed, ending at the closing
+     * quote. Base64 needs no escapes except the optional {@code \/}; escaped line breaks are dropped.
+     */
+    static final class JsonStringInputStream extends InputStream {
+
+        private static final int BUFFER_SIZE = 16 * 1024;
+
+        private final InputStream source;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+        private int limit;
+        private boolean ended;
+
+        JsonStringInputStream(InputStream source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int read = read(one, 0, 1);
+            return read == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] out, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            int written = 0;
+            while (written < length && !ended) {
+                if (position == limit && !fill()) {
+                    throw new ExpenseException("Unterminated base64 receipt string");
+                }
+                byte b = buffer[position++];
+                if (b == '"') {
+                    ended = true;
+                } else if (b == '\\') {
+                    if (position == limit && !fill()) {
+                        throw new ExpenseException("Unterminated base64 receipt string");
+                    }
+                    byte escaped = buffer[position++];
+                    if (escaped == '/') {
+                        out[offset + written++] = '/';
+                    } else if (escaped != 'n' && escaped != 'r') {
+                        throw new ExpenseException("Unsupported escape in base64 receipt");
+                    }
+                } else {
+                    out[offset + written++] = b;
+                }
+            }
+            return written == 0 && ended ? -1 : written;
+        }
+
+        void skipToEnd() throws IOException {
+            byte[] discard = new byte[BUFFER_SIZE];
+            while (read(discard, 0, discard.length) != -1) {
+                // Only reached when the decoder stopped early, e.g. on base64 padding
+            }
+        }
+
+        /**
+         * The bytes after the closing quote: whatever is left in the buffer, then the source.
+         */
+        InputStream remaining() {
+            return new SequenceInputStream(new ByteArrayInputStream(buffer, position, limit - position), source);
+        }
+
+        private boolean fill() throws IOException {
+            int read = source.read(buffer, 0, buffer.length);
+            if (read <= 0) {
+                return false;
+            }
+            position = 0;
+            limit = read;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.entity.Category;
+import com.example.user.userservice.entity.CategoryBackfillJob;
+import com.example.user.userservice.repository.CategoryBackfillJobRepository;
+import com.example.user.userservice.repository.ExpenseRepository;
+import com.example.user.userservice.repository.ExpenseRepository.CategoryTrainingRow;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-categorizes historical expenses that were defaulted to "Others". Rows are paged by ID;
+ * each row is tried on the local classifier first and the rest go to the LLM in batches, under a
+ * global call rate and only while live AI traffic leaves the bulkhead idle. Each page's updates
+ * and the job checkpoint commit together, so a job interrupted by a restart resumes where it stopped.
+ * The checkpoint never passes a row whose AI call failed; those rows are retried until
+ * {@code max-failed-pages} attempts in a row fail, which pauses the job.
+ * <p>
+ * A job runs on one instance at a time: an instance takes it with a conditional update, and a
+ * RUNNING job is only taken over once its checkpoint has gone stale.
+ */
+@Component
+@Slf4j
+public class CategoryBackfillService {
+
+    private static final String PURPOSE = "category-backfill";
+    private static final int MAX_TEXT_CHARS = 120;
+    private static final String UPDATE_SQL = "UPDATE expenses SET category_id = ? WHERE id = ? AND category_id = ?";
+    private static final String SYSTEM_PROMPT = """
+            Assign each expense to the best category. Reply with a JSON array only, one object per expense:
+            [{"id":0,"categoryId":0}]
+            Use %s only when no other category fits.
+            Categories (id:name):
+            """;
+
+    private final ExpenseRepository expenseRepository;
+    private final CategoryBackfillJobRepository jobRepository;
+    private final ExpenseCategoryClassifier expenseCategoryClassifier;
+    private final AiProviderRouter aiProviderRouter;
+    private final AiCallBulkhead aiCallBulkhead;
+    private final CategoryCache categoryCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService worker;
+
+    private volatile boolean pauseRequested;
+    private volatile boolean running;
+    private long nextAiCallAt;
+
+    @Value("${ai.backfill.page-size:500}")
+    private int pageSize;
+
+    @Value("${ai.backfill.ai-batch-size:20}")
+    private int aiBatchSize;
+
+    @Value("${ai.backfill.ai-calls-per-minute:20}")
+    private int aiCallsPerMinute;
+
+    @Value("${ai.backfill.page-pause-ms:200}")
+    private long pagePauseMs;
+
+    @Value("${ai.backfill.busy-backoff-ms:2000}")
+    private long busyBackoffMs;
+
+    @Value("${ai.backfill.max-busy-waits:150}")
+    private int maxBusyWaits;
+
+    @Value("${ai.backfill.max-failed-pages:5}")
+    private int maxFailedPages;
+
+    // Longer than the slowest page (busy waits included), so a live job is never taken over
+    @Value("${ai.backfill.stale-after-minutes:15}")
+    private long staleAfterMinutes;
+
+    public CategoryBackfillService(ExpenseRepository expenseRepository,
+                                   CategoryBackfillJobRepository jobRepository,
+                                   ExpenseCategoryClassifier expenseCategoryClassifier,
+                                   AiProviderRouter aiProviderRouter,
+                                   AiCallBulkhead aiCallBulkhead,
+                                   CategoryCache categoryCache,
+                                   JdbcTemplate jdbcTemplate,
+                                   ObjectMapper objectMapper,
+                                   PlatformTransactionManager transactionManager) {
+        this.expenseRepository = expenseRepository;
+        this.jobRepository = jobRepository;
+        this.expenseCategoryClassifier = expenseCategoryClassifier;
+        this.aiProviderRouter = aiProviderRouter;
+        this.aiCallBulkhead = aiCallBulkhead;
+        this.categoryCache = categoryCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "category-backfill");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pauseRequested = true;
+        worker.shutdownNow();
+    }
+
+    /**
+     * Picks up a job whose instance stopped while running it. Checked at startup and then
+     * periodically, since a job interrupted moments ago only goes stale later.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${ai.backfill.resume-check-ms:300000}",
+               initialDelayString = "${ai.backfill.resume-check-ms:300000}")
+    public synchronized void resumeInterrupted() {
+        if (running) {
+            return;
+        }
+        jobRepository.findFirstByStatusInOrderByIdDesc(Set.of(CategoryBackfillJob.RUNNING))
+                .flatMap(this::claim)
+                .ifPresent(job -> {
+                    log.info("Resuming category backfill job {} after expense {}", job.getId(), job.getLastExpenseId());
+                    submit(job);
+                });
+    }
+
+    /**
+     * Starts a new job, or resumes the latest paused one. A no-op while a job is already running.
+     */
+    public synchronized Map<String, Object> start() {
+        if (running) {
+            return status();
+        }
+        Long othersId = categoryCache.snapshot().othersId();
+        if (othersId == null) {
+            throw new IllegalStateException("Category '" + CategoryCache.OTHERS + "' does not exist");
+        }
+
+        Optional<CategoryBackfillJob> existing = jobRepository
+                .findFirstByStatusInOrderByIdDesc(Set.of(CategoryBackfillJob.RUNNING, CategoryBackfillJob.PAUSED));
+        if (existing.isPresent()) {
+            // A RUNNING job with a fresh checkpoint is another instance's: the claim fails and this is a no-op
+            claim(existing.get()).ifPresent(this::submit);
+            return status();
+        }
+
+        CategoryBackfillJob job = CategoryBackfillJob.builder()
+                .status(CategoryBackfillJob.RUNNING)
+                .sourceCategoryId(othersId)
+                .lastExpenseId(0L)
+                .scanned(0L)
+                .byClassifier(0L)
+                .byAi(0L)
+                .unchanged(0L)
+                .failed(0L)
+                .startedAt(LocalDateTime.now())
+                .build();
+        submit(jobRepository.save(job));
+        return status();
+    }
+
+    /**
+     * Stops after the current page; the checkpoint stays so {@link #start()} continues from it.
+     */
+    public Map<String, Object> pause() {
+        pauseRequested = true;
+        return status();
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", running);
+        Optional<CategoryBackfillJob> latest = jobRepository.findFirstByOrderByIdDesc();
+        latest.ifPresent(job -> {
+            status.put("jobId", job.getId());
+            status.put("status", job.getStatus());
+            status.put("lastExpenseId", job.getLastExpenseId());
+            status.put("scanned", job.getScanned());
+            status.put("byClassifier", job.getByClassifier());
+            status.put("byAi", job.getByAi());
+            status.put("unchanged", job.getUnchanged());
+            status.put("failed", job.getFailed());
+            status.put("lastError", job.getLastError());
+            status.put("startedAt", job.getStartedAt());
+            status.put("updatedAt", job.getUpdatedAt());
+            status.put("finishedAt", job.getFinishedAt());
+        });
+        return status;
+    }
+
+    private Optional<CategoryBackfillJob> claim(CategoryBackfillJob job) {
+        LocalDateTime now = LocalDateTime.now();
+        Integer claimed = transactionTemplate.execute(status ->
+                jobRepository.claim(job.getId(), now, now.minusMinutes(staleAfterMinutes)));
+        return claimed != null && claimed == 1 ? jobRepository.findById(job.getId()) : Optional.empty();
+    }
+
+    private synchronized void submit(CategoryBackfillJob job) {
+        pauseRequested = false;
+        running = true;
+        worker.execute(() -> {
+            try {
+                run(job);
+            } catch (RuntimeException e) {
+                log.error("Category backfill job {} failed: {}", job.getId(), e.getMessage(), e);
+                job.setStatus(CategoryBackfillJob.FAILED);
+                job.setLastError(truncate(e.getMessage(), 512));
+                jobRepository.save(job);
+            } catch (InterruptedException e) {
+                // Shutdown: the job stays RUNNING and is resumed on the next start
+                Thread.currentThread().interrupt();
+            } finally {
+                running = false;
+            }
+        });
+    }
+
+    private void run(CategoryBackfillJob job) throws InterruptedException {
+        long start = System.nanoTime();
+        int failedPages = 0;
+        List<CategoryTrainingRow> rows;
+        do {
+            if (pauseRequested) {
+                job.setStatus(CategoryBackfillJob.PAUSED);
+                jobRepository.save(job);
+                log.info("Category backfill job {} paused after expense {}", job.getId(), job.getLastExpenseId());
+                return;
+            }
+
+            rows = expenseRepository.findRowsInCategory(job.getSourceCategoryId(), job.getLastExpenseId(),
+                    PageRequest.of(0, pageSize));
+            if (!rows.isEmpty()) {
+                if (processPage(job, rows)) {
+                    failedPages = 0;
+                } else if (++failedPages >= maxFailedPages) {
+                    job.setStatus(CategoryBackfillJob.PAUSED);
+                    jobRepository.save(job);
+                    log.warn("Category backfill job {} paused after {} failed AI attempts at expense {}",
+                            job.getId(), failedPages, job.getLastExpenseId());
+                    return;
+                }
+                Thread.sleep(failedPages == 0 ? pagePauseMs : busyBackoffMs);
+            }
+        } while (rows.size() == pageSize || failedPages > 0);
+
+        job.setStatus(CategoryBackfillJob.COMPLETED);
+        job.setFinishedAt(LocalDateTime.now());
+        jobRepository.save(job);
+        log.info("Category backfill job {} finished in {} s: {} scanned, {} by classifier, {} by AI, {} failed",
+                job.getId(), TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), job.getScanned(),
+                job.getByClassifier(), job.getByAi(), job.getFailed());
+    }
+
+    /**
+     * @return false when an AI batch failed and the checkpoint stopped before its rows
+     */
+    private boolean processPage(CategoryBackfillJob job, List<CategoryTrainingRow> rows) throws InterruptedException {
+        Long othersId = job.getSourceCategoryId();
+        CategoryCache.Snapshot categories = categoryCache.snapshot();
+        List<Object[]> updates = new ArrayList<>();
+        Set<Long> updatedIds = new HashSet<>();
+        List<CategoryTrainingRow> forAi = new ArrayList<>();
+        Long firstFailedId = null;
+        long byClassifier = 0;
+        long byAi = 0;
+        long failed = 0;
+
+        for (CategoryTrainingRow row : rows) {
+            Optional<Long> predicted = expenseCategoryClassifier.predict(text(row))
+                    .map(NaiveBayesCategoryModel.Prediction::categoryId)
+                    .filter(categoryId -> !categoryId.equals(othersId));
+            if (predicted.isPresent()) {
+                updates.add(new Object[]{predicted.get(), row.getId(), othersId});
+                updatedIds.add(row.getId());
+                byClassifier++;
+            } else {
+                forAi.add(row);
+            }
+        }
+
+        for (int from = 0; from < forAi.size(); from += aiBatchSize) {
+            List<CategoryTrainingRow> batch = forAi.subList(from, Math.min(from + aiBatchSize, forAi.size()));
+            try {
+                Map<Long, Long> assigned = classifyWithAi(batch, categories, othersId);
+                for (CategoryTrainingRow row : batch) {
+                    Long categoryId = assigned.get(row.getId());
+                    if (categoryId != null && !categoryId.equals(othersId) && categories.contains(categoryId)) {
+                        updates.add(new Object[]{categoryId, row.getId(), othersId});
+                        updatedIds.add(row.getId());
+                        byAi++;
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Rows stay in "Others" and the checkpoint stops before them, so the next page retries them
+                log.warn("AI batch of {} expenses failed during backfill: {}", batch.size(), e.getMessage());
+                job.setLastError(truncate(e.getMessage(), 512));
+                failed += batch.size();
+                if (firstFailedId == null) {
+                    firstFailedId = batch.get(0).getId(); // rows and batches are in ID order
+                }
+            }
+        }
+
+        long checkpoint = firstFailedId == null ? rows.get(rows.size() - 1).getId() : firstFailedId - 1;
+        // Done: everything up to the checkpoint, plus updated rows past it, which have left "Others" and are not read again
+        long done = rows.stream().filter(row -> row.getId() <= checkpoint || updatedIds.contains(row.getId())).count();
+        job.setLastExpenseId(checkpoint);
+        job.setScanned(job.getScanned() + done);
+        job.setByClassifier(job.getByClassifier() + byClassifier);
+        job.setByAi(job.getByAi() + byAi);
+        job.setFailed(job.getFailed() + failed);
+        job.setUnchanged(job.getUnchanged() + done - byClassifier - byAi);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!updates.isEmpty()) {
+                // Guarded on the old category so a user's own edit since the read always wins
+                jdbcTemplate.batchUpdate(UPDATE_SQL, updates);
+            }
+            jobRepository.save(job);
+        });
+        return firstFailedId == null;
+    }
+
+    private Map<Long, Long> classifyWithAi(List<CategoryTrainingRow> batch, CategoryCache.Snapshot categories,
+                                           Long othersId) throws InterruptedException {
+        awaitAiSlot();
+
+        StringBuilder system = new StringBuilder(SYSTEM_PROMPT.formatted(othersId + " (" + CategoryCache.OTHERS + ")"));
+        for (Category category : categories.categories()) {
+            system.append(category.getId()).append(':').append(category.getName()).append('\n');
+        }
+        StringBuilder user = new StringBuilder();
+        for (CategoryTrainingRow row : batch) {
+            user.append(row.getId()).append(": ").append(truncate(text(row), MAX_TEXT_CHARS).replace('\n', ' ')).append('\n');
+        }
+        return aiProviderRouter.complete(PURPOSE, system.toString(), user.toString(), this::parseAssignments);
+    }
+
+    /**
+     * Waits for the global call rate and for live traffic to leave the AI bulkhead idle.
+     */
+    private void awaitAiSlot() throws InterruptedException {
+        for (int waits = 0; !aiCallBulkhead.hasHeadroom(); waits++) {
+            if (waits >= maxBusyWaits) {
+                throw new IllegalStateException("AI providers stayed busy, backing off");
+            }
+            Thread.sleep(busyBackoffMs);
+        }
+        long intervalNanos = TimeUnit.MINUTES.toNanos(1) / Math.max(1, aiCallsPerMinute);
+        long now = System.nanoTime();
+        if (nextAiCallAt - now > 0) {
+            TimeUnit.NANOSECONDS.sleep(nextAiCallAt - now);
+            now = nextAiCallAt;
+        }
+        nextAiCallAt = now + intervalNanos;
+    }
+
+    /**
+     * Expense ID to category ID from the model's reply; unknown or malformed entries are skipped.
+     */
+    Map<Long, Long> parseAssignments(String response) {
+        int start = response == null ? -1 : response.indexOf('[');
+        int end = response == null ? -1 : response.lastIndexOf(']');
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException("AI did not return a JSON array");
+        }
+        JsonNode array;
+        try {
+            array = objectMapper.readTree(response.substring(start, end + 1));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("AI returned malformed JSON: " + e.getOriginalMessage());
+        }
+
+        Map<Long, Long> assigned = new HashMap<>();
+        for (JsonNode entry : array) {
+            Long id = asLong(entry.path("id"));
+            Long categoryId = asLong(entry.path("categoryId"));
+            if (id != null && categoryId != null) {
+                assigned.put(id, categoryId);
+            }
+        }
+        return assigned;
+    }
+
+    // Models sometimes quote numbers
+    private static Long asLong(JsonNode node) {
+        if (node.isTextual()) {
+            try {
+                return Long.parseLong(node.asText().trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return node.canConvertToLong() ? node.asLong() : null;
+    }
+
+    private static String text(CategoryTrainingRow row) {
+        return row.getDescription() == null || row.getDescription().isBlank()
+                ? row.getName()
+                : row.getName() + " " + row.getDescription();
+    }
+
+    private static String truncate(String text, int maxChars) {
+        return text == null || text.length() <= maxChars ? text : text.substring(0, maxChars);
+    }
+}
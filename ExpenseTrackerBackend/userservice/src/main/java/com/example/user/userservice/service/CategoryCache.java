@@ -0,0 +1,102 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.entity.Category;
+import com.example.user.userservice.repository.CategoryRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * In-memory copy of the category table for hot paths (AI prompts, ID validation).
+ * Categories change rarely, so reads share one immutable snapshot that is reloaded lazily
+ * after {@link #invalidate()}. Snapshot identity doubles as a version for derived caches.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CategoryCache {
+
+    public static final String OTHERS = "Others";
+
+    private final CategoryRepository categoryRepository;
+
+    private volatile Snapshot snapshot;
+
+    public Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            current = refresh();
+        }
+        return current;
+    }
+
+    public synchronized Snapshot refresh() {
+        List<Category> categories = categoryRepository.findAllByOrderByIdAsc();
+        Snapshot loaded = new Snapshot(categories);
+        snapshot = loaded;
+        log.debug("Loaded {} categories into cache", categories.size());
+        return loaded;
+    }
+
+    /**
+     * Drops the snapshot once the current transaction commits, so the next reader sees the change.
+     */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    snapshot = null;
+                }
+            });
+        } else {
+            snapshot = null;
+        }
+    }
+
+    public static final class Snapshot {
+
+        private final List<Category> categories;
+        private final Map<Long, Category> byId = new LinkedHashMap<>();
+        private final Map<String, Category> byName = new LinkedHashMap<>();
+
+        private Snapshot(List<Category> categories) {
+            this.categories = List.copyOf(categories);
+            for (Category category : categories) {
+                byId.put(category.getId(), category);
+                byName.put(category.getName().toLowerCase(Locale.ROOT), category);
+            }
+        }
+
+        public List<Category> categories() {
+            return categories;
+        }
+
+        public boolean contains(Long categoryId) {
+            return categoryId != null && byId.containsKey(categoryId);
+        }
+
+        public Optional<Category> findById(Long categoryId) {
+            return Optional.ofNullable(categoryId == null ? null : byId.get(categoryId));
+        }
+
+        public Optional<Category> findByName(String name) {
+            return Optional.ofNullable(name == null ? null : byName.get(name.trim().toLowerCase(Locale.ROOT)));
+        }
+
+        /**
+         * ID of the catch-all category, or null when it has not been seeded.
+         */
+        public Long othersId() {
+            return findByName(OTHERS).map(Category::getId).orElse(null);
+        }
+    }
+}
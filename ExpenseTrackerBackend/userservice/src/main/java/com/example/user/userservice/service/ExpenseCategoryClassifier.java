@@ -0,0 +1,150 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.repository.ExpenseRepository;
+import com.example.user.userservice.repository.ExpenseRepository.CategoryTrainingRow;
+import com.example.user.userservice.service.NaiveBayesCategoryModel.Prediction;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-process expense category classifier. A background job retrains a {@link NaiveBayesCategoryModel}
+ * from the expenses table, writes it to disk and swaps it in atomically; requests only ever read
+ * the current reference, so predictions never wait on training. Only confident predictions are
+ * returned, anything else is left to the LLM.
+ */
+@Component
+@Slf4j
+public class ExpenseCategoryClassifier {
+
+    private static final int PAGE_SIZE = 5000;
+
+    private final ExpenseRepository expenseRepository;
+    private final CategoryCache categoryCache;
+    private final AtomicReference<NaiveBayesCategoryModel> model = new AtomicReference<>();
+
+    @Value("${ai.classifier.model-path:models/expense-category.nbc}")
+    private String modelPath;
+
+    @Value("${ai.classifier.bucket-bits:16}")
+    private int bucketBits;
+
+    @Value("${ai.classifier.min-confidence:0.8}")
+    private double minConfidence;
+
+    @Value("${ai.classifier.min-samples:50}")
+    private int minSamples;
+
+    public ExpenseCategoryClassifier(ExpenseRepository expenseRepository, CategoryCache categoryCache) {
+        this.expenseRepository = expenseRepository;
+        this.categoryCache = categoryCache;
+    }
+
+    @PostConstruct
+    public void loadFromDisk() {
+        Path path = Paths.get(modelPath);
+        if (!Files.isRegularFile(path)) {
+            log.info("No category model at {}, waiting for the first training run", path);
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            NaiveBayesCategoryModel loaded = NaiveBayesCategoryModel.readFrom(in);
+            model.set(loaded);
+            log.info("Loaded category model from {} ({} samples, {} categories)",
+                    path, loaded.trainedOn(), loaded.categoryCount());
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable category model {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Category for the text when the model is confident and the category still exists.
+     */
+    public Optional<Prediction> predict(String text) {
+        NaiveBayesCategoryModel current = model.get();
+        if (current == null) {
+            return Optional.empty();
+        }
+        Prediction prediction = current.predict(text);
+        if (prediction == null || prediction.confidence() < minConfidence
+                || !categoryCache.snapshot().contains(prediction.categoryId())) {
+            return Optional.empty();
+        }
+        return Optional.of(prediction);
+    }
+
+    /**
+     * Prediction regardless of confidence, for suggestions shown to the user.
+     */
+    public Optional<Prediction> suggest(String text) {
+        NaiveBayesCategoryModel current = model.get();
+        return Optional.ofNullable(current == null ? null : current.predict(text))
+                .filter(prediction -> categoryCache.snapshot().contains(prediction.categoryId()));
+    }
+
+    @Scheduled(initialDelayString = "${ai.classifier.initial-delay-ms:60000}",
+               fixedDelayString = "${ai.classifier.retrain-interval-ms:21600000}")
+    public void retrain() {
+        long start = System.nanoTime();
+        NaiveBayesCategoryModel.Trainer trainer = new NaiveBayesCategoryModel.Trainer(bucketBits, 1.0);
+
+        long afterId = 0;
+        List<CategoryTrainingRow> rows;
+        do {
+            rows = expenseRepository.findCategoryTrainingRows(afterId, PageRequest.of(0, PAGE_SIZE));
+            for (CategoryTrainingRow row : rows) {
+                String text = row.getDescription() == null ? row.getName() : row.getName() + " " + row.getDescription();
+                trainer.add(text, row.getCategoryId());
+                afterId = row.getId();
+            }
+        } while (rows.size() == PAGE_SIZE);
+
+        if (trainer.trainedOn() < minSamples) {
+            log.info("Skipping category model training: {} samples, need {}", trainer.trainedOn(), minSamples);
+            return;
+        }
+
+        NaiveBayesCategoryModel trained = trainer.build();
+        try {
+            save(trained);
+        } catch (IOException e) {
+            // Still serve the fresh model; it is rebuilt on the next run anyway
+            log.warn("Failed to write category model to {}: {}", modelPath, e.getMessage());
+        }
+        model.set(trained);
+        log.info("Trained category model on {} samples in {} ms", trained.trainedOn(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void save(NaiveBayesCategoryModel trained) throws IOException {
+        Path path = Paths.get(modelPath).toAbsolutePath();
+        Files.createDirectories(path.getParent());
+        Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                trained.writeTo(out);
+            }
+            // Readers on other nodes or after a restart never see a half-written file
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.entity.Category;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Builds the voice-expense parsing prompt; one utterance may hold several expenses. The
+ * instructions and category list are rendered once per category snapshot; each call only appends
+ * today's date and the user's input. Prompts are kept within a token budget by dropping category
+ * hints, then categories that do not fit, and then trimming the input.
+ */
+@Component
+@Slf4j
+public class ExpensePromptBuilder {
+
+    // Rough average for English text with the tokenizers we use; good enough for a budget
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final int MIN_INPUT_CHARS = 80;
+
+    private static final String INSTRUCTIONS = """
+            Parse the spoken expenses into a JSON array, one object per expense. Reply with the array only:
+            [{"name":"short name","amount":0.0,"categoryId":0,"date":"YYYY-MM-DD","description":"text"}]
+            Rules: amount is a number without currency. Resolve relative dates (yesterday, last week, \
+            weekday names) against today; a date said once applies to all, no date means today. \
+            Use the category whose examples fit best, otherwise %s.
+            Categories (id:name - examples):
+            """;
+
+    // Hints for the seeded categories; user-created categories are listed by name only
+    private static final Map<String, String> CATEGORY_HINTS = Map.ofEntries(
+            Map.entry("food & dining", "restaurant, groceries, delivery, coffee, snacks"),
+            Map.entry("transportation", "fuel, taxi, uber, bus, metro, parking, toll"),
+            Map.entry("housing & utilities", "rent, electricity, water, internet, phone bill"),
+            Map.entry("health & fitness", "medicine, doctor, pharmacy, gym"),
+            Map.entry("shopping", "clothes, electronics, online orders"),
+            Map.entry("entertainment", "movies, streaming, games, concerts"),
+            Map.entry("travel", "flights, hotels, vacation"),
+            Map.entry("education", "books, courses, fees"),
+            Map.entry("savings & investments", "sip, mutual funds, deposits"),
+            Map.entry("debt & loans", "emi, loan, credit card payment"),
+            Map.entry("personal care", "salon, haircut, cosmetics")
+    );
+
+    private final CategoryCache categoryCache;
+    private final int maxPromptTokens;
+
+    private volatile RenderedPrefix prefix;
+
+    public ExpensePromptBuilder(CategoryCache categoryCache,
+                               @Value("${ai.prompt.max-tokens:400}") int maxPromptTokens) {
+        this.categoryCache = categoryCache;
+        this.maxPromptTokens = maxPromptTokens;
+    }
+
+    public String build(String voiceText, LocalDate today) {
+        String staticPart = prefix().text;
+
+        int inputBudgetChars = Math.max(MIN_INPUT_CHARS,
+                maxPromptTokens * CHARS_PER_TOKEN - staticPart.length() - 48);
+        String input = voiceText.length() > inputBudgetChars ? voiceText.substring(0, inputBudgetChars) : voiceText;
+        if (input.length() < voiceText.length()) {
+            log.debug("Voice input trimmed from {} to {} chars to fit the prompt budget", voiceText.length(), input.length());
+        }
+
+        return new StringBuilder(staticPart.length() + input.length() + 48)
+                .append(staticPart)
+                .append("Today: ").append(today).append(" (").append(today.getDayOfWeek()).append(")\n")
+                .append("Input: \"").append(input.replace('"', '\'')).append("\"")
+                .toString();
+    }
+
+    public static int estimateTokens(String text) {
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    private RenderedPrefix prefix() {
+        CategoryCache.Snapshot categories = categoryCache.snapshot();
+        RenderedPrefix current = prefix;
+        if (current == null || current.source != categories) {
+            current = render(categories);
+            prefix = current;
+        }
+        return current;
+    }
+
+    private RenderedPrefix render(CategoryCache.Snapshot categories) {
+        // Keep at least a quarter of the budget for the date line and the input
+        int prefixBudget = maxPromptTokens * 3 / 4;
+        String withHints = renderPrefix(categories, true, Integer.MAX_VALUE);
+        if (estimateTokens(withHints) <= prefixBudget) {
+            return new RenderedPrefix(categories, withHints);
+        }
+        log.info("Category hints dropped from AI prompt: {} tokens exceeds prefix budget of {}",
+                estimateTokens(withHints), prefixBudget);
+        return new RenderedPrefix(categories, renderPrefix(categories, false, prefixBudget * CHARS_PER_TOKEN));
+    }
+
+    /**
+     * Instructions followed by one line per category, as many as fit in {@code maxChars}; the
+     * instructions name the fallback category by id, so it needs no line of its own.
+     */
+    private String renderPrefix(CategoryCache.Snapshot categories, boolean withHints, int maxChars) {
+        Long othersId = categories.othersId();
+        StringBuilder text = new StringBuilder(INSTRUCTIONS.formatted(
+                othersId != null ? othersId + " (" + CategoryCache.OTHERS + ")" : "the closest category"));
+        int omitted = 0;
+        for (Category category : categories.categories()) {
+            StringBuilder line = new StringBuilder().append(category.getId()).append(':').append(category.getName());
+            String hint = withHints ? CATEGORY_HINTS.get(category.getName().toLowerCase(Locale.ROOT)) : null;
+            if (hint != null) {
+                line.append(" - ").append(hint);
+            }
+            line.append('\n');
+            if (text.length() + line.length() > maxChars) {
+                omitted++;
+                continue;
+            }
+            text.append(line);
+        }
+        if (omitted > 0) {
+            log.warn("{} categories left out of the AI prompt to stay within {} chars", omitted, maxChars);
+        }
+        return text.toString();
+    }
+
+    private record RenderedPrefix(CategoryCache.Snapshot source, String text) {
+    }
+}
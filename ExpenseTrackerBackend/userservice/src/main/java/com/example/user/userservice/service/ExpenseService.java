@@ -3,6 +3,7 @@ package com.example.user.userservice.service;
 import com.example.user.userservice.dto.ExpenseRequest;
 import com.example.user.userservice.dto.ExpenseResponse;
 import com.example.user.userservice.dto.ExpenseSummaryResponse;
+import com.example.user.userservice.service.FileStorageService.StagedUpload;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.time.LocalDate;
@@ -13,9 +14,24 @@ public interface ExpenseService {
     
     ExpenseResponse createExpense(Long userId, ExpenseRequest request);
     
-    ExpenseResponse createExpenseWithReceipt(Long userId, ExpenseRequest request, MultipartFile receipt);
+    List<ExpenseResponse> createExpenses(Long userId, List<ExpenseRequest> requests);
+
+    /**
+     * Like {@link #createExpenses}, with the stored receipt of each expense (same order, entries may be null).
+     */
+    List<ExpenseResponse> createExpensesWithReceipts(Long userId, List<ExpenseRequest> requests, List<String> receiptPaths);
+    
+    /**
+     * When the receipt looks like one already on another expense of the user, the expense is still
+     * created and those expenses are listed in {@code possibleDuplicateIds}; with
+     * {@code rejectDuplicate} it fails with
+     * {@link com.example.user.userservice.exception.DuplicateReceiptException} instead.
+     */
+    ExpenseResponse createExpenseWithReceipt(Long userId, ExpenseRequest request, MultipartFile receipt, boolean rejectDuplicate);
     
     ExpenseResponse createExpenseWithBase64Receipt(Long userId, ExpenseRequest request, String base64Receipt, String fileName);
+
+    ExpenseResponse createExpenseWithStagedReceipt(Long userId, ExpenseRequest request, StagedUpload receipt, String fileName, String contentType);
     
     ExpenseResponse updateExpense(Long userId, Long expenseId, ExpenseRequest request);
     
@@ -38,6 +54,8 @@ public interface ExpenseService {
     void deleteExpense(Long userId, Long expenseId);
     
     String uploadReceipt(Long userId, Long expenseId, MultipartFile receipt);
+
+    String attachStagedReceipt(Long userId, Long expenseId, StagedUpload receipt, String fileName, String contentType);
     
     void deleteReceipt(Long userId, Long expenseId);
     
@@ -0,0 +1,109 @@
+package com.example.user.userservice.service;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Deterministic extraction of amount, date and name from a short expense sentence. Every method
+ * answers only when the text is unambiguous, so callers can skip the LLM for "lunch 250 yesterday"
+ * and still send "2 coffees for 150 on the 5th" to it.
+ */
+public final class ExpenseTextExtractor {
+
+    private static final Pattern NUMBER = Pattern.compile(
+            "(?<![\\p{L}\\d.,])(?:\\u20B9\\s*)?(\\d{1,3}(?:,\\d{2,3})+|\\d+)(\\.\\d+)?([\\p{L}]*)");
+    private static final Set<String> AMOUNT_SUFFIXES = Set.of("", "rs", "inr", "rupees", "bucks", "k");
+    private static final Pattern EXPLICIT_DATE = Pattern.compile(
+            "\\b\\d{1,2}(?:st|nd|rd|th)\\b|\\b\\d{1,2}[/-]\\d{1,2}(?:[/-]\\d{2,4})?\\b"
+                    + "|\\b(?:jan|january|feb|february|mar|march|apr|april|june|july|aug|august|sept?|september"
+                    + "|oct|october|nov|november|dec|december)\\b|\\bago\\b|\\blast month\\b");
+    private static final Pattern FILLER = Pattern.compile(
+            "\\b(?:i|spent|paid|pay|for|on|at|the|a|an|today|yesterday|day before|last week|this week|"
+                    + "monday|tuesday|wednesday|thursday|friday|saturday|sunday|rs|inr|rupees|bucks)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private ExpenseTextExtractor() {
+    }
+
+    /**
+     * The amount when the text contains exactly one number and that number reads as money; empty
+     * for "2 coffees for 150", "250 at 7pm" or text without a number.
+     */
+    public static Optional<Double> amount(String text) {
+        List<Double> amounts = new ArrayList<>();
+        int numbers = 0;
+        Matcher matcher = NUMBER.matcher(text == null ? "" : text.toLowerCase(Locale.ROOT));
+        while (matcher.find()) {
+            numbers++;
+            if (AMOUNT_SUFFIXES.contains(matcher.group(3))) {
+                double value = Double.parseDouble(matcher.group(1).replace(",", "")
+                        + (matcher.group(2) == null ? "" : matcher.group(2)));
+                amounts.add("k".equals(matcher.group(3)) ? value * 1000 : value);
+            }
+        }
+        if (numbers != 1 || amounts.size() != 1 || amounts.get(0) <= 0) {
+            return Optional.empty();
+        }
+        return Optional.of(amounts.get(0));
+    }
+
+    /**
+     * Number of numeric tokens in the text, amounts, quantities and times alike.
+     */
+    public static int numberCount(String text) {
+        Matcher matcher = NUMBER.matcher(text == null ? "" : text);
+        int numbers = 0;
+        while (matcher.find()) {
+            numbers++;
+        }
+        return numbers;
+    }
+
+    /**
+     * The date the text refers to: relative words ("yesterday", "friday", "last week") are
+     * resolved against {@code today}, no date words mean today. Empty when the text names a date
+     * this method does not resolve ("on the 5th", "12/03", "in March", "two days ago").
+     */
+    public static Optional<LocalDate> date(String text, LocalDate today) {
+        String lower = text == null ? "" : text.toLowerCase(Locale.ROOT);
+        if (EXPLICIT_DATE.matcher(lower).find()) {
+            return Optional.empty();
+        }
+        if (lower.contains("day before yesterday")) {
+            return Optional.of(today.minusDays(2));
+        }
+        if (lower.contains("yesterday")) {
+            return Optional.of(today.minusDays(1));
+        }
+        if (lower.contains("last week")) {
+            return Optional.of(today.minusWeeks(1));
+        }
+        for (DayOfWeek day : DayOfWeek.values()) {
+            if (lower.contains(day.name().toLowerCase(Locale.ROOT))) {
+                // Most recent past occurrence, never today
+                int daysBack = today.getDayOfWeek().getValue() - day.getValue();
+                return Optional.of(today.minusDays(daysBack <= 0 ? daysBack + 7 : daysBack));
+            }
+        }
+        return Optional.of(today);
+    }
+
+    /**
+     * The text without numbers, currency and filler words, capitalized; empty when nothing is left.
+     */
+    public static Optional<String> describe(String text) {
+        String name = FILLER.matcher(NUMBER.matcher(text == null ? "" : text).replaceAll(" ")).replaceAll(" ")
+                .replaceAll("\\s+", " ").trim();
+        if (name.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(Character.toUpperCase(name.charAt(0)) + name.substring(1));
+    }
+}
@@ -2,6 +2,10 @@ package com.example.user.userservice.service;
 
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+
 public interface FileStorageService {
     
     String storeFile(MultipartFile file, String directory);
@@ -11,4 +15,61 @@ public interface FileStorageService {
     boolean fileExists(String filePath);
     
     String getFileUrl(String filePath);
+
+    /**
+     * Streams {@code content} into the storage backend's temp area, hashing it and enforcing the
+     * size limit as it goes. Callers that learn the file name only after the bytes (e.g. a JSON body) pass
+     * the result to {@link #storeStagedUpload} or {@link #discardStagedUpload}.
+     */
+    StagedUpload stageUpload(InputStream content);
+
+    /**
+     * Adopts a local file the caller assembled itself (ideally under the upload temp area, so a
+     * local backend stores it with a rename). The file is hashed and size-checked in place and
+     * then handed to the backend, which consumes it.
+     */
+    StagedUpload stageFile(Path file);
+
+    /**
+     * Validates a staged upload like {@link #storeFile} and moves it into {@code directory}.
+     * The staged file is consumed either way.
+     */
+    String storeStagedUpload(StagedUpload upload, String originalFilename, String contentType, String directory);
+
+    void discardStagedUpload(StagedUpload upload);
+
+    /**
+     * URL of a size variant of a stored image; the original's URL while the variant is still
+     * being generated or when the file has none (e.g. a PDF).
+     */
+    String getFileUrl(String filePath, Variant variant);
+
+    /**
+     * Other stored images under {@code directory} that look like the same picture as
+     * {@code filePath} (a perceptual-hash match), closest first. Empty for files that are not
+     * hashed, such as PDFs.
+     */
+    List<String> findSimilarImages(String filePath, String directory);
+
+    /**
+     * Bytes already in the storage backend under a temp {@code key}, not yet referenced.
+     */
+    record StagedUpload(String key, String sha256, long size) {
+    }
+
+    enum Variant {
+        ORIGINAL("original"),
+        THUMBNAIL("thumb"),
+        PREVIEW("preview");
+
+        private final String suffix;
+
+        Variant(String suffix) {
+            this.suffix = suffix;
+        }
+
+        public String suffix() {
+            return suffix;
+        }
+    }
 }
@@ -2,6 +2,11 @@ package com.example.user.userservice.service;
 
 import com.example.user.userservice.dto.ExpenseRequest;
 
+import java.util.List;
+
 public interface GeminiAIService {
-    ExpenseRequest parseVoiceToExpense(String voiceText);
+    /**
+     * Every expense mentioned in the utterance, e.g. "lunch 250 and cab 180 yesterday" yields two.
+     */
+    List<ExpenseRequest> parseVoiceToExpenses(Long userId, String voiceText);
 }
@@ -0,0 +1,179 @@
+package com.example.user.userservice.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Turns a voice-parsing completion into typed {@link ParsedVoiceExpense}s.
+ * The first JSON array or object in the text is read in one streaming pass; markdown fences, chatter
+ * and anything after the object are never scanned. Output that is not valid JSON (truncated,
+ * unbalanced) falls back to precompiled per-field patterns.
+ */
+@Component
+@Slf4j
+public class GeminiResponseParser {
+
+    // Lenient reader: models regularly emit trailing commas, single quotes or comments
+    private static final ObjectMapper LENIENT_MAPPER = JsonMapper.builder()
+            .enable(JsonReadFeature.ALLOW_TRAILING_COMMA, JsonReadFeature.ALLOW_SINGLE_QUOTES,
+                    JsonReadFeature.ALLOW_UNQUOTED_FIELD_NAMES, JsonReadFeature.ALLOW_JAVA_COMMENTS,
+                    JsonReadFeature.ALLOW_NON_NUMERIC_NUMBERS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+    private static final ObjectReader READER = LENIENT_MAPPER.readerFor(ParsedVoiceExpense.class);
+    private static final ObjectReader LIST_READER = LENIENT_MAPPER.readerForListOf(ParsedVoiceExpense.class);
+
+    // Possessive quantifiers keep the fallbacks linear on adversarial input
+    private static final Pattern NAME = fieldPattern("name", "\"((?:[^\"\\\\]|\\\\.)*+)\"");
+    private static final Pattern AMOUNT = fieldPattern("amount", "\"?(\\d++(?:\\.\\d++)?)");
+    private static final Pattern CATEGORY_ID = fieldPattern("categoryId", "\"?(\\d++)");
+    private static final Pattern DATE = fieldPattern("date", "\"(\\d{4}-\\d{2}-\\d{2})\"");
+    private static final Pattern DESCRIPTION = fieldPattern("description", "\"((?:[^\"\\\\]|\\\\.)*+)\"");
+
+    public record ParsedVoiceExpense(String name, Double amount, Long categoryId, String date, String description) {
+    }
+
+    /**
+     * @throws IllegalArgumentException when the response holds neither JSON nor any recognizable field
+     */
+    public ParsedVoiceExpense parse(String response) {
+        int start = response == null ? -1 : response.indexOf('{');
+        if (start < 0) {
+            throw new IllegalArgumentException("AI did not return JSON");
+        }
+
+        try (JsonParser parser = LENIENT_MAPPER.createParser(response.substring(start))) {
+            // Reads exactly one object; whatever follows it is left unread
+            return READER.readValue(parser);
+        } catch (IOException e) {
+            log.debug("AI response is not valid JSON ({}), using field fallbacks", e.getMessage());
+            return parseFallback(response.substring(start));
+        }
+    }
+
+    /**
+     * All expenses of a completion: a JSON array, or a single object for models that ignore the array instruction.
+     *
+     * @throws IllegalArgumentException when the response holds no recognizable expense
+     */
+    public List<ParsedVoiceExpense> parseAll(String response) {
+        int arrayStart = response == null ? -1 : response.indexOf('[');
+        int objectStart = response == null ? -1 : response.indexOf('{');
+        if (arrayStart < 0 || (objectStart >= 0 && objectStart < arrayStart)) {
+            return List.of(parse(response));
+        }
+
+        String json = response.substring(arrayStart);
+        try (JsonParser parser = LENIENT_MAPPER.createParser(json)) {
+            List<ParsedVoiceExpense> expenses = LIST_READER.readValue(parser);
+            if (expenses == null || expenses.isEmpty()) {
+                throw new IllegalArgumentException("AI returned no expenses");
+            }
+            return expenses;
+        } catch (IOException e) {
+            log.debug("AI response array is not valid JSON ({}), using field fallbacks", e.getMessage());
+            return parseAllFallback(json);
+        }
+    }
+
+    private List<ParsedVoiceExpense> parseAllFallback(String text) {
+        // Each '{' starts one expense; a truncated last object still yields whatever fields it has
+        List<ParsedVoiceExpense> expenses = new ArrayList<>();
+        int start = text.indexOf('{');
+        while (start >= 0) {
+            int next = text.indexOf('{', start + 1);
+            try {
+                expenses.add(parseFallback(next < 0 ? text.substring(start) : text.substring(start, next)));
+            } catch (IllegalArgumentException e) {
+                log.debug("Skipping unrecognizable expense object in AI response");
+            }
+            start = next;
+        }
+        if (expenses.isEmpty()) {
+            throw new IllegalArgumentException("Invalid AI response format");
+        }
+        return expenses;
+    }
+
+    private ParsedVoiceExpense parseFallback(String text) {
+        String name = unescape(find(NAME, text));
+        String amount = find(AMOUNT, text);
+        String categoryId = find(CATEGORY_ID, text);
+        String date = find(DATE, text);
+        String description = unescape(find(DESCRIPTION, text));
+
+        if (name == null && amount == null && categoryId == null && date == null && description == null) {
+            throw new IllegalArgumentException("Invalid AI response format");
+        }
+        return new ParsedVoiceExpense(
+                name,
+                amount != null ? Double.valueOf(amount) : null,
+                categoryId != null ? Long.valueOf(categoryId) : null,
+                date,
+                description);
+    }
+
+    private static Pattern fieldPattern(String field, String valuePattern) {
+        return Pattern.compile("[\"']?" + field + "[\"']?\\s*+:\\s*+" + valuePattern);
+    }
+
+    private static String find(Pattern pattern, String text) {
+        Matcher matcher = pattern.matcher(text);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Decodes JSON string escapes in one left-to-right pass, so an escaped backslash is never
+     * read again as the start of another escape. Line breaks and tabs become spaces.
+     */
+    private static String unescape(String value) {
+        if (value == null || value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder out = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\' || i + 1 == value.length()) {
+                out.append(c);
+                continue;
+            }
+            char escaped = value.charAt(++i);
+            switch (escaped) {
+                case 'n', 'r', 't' -> out.append(' ');
+                case 'b', 'f' -> { }
+                case 'u' -> {
+                    if (i + 4 < value.length() && isHex(value, i + 1, i + 5)) {
+                        out.append((char) Integer.parseInt(value, i + 1, i + 5, 16));
+                        i += 4;
+                    } else {
+                        out.append('\\').append(escaped);
+                    }
+                }
+                // \", \\ and \/ stand for the character itself
+                default -> out.append(escaped);
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean isHex(String value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (Character.digit(value.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.user.userservice.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses a single JSON object from text that arrives in arbitrary chunks (LLM tokens).
+ * Every top-level scalar field is reported as soon as its value is complete, and the parser
+ * marks itself complete on the object's closing brace so the caller can cut the stream.
+ * Anything before the first '{' (markdown fences, chatter) is skipped. Not thread-safe.
+ */
+public class IncrementalJsonFieldParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final Map<String, Object> fields = new LinkedHashMap<>();
+    private boolean started;
+    private boolean complete;
+    private int depth;
+    private String currentField;
+
+    public IncrementalJsonFieldParser() {
+        try {
+            this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * Feeds the next chunk and returns the top-level fields completed by it, in order.
+     */
+    public List<Map.Entry<String, Object>> feed(String chunk) {
+        List<Map.Entry<String, Object>> completed = new ArrayList<>();
+        if (complete || chunk == null || chunk.isEmpty()) {
+            return completed;
+        }
+
+        String input = chunk;
+        if (!started) {
+            int start = chunk.indexOf('{');
+            if (start < 0) {
+                return completed;
+            }
+            started = true;
+            input = chunk.substring(start);
+        }
+
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        try {
+            feeder.feedInput(bytes, 0, bytes.length);
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                if (handle(token, completed)) {
+                    // Whatever the model emitted after the closing brace is ignored
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed JSON in AI stream", e);
+        }
+        return completed;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * All top-level fields seen so far, in arrival order.
+     */
+    public Map<String, Object> getFields() {
+        return fields;
+    }
+
+    private boolean handle(JsonToken token, List<Map.Entry<String, Object>> completed) throws IOException {
+        switch (token) {
+            case START_OBJECT, START_ARRAY -> depth++;
+            case END_OBJECT, END_ARRAY -> {
+                depth--;
+                if (depth == 0) {
+                    complete = true;
+                    feeder.endOfInput();
+                    return true;
+                }
+            }
+            case FIELD_NAME -> {
+                if (depth == 1) {
+                    currentField = parser.currentName();
+                }
+            }
+            case VALUE_STRING -> emit(completed, parser.getText());
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> emit(completed, parser.getNumberValue());
+            case VALUE_TRUE, VALUE_FALSE -> emit(completed, parser.getBooleanValue());
+            case VALUE_NULL -> emit(completed, null);
+            default -> {
+                // Embedded objects are not produced by this parser
+            }
+        }
+        return false;
+    }
+
+    private void emit(List<Map.Entry<String, Object>> completed, Object value) {
+        if (depth == 1 && currentField != null) {
+            fields.put(currentField, value);
+            completed.add(new AbstractMap.SimpleEntry<>(currentField, value));
+            currentField = null;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.user.userservice.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Deterministic, LLM-free parser for a voice transcript that grows while the user speaks.
+ * The transcript is split into one segment per expense ("lunch 250 and cab 180"); parsed segments
+ * are cached by their text, so on each partial update only the segment still being spoken is parsed
+ * again. A segment whose amount or date had to be guessed ("2 coffees for 150", "on the 5th") gets
+ * a low confidence, so it is confirmed by the LLM. Not thread-safe: one instance per live session.
+ */
+public class IncrementalVoiceParser {
+
+    private static final int MAX_CACHED_SEGMENTS = 64;
+    private static final Pattern SEGMENT_SEPARATORS =
+            Pattern.compile("\\s*(?:[,;]|\\band\\b|\\bthen\\b|\\bplus\\b|\\balso\\b)\\s*", Pattern.CASE_INSENSITIVE);
+    private static final Pattern AMOUNT =
+            Pattern.compile("(?:\\u20B9|\\brs\\.?\\s*)?(\\d+(?:\\.\\d+)?)\\s*(?:rs|inr|rupees|bucks)?", Pattern.CASE_INSENSITIVE);
+    // Below any sensible auto-save threshold: the amount or date was a guess
+    private static final double AMBIGUOUS_CONFIDENCE = 0.5;
+
+    private final Function<String, Categorization> categorizer;
+    private final Map<String, Segment> segments = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Segment> eldest) {
+            return size() > MAX_CACHED_SEGMENTS;
+        }
+    };
+
+    private String lastTranscript;
+    private LocalDate lastToday;
+    private Preview lastPreview;
+    private int segmentsParsed;
+
+    /**
+     * @param categorizer category for one segment's text; called at most once per distinct segment
+     */
+    public IncrementalVoiceParser(Function<String, Categorization> categorizer) {
+        this.categorizer = categorizer;
+    }
+
+    public record Categorization(Long categoryId, double confidence, String source) {
+    }
+
+    public record ParsedExpense(String name, Double amount, Long categoryId, LocalDate date, double confidence,
+                                String source) {
+    }
+
+    /**
+     * Expenses parsed so far; confidence is that of the least certain expense, 0 when none was found.
+     */
+    public record Preview(String transcript, List<ParsedExpense> expenses, double confidence) {
+    }
+
+    public Preview update(String transcript, LocalDate today) {
+        String text = transcript == null ? "" : transcript.trim();
+        if (text.equals(lastTranscript) && today.equals(lastToday)) {
+            return lastPreview;
+        }
+
+        Optional<LocalDate> resolved = ExpenseTextExtractor.date(text, today);
+        LocalDate date = resolved.orElse(today);
+        List<ParsedExpense> expenses = new ArrayList<>();
+        double confidence = resolved.isPresent() ? 1.0 : AMBIGUOUS_CONFIDENCE;
+        for (String segmentText : split(text)) {
+            Segment segment = segments.get(segmentText);
+            if (segment == null) {
+                segment = parseSegment(segmentText);
+                segments.put(segmentText, segment);
+                segmentsParsed++;
+            }
+            if (segment.amount() == null) {
+                continue;
+            }
+            double segmentConfidence = Math.min(segment.confidence(), resolved.isPresent() ? 1.0 : AMBIGUOUS_CONFIDENCE);
+            expenses.add(new ParsedExpense(segment.name(), segment.amount(), segment.categoryId(), date,
+                    segmentConfidence, segment.source()));
+            confidence = Math.min(confidence, segmentConfidence);
+        }
+
+        lastTranscript = text;
+        lastToday = today;
+        lastPreview = new Preview(text, List.copyOf(expenses), expenses.isEmpty() ? 0 : confidence);
+        return lastPreview;
+    }
+
+    /**
+     * Number of segments parsed since creation; cache hits are not counted.
+     */
+    public int segmentsParsed() {
+        return segmentsParsed;
+    }
+
+    /**
+     * One segment per amount: text without an amount ("lunch at the cafe and ... 250") is merged
+     * into the following segment.
+     */
+    private List<String> split(String text) {
+        List<String> result = new ArrayList<>();
+        StringBuilder pending = new StringBuilder();
+        for (String part : SEGMENT_SEPARATORS.split(text)) {
+            if (part.isBlank()) {
+                continue;
+            }
+            if (!pending.isEmpty()) {
+                pending.append(' ');
+            }
+            pending.append(part.trim());
+            if (AMOUNT.matcher(part).find()) {
+                result.add(pending.toString());
+                pending.setLength(0);
+            }
+        }
+        if (!pending.isEmpty()) {
+            result.add(pending.toString());
+        }
+        return result;
+    }
+
+    private Segment parseSegment(String text) {
+        Matcher matcher = AMOUNT.matcher(text);
+        if (!matcher.find()) {
+            return new Segment(null, null, null, 0, null);
+        }
+        // "2 coffees for 150": with more than one number the first is only a guess at the amount
+        Optional<Double> unambiguous = ExpenseTextExtractor.amount(text);
+        double amount = unambiguous.orElseGet(() -> Double.parseDouble(matcher.group(1)));
+        String name = ExpenseTextExtractor.describe(text).orElse("Voice Expense");
+
+        Categorization categorization = categorizer.apply(text);
+        double confidence = unambiguous.isPresent()
+                ? categorization.confidence()
+                : Math.min(categorization.confidence(), AMBIGUOUS_CONFIDENCE);
+        return new Segment(name, amount, categorization.categoryId(), confidence, categorization.source());
+    }
+
+    private record Segment(String name, Double amount, Long categoryId, double confidence, String source) {
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.entity.MerchantCategoryMapping;
+import com.example.user.userservice.repository.MerchantCategoryMappingRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Per-user memory of which category a user keeps for a merchant ("uber", "mcdonalds").
+ * Learned from the expense write path, including manual corrections, and from LLM results, never
+ * from its own or the classifier's guesses; a hit with an unambiguous amount and date lets the text
+ * and voice parsers skip the AI call. Only the merchant is a key, see {@link #key}, so "Uber ride"
+ * teaches "uber" and later text about a "ride" is not matched. A merchant must have
+ * been seen with the same category {@code min-hits} times before it decides on its own.
+ * Hot users are held in a bounded LRU; the {@code merchant_category_mappings} table is the source of truth.
+ */
+@Component
+@Slf4j
+public class MerchantCategoryMemory {
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern APOSTROPHES = Pattern.compile("['\u2019.]");
+    private static final Set<String> STOP_WORDS = Set.of(
+            "the", "and", "for", "from", "with", "paid", "pay", "spent", "spend", "bought", "buy", "got",
+            "today", "yesterday", "tonight", "morning", "evening", "night", "last", "this", "week", "month",
+            "rs", "inr", "rupees", "rupee", "amount", "expense", "voice", "some", "on", "at", "to", "of", "in",
+            "via", "my", "a", "an", "i");
+    // What was bought rather than where: never a merchant on their own, and they end a merchant's name
+    private static final Set<String> GENERIC_WORDS = Set.of(
+            "ride", "trip", "cab", "taxi", "auto", "order", "bill", "booking", "delivery", "food", "lunch",
+            "dinner", "breakfast", "snacks", "coffee", "tea", "ticket", "tickets", "fare", "recharge",
+            "subscription", "purchase", "shopping", "groceries", "grocery", "payment", "fee", "fees");
+    private static final Set<String> MERCHANT_PREPOSITIONS = Set.of("at", "from", "via");
+    private static final int MAX_KEY_LENGTH = 64;
+
+    private final MerchantCategoryMappingRepository mappingRepository;
+    private final CategoryCache categoryCache;
+    private final TransactionTemplate persistTemplate;
+
+    @Value("${ai.merchant-memory.max-users:5000}")
+    private int maxUsers;
+
+    @Value("${ai.merchant-memory.max-keys-per-user:500}")
+    private int maxKeysPerUser;
+
+    @Value("${ai.merchant-memory.min-hits:2}")
+    private int minHits;
+
+    private final Map<Long, UserMemory> users = Collections.synchronizedMap(new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, UserMemory> eldest) {
+            return size() > maxUsers;
+        }
+    });
+
+    public MerchantCategoryMemory(MerchantCategoryMappingRepository mappingRepository,
+                                  CategoryCache categoryCache,
+                                  PlatformTransactionManager transactionManager) {
+        this.mappingRepository = mappingRepository;
+        this.categoryCache = categoryCache;
+        this.persistTemplate = new TransactionTemplate(transactionManager);
+        this.persistTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Category the user has kept at least {@code min-hits} times for the text's merchant, if it still exists.
+     */
+    public Optional<Long> lookup(Long userId, String text) {
+        if (userId == null || text == null) {
+            return Optional.empty();
+        }
+        Optional<String> key = key(text);
+        if (key.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Entry entry = memoryOf(userId).get(key.get());
+        if (entry == null || entry.hits() < minHits || !categoryCache.snapshot().contains(entry.categoryId())) {
+            return Optional.empty();
+        }
+        log.debug("Merchant memory hit for user {}: category {} ({} hits)", userId, entry.categoryId(), entry.hits());
+        return Optional.of(entry.categoryId());
+    }
+
+    /**
+     * Records that the user kept {@code categoryId} for an expense called {@code name}. A correction
+     * (the user changed the category by hand) takes over a key even when it was learned many times.
+     * Applied after the surrounding transaction commits; failures never affect the expense write.
+     * {@code name} is the merchant when known, otherwise the expense name or text it leads.
+     */
+    public void learn(Long userId, String name, Long categoryId, boolean correction) {
+        if (userId == null || categoryId == null || name == null) {
+            return;
+        }
+        Optional<String> key = key(name);
+        if (key.isEmpty()) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(userId, key.get(), categoryId, correction);
+                }
+            });
+        } else {
+            apply(userId, key.get(), categoryId, correction);
+        }
+    }
+
+    private void apply(Long userId, String key, Long categoryId, boolean correction) {
+        UserMemory memory = memoryOf(userId);
+        Entry entry = memory.learn(key, categoryId, correction);
+        try {
+            persistTemplate.executeWithoutResult(status -> {
+                MerchantCategoryMapping mapping = mappingRepository.findByUserIdAndMerchantKey(userId, key)
+                        .orElseGet(() -> MerchantCategoryMapping.builder().userId(userId).merchantKey(key).build());
+                mapping.setCategoryId(entry.categoryId());
+                mapping.setHits(entry.hits());
+                mappingRepository.save(mapping);
+            });
+        } catch (RuntimeException e) {
+            // The in-memory copy may now be ahead of the table; reload it on next access
+            users.remove(userId);
+            log.warn("Failed to persist merchant memory for user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private UserMemory memoryOf(Long userId) {
+        UserMemory memory = users.get(userId);
+        if (memory == null) {
+            List<MerchantCategoryMapping> mappings = mappingRepository.findByUserId(userId);
+            UserMemory loaded = new UserMemory(maxKeysPerUser);
+            mappings.forEach(mapping -> loaded.put(mapping.getMerchantKey(),
+                    new Entry(mapping.getCategoryId(), mapping.getHits())));
+            memory = users.putIfAbsent(userId, loaded);
+            if (memory == null) {
+                memory = loaded;
+            }
+        }
+        return memory;
+    }
+
+    /**
+     * Normalized merchant of a name or utterance, lower-cased with apostrophes dropped
+     * ("McDonald's" -> "mcdonalds"). The merchant is the phrase after "at", "from" or "via" when
+     * there is one, else the leading words once numbers, filler and generic expense words are
+     * skipped ("paid 250 rs for Uber ride" -> "uber"). Up to two words are kept, so "Big Bazaar"
+     * and "Big Basket" stay apart.
+     */
+    static Optional<String> key(String text) {
+        String normalized = APOSTROPHES.matcher(text.toLowerCase(Locale.ROOT)).replaceAll("");
+        List<String> tokens = List.of(SEPARATORS.split(normalized));
+        int start = -1;
+        for (int i = 0; i + 1 < tokens.size() && start < 0; i++) {
+            if (MERCHANT_PREPOSITIONS.contains(tokens.get(i)) && isMerchantWord(tokens.get(i + 1), 3)) {
+                start = i + 1;
+            }
+        }
+        for (int i = 0; i < tokens.size() && start < 0; i++) {
+            if (isMerchantWord(tokens.get(i), 3)) {
+                start = i;
+            }
+        }
+        if (start < 0) {
+            return Optional.empty();
+        }
+
+        String key = tokens.get(start);
+        if (start + 1 < tokens.size() && isMerchantWord(tokens.get(start + 1), 2)) {
+            key = key + " " + tokens.get(start + 1);
+        }
+        return key.length() <= MAX_KEY_LENGTH ? Optional.of(key) : Optional.empty();
+    }
+
+    private static boolean isMerchantWord(String token, int minLength) {
+        return token.length() >= minLength && !STOP_WORDS.contains(token) && !GENERIC_WORDS.contains(token)
+                && token.chars().noneMatch(Character::isDigit);
+    }
+
+    private record Entry(Long categoryId, int hits) {
+    }
+
+    private static final class UserMemory {
+
+        private final Map<String, Entry> entries;
+
+        private UserMemory(int maxKeys) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > maxKeys;
+                }
+            };
+        }
+
+        private synchronized void put(String key, Entry entry) {
+            entries.put(key, entry);
+        }
+
+        private synchronized Entry get(String key) {
+            return entries.get(key);
+        }
+
+        private synchronized Entry learn(String key, Long categoryId, boolean correction) {
+            Entry current = entries.get(key);
+            Entry next;
+            if (current == null) {
+                next = new Entry(categoryId, 1);
+            } else if (current.categoryId().equals(categoryId)) {
+                next = new Entry(categoryId, current.hits() + 1);
+            } else if (correction) {
+                next = new Entry(categoryId, current.hits() + 1);
+            } else if (current.hits() > 1) {
+                // A single disagreeing expense weakens a habit instead of replacing it
+                next = new Entry(current.categoryId(), current.hits() - 1);
+            } else {
+                next = new Entry(categoryId, 1);
+            }
+            entries.put(key, next);
+            return next;
+        }
+    }
+}
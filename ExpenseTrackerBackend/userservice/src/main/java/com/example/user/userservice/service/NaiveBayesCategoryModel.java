@@ -0,0 +1,214 @@
+package com.example.user.userservice.service;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Multinomial Naive Bayes over hashed word unigrams and bigrams. Immutable once built; all state
+ * is primitive arrays (one flat {@code float[classes * buckets]} of log likelihoods) so a model is
+ * a few MB, predicts in microseconds and serializes as a single binary blob.
+ */
+public final class NaiveBayesCategoryModel {
+
+    private static final int MAGIC = 0x4E424331; // "NBC1"
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern APOSTROPHES = Pattern.compile("['\u2019.]");
+
+    private final int bucketBits;
+    private final long[] categoryIds;
+    private final float[] logPriors;
+    private final float[] logLikelihoods;
+    private final int trainedOn;
+
+    private NaiveBayesCategoryModel(int bucketBits, long[] categoryIds, float[] logPriors,
+                                    float[] logLikelihoods, int trainedOn) {
+        this.bucketBits = bucketBits;
+        this.categoryIds = categoryIds;
+        this.logPriors = logPriors;
+        this.logLikelihoods = logLikelihoods;
+        this.trainedOn = trainedOn;
+    }
+
+    public record Prediction(long categoryId, double confidence) {
+    }
+
+    public Prediction predict(String text) {
+        int[] features = features(text, bucketBits);
+        if (features.length == 0) {
+            return null;
+        }
+
+        int buckets = 1 << bucketBits;
+        double[] scores = new double[categoryIds.length];
+        int best = 0;
+        for (int c = 0; c < categoryIds.length; c++) {
+            double score = logPriors[c];
+            int offset = c * buckets;
+            for (int feature : features) {
+                score += logLikelihoods[offset + feature];
+            }
+            scores[c] = score;
+            if (score > scores[best]) {
+                best = c;
+            }
+        }
+
+        // Softmax of the winning class, shifted by the max for numeric stability
+        double sum = 0;
+        for (double score : scores) {
+            sum += Math.exp(score - scores[best]);
+        }
+        return new Prediction(categoryIds[best], 1.0 / sum);
+    }
+
+    public int trainedOn() {
+        return trainedOn;
+    }
+
+    public int categoryCount() {
+        return categoryIds.length;
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(bucketBits);
+        out.writeInt(trainedOn);
+        out.writeInt(categoryIds.length);
+        for (int c = 0; c < categoryIds.length; c++) {
+            out.writeLong(categoryIds[c]);
+            out.writeFloat(logPriors[c]);
+        }
+        for (float value : logLikelihoods) {
+            out.writeFloat(value);
+        }
+    }
+
+    public static NaiveBayesCategoryModel readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a category model file");
+        }
+        int bucketBits = in.readInt();
+        int trainedOn = in.readInt();
+        int classes = in.readInt();
+        if (bucketBits < 1 || bucketBits > 24 || classes < 1 || classes > 1024) {
+            throw new IOException("Corrupt category model header");
+        }
+        long[] categoryIds = new long[classes];
+        float[] logPriors = new float[classes];
+        for (int c = 0; c < classes; c++) {
+            categoryIds[c] = in.readLong();
+            logPriors[c] = in.readFloat();
+        }
+        float[] logLikelihoods = new float[classes << bucketBits];
+        for (int i = 0; i < logLikelihoods.length; i++) {
+            logLikelihoods[i] = in.readFloat();
+        }
+        return new NaiveBayesCategoryModel(bucketBits, categoryIds, logPriors, logLikelihoods, trainedOn);
+    }
+
+    /**
+     * Hashed feature buckets of a text: lower-cased word unigrams and adjacent-word bigrams,
+     * with apostrophes and dots dropped so "McDonald's" and "mcdonalds" share a feature.
+     */
+    static int[] features(String text, int bucketBits) {
+        if (text == null || text.isBlank()) {
+            return new int[0];
+        }
+        String[] words = SEPARATORS.split(APOSTROPHES.matcher(text.toLowerCase(Locale.ROOT)).replaceAll("").trim());
+        int mask = (1 << bucketBits) - 1;
+        int[] features = new int[words.length * 2];
+        int count = 0;
+        String previous = null;
+        for (String word : words) {
+            if (word.isEmpty() || word.chars().allMatch(Character::isDigit)) {
+                previous = null;
+                continue;
+            }
+            features[count++] = mix(word.hashCode()) & mask;
+            if (previous != null) {
+                features[count++] = mix(previous.hashCode() * 31 + word.hashCode() + 0x9E3779B9) & mask;
+            }
+            previous = word;
+        }
+        return Arrays.copyOf(features, count);
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Accumulates feature counts per category; {@link #build()} turns them into a model with
+     * Laplace smoothing. Not thread-safe, meant for one training pass.
+     */
+    public static final class Trainer {
+
+        private final int bucketBits;
+        private final double alpha;
+        private final Map<Long, int[]> counts = new LinkedHashMap<>();
+        private final Map<Long, int[]> documents = new LinkedHashMap<>();
+        private int trainedOn;
+
+        public Trainer(int bucketBits, double alpha) {
+            this.bucketBits = bucketBits;
+            this.alpha = alpha;
+        }
+
+        public void add(String text, long categoryId) {
+            int[] features = features(text, bucketBits);
+            if (features.length == 0) {
+                return;
+            }
+            int[] classCounts = counts.computeIfAbsent(categoryId, id -> new int[1 << bucketBits]);
+            for (int feature : features) {
+                classCounts[feature]++;
+            }
+            documents.computeIfAbsent(categoryId, id -> new int[1])[0]++;
+            trainedOn++;
+        }
+
+        public int trainedOn() {
+            return trainedOn;
+        }
+
+        public NaiveBayesCategoryModel build() {
+            if (counts.isEmpty()) {
+                throw new IllegalStateException("No training samples");
+            }
+            int buckets = 1 << bucketBits;
+            int classes = counts.size();
+            long[] categoryIds = new long[classes];
+            float[] logPriors = new float[classes];
+            float[] logLikelihoods = new float[classes * buckets];
+
+            int c = 0;
+            for (Map.Entry<Long, int[]> entry : counts.entrySet()) {
+                categoryIds[c] = entry.getKey();
+                logPriors[c] = (float) Math.log((double) documents.get(entry.getKey())[0] / trainedOn);
+
+                int[] classCounts = entry.getValue();
+                long total = 0;
+                for (int count : classCounts) {
+                    total += count;
+                }
+                double denominator = Math.log(total + alpha * buckets);
+                int offset = c * buckets;
+                for (int b = 0; b < buckets; b++) {
+                    logLikelihoods[offset + b] = (float) (Math.log(classCounts[b] + alpha) - denominator);
+                }
+                c++;
+            }
+            return new NaiveBayesCategoryModel(bucketBits, categoryIds, logPriors, logLikelihoods, trainedOn);
+        }
+    }
+}
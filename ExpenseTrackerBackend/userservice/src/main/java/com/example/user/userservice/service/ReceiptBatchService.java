@@ -0,0 +1,620 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.dto.ExpenseRequest;
+import com.example.user.userservice.dto.ExpenseResponse;
+import com.example.user.userservice.dto.ReceiptBatchItemResult;
+import com.example.user.userservice.dto.ReceiptBatchResponse;
+import com.example.user.userservice.entity.Receipt;
+import com.example.user.userservice.exception.ExpenseException;
+import com.example.user.userservice.repository.ExpenseRepository;
+import com.example.user.userservice.repository.ReceiptRepository;
+import com.example.user.userservice.service.FileStorageService.StagedUpload;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Month-end bulk upload: many receipt images, loose or in ZIPs, with optional expense data per
+ * file name. Every file becomes a receipt record; files that come with expense data also become
+ * expenses, all in one transaction at the end.
+ * <p>
+ * Files are streamed to storage one by one (a ZIP entry straight from the archive, never
+ * unpacked in memory) and handed to a bounded worker pool as soon as they are staged. The
+ * workers store, run the same extraction as {@link ReceiptProcessingService} (variants plus a
+ * category suggestion) and check for receipts already on an expense. A batch therefore takes
+ * about as long as its slowest few files rather than their sum. When the pool is saturated the
+ * request thread runs the next file itself, which throttles reading the upload.
+ * <p>
+ * Progress is kept in memory on the instance running the batch; {@code GET .../batch/{batchId}}
+ * reads it while the upload is still in flight.
+ */
+@Service
+@Slf4j
+public class ReceiptBatchService {
+
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+
+    private static final Pattern BATCH_ID = Pattern.compile("[A-Za-z0-9-]{1,64}");
+
+    private final FileStorageService fileStorageService;
+    private final ReceiptProcessingService receiptProcessingService;
+    private final ExpenseService expenseService;
+    private final ExpenseRepository expenseRepository;
+    private final ReceiptRepository receiptRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolExecutor workers;
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+
+    @Value("${app.receipts.batch.max-files:100}")
+    private int maxFiles;
+
+    @Value("${app.receipts.batch.timeout-ms:300000}")
+    private long timeoutMs;
+
+    @Value("${app.receipts.batch.retention-minutes:15}")
+    private long retentionMinutes;
+
+    public ReceiptBatchService(FileStorageService fileStorageService,
+                               ReceiptProcessingService receiptProcessingService,
+                               ExpenseService expenseService,
+                               ExpenseRepository expenseRepository,
+                               ReceiptRepository receiptRepository,
+                               ObjectMapper objectMapper,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${app.receipts.batch.threads:4}") int threads) {
+        this.fileStorageService = fileStorageService;
+        this.receiptProcessingService = receiptProcessingService;
+        this.expenseService = expenseService;
+        this.expenseRepository = expenseRepository;
+        this.receiptRepository = receiptRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        AtomicInteger threadCount = new AtomicInteger();
+        int size = Math.max(1, threads);
+        this.workers = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(size), r -> {
+            Thread thread = new Thread(r, "receipt-batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Runs a whole batch and returns its per-file results.
+     *
+     * @param batchId  client-chosen ID to poll progress with; generated when null
+     * @param expenses expense data by file name (a ZIP entry's name without its folders)
+     */
+    public ReceiptBatchResponse upload(Long userId, String batchId, List<MultipartFile> files,
+                                       Map<String, ExpenseRequest> expenses, boolean allowDuplicate) {
+        if (files == null || files.isEmpty()) {
+            throw new ExpenseException("No receipts uploaded");
+        }
+        String id = batchId != null ? batchId : UUID.randomUUID().toString();
+        if (!BATCH_ID.matcher(id).matches()) {
+            throw new ExpenseException("batchId must be 1-64 letters, digits or dashes");
+        }
+        Batch batch = new Batch(id, userId);
+        if (batches.putIfAbsent(id, batch) != null) {
+            throw new ExpenseException("Batch already exists: " + id);
+        }
+
+        String directory = "receipts/" + userId;
+        Map<String, ExpenseRequest> expenseData = expenses != null ? expenses : Map.of();
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        try {
+            for (MultipartFile file : files) {
+                String name = baseName(file.getOriginalFilename());
+                if (name.toLowerCase().endsWith(".zip")) {
+                    try (ZipInputStream zip = new ZipInputStream(file.getInputStream())) {
+                        for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                            String entryName = baseName(entry.getName());
+                            if (entry.isDirectory() || entryName.isEmpty() || entryName.startsWith(".")
+                                    || entry.getName().startsWith("__MACOSX/")) {
+                                continue;
+                            }
+                            Item item = batch.add(entryName, expenseData.get(entryName), maxFiles);
+                            StagedUpload staged;
+                            try {
+                                staged = fileStorageService.stageUpload(new NonClosingInputStream(zip));
+                            } catch (RuntimeException e) {
+                                item.fail(e.getMessage());
+                                continue;
+                            }
+                            tasks.add(submit(userId, item, allowDuplicate,
+                                    () -> fileStorageService.storeStagedUpload(staged, entryName, null, directory),
+                                    () -> fileStorageService.discardStagedUpload(staged)));
+                        }
+                    } catch (IOException e) {
+                        throw new ExpenseException("Failed to read " + name + ": " + e.getMessage());
+                    }
+                } else {
+                    Item item = batch.add(name, expenseData.get(name), maxFiles);
+                    tasks.add(submit(userId, item, allowDuplicate,
+                            () -> fileStorageService.storeFile(file, directory), () -> { }));
+                }
+            }
+            await(batch, tasks);
+            createRecords(userId, batch);
+        } catch (RuntimeException e) {
+            // Nothing is created: release whatever was stored, including by stragglers finishing later
+            batch.abort(e.getMessage(), this::releaseQuietly);
+            log.warn("Receipt batch {} for user ID: {} failed: {}", id, userId, e.getMessage());
+            throw e;
+        } finally {
+            batch.finish();
+        }
+
+        ReceiptBatchResponse response = batch.snapshot(fileStorageService);
+        log.info("Receipt batch {} for user ID: {}: {} files, {} expenses, {} receipts only, {} duplicates, {} failed in {} ms",
+                id, userId, response.getTotal(), response.getCreated(), response.getReceiptsOnly(),
+                response.getDuplicates(), response.getFailed(), response.getElapsedMs());
+        return response;
+    }
+
+    public ReceiptBatchResponse getBatch(Long userId, String batchId) {
+        Batch batch = batches.get(batchId);
+        if (batch == null || !batch.userId.equals(userId)) {
+            throw new ExpenseException("Batch not found: " + batchId);
+        }
+        return batch.snapshot(fileStorageService);
+    }
+
+    @Scheduled(fixedDelayString = "${app.receipts.batch.cleanup-interval-ms:300000}")
+    public void removeFinishedBatches() {
+        Instant cutoff = Instant.now().minus(Duration.ofMinutes(retentionMinutes));
+        batches.values().removeIf(batch -> batch.finishedBefore(cutoff));
+    }
+
+    private interface Store {
+        String store();
+    }
+
+    private CompletableFuture<Void> submit(Long userId, Item item, boolean allowDuplicate, Store store, Runnable discard) {
+        return CompletableFuture.runAsync(() -> process(userId, item, allowDuplicate, store, discard), workers);
+    }
+
+    private void process(Long userId, Item item, boolean allowDuplicate, Store store, Runnable discard) {
+        if (item.isClosed()) {
+            discard.run(); // timed out while queued
+            return;
+        }
+        ExpenseRequest expense = item.expense;
+        String path = null;
+        try {
+            long start = System.nanoTime();
+            path = store.store();
+            if (!item.stored(path, millisSince(start))) {
+                releaseQuietly(path); // the batch gave up on this file meanwhile
+                return;
+            }
+
+            start = System.nanoTime();
+            String extracted = receiptProcessingService.extract(Receipt.builder()
+                    .userId(userId)
+                    .imageUrl(path)
+                    .extractedData(seed(expense))
+                    .build());
+            JsonNode data = objectMapper.readTree(extracted);
+            Long categoryId = data.hasNonNull("categoryId") ? data.get("categoryId").asLong() : null;
+            String categorySource = data.hasNonNull("categorySource") ? data.get("categorySource").asText() : null;
+
+            if (expense != null && !allowDuplicate && hasDuplicate(userId, path)) {
+                if (item.duplicate(millisSince(start))) {
+                    releaseQuietly(path);
+                }
+                return;
+            }
+            item.extracted(extracted, categoryId, categorySource, millisSince(start));
+        } catch (RuntimeException | JsonProcessingException e) {
+            // A closed item's file was already released by whoever closed it
+            if (item.fail(e.getMessage()) && path != null) {
+                releaseQuietly(path);
+            }
+        }
+    }
+
+    // Same rule as a single upload: identical bytes or a perceptual match already on an expense
+    private boolean hasDuplicate(Long userId, String path) {
+        List<String> lookalikes = new ArrayList<>();
+        lookalikes.add(path);
+        lookalikes.addAll(fileStorageService.findSimilarImages(path, "receipts/" + userId));
+        return !expenseRepository.findByUserIdAndReceiptPathIn(userId, lookalikes).isEmpty();
+    }
+
+    private void await(Batch batch, List<CompletableFuture<Void>> tasks) {
+        try {
+            CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            batch.failUnfinished("Timed out after " + timeoutMs + " ms", this::releaseQuietly);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Receipt batch task failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExpenseException("Receipt batch interrupted");
+        }
+    }
+
+    /**
+     * One transaction for the whole batch: every expense and every receipt record, or none.
+     */
+    private void createRecords(Long userId, Batch batch) {
+        List<Item> withExpense = new ArrayList<>();
+        List<ExpenseRequest> requests = new ArrayList<>();
+        List<String> receiptPaths = new ArrayList<>();
+        List<Item> receiptOnly = new ArrayList<>();
+        for (Item item : batch.extractedItems()) {
+            ExpenseRequest expense = item.expense;
+            if (expense != null && (expense.getName() == null || expense.getName().isBlank()
+                    || expense.getAmount() == null || expense.getAmount() <= 0 || expense.getDate() == null)) {
+                releaseQuietly(item.close("Expense needs a name, a positive amount and a date"));
+            } else if (expense != null && item.categoryId() != null) {
+                requests.add(ExpenseRequest.builder()
+                        .name(expense.getName())
+                        .description(expense.getDescription())
+                        .categoryId(item.categoryId())
+                        .amount(expense.getAmount())
+                        .date(expense.getDate())
+                        .paymentMethod(expense.getPaymentMethod())
+                        .tags(expense.getTags())
+                        .source("receipt")
+                        .build());
+                receiptPaths.add(item.path());
+                withExpense.add(item);
+            } else {
+                receiptOnly.add(item);
+            }
+        }
+        if (withExpense.isEmpty() && receiptOnly.isEmpty()) {
+            return;
+        }
+
+        List<Receipt> saved = transactionTemplate.execute(status -> {
+            List<ExpenseResponse> created = requests.isEmpty() ? List.of()
+                    : expenseService.createExpensesWithReceipts(userId, requests, receiptPaths);
+            List<Receipt> receipts = new ArrayList<>();
+            for (int i = 0; i < withExpense.size(); i++) {
+                receipts.add(receipt(userId, withExpense.get(i), Receipt.LINKED, created.get(i).getId()));
+            }
+            for (Item item : receiptOnly) {
+                receipts.add(receipt(userId, item, Receipt.EXTRACTED, null));
+            }
+            return receiptRepository.saveAll(receipts);
+        });
+
+        // Only marked once committed, so a failed commit still releases every file
+        for (int i = 0; i < withExpense.size(); i++) {
+            withExpense.get(i).created(saved.get(i).getId(), saved.get(i).getExpenseId());
+        }
+        for (int i = 0; i < receiptOnly.size(); i++) {
+            receiptOnly.get(i).receiptOnly(saved.get(withExpense.size() + i).getId());
+        }
+    }
+
+    private Receipt receipt(Long userId, Item item, String status, Long expenseId) {
+        return Receipt.builder()
+                .userId(userId)
+                .fileName(item.fileName)
+                .imageUrl(item.path())
+                .status(status)
+                .extractedData(item.extractedData())
+                .expenseId(expenseId)
+                .attempts(0)
+                .nextAttemptAt(LocalDateTime.now())
+                .build();
+    }
+
+    // The client's expense data stands in for OCR fields, so the category suggestion sees the merchant
+    // and a category the client chose is kept as is
+    private String seed(ExpenseRequest expense) {
+        if (expense == null) {
+            return null;
+        }
+        ObjectNode data = objectMapper.createObjectNode();
+        if (expense.getName() != null) {
+            data.put("merchant", expense.getName());
+        }
+        if (expense.getAmount() != null) {
+            data.put("amount", expense.getAmount());
+        }
+        if (expense.getDate() != null) {
+            data.put("date", expense.getDate().toString());
+        }
+        if (expense.getCategoryId() != null) {
+            data.put("categoryId", expense.getCategoryId());
+            data.put("categorySource", "REQUEST");
+        }
+        return data.toString();
+    }
+
+    private void releaseQuietly(String path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            fileStorageService.deleteFile(path);
+        } catch (RuntimeException e) {
+            log.warn("Failed to release {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static long millisSince(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static String baseName(String name) {
+        if (name == null) {
+            return "";
+        }
+        String normalized = name.replace('\\', '/');
+        return normalized.substring(normalized.lastIndexOf('/') + 1);
+    }
+
+    // The storage backend closes what it reads; a ZIP entry must leave the archive open
+    private static final class NonClosingInputStream extends FilterInputStream {
+
+        NonClosingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * One file of a batch. Workers and the request thread update it; once the batch closes it
+     * (timeout or failure) later updates are refused and the worker releases what it stored.
+     */
+    private static final class Item {
+
+        final int index;
+        final String fileName;
+        final ExpenseRequest expense;
+        private String status = "QUEUED";
+        private String path;
+        private String extractedData;
+        private Long categoryId;
+        private String categorySource;
+        private Long receiptId;
+        private Long expenseId;
+        private String error;
+        private Long storeMs;
+        private Long extractMs;
+        private boolean closed;
+
+        Item(int index, String fileName, ExpenseRequest expense) {
+            this.index = index;
+            this.fileName = fileName;
+            this.expense = expense;
+        }
+
+        synchronized boolean stored(String path, long storeMs) {
+            if (closed) {
+                return false;
+            }
+            this.status = "STORED";
+            this.path = path;
+            this.storeMs = storeMs;
+            return true;
+        }
+
+        synchronized void extracted(String extractedData, Long categoryId, String categorySource, long extractMs) {
+            if (!closed) {
+                this.status = "EXTRACTED";
+                this.extractedData = extractedData;
+                this.categoryId = categoryId;
+                this.categorySource = categorySource;
+                this.extractMs = extractMs;
+            }
+        }
+
+        /**
+         * @return false when the item was already closed
+         */
+        synchronized boolean duplicate(long extractMs) {
+            if (closed) {
+                return false;
+            }
+            this.status = "DUPLICATE";
+            this.error = "Looks like a receipt already on an expense";
+            this.extractMs = extractMs;
+            this.path = null;
+            this.closed = true;
+            return true;
+        }
+
+        /**
+         * @return false when the item was already closed
+         */
+        synchronized boolean fail(String error) {
+            if (closed) {
+                return false;
+            }
+            this.status = "FAILED";
+            this.error = error;
+            this.path = null;
+            this.closed = true;
+            return true;
+        }
+
+        synchronized void created(Long receiptId, Long expenseId) {
+            this.status = "CREATED";
+            this.receiptId = receiptId;
+            this.expenseId = expenseId;
+            this.closed = true;
+        }
+
+        synchronized void receiptOnly(Long receiptId) {
+            this.status = "RECEIPT_ONLY";
+            this.receiptId = receiptId;
+            this.closed = true;
+        }
+
+        /**
+         * Closes an item that is not finished, returning what it had stored for release.
+         */
+        synchronized String close(String error) {
+            if (closed) {
+                return null;
+            }
+            String stored = path;
+            fail(error);
+            return stored;
+        }
+
+        synchronized boolean isClosed() {
+            return closed;
+        }
+
+        synchronized String status() {
+            return status;
+        }
+
+        synchronized String path() {
+            return path;
+        }
+
+        synchronized String extractedData() {
+            return extractedData;
+        }
+
+        synchronized Long categoryId() {
+            return categoryId;
+        }
+
+        synchronized ReceiptBatchItemResult toResult(FileStorageService fileStorageService) {
+            return ReceiptBatchItemResult.builder()
+                    .index(index)
+                    .fileName(fileName)
+                    .status(status)
+                    .receiptId(receiptId)
+                    .expenseId(expenseId)
+                    .receiptUrl(path == null ? null : fileStorageService.getFileUrl(path))
+                    .categoryId(categoryId)
+                    .categorySource(categorySource)
+                    .error(error)
+                    .storeMs(storeMs)
+                    .extractMs(extractMs)
+                    .build();
+        }
+    }
+
+    private static final class Batch {
+
+        final String id;
+        final Long userId;
+        final long startNanos = System.nanoTime();
+        private final List<Item> items = new ArrayList<>();
+        private volatile String status = RUNNING;
+        private volatile Long elapsedMs;
+        private volatile Instant finishedAt;
+
+        Batch(String id, Long userId) {
+            this.id = id;
+            this.userId = userId;
+        }
+
+        synchronized Item add(String fileName, ExpenseRequest expense, int maxFiles) {
+            if (items.size() >= maxFiles) {
+                throw new ExpenseException("A batch holds at most " + maxFiles + " receipts");
+            }
+            Item item = new Item(items.size(), fileName, expense);
+            items.add(item);
+            return item;
+        }
+
+        synchronized List<Item> extractedItems() {
+            return items.stream().filter(item -> "EXTRACTED".equals(item.status())).toList();
+        }
+
+        synchronized void failUnfinished(String error, Consumer<String> release) {
+            for (Item item : items) {
+                String status = item.status();
+                if ("QUEUED".equals(status) || "STORED".equals(status)) {
+                    release.accept(item.close(error));
+                }
+            }
+        }
+
+        synchronized void abort(String error, Consumer<String> release) {
+            for (Item item : items) {
+                release.accept(item.close(error == null ? "Batch failed" : error));
+            }
+            status = FAILED;
+        }
+
+        void finish() {
+            elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            if (RUNNING.equals(status)) {
+                status = COMPLETED;
+            }
+            finishedAt = Instant.now();
+        }
+
+        boolean finishedBefore(Instant cutoff) {
+            Instant finished = finishedAt;
+            return finished != null && finished.isBefore(cutoff);
+        }
+
+        synchronized ReceiptBatchResponse snapshot(FileStorageService fileStorageService) {
+            List<ReceiptBatchItemResult> results = items.stream().map(item -> item.toResult(fileStorageService)).toList();
+            return ReceiptBatchResponse.builder()
+                    .batchId(id)
+                    .status(status)
+                    .total(results.size())
+                    .finished((int) results.stream().filter(r -> !"QUEUED".equals(r.getStatus()) && !"STORED".equals(r.getStatus())).count())
+                    .created(count(results, "CREATED"))
+                    .receiptsOnly(count(results, "RECEIPT_ONLY"))
+                    .duplicates(count(results, "DUPLICATE"))
+                    .failed(count(results, "FAILED"))
+                    .elapsedMs(elapsedMs != null ? elapsedMs : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos))
+                    .items(results)
+                    .build();
+        }
+
+        private static int count(List<ReceiptBatchItemResult> results, String status) {
+            return (int) results.stream().filter(r -> status.equals(r.getStatus())).count();
+        }
+    }
+}
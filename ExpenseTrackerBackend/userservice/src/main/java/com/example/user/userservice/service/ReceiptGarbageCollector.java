@@ -0,0 +1,290 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.repository.ExpenseRepository;
+import com.example.user.userservice.repository.ReceiptRepository;
+import com.example.user.userservice.repository.StoredFileRepository;
+import com.example.user.userservice.service.FileStorageService.Variant;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * Reclaims receipt files no expense or receipt record points at: left behind when an upload failed after its
+ * expense committed, when a replacement failed halfway, or when a delete threw. Each
+ * {@code receipts/{userId}/} directory is swept on its own worker. Its referenced paths are loaded
+ * from {@code expenses.receipt_path} and {@code receipts.image_url} in keyset pages, the directory is walked once, and files
+ * that are unreferenced and older than the grace period are deleted or moved under
+ * {@code .quarantine/}, at a bounded rate. Scheduled sweeps run on their own thread, never on the
+ * shared scheduler thread.
+ * <p>
+ * A content-addressed file's {@code stored_files} row is dropped first, and only if no upload has
+ * touched it within the grace period. The delete waits on the row lock of an upload that is
+ * re-referencing the same bytes right now, then spares the file.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReceiptGarbageCollector {
+
+    static final String RECEIPTS_ROOT = "receipts/";
+    static final String QUARANTINE_ROOT = ".quarantine/";
+
+    private final ReceiptStorageBackend storageBackend;
+    private final ExpenseRepository expenseRepository;
+    private final ReceiptRepository receiptRepository;
+    private final StoredFileRepository storedFileRepository;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ExecutorService sweeper = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "receipt-gc-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long nextReclaimAt;
+
+    @Value("${app.file.gc.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.file.gc.grace-hours:24}")
+    private long graceHours;
+
+    @Value("${app.file.gc.quarantine:false}")
+    private boolean quarantine;
+
+    @Value("${app.file.gc.threads:4}")
+    private int threads;
+
+    @Value("${app.file.gc.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${app.file.gc.max-reclaims-per-second:20}")
+    private int maxReclaimsPerSecond;
+
+    public record Report(int directories, long filesScanned, long filesReclaimed, long bytesReclaimed,
+                         long filesSpared, long errors, Duration duration) {
+    }
+
+    private record Candidate(String key, long size) {
+    }
+
+    private static final class Counters {
+        final LongAdder scanned = new LongAdder();
+        final LongAdder reclaimed = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder spared = new LongAdder();
+        final LongAdder errors = new LongAdder();
+    }
+
+    @Scheduled(initialDelayString = "${app.file.gc.initial-delay-ms:600000}",
+               fixedDelayString = "${app.file.gc.interval-ms:21600000}")
+    public void scheduledSweep() {
+        // A rate-limited sweep can run for hours; the shared scheduler thread must not wait for it
+        if (enabled && !running.get()) {
+            sweeper.execute(this::sweep);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Runs one sweep; empty when a sweep is already running or the storage tree could not be listed.
+     */
+    public Optional<Report> sweep() {
+        if (!running.compareAndSet(false, true)) {
+            log.info("Receipt sweep already running, skipping");
+            return Optional.empty();
+        }
+        long start = System.nanoTime();
+        Instant fileCutoff = Instant.now().minus(Duration.ofHours(graceHours));
+        LocalDateTime rowCutoff = LocalDateTime.now().minusHours(graceHours);
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "receipt-gc-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        try {
+            List<String> directories = storageBackend.listPrefixes(RECEIPTS_ROOT);
+            Counters counters = new Counters();
+            List<Future<?>> sweeps = new ArrayList<>();
+            for (String directory : directories) {
+                sweeps.add(workers.submit(() -> {
+                    sweepDirectory(directory, fileCutoff, rowCutoff, counters);
+                    return null;
+                }));
+            }
+            for (int i = 0; i < sweeps.size(); i++) {
+                try {
+                    sweeps.get(i).get();
+                } catch (ExecutionException e) {
+                    counters.errors.increment();
+                    log.warn("Sweep of {} failed: {}", directories.get(i), e.getCause().getMessage());
+                }
+            }
+
+            Report report = new Report(directories.size(), counters.scanned.sum(), counters.reclaimed.sum(),
+                    counters.bytes.sum(), counters.spared.sum(), counters.errors.sum(),
+                    Duration.ofNanos(System.nanoTime() - start));
+            log.info("Receipt sweep {} {} orphaned files ({} bytes) in {} directories; scanned {}, spared {}, errors {}, took {} ms",
+                    quarantine ? "quarantined" : "deleted", report.filesReclaimed(), report.bytesReclaimed(),
+                    report.directories(), report.filesScanned(), report.filesSpared(), report.errors(),
+                    report.duration().toMillis());
+            return Optional.of(report);
+
+        } catch (IOException e) {
+            log.warn("Receipt sweep could not list {}: {}", RECEIPTS_ROOT, e.getMessage());
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } finally {
+            workers.shutdownNow();
+            running.set(false);
+        }
+    }
+
+    private void sweepDirectory(String directory, Instant fileCutoff, LocalDateTime rowCutoff,
+                                Counters counters) throws IOException, InterruptedException {
+        Set<String> referenced = referencedBases(directory);
+
+        Map<String, List<Candidate>> orphans = new HashMap<>();
+        storageBackend.walk(directory, (key, info) -> {
+            counters.scanned.increment();
+            String base = base(key);
+            if (!referenced.contains(base) && info.lastModified().isBefore(fileCutoff)) {
+                orphans.computeIfAbsent(base, b -> new ArrayList<>()).add(new Candidate(key, info.size()));
+            }
+        });
+
+        for (List<Candidate> group : orphans.values()) {
+            // Originals first: variants go only once their original has
+            group.sort(Comparator.comparing(candidate -> isVariant(candidate.key())));
+            for (Candidate candidate : group) {
+                if (!isVariant(candidate.key()) && !releaseRow(candidate.key(), rowCutoff)) {
+                    counters.spared.increment();
+                    break;
+                }
+                reclaim(candidate, counters);
+            }
+        }
+    }
+
+    /**
+     * Bases (path without extension or variant suffix) of every expense receipt and receipt image
+     * under {@code directory}, so {@code x.png}, {@code x.thumb.jpg} and {@code x.preview.jpg} match.
+     */
+    private Set<String> referencedBases(String directory) {
+        Set<String> bases = new HashSet<>();
+        collectBases(bases, (after, page) -> expenseRepository.findReceiptPaths(directory + "%", after, page));
+        collectBases(bases, (after, page) -> receiptRepository.findImagePaths(directory + "%", after, page));
+        return bases;
+    }
+
+    private void collectBases(Set<String> bases, BiFunction<String, Pageable, List<String>> pathsAfter) {
+        String after = "";
+        while (true) {
+            List<String> page = pathsAfter.apply(after, PageRequest.of(0, batchSize));
+            for (String path : page) {
+                bases.add(base(path));
+            }
+            if (page.size() < batchSize) {
+                return;
+            }
+            after = page.get(page.size() - 1);
+        }
+    }
+
+    /**
+     * @return false when the file is tracked and an upload touched its row within the grace period
+     */
+    private boolean releaseRow(String key, LocalDateTime rowCutoff) {
+        storedFileRepository.deleteIfUntouchedSince(key, rowCutoff);
+        return !storedFileRepository.existsByPath(key);
+    }
+
+    private void reclaim(Candidate candidate, Counters counters) throws InterruptedException {
+        awaitReclaimSlot();
+        try {
+            if (quarantine) {
+                storageBackend.moveIfAbsent(candidate.key(), QUARANTINE_ROOT + candidate.key());
+            } else {
+                storageBackend.delete(candidate.key());
+            }
+            counters.reclaimed.increment();
+            counters.bytes.add(candidate.size());
+            log.debug("Reclaimed orphaned receipt file {} ({} bytes)", candidate.key(), candidate.size());
+        } catch (IOException | RuntimeException e) {
+            counters.errors.increment();
+            log.warn("Failed to reclaim {}: {}", candidate.key(), e.getMessage());
+        }
+    }
+
+    // Shared by all workers: the sweep must not compete with uploads for storage I/O
+    private void awaitReclaimSlot() throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, maxReclaimsPerSecond);
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long slot = nextReclaimAt - now > 0 ? nextReclaimAt : now;
+            nextReclaimAt = slot + intervalNanos;
+            wait = slot - now;
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    static String base(String key) {
+        String suffix = variantSuffix(key);
+        if (suffix != null) {
+            return key.substring(0, key.length() - suffix.length());
+        }
+        int dot = key.lastIndexOf('.');
+        int slash = key.lastIndexOf('/');
+        return dot > slash ? key.substring(0, dot) : key;
+    }
+
+    private static boolean isVariant(String key) {
+        return variantSuffix(key) != null;
+    }
+
+    private static String variantSuffix(String key) {
+        for (Variant variant : Variant.values()) {
+            String suffix = "." + variant.suffix() + ".jpg";
+            if (variant != Variant.ORIGINAL && key.endsWith(suffix)) {
+                return suffix;
+            }
+        }
+        return null;
+    }
+}
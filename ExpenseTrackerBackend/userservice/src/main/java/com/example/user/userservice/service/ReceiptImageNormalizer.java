@@ -0,0 +1,334 @@
+package com.example.user.userservice.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optional ingest stage for receipt photos ({@code app.file.normalize.enabled}). Each image is
+ * decoded with subsampling to just above {@code max-dimension}. It is then turned upright from its
+ * EXIF orientation, scaled to fit, and re-encoded as a JPEG without metadata. A 4000px phone
+ * photo of a few megabytes usually ends up several times smaller with nothing lost for reading
+ * a receipt.
+ * <p>
+ * Decodes run on a bounded pool. A shared budget of decoded pixels caps their combined memory.
+ * When the pool is saturated, the budget is exhausted or the image cannot be read, the upload is
+ * stored as it came: normalization never fails an upload.
+ */
+@Service
+@Slf4j
+public class ReceiptImageNormalizer {
+
+    private static final Set<String> SOURCE_EXTENSIONS = Set.of("jpg", "jpeg", "png", "bmp");
+    // APP1 segments are at most 64KB; EXIF sits in the first one or two
+    private static final int EXIF_SCAN_LIMIT = 128 * 1024;
+    private static final int KILOPIXEL = 1024;
+
+    private final ExecutorService workers;
+    private final Semaphore pixelBudget;
+    private final int budgetKilopixels;
+
+    @Value("${app.file.normalize.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.file.normalize.max-dimension:2000}")
+    private int maxDimension;
+
+    @Value("${app.file.normalize.jpeg-quality:0.85}")
+    private float jpegQuality;
+
+    @Value("${app.file.normalize.timeout-ms:15000}")
+    private long timeoutMs;
+
+    public ReceiptImageNormalizer(@Value("${app.file.normalize.threads:2}") int threads,
+                                  @Value("${app.file.normalize.queue-capacity:50}") int queueCapacity,
+                                  @Value("${app.file.normalize.max-decoded-megapixels:48}") int maxDecodedMegapixels) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "receipt-normalize-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.budgetKilopixels = maxDecodedMegapixels * KILOPIXEL;
+        this.pixelBudget = new Semaphore(budgetKilopixels);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    public boolean appliesTo(String extension) {
+        return enabled && extension != null && SOURCE_EXTENSIONS.contains(extension.toLowerCase());
+    }
+
+    /**
+     * Normalizes an image into a new JPEG temp file in {@code tempDir} (the default temp
+     * directory when null), which the caller owns. Empty when the source should be stored as is:
+     * not decodable, no capacity, or already upright, small enough and not bloated by re-encoding.
+     */
+    public Optional<Path> normalize(InputStream source, long sourceSize, Path tempDir) {
+        Future<Optional<Path>> result;
+        try {
+            result = workers.submit(() -> normalizeNow(source, sourceSize, tempDir));
+        } catch (RejectedExecutionException e) {
+            log.warn("Normalization queue full, storing receipt as uploaded");
+            return Optional.empty();
+        }
+        try {
+            return result.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            log.warn("Normalization took over {} ms, storing receipt as uploaded", timeoutMs);
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            log.warn("Normalization failed, storing receipt as uploaded: {}", e.getCause().getMessage());
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+    }
+
+    Optional<Path> normalizeNow(InputStream source, long sourceSize, Path tempDir) throws IOException, InterruptedException {
+        BufferedInputStream in = new BufferedInputStream(source, 64 * 1024);
+        in.mark(EXIF_SCAN_LIMIT);
+        int orientation = readExifOrientation(in, EXIF_SCAN_LIMIT);
+        in.reset();
+
+        try (ImageInputStream input = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                return Optional.empty();
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int longEdge = Math.max(width, height);
+
+                // Every step-th pixel keeps the long edge at or above the target; coarser only if the budget demands it
+                int step = Math.max(1, longEdge / maxDimension);
+                int permits = kilopixels(width, height, step);
+                while (permits > budgetKilopixels) {
+                    permits = kilopixels(width, height, ++step);
+                }
+                if (!pixelBudget.tryAcquire(permits, timeoutMs, TimeUnit.MILLISECONDS)) {
+                    log.warn("Decoded-pixel budget exhausted, storing {}x{} receipt as uploaded", width, height);
+                    return Optional.empty();
+                }
+                try {
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    param.setSourceSubsampling(step, step, 0, 0);
+                    BufferedImage decoded = reader.read(0, param);
+                    BufferedImage upright = render(decoded, orientation, maxDimension);
+
+                    Path target = tempDir != null
+                            ? Files.createTempFile(tempDir, "normalized-", ".jpg")
+                            : Files.createTempFile("receipt-normalized-", ".jpg");
+                    writeJpeg(upright, target);
+
+                    boolean reshaped = orientation > 1 || longEdge > maxDimension;
+                    if (!reshaped && Files.size(target) >= sourceSize) {
+                        // Already upright and small: re-encoding would only grow it (e.g. a PNG screenshot)
+                        Files.deleteIfExists(target);
+                        return Optional.empty();
+                    }
+                    log.info("Normalized {}x{} receipt ({} bytes) to {}x{} ({} bytes)", width, height, sourceSize,
+                            upright.getWidth(), upright.getHeight(), Files.size(target));
+                    return Optional.of(target);
+                } finally {
+                    pixelBudget.release(permits);
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // The decoded image plus the output, which is no larger than either it or maxDimension squared
+    private int kilopixels(int width, int height, int step) {
+        long decoded = (long) ceilDiv(width, step) * ceilDiv(height, step);
+        long output = Math.min(decoded, (long) maxDimension * maxDimension);
+        return (int) Math.min(Integer.MAX_VALUE, (decoded + output + KILOPIXEL - 1) / KILOPIXEL);
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    /**
+     * Applies the EXIF orientation and scales to fit {@code maxEdge} in a single draw.
+     */
+    static BufferedImage render(BufferedImage source, int orientation, int maxEdge) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        boolean swap = orientation >= 5 && orientation <= 8;
+        double scale = Math.min(1.0, (double) maxEdge / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round((swap ? height : width) * scale));
+        int targetHeight = Math.max(1, (int) Math.round((swap ? width : height) * scale));
+
+        AffineTransform transform = AffineTransform.getScaleInstance(
+                (double) targetWidth / (swap ? height : width), (double) targetHeight / (swap ? width : height));
+        transform.concatenate(orientationTransform(orientation, width, height));
+
+        // JPEG has no alpha: flatten transparent PNGs onto white
+        BufferedImage target = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, targetWidth, targetHeight);
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    // Maps source pixels to the upright image; values 1-8 as defined by the EXIF Orientation tag
+    private static AffineTransform orientationTransform(int orientation, int width, int height) {
+        return switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, width, 0);      // mirrored
+            case 3 -> new AffineTransform(-1, 0, 0, -1, width, height); // upside down
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, height);     // mirrored upside down
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);           // transposed
+            case 6 -> new AffineTransform(0, 1, -1, 0, height, 0);     // rotate 90 clockwise
+            case 7 -> new AffineTransform(0, -1, -1, 0, height, width); // transversed
+            case 8 -> new AffineTransform(0, -1, 1, 0, 0, width);      // rotate 90 counter-clockwise
+            default -> new AffineTransform();
+        };
+    }
+
+    /**
+     * The EXIF Orientation of a JPEG, read from its header segments without decoding; 1 (upright)
+     * when absent, unreadable or not a JPEG. Reads at most {@code limit} bytes.
+     */
+    static int readExifOrientation(InputStream in, int limit) {
+        try {
+            DataInputStream data = new DataInputStream(in);
+            if (data.readUnsignedShort() != 0xFFD8) {
+                return 1;
+            }
+            int consumed = 2;
+            while (consumed + 4 <= limit) {
+                int marker = data.readUnsignedShort();
+                // Start of scan: the headers are over
+                if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA) {
+                    return 1;
+                }
+                int length = data.readUnsignedShort();
+                consumed += 4;
+                if (length < 2 || consumed + length - 2 > limit) {
+                    return 1;
+                }
+                byte[] segment = data.readNBytes(length - 2);
+                consumed += segment.length;
+                if (marker == 0xFFE1) {
+                    int orientation = parseExifOrientation(segment);
+                    if (orientation > 0) {
+                        return orientation;
+                    }
+                }
+            }
+            return 1;
+        } catch (EOFException e) {
+            return 1;
+        } catch (IOException e) {
+            return 1;
+        }
+    }
+
+    // APP1 payload: "Exif\0\0", then a TIFF header and IFD0, whose 0x0112 entry is the orientation
+    private static int parseExifOrientation(byte[] segment) {
+        if (segment.length < 14 || !Arrays.equals(segment, 0, 6, "Exif\0\0".getBytes(StandardCharsets.US_ASCII), 0, 6)) {
+            return 0;
+        }
+        int tiff = 6;
+        boolean littleEndian = segment[tiff] == 'I' && segment[tiff + 1] == 'I';
+        long ifdOffset = unsigned32(segment, tiff + 4, littleEndian);
+        if (ifdOffset < 8 || tiff + ifdOffset + 2 > segment.length) {
+            return 0;
+        }
+        int ifd = tiff + (int) ifdOffset;
+        int entries = unsigned16(segment, ifd, littleEndian);
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > segment.length) {
+                return 0;
+            }
+            if (unsigned16(segment, entry, littleEndian) == 0x0112) {
+                int orientation = unsigned16(segment, entry + 8, littleEndian);
+                return orientation >= 1 && orientation <= 8 ? orientation : 0;
+            }
+        }
+        return 0;
+    }
+
+    private static int unsigned16(byte[] bytes, int offset, boolean littleEndian) {
+        int first = bytes[offset] & 0xFF;
+        int second = bytes[offset + 1] & 0xFF;
+        return littleEndian ? first | second << 8 : first << 8 | second;
+    }
+
+    private static long unsigned32(byte[] bytes, int offset, boolean littleEndian) {
+        long high = unsigned16(bytes, offset + (littleEndian ? 2 : 0), littleEndian);
+        long low = unsigned16(bytes, offset + (littleEndian ? 0 : 2), littleEndian);
+        return high << 16 | low;
+    }
+
+    // No metadata is passed to the writer, so EXIF (GPS, camera, thumbnails) is dropped
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(target.toFile())) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
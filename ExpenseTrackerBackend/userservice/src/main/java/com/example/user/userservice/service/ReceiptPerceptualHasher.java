@@ -0,0 +1,138 @@
+package com.example.user.userservice.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Set;
+
+/**
+ * 64-bit difference hash (dHash) of receipt photos, for spotting the same paper receipt uploaded
+ * twice: re-encoded, rescaled, re-exposed or slightly re-framed shots hash a few bits apart,
+ * different receipts about half of them.
+ * <p>
+ * The image is decoded with subsampling to a couple of hundred pixels, turned upright from its
+ * EXIF orientation, averaged down to 9x8 grey cells, and each bit records whether a cell is
+ * brighter than its right neighbour. Near-duplicates are found by multi-index hashing: the hash is
+ * split into {@link #BANDS} 16-bit bands that are stored and indexed separately. Two hashes
+ * within Hamming distance {@code r} agree within {@code r / BANDS} bits on at least one band, so
+ * looking up each band's few neighbours finds every match without scanning all of a user's files.
+ */
+@Service
+@Slf4j
+public class ReceiptPerceptualHasher {
+
+    public static final int BANDS = 4;
+    private static final int BAND_BITS = 64 / BANDS;
+    private static final Set<String> HASHED_EXTENSIONS = Set.of("jpg", "jpeg", "png", "bmp");
+    private static final int EXIF_SCAN_LIMIT = 128 * 1024;
+    // Decoded size: plenty for 9x8 cells, and cheap even for a 12MP photo
+    private static final int DECODE_EDGE = 256;
+
+    public boolean appliesTo(String extension) {
+        return extension != null && HASHED_EXTENSIONS.contains(extension.toLowerCase());
+    }
+
+    /**
+     * The hash of an image; empty when it cannot be decoded.
+     */
+    public OptionalLong hash(InputStream source) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(source, 64 * 1024);
+        in.mark(EXIF_SCAN_LIMIT);
+        int orientation = ReceiptImageNormalizer.readExifOrientation(in, EXIF_SCAN_LIMIT);
+        in.reset();
+
+        try (ImageInputStream input = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                return OptionalLong.empty();
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int step = Math.max(1, Math.min(reader.getWidth(0), reader.getHeight(0)) / DECODE_EDGE);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                BufferedImage decoded = reader.read(0, param);
+                return OptionalLong.of(dHash(ReceiptImageNormalizer.render(decoded, orientation, DECODE_EDGE)));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    static long dHash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double[] sums = new double[9 * 8];
+        int[] counts = new int[9 * 8];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int cellY = y * 8 / height;
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                int cell = cellY * 9 + x * 9 / width;
+                sums[cell] += 0.299 * ((rgb >> 16) & 0xFF) + 0.587 * ((rgb >> 8) & 0xFF) + 0.114 * (rgb & 0xFF);
+                counts[cell]++;
+            }
+        }
+
+        long hash = 0;
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                int cell = y * 9 + x;
+                double left = sums[cell] / Math.max(1, counts[cell]);
+                double right = sums[cell + 1] / Math.max(1, counts[cell + 1]);
+                hash = (hash << 1) | (left > right ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * The {@link #BANDS} 16-bit bands of a hash, most significant first.
+     */
+    public static int[] bands(long hash) {
+        int[] bands = new int[BANDS];
+        for (int i = 0; i < BANDS; i++) {
+            bands[i] = (int) (hash >>> (64 - BAND_BITS * (i + 1))) & ((1 << BAND_BITS) - 1);
+        }
+        return bands;
+    }
+
+    /**
+     * Every band value within {@code radius} bits of {@code band}, itself included: 137 values
+     * for radius 2.
+     */
+    public static List<Integer> bandNeighbours(int band, int radius) {
+        List<Integer> neighbours = new ArrayList<>();
+        collectNeighbours(band, 0, Math.min(radius, BAND_BITS), neighbours);
+        return neighbours;
+    }
+
+    private static void collectNeighbours(int value, int fromBit, int flipsLeft, List<Integer> out) {
+        out.add(value);
+        if (flipsLeft == 0) {
+            return;
+        }
+        for (int bit = fromBit; bit < BAND_BITS; bit++) {
+            collectNeighbours(value ^ (1 << bit), bit + 1, flipsLeft - 1, out);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.entity.Receipt;
+import com.example.user.userservice.repository.ReceiptRepository;
+import com.example.user.userservice.service.NaiveBayesCategoryModel.Prediction;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes uploaded receipts off the request path. Each poll claims at most as many due PENDING
+ * rows as there are idle workers, with {@code SELECT ... FOR UPDATE SKIP LOCKED}, and marks them
+ * PROCESSING in the same transaction. Any number of instances can therefore poll the same table
+ * without handing a receipt to two workers. A claim whose instance died is requeued after
+ * {@code stale-claim-minutes}.
+ * <p>
+ * Processing renders the image variants and suggests a category for the client's OCR fields, from
+ * the user's merchant memory or the local classifier. A failed attempt is retried with exponential
+ * backoff until {@code max-attempts}, then the receipt is FAILED.
+ */
+@Service
+@Slf4j
+public class ReceiptProcessingService {
+
+    private final ReceiptRepository receiptRepository;
+    private final FileStorageService fileStorageService;
+    private final ReceiptThumbnailService receiptThumbnailService;
+    private final MerchantCategoryMemory merchantCategoryMemory;
+    private final ExpenseCategoryClassifier expenseCategoryClassifier;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final int threads;
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService poller;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean pollQueued = new AtomicBoolean();
+
+    @Value("${app.receipts.processing.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.receipts.processing.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${app.receipts.processing.retry-base-delay-ms:30000}")
+    private long retryBaseDelayMs;
+
+    @Value("${app.receipts.processing.stale-claim-minutes:10}")
+    private long staleClaimMinutes;
+
+    public ReceiptProcessingService(ReceiptRepository receiptRepository,
+                                    FileStorageService fileStorageService,
+                                    ReceiptThumbnailService receiptThumbnailService,
+                                    MerchantCategoryMemory merchantCategoryMemory,
+                                    ExpenseCategoryClassifier expenseCategoryClassifier,
+                                    ObjectMapper objectMapper,
+                                    PlatformTransactionManager transactionManager,
+                                    @Value("${app.receipts.processing.threads:4}") int threads) {
+        this.receiptRepository = receiptRepository;
+        this.fileStorageService = fileStorageService;
+        this.receiptThumbnailService = receiptThumbnailService;
+        this.merchantCategoryMemory = merchantCategoryMemory;
+        this.expenseCategoryClassifier = expenseCategoryClassifier;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.threads = Math.max(1, threads);
+        AtomicInteger threadCount = new AtomicInteger();
+        // Never more queued than idle workers: poll() only claims what it can start
+        this.workers = new ThreadPoolExecutor(this.threads, this.threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(this.threads), r -> {
+            Thread thread = new Thread(r, "receipt-processing-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.poller = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "receipt-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        poller.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    @Scheduled(initialDelayString = "${app.receipts.processing.initial-delay-ms:10000}",
+               fixedDelayString = "${app.receipts.processing.poll-interval-ms:2000}")
+    public void scheduledPoll() {
+        if (enabled) {
+            poll();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.receipts.processing.stale-check-interval-ms:60000}")
+    public void requeueStaleClaims() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime cutoff = now().minusMinutes(staleClaimMinutes);
+        Integer requeued = transactionTemplate.execute(status -> receiptRepository.requeueStale(cutoff));
+        if (requeued != null && requeued > 0) {
+            log.warn("Requeued {} receipts whose processing claim was older than {} minutes", requeued, staleClaimMinutes);
+            wakeUp();
+        }
+    }
+
+    /**
+     * Polls once the surrounding transaction commits, so a new upload starts processing right away
+     * instead of at the next poll.
+     */
+    public void wakeUpAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    wakeUp();
+                }
+            });
+        } else {
+            wakeUp();
+        }
+    }
+
+    private void wakeUp() {
+        if (!enabled || !pollQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            poller.execute(() -> {
+                pollQueued.set(false);
+                poll();
+            });
+        } catch (RejectedExecutionException e) {
+            pollQueued.set(false);
+        }
+    }
+
+    /**
+     * Claims due receipts for the idle workers and starts them.
+     *
+     * @return how many receipts were claimed
+     */
+    synchronized int poll() {
+        int idle = threads - inFlight.get();
+        if (idle <= 0) {
+            return 0;
+        }
+        LocalDateTime claimedAt = now();
+        List<Long> claimed;
+        try {
+            claimed = transactionTemplate.execute(status -> {
+                List<Long> ids = receiptRepository.lockDueIds(claimedAt, idle);
+                if (!ids.isEmpty()) {
+                    receiptRepository.markProcessing(ids, claimedAt);
+                }
+                return ids;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Failed to claim receipts: {}", e.getMessage());
+            return 0;
+        }
+        if (claimed == null || claimed.isEmpty()) {
+            return 0;
+        }
+
+        for (Long id : claimed) {
+            inFlight.incrementAndGet();
+            try {
+                workers.execute(() -> {
+                    try {
+                        process(id, claimedAt);
+                    } finally {
+                        inFlight.decrementAndGet();
+                        // Keep draining a backlog without waiting for the next scheduled poll
+                        wakeUp();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Shutting down: the claim goes stale and another instance picks the receipt up
+                inFlight.decrementAndGet();
+            }
+        }
+        log.debug("Claimed {} receipts for processing", claimed.size());
+        return claimed.size();
+    }
+
+    void process(Long id, LocalDateTime claimedAt) {
+        Optional<Receipt> found = receiptRepository.findById(id);
+        if (found.isEmpty()) {
+            return; // deleted while queued
+        }
+        Receipt receipt = found.get();
+        long start = System.nanoTime();
+        try {
+            String extractedData = extract(receipt);
+            Integer updated = transactionTemplate.execute(status ->
+                    receiptRepository.markExtracted(id, claimedAt, extractedData));
+            if (updated != null && updated > 0) {
+                log.info("Processed receipt {} in {} ms", id, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } else {
+                log.debug("Receipt {} was changed or requeued while processing, result dropped", id);
+            }
+        } catch (RuntimeException e) {
+            int attempts = receipt.getAttempts();
+            boolean exhausted = attempts >= maxAttempts;
+            String status = exhausted ? Receipt.FAILED : Receipt.PENDING;
+            LocalDateTime nextAttemptAt = now().plus(retryDelay(retryBaseDelayMs, attempts));
+            String error = truncate(e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+            transactionTemplate.executeWithoutResult(tx ->
+                    receiptRepository.markAttemptFailed(id, claimedAt, status, error, nextAttemptAt));
+            log.warn("Processing receipt {} failed (attempt {} of {}){}: {}", id, attempts, maxAttempts,
+                    exhausted ? ", giving up" : "", e.getMessage());
+        }
+    }
+
+    /**
+     * Renders the variants and adds a category suggestion to the client's extracted fields.
+     *
+     * @return the extracted data to store, as JSON
+     */
+    String extract(Receipt receipt) {
+        String path = receipt.getImageUrl();
+        if (path == null || !fileStorageService.fileExists(path)) {
+            throw new IllegalStateException("Receipt image is missing: " + path);
+        }
+        receiptThumbnailService.generate(path);
+
+        ObjectNode data = parse(receipt.getExtractedData());
+        String text = describe(data);
+        if (!data.hasNonNull("categoryId") && !text.isBlank()) {
+            Optional<Long> remembered = merchantCategoryMemory.lookup(receipt.getUserId(), text);
+            if (remembered.isPresent()) {
+                data.put("categoryId", remembered.get());
+                data.put("categorySource", "MEMORY");
+            } else {
+                Optional<Prediction> prediction = expenseCategoryClassifier.predict(text);
+                if (prediction.isPresent()) {
+                    data.put("categoryId", prediction.get().categoryId());
+                    data.put("categorySource", "CLASSIFIER");
+                    data.put("categoryConfidence", prediction.get().confidence());
+                }
+            }
+        }
+        try {
+            return objectMapper.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize extracted data", e);
+        }
+    }
+
+    private ObjectNode parse(String extractedData) {
+        if (extractedData == null || extractedData.isBlank()) {
+            return objectMapper.createObjectNode();
+        }
+        try {
+            JsonNode node = objectMapper.readTree(extractedData);
+            return node instanceof ObjectNode object ? object : objectMapper.createObjectNode();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Extracted data is not valid JSON", e);
+        }
+    }
+
+    // Merchant and line items, the text the category memory and classifier were trained on
+    private static String describe(ObjectNode data) {
+        List<String> parts = new ArrayList<>();
+        if (data.hasNonNull("merchant")) {
+            parts.add(data.get("merchant").asText());
+        }
+        JsonNode items = data.get("items");
+        if (items != null && items.isArray()) {
+            items.forEach(item -> parts.add(item.asText()));
+        }
+        return String.join(" ", parts).trim();
+    }
+
+    static Duration retryDelay(long baseDelayMs, int attempt) {
+        int doublings = Math.min(Math.max(0, attempt - 1), 16);
+        return Duration.ofMillis(baseDelayMs << doublings);
+    }
+
+    private static String truncate(String message) {
+        return message.length() <= 512 ? message : message.substring(0, 512);
+    }
+
+    // Microseconds, as stored by DATETIME(6): the claim timestamp is compared for equality
+    private static LocalDateTime now() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+    }
+}
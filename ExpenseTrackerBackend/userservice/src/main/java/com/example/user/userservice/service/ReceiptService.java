@@ -0,0 +1,196 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.dto.ReceiptResponse;
+import com.example.user.userservice.entity.Expense;
+import com.example.user.userservice.entity.Receipt;
+import com.example.user.userservice.exception.ExpenseException;
+import com.example.user.userservice.repository.ExpenseRepository;
+import com.example.user.userservice.repository.ReceiptRepository;
+import com.example.user.userservice.service.FileStorageService.StagedUpload;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Receipt records. Creating one only stores the image and inserts a PENDING row; the work
+ * happens in {@link ReceiptProcessingService}, which is woken once the row commits.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReceiptService {
+
+    private final ReceiptRepository receiptRepository;
+    private final ExpenseRepository expenseRepository;
+    private final FileStorageService fileStorageService;
+    private final ReceiptProcessingService receiptProcessingService;
+    private final ObjectMapper objectMapper;
+
+    @Transactional(readOnly = true)
+    public List<ReceiptResponse> getReceipts(Long userId) {
+        return receiptRepository.findByUserIdOrderByCreatedAtDesc(userId).stream()
+                .map(this::toResponse)
+                .toList();
+    }
+
+    @Transactional(readOnly = true)
+    public ReceiptResponse getReceipt(Long userId, Long receiptId) {
+        return toResponse(find(userId, receiptId));
+    }
+
+    @Transactional
+    public ReceiptResponse createReceipt(Long userId, MultipartFile image, String extractedData) {
+        validateJson(extractedData);
+        String imagePath = fileStorageService.storeFile(image, directory(userId));
+        return insert(userId, image.getOriginalFilename(), imagePath, extractedData);
+    }
+
+    /**
+     * Creates a receipt from a {@code data:image/...;base64,} URL, as the web client sends them.
+     */
+    @Transactional
+    public ReceiptResponse createReceipt(Long userId, String imageDataUrl, String fileName, String extractedData) {
+        if (imageDataUrl == null || !imageDataUrl.startsWith("data:") || !imageDataUrl.contains(";base64,")) {
+            throw new ExpenseException("imageUrl must be a base64 data URL");
+        }
+        validateJson(extractedData);
+        int comma = imageDataUrl.indexOf(',');
+        String contentType = imageDataUrl.substring("data:".length(), imageDataUrl.indexOf(';'));
+        // Decoded as a stream straight into staging, never as one more copy of the image in memory
+        StagedUpload upload = fileStorageService.stageUpload(Base64.getMimeDecoder().wrap(new ByteArrayInputStream(
+                imageDataUrl.getBytes(StandardCharsets.US_ASCII), comma + 1, imageDataUrl.length() - comma - 1)));
+        String imagePath = fileStorageService.storeStagedUpload(upload, fileName, contentType, directory(userId));
+        return insert(userId, fileName, imagePath, extractedData);
+    }
+
+    /**
+     * Renames, replaces the extracted data (which queues the receipt for processing again), or links
+     * the receipt to an expense of the same user.
+     */
+    @Transactional
+    public ReceiptResponse updateReceipt(Long userId, Long receiptId, String fileName, String extractedData, Long expenseId) {
+        Receipt receipt = findForUpdate(userId, receiptId);
+        if (fileName != null && !fileName.isBlank()) {
+            receipt.setFileName(fileName);
+        }
+
+        if (extractedData != null && !Objects.equals(extractedData, receipt.getExtractedData())) {
+            validateJson(extractedData);
+            if (Receipt.PROCESSING.equals(receipt.getStatus())) {
+                throw new ExpenseException("Receipt is being processed; try again shortly");
+            }
+            receipt.setExtractedData(extractedData);
+            if (!Receipt.LINKED.equals(receipt.getStatus())) {
+                requeue(receipt);
+            }
+        }
+
+        if (expenseId != null) {
+            Expense expense = expenseRepository.findById(expenseId)
+                    .orElseThrow(() -> new ExpenseException("Expense not found with ID: " + expenseId));
+            if (!expense.getUser().getId().equals(userId)) {
+                throw new ExpenseException("Expense does not belong to user ID: " + userId);
+            }
+            receipt.setExpenseId(expenseId);
+            receipt.setStatus(Receipt.LINKED);
+            receipt.setClaimedAt(null);
+        }
+
+        Receipt saved = receiptRepository.save(receipt);
+        if (Receipt.PENDING.equals(saved.getStatus())) {
+            receiptProcessingService.wakeUpAfterCommit();
+        }
+        return toResponse(saved);
+    }
+
+    @Transactional
+    public void deleteReceipt(Long userId, Long receiptId) {
+        Receipt receipt = findForUpdate(userId, receiptId);
+        receiptRepository.delete(receipt);
+        if (receipt.getImageUrl() != null) {
+            // Reference-counted: an expense sharing the same image keeps it
+            fileStorageService.deleteFile(receipt.getImageUrl());
+        }
+        log.info("Deleted receipt {} for user ID: {}", receiptId, userId);
+    }
+
+    private ReceiptResponse insert(Long userId, String fileName, String imagePath, String extractedData) {
+        try {
+            Receipt receipt = receiptRepository.save(Receipt.builder()
+                    .userId(userId)
+                    .fileName(fileName)
+                    .imageUrl(imagePath)
+                    .status(Receipt.PENDING)
+                    .extractedData(extractedData)
+                    .attempts(0)
+                    .nextAttemptAt(LocalDateTime.now())
+                    .build());
+            receiptProcessingService.wakeUpAfterCommit();
+            log.info("Created receipt {} for user ID: {} with image {}", receipt.getId(), userId, imagePath);
+            return toResponse(receipt);
+        } catch (RuntimeException e) {
+            fileStorageService.deleteFile(imagePath);
+            throw e;
+        }
+    }
+
+    private void requeue(Receipt receipt) {
+        receipt.setStatus(Receipt.PENDING);
+        receipt.setAttempts(0);
+        receipt.setLastError(null);
+        receipt.setClaimedAt(null);
+        receipt.setNextAttemptAt(LocalDateTime.now());
+    }
+
+    private Receipt find(Long userId, Long receiptId) {
+        return receiptRepository.findByIdAndUserId(receiptId, userId)
+                .orElseThrow(() -> new ExpenseException("Receipt not found with ID: " + receiptId));
+    }
+
+    private Receipt findForUpdate(Long userId, Long receiptId) {
+        return receiptRepository.findForUpdate(receiptId, userId)
+                .orElseThrow(() -> new ExpenseException("Receipt not found with ID: " + receiptId));
+    }
+
+    private void validateJson(String extractedData) {
+        if (extractedData == null || extractedData.isBlank()) {
+            return;
+        }
+        try {
+            objectMapper.readTree(extractedData);
+        } catch (JsonProcessingException e) {
+            throw new ExpenseException("extractedData must be valid JSON");
+        }
+    }
+
+    private static String directory(Long userId) {
+        return "receipts/" + userId;
+    }
+
+    private ReceiptResponse toResponse(Receipt receipt) {
+        return ReceiptResponse.builder()
+                .id(receipt.getId())
+                .userId(receipt.getUserId())
+                .fileName(receipt.getFileName())
+                .imageUrl(receipt.getImageUrl())
+                .status(receipt.getStatus())
+                .extractedData(receipt.getExtractedData())
+                .expenseId(receipt.getExpenseId())
+                .attempts(receipt.getAttempts())
+                .lastError(receipt.getLastError())
+                .createdAt(receipt.getCreatedAt())
+                .updatedAt(receipt.getUpdatedAt())
+                .build();
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.user.userservice.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+
+/**
+ * Where receipt bytes live, addressed by the relative paths stored on expenses
+ * ({@code receipts/7/3f/3fa9...e1.jpg}). {@link FileStorageService} owns naming, validation and
+ * reference counting; a backend only moves bytes. Selected with {@code app.file.storage}
+ * ({@code local} by default, or {@code s3}).
+ */
+public interface ReceiptStorageBackend {
+
+    /**
+     * Streams content of unknown length to {@code key}, replacing any object there. Readers never
+     * observe a partially written object.
+     */
+    void put(String key, InputStream content, String contentType) throws IOException;
+
+    /**
+     * Stores a local file under {@code key} and consumes it (a rename when the backend is the
+     * local filesystem).
+     */
+    void putFile(String key, Path file, String contentType) throws IOException;
+
+    /**
+     * Moves {@code sourceKey} to {@code targetKey} unless the target already exists; the source is
+     * gone afterwards either way.
+     *
+     * @return false when the target already existed
+     */
+    boolean moveIfAbsent(String sourceKey, String targetKey) throws IOException;
+
+    Optional<ObjectInfo> stat(String key) throws IOException;
+
+    InputStream get(String key) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    /**
+     * Immediate "subdirectories" of {@code prefix} (which ends in {@code /}), each ending in {@code /}.
+     */
+    List<String> listPrefixes(String prefix) throws IOException;
+
+    /**
+     * Visits every object under {@code prefix}, in no particular order.
+     */
+    void walk(String prefix, BiConsumer<String, ObjectInfo> visitor) throws IOException;
+
+    /**
+     * A time-limited URL clients can fetch the object from directly, when the backend has one.
+     */
+    Optional<String> presignGet(String key, Duration ttl);
+
+    /**
+     * The object's file when the backend is the local filesystem, for zero-copy serving.
+     */
+    Optional<Path> localPath(String key);
+
+    record ObjectInfo(long size, Instant lastModified) {
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.service.FileStorageService.Variant;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates the JPEG thumbnail and preview of an uploaded receipt image on a bounded worker pool.
+ * Variants are stored next to the original in the {@link ReceiptStorageBackend}
+ * ({@code <name>.thumb.jpg}, {@code <name>.preview.jpg});
+ * until they exist, {@link FileStorageService#getFileUrl(String, Variant)} falls back to the original.
+ * Decoding is subsampled to roughly twice the largest variant, so a 10MB photo never lands in
+ * memory at full resolution.
+ */
+@Service
+@Slf4j
+public class ReceiptThumbnailService {
+
+    private static final Set<String> SOURCE_EXTENSIONS = Set.of("jpg", "jpeg", "png", "gif", "bmp");
+
+    private final ReceiptStorageBackend storageBackend;
+    private final ExecutorService workers;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    @Value("${app.file.thumbnail.thumb-size:240}")
+    private int thumbSize;
+
+    @Value("${app.file.thumbnail.preview-size:1024}")
+    private int previewSize;
+
+    @Value("${app.file.thumbnail.jpeg-quality:0.8}")
+    private float jpegQuality;
+
+    public ReceiptThumbnailService(ReceiptStorageBackend storageBackend,
+                                   @Value("${app.file.thumbnail.threads:2}") int threads,
+                                   @Value("${app.file.thumbnail.queue-capacity:200}") int queueCapacity) {
+        this.storageBackend = storageBackend;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "receipt-thumbnail-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Path of a size variant of {@code originalPath}; the original itself for {@link Variant#ORIGINAL}.
+     */
+    public static String variantPath(String originalPath, Variant variant) {
+        if (variant == Variant.ORIGINAL) {
+            return originalPath;
+        }
+        int dot = originalPath.lastIndexOf('.');
+        int slash = originalPath.lastIndexOf('/');
+        String base = dot > slash ? originalPath.substring(0, dot) : originalPath;
+        return base + "." + variant.suffix() + ".jpg";
+    }
+
+    public static boolean supports(String filePath) {
+        int dot = filePath == null ? -1 : filePath.lastIndexOf('.');
+        return dot >= 0 && SOURCE_EXTENSIONS.contains(filePath.substring(dot + 1).toLowerCase());
+    }
+
+    /**
+     * Queues variant generation for a stored original. Never blocks the upload: when the queue is
+     * full the request is dropped and the original keeps being served.
+     */
+    public void generateAsync(String originalPath) {
+        if (!supports(originalPath) || !pending.add(originalPath)) {
+            return;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    generate(originalPath);
+                } finally {
+                    pending.remove(originalPath);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(originalPath);
+            log.warn("Thumbnail queue full, serving original for {}", originalPath);
+        }
+    }
+
+    /**
+     * Writes any missing variants of {@code originalPath}. Failures are logged, not thrown.
+     */
+    public void generate(String originalPath) {
+        String thumb = variantPath(originalPath, Variant.THUMBNAIL);
+        String preview = variantPath(originalPath, Variant.PREVIEW);
+
+        long start = System.nanoTime();
+        try {
+            if (storageBackend.stat(originalPath).isEmpty()
+                    || (storageBackend.stat(thumb).isPresent() && storageBackend.stat(preview).isPresent())) {
+                return;
+            }
+            // Decode once, just large enough for the preview; the thumbnail is scaled from that
+            BufferedImage source = readSubsampled(originalPath, previewSize);
+            if (source == null) {
+                log.debug("No image reader for {}, skipping variants", originalPath);
+                return;
+            }
+            BufferedImage previewImage = fit(source, previewSize);
+            writeJpeg(previewImage, preview);
+            writeJpeg(fit(previewImage, thumbSize), thumb);
+            log.info("Generated receipt variants for {} in {} ms", originalPath,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to generate variants for {}: {}", originalPath, e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the variants of an original that is being removed.
+     */
+    public void deleteVariants(String originalPath) {
+        for (Variant variant : new Variant[]{Variant.THUMBNAIL, Variant.PREVIEW}) {
+            try {
+                storageBackend.delete(variantPath(originalPath, variant));
+            } catch (IOException e) {
+                log.warn("Failed to delete {} variant of {}: {}", variant, originalPath, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Decodes every n-th pixel in both directions, picking n so the result stays at least twice
+     * {@code targetSize} on its longer edge. Memory then scales with the output, not the photo.
+     */
+    private BufferedImage readSubsampled(String key, int targetSize) throws IOException {
+        Optional<Path> localFile = storageBackend.localPath(key);
+        // A local file is read with random access; a remote object streams through ImageIO's cache
+        try (InputStream remote = localFile.isPresent() ? null : storageBackend.get(key);
+             ImageInputStream input = ImageIO.createImageInputStream(
+                     localFile.isPresent() ? localFile.get().toFile() : remote)) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int longEdge = Math.max(reader.getWidth(0), reader.getHeight(0));
+                int step = Math.max(1, longEdge / (targetSize * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage fit(BufferedImage source, int maxEdge) {
+        double scale = Math.min(1.0, (double) maxEdge / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+        // JPEG has no alpha: flatten transparent PNGs onto white
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    // Encoded to a temp file and handed to the backend, so a request never sees a half-written
+    // variant; next to the target when local, so that is a rename
+    private void writeJpeg(BufferedImage image, String key) throws IOException {
+        Optional<Path> localTarget = storageBackend.localPath(key);
+        Path temp;
+        if (localTarget.isPresent()) {
+            Files.createDirectories(localTarget.get().getParent());
+            temp = Files.createTempFile(localTarget.get().getParent(), ".variant-", ".part");
+        } else {
+            temp = Files.createTempFile("receipt-variant-", ".part");
+        }
+        try {
+            ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+            try (ImageOutputStream output = ImageIO.createImageOutputStream(temp.toFile())) {
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+                writer.setOutput(output);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            storageBackend.putFile(key, temp, "image/jpeg");
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.dto.ReceiptUploadInitRequest;
+import com.example.user.userservice.dto.ReceiptUploadStatusResponse;
+import com.example.user.userservice.exception.ExpenseException;
+import com.example.user.userservice.exception.FileStorageException;
+import com.example.user.userservice.service.FileStorageService.StagedUpload;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resumable receipt uploads: a client initiates a session, PUTs fixed-size chunks in any order
+ * (each with its SHA-256), asks which chunks are still missing after a dropped connection, and
+ * completes. Chunks stream straight into a sparse part file with positional writes, so nothing
+ * larger than a copy buffer is ever held in memory; the finished file is handed to
+ * {@link ExpenseService#attachStagedReceipt} (a rename with the local storage backend, one upload
+ * with a remote one).
+ * <p>
+ * Sessions live in memory on the instance that created them; part files are local scratch under
+ * {@code <upload-dir>/.tmp/resumable} whatever the storage backend, since positional writes need a
+ * file, and are removed on completion, abort or expiry.
+ */
+@Service
+@Slf4j
+public class ResumableReceiptUploadService {
+
+    private static final String PART_DIR = ".tmp/resumable";
+    private static final String PART_SUFFIX = ".part";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final ExpenseService expenseService;
+    private final FileStorageService fileStorageService;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    @Value("${app.file.upload-dir:uploads}")
+    private String uploadDir;
+
+    @Value("${app.file.max-size:10485760}")
+    private long maxFileSize;
+
+    @Value("${app.file.resumable.chunk-size:524288}")
+    private int chunkSize;
+
+    @Value("${app.file.resumable.session-ttl-minutes:1440}")
+    private long sessionTtlMinutes;
+
+    @Value("${app.file.resumable.max-sessions-per-user:5}")
+    private int maxSessionsPerUser;
+
+    public ResumableReceiptUploadService(ExpenseService expenseService, FileStorageService fileStorageService) {
+        this.expenseService = expenseService;
+        this.fileStorageService = fileStorageService;
+    }
+
+    public ReceiptUploadStatusResponse initiate(Long userId, Long expenseId, ReceiptUploadInitRequest request) {
+        // Fails for a missing expense or one owned by someone else
+        expenseService.getExpenseById(userId, expenseId);
+
+        if (request.getTotalSize() > maxFileSize) {
+            throw new ExpenseException("File size exceeds maximum allowed size of " + (maxFileSize / 1024 / 1024) + "MB");
+        }
+        long open = sessions.values().stream().filter(session -> session.userId.equals(userId)).count();
+        if (open >= maxSessionsPerUser) {
+            throw new ExpenseException("Too many unfinished uploads; complete or abort one first");
+        }
+
+        String uploadId = UUID.randomUUID().toString();
+        Path part = partDir().resolve(uploadId + PART_SUFFIX);
+        try {
+            Files.createDirectories(part.getParent());
+            Files.createFile(part);
+        } catch (IOException e) {
+            throw new FileStorageException("Failed to start upload", e);
+        }
+
+        int chunkCount = (int) ((request.getTotalSize() + chunkSize - 1) / chunkSize);
+        Session session = new Session(uploadId, userId, expenseId, request.getFileName(), request.getContentType(),
+                request.getTotalSize(), chunkSize, chunkCount,
+                request.getSha256() == null ? null : request.getSha256().toLowerCase(), part);
+        sessions.put(uploadId, session);
+        log.info("Started resumable upload {} for expense ID: {} ({} bytes in {} chunks)",
+                uploadId, expenseId, request.getTotalSize(), chunkCount);
+        return status(session);
+    }
+
+    /**
+     * Streams one chunk into place. The body must be exactly the chunk's length and match
+     * {@code sha256}; a chunk that fails either check is not counted and can simply be re-sent.
+     */
+    public ReceiptUploadStatusResponse writeChunk(Long userId, Long expenseId, String uploadId, int index,
+                                                  String sha256, InputStream body) {
+        Session session = session(userId, expenseId, uploadId);
+        if (index < 0 || index >= session.chunkCount) {
+            throw new ExpenseException("Chunk index must be between 0 and " + (session.chunkCount - 1));
+        }
+        if (sha256 == null || sha256.isBlank()) {
+            throw new ExpenseException("Chunk checksum header is required");
+        }
+        long offset = (long) index * session.chunkSize;
+        long expectedLength = Math.min(session.chunkSize, session.totalSize - offset);
+
+        session.beginWrite();
+        try (FileChannel channel = FileChannel.open(session.part, StandardOpenOption.WRITE)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+            long written = 0;
+            int read;
+            while ((read = body.read(buffer.array(), 0, buffer.capacity())) != -1) {
+                if (written + read > expectedLength) {
+                    throw new ExpenseException("Chunk " + index + " is longer than " + expectedLength + " bytes");
+                }
+                digest.update(buffer.array(), 0, read);
+                buffer.limit(read);
+                while (buffer.hasRemaining()) {
+                    written += channel.write(buffer, offset + written);
+                }
+                buffer.clear();
+            }
+            if (written != expectedLength) {
+                throw new ExpenseException("Chunk " + index + " has " + written + " bytes, expected " + expectedLength);
+            }
+            String actual = HexFormat.of().formatHex(digest.digest());
+            if (!actual.equalsIgnoreCase(sha256.trim())) {
+                throw new ExpenseException("Checksum mismatch for chunk " + index);
+            }
+            session.received(index, expectedLength);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            log.warn("Failed to write chunk {} of upload {}: {}", index, uploadId, e.getMessage());
+            throw new FileStorageException("Failed to write chunk " + index, e);
+        } finally {
+            session.endWrite();
+        }
+        return status(session);
+    }
+
+    public ReceiptUploadStatusResponse status(Long userId, Long expenseId, String uploadId) {
+        return status(session(userId, expenseId, uploadId));
+    }
+
+    /**
+     * Attaches the assembled file to the expense once every chunk is in. A whole-file checksum
+     * given at initiation is verified first; on a mismatch the session is dropped.
+     */
+    public ReceiptUploadStatusResponse complete(Long userId, Long expenseId, String uploadId) {
+        Session session = session(userId, expenseId, uploadId);
+        List<Integer> missing = session.startCompletion();
+        if (!missing.isEmpty()) {
+            throw new ExpenseException("Upload is missing " + missing.size() + " chunk(s): " + missing);
+        }
+
+        try {
+            StagedUpload staged = fileStorageService.stageFile(session.part);
+            String receiptPath;
+            try {
+                if (session.sha256 != null && !session.sha256.equals(staged.sha256())) {
+                    throw new ExpenseException("Checksum mismatch for the assembled file");
+                }
+                receiptPath = expenseService.attachStagedReceipt(userId, expenseId, staged,
+                        session.fileName, session.contentType);
+            } catch (RuntimeException e) {
+                // stageFile consumed the part file; the staged copy is ours to drop
+                fileStorageService.discardStagedUpload(staged);
+                throw e;
+            }
+            log.info("Completed resumable upload {} for expense ID: {} at path: {}", uploadId, expenseId, receiptPath);
+            ReceiptUploadStatusResponse response = status(session);
+            response.setReceiptPath(receiptPath);
+            return response;
+        } finally {
+            discard(session);
+        }
+    }
+
+    public void abort(Long userId, Long expenseId, String uploadId) {
+        discard(session(userId, expenseId, uploadId));
+        log.info("Aborted resumable upload {} for expense ID: {}", uploadId, expenseId);
+    }
+
+    /**
+     * Drops sessions idle for longer than the TTL, and part files no session owns (left over
+     * from a restart).
+     */
+    @Scheduled(fixedDelayString = "${app.file.resumable.cleanup-interval-ms:600000}")
+    public void removeExpiredSessions() {
+        Instant cutoff = Instant.now().minus(Duration.ofMinutes(sessionTtlMinutes));
+        int expired = 0;
+        for (Session session : sessions.values()) {
+            if (session.lastActivity.isBefore(cutoff) && !session.isWriting()) {
+                discard(session);
+                expired++;
+            }
+        }
+
+        Path dir = partDir();
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> parts = Files.newDirectoryStream(dir, "*" + PART_SUFFIX)) {
+                for (Path part : parts) {
+                    String uploadId = part.getFileName().toString().replace(PART_SUFFIX, "");
+                    if (!sessions.containsKey(uploadId)
+                            && Files.getLastModifiedTime(part).toInstant().isBefore(cutoff)) {
+                        Files.deleteIfExists(part);
+                        expired++;
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Failed to clean up resumable upload parts: {}", e.getMessage());
+            }
+        }
+        if (expired > 0) {
+            log.info("Removed {} abandoned resumable uploads", expired);
+        }
+    }
+
+    private Session session(Long userId, Long expenseId, String uploadId) {
+        Session session = sessions.get(uploadId);
+        // Someone else's session looks exactly like a missing one
+        if (session == null || !session.userId.equals(userId) || !session.expenseId.equals(expenseId)) {
+            throw new ExpenseException("Upload not found: " + uploadId);
+        }
+        return session;
+    }
+
+    private void discard(Session session) {
+        sessions.remove(session.uploadId);
+        try {
+            Files.deleteIfExists(session.part);
+        } catch (IOException e) {
+            log.warn("Failed to delete upload part {}: {}", session.part, e.getMessage());
+        }
+    }
+
+    private ReceiptUploadStatusResponse status(Session session) {
+        return ReceiptUploadStatusResponse.builder()
+                .uploadId(session.uploadId)
+                .expenseId(session.expenseId)
+                .fileName(session.fileName)
+                .totalSize(session.totalSize)
+                .chunkSize(session.chunkSize)
+                .chunkCount(session.chunkCount)
+                .missingChunks(session.missing())
+                .receivedBytes(session.receivedBytes())
+                .expiresAt(LocalDateTime.ofInstant(session.lastActivity.plus(Duration.ofMinutes(sessionTtlMinutes)),
+                        ZoneId.systemDefault()))
+                .build();
+    }
+
+    private Path partDir() {
+        return Paths.get(uploadDir, PART_DIR);
+    }
+
+    private static final class Session {
+
+        final String uploadId;
+        final Long userId;
+        final Long expenseId;
+        final String fileName;
+        final String contentType;
+        final long totalSize;
+        final int chunkSize;
+        final int chunkCount;
+        final String sha256;
+        final Path part;
+
+        private final BitSet received = new BitSet();
+        private long receivedBytes;
+        private int writers;
+        private boolean completing;
+        volatile Instant lastActivity = Instant.now();
+
+        Session(String uploadId, Long userId, Long expenseId, String fileName, String contentType, long totalSize,
+                int chunkSize, int chunkCount, String sha256, Path part) {
+            this.uploadId = uploadId;
+            this.userId = userId;
+            this.expenseId = expenseId;
+            this.fileName = fileName;
+            this.contentType = contentType;
+            this.totalSize = totalSize;
+            this.chunkSize = chunkSize;
+            this.chunkCount = chunkCount;
+            this.sha256 = sha256;
+            this.part = part;
+        }
+
+        synchronized void beginWrite() {
+            if (completing) {
+                throw new ExpenseException("Upload " + uploadId + " is already being completed");
+            }
+            writers++;
+            lastActivity = Instant.now();
+        }
+
+        synchronized void endWrite() {
+            writers--;
+            lastActivity = Instant.now();
+        }
+
+        synchronized boolean isWriting() {
+            return writers > 0;
+        }
+
+        synchronized void received(int index, long length) {
+            if (!received.get(index)) {
+                received.set(index);
+                receivedBytes += length;
+            }
+        }
+
+        /**
+         * Blocks further chunk writes when nothing is missing or in flight; otherwise returns
+         * what is missing and leaves the session open.
+         */
+        synchronized List<Integer> startCompletion() {
+            if (completing) {
+                throw new ExpenseException("Upload " + uploadId + " is already being completed");
+            }
+            if (writers > 0) {
+                throw new ExpenseException("Chunks of upload " + uploadId + " are still being written");
+            }
+            List<Integer> missing = missing();
+            completing = missing.isEmpty();
+            return missing;
+        }
+
+        synchronized List<Integer> missing() {
+            List<Integer> missing = new ArrayList<>();
+            for (int index = received.nextClearBit(0); index < chunkCount; index = received.nextClearBit(index + 1)) {
+                missing.add(index);
+            }
+            return missing;
+        }
+
+        synchronized long receivedBytes() {
+            return receivedBytes;
+        }
+    }
+}
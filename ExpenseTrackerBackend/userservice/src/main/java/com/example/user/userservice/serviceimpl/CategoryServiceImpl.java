@@ -7,6 +7,7 @@ import com.example.user.userservice.exception.CategoryException;
 import com.example.user.userservice.repository.BudgetRepository;
 import com.example.user.userservice.repository.CategoryRepository;
 import com.example.user.userservice.repository.ExpenseRepository;
+import com.example.user.userservice.service.CategoryCache;
 import com.example.user.userservice.service.CategoryService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -26,6 +27,7 @@ public class CategoryServiceImpl implements CategoryService {
     private final CategoryRepository categoryRepository;
     private final BudgetRepository budgetRepository;
     private final ExpenseRepository expenseRepository;
+    private final CategoryCache categoryCache;
 
     @Override
     public CategoryResponse createCategory(CategoryRequest request) {
@@ -41,6 +43,7 @@ public class CategoryServiceImpl implements CategoryService {
                 .build();
 
         Category savedCategory = categoryRepository.save(category);
+        categoryCache.invalidate();
         log.info("Category created successfully with ID: {}", savedCategory.getId());
 
         return buildCategoryResponse(savedCategory);
@@ -61,6 +64,7 @@ public class CategoryServiceImpl implements CategoryService {
 
         category.setName(request.getName().trim());
         Category updatedCategory = categoryRepository.save(category);
+        categoryCache.invalidate();
 
         log.info("Category updated successfully with ID: {}", updatedCategory.getId());
         return buildCategoryResponse(updatedCategory);
@@ -105,6 +109,7 @@ public class CategoryServiceImpl implements CategoryService {
         }
 
         categoryRepository.delete(category);
+        categoryCache.invalidate();
         log.info("Category deleted successfully with ID: {}", categoryId);
     }
 
@@ -7,12 +7,16 @@ import com.example.user.userservice.entity.Category;
 import com.example.user.userservice.entity.Expense;
 import com.example.user.userservice.entity.User;
 import com.example.user.userservice.exception.CategoryException;
+import com.example.user.userservice.exception.DuplicateReceiptException;
 import com.example.user.userservice.exception.ExpenseException;
+import com.example.user.userservice.exception.FileStorageException;
 import com.example.user.userservice.repository.CategoryRepository;
 import com.example.user.userservice.repository.ExpenseRepository;
 import com.example.user.userservice.repository.UserRepository;
 import com.example.user.userservice.service.ExpenseService;
 import com.example.user.userservice.service.FileStorageService;
+import com.example.user.userservice.service.FileStorageService.StagedUpload;
+import com.example.user.userservice.service.MerchantCategoryMemory;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -37,12 +41,64 @@ public class ExpenseServiceImpl implements ExpenseService {
     private final UserRepository userRepository;
     private final CategoryRepository categoryRepository;
     private final FileStorageService fileStorageService;
+    private final MerchantCategoryMemory merchantCategoryMemory;
 
     @Override
     public ExpenseResponse createExpense(Long userId, ExpenseRequest request) {
         return createExpenseInternal(userId, request, null);
     }
 
+    @Override
+    public List<ExpenseResponse> createExpenses(Long userId, List<ExpenseRequest> requests) {
+        return createExpensesWithReceipts(userId, requests, null);
+    }
+
+    @Override
+    public List<ExpenseResponse> createExpensesWithReceipts(Long userId, List<ExpenseRequest> requests, List<String> receiptPaths) {
+        log.info("Creating {} expenses for user ID: {}", requests.size(), userId);
+
+        // Validate user exists
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new ExpenseException("User not found with ID: " + userId));
+
+        // Validate all categories with one query
+        Set<Long> categoryIds = requests.stream().map(ExpenseRequest::getCategoryId).collect(Collectors.toSet());
+        Map<Long, Category> categories = categoryRepository.findAllById(categoryIds).stream()
+                .collect(Collectors.toMap(Category::getId, category -> category));
+
+        List<Expense> expenses = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            ExpenseRequest request = requests.get(i);
+            Category category = categories.get(request.getCategoryId());
+            if (category == null) {
+                throw new CategoryException("Category not found with ID: " + request.getCategoryId());
+            }
+            expenses.add(Expense.builder()
+                    .user(user)
+                    .name(request.getName())
+                    .description(request.getDescription())
+                    .category(category)
+                    .amount(request.getAmount())
+                    .date(request.getDate())
+                    .source(request.getSource() != null ? request.getSource() : "manual")
+                    .paymentMethod(request.getPaymentMethod())
+                    .tags(request.getTags())
+                    .receiptPath(receiptPaths == null ? null : receiptPaths.get(i))
+                    .build());
+        }
+
+        // All or nothing: one transaction for the whole batch
+        List<Expense> savedExpenses = expenseRepository.saveAll(expenses);
+        log.info("Created {} expenses for user ID: {}", savedExpenses.size(), userId);
+
+        List<ExpenseResponse> responses = new ArrayList<>(savedExpenses.size());
+        for (Expense savedExpense : savedExpenses) {
+            merchantCategoryMemory.learn(userId, savedExpense.getName(), savedExpense.getCategory().getId(), false);
+            responses.add(buildExpenseResponse(savedExpense));
+        }
+        return responses;
+    }
+
     // Private method to create expense with optional receipt path
     private ExpenseResponse createExpenseInternal(Long userId, ExpenseRequest request, String receiptPath) {
         log.info("Creating expense for user ID: {} with name: {} and amount: {}", 
@@ -73,25 +129,43 @@ public class ExpenseServiceImpl implements ExpenseService {
         Expense savedExpense = expenseRepository.save(expense);
         log.info("Expense created successfully with ID: {}", savedExpense.getId());
 
+        merchantCategoryMemory.learn(userId, savedExpense.getName(), category.getId(), false);
+
         return buildExpenseResponse(savedExpense);
     }
 
     @Override
-    public ExpenseResponse createExpenseWithReceipt(Long userId, ExpenseRequest request, MultipartFile receipt) {
+    @Transactional(noRollbackFor = DuplicateReceiptException.class)
+    public ExpenseResponse createExpenseWithReceipt(Long userId, ExpenseRequest request, MultipartFile receipt, boolean rejectDuplicate) {
         log.info("Creating expense with receipt for user ID: {} with name: {}", userId, request.getName());
 
-        // Create expense first
-        ExpenseResponse expenseResponse = createExpense(userId, request);
+        if (receipt == null || receipt.isEmpty()) {
+            return createExpense(userId, request);
+        }
 
-        // Upload receipt if provided
-        if (receipt != null && !receipt.isEmpty()) {
-            String receiptPath = uploadReceipt(userId, expenseResponse.getId(), receipt);
-            log.info("Receipt uploaded successfully for expense ID: {}", expenseResponse.getId());
-            
-            // Fetch and return the updated expense with receipt path
-            return getExpenseById(userId, expenseResponse.getId());
+        // Receipt first, so a second photo of the same paper receipt is found before its expense exists
+        String directory = "receipts/" + userId;
+        String receiptPath = fileStorageService.storeFile(receipt, directory);
+        List<String> lookalikes = new ArrayList<>();
+        lookalikes.add(receiptPath); // identical bytes share the path
+        lookalikes.addAll(fileStorageService.findSimilarImages(receiptPath, directory));
+        List<Expense> duplicates = expenseRepository.findByUserIdAndReceiptPathIn(userId, lookalikes);
+        if (!duplicates.isEmpty()) {
+            log.info("Receipt for user ID: {} matches {} existing expenses", userId, duplicates.size());
+            if (rejectDuplicate) {
+                // Committed, not rolled back: the reference just taken is released again
+                fileStorageService.deleteFile(receiptPath);
+                throw new DuplicateReceiptException("This receipt looks like one already added",
+                        duplicates.stream().map(this::buildExpenseResponse).toList());
+            }
         }
 
+        ExpenseResponse expenseResponse = createExpenseInternal(userId, request, receiptPath);
+        // Advisory by default: the expense is created and the client may point out the matches
+        if (!duplicates.isEmpty()) {
+            expenseResponse.setPossibleDuplicateIds(duplicates.stream().map(Expense::getId).toList());
+        }
+        log.info("Receipt uploaded successfully for expense ID: {}", expenseResponse.getId());
         return expenseResponse;
     }
 
@@ -114,6 +188,19 @@ public class ExpenseServiceImpl implements ExpenseService {
         return expenseResponse;
     }
 
+    @Override
+    public ExpenseResponse createExpenseWithStagedReceipt(Long userId, ExpenseRequest request, StagedUpload receipt, String fileName, String contentType) {
+        log.info("Creating expense with streamed receipt for user ID: {} with name: {}", userId, request.getName());
+
+        ExpenseResponse expenseResponse = createExpense(userId, request);
+        if (receipt == null) {
+            return expenseResponse;
+        }
+
+        attachStagedReceipt(userId, expenseResponse.getId(), receipt, fileName, contentType);
+        return getExpenseById(userId, expenseResponse.getId());
+    }
+
     @Override
     public ExpenseResponse updateExpense(Long userId, Long expenseId, ExpenseRequest request) {
         log.info("Updating expense ID: {} for user ID: {}", expenseId, userId);
@@ -131,6 +218,10 @@ public class ExpenseServiceImpl implements ExpenseService {
         Category category = categoryRepository.findById(request.getCategoryId())
                 .orElseThrow(() -> new CategoryException("Category not found with ID: " + request.getCategoryId()));
 
+        // A changed category is a manual correction of whatever was picked before
+        boolean categoryCorrected = !category.getId().equals(expense.getCategory().getId());
+        boolean renamed = !Objects.equals(request.getName(), expense.getName());
+
         // Update expense
         expense.setName(request.getName());
         expense.setDescription(request.getDescription());
@@ -143,6 +234,10 @@ public class ExpenseServiceImpl implements ExpenseService {
         Expense updatedExpense = expenseRepository.save(expense);
         log.info("Expense updated successfully with ID: {}", updatedExpense.getId());
 
+        if (categoryCorrected || renamed) {
+            merchantCategoryMemory.learn(userId, updatedExpense.getName(), category.getId(), categoryCorrected);
+        }
+
         return buildExpenseResponse(updatedExpense);
     }
 
@@ -155,10 +250,7 @@ public class ExpenseServiceImpl implements ExpenseService {
 
         // Upload new receipt if provided
         if (receipt != null && !receipt.isEmpty()) {
-            // Delete old receipt if exists
-            deleteReceipt(userId, expenseId);
-            
-            // Upload new receipt
+            // Upload new receipt; the old one is released after the new one is stored
             String receiptPath = uploadReceipt(userId, expenseId, receipt);
             log.info("Receipt updated successfully for expense ID: {}", expenseId);
             
@@ -178,10 +270,7 @@ public class ExpenseServiceImpl implements ExpenseService {
 
         // Upload new base64 receipt if provided
         if (base64Receipt != null && !base64Receipt.trim().isEmpty()) {
-            // Delete old receipt if exists
-            deleteReceipt(userId, expenseId);
-            
-            // Upload new base64 receipt
+            // Upload new base64 receipt; the old one is released after the new one is stored
             String receiptPath = uploadBase64Receipt(userId, expenseId, base64Receipt, fileName);
             log.info("Base64 receipt updated successfully for expense ID: {}", expenseId);
             
@@ -382,16 +471,45 @@ public class ExpenseServiceImpl implements ExpenseService {
         }
 
         // Store file
+        String previousPath = expense.getReceiptPath();
         String receiptPath = fileStorageService.storeFile(receipt, "receipts/" + userId);
 
         // Update expense with receipt path
         expense.setReceiptPath(receiptPath);
         expenseRepository.save(expense);
+        releasePreviousReceipt(previousPath);
 
         log.info("Receipt uploaded successfully for expense ID: {} at path: {}", expenseId, receiptPath);
         return receiptPath;
     }
 
+    @Override
+    public String attachStagedReceipt(Long userId, Long expenseId, StagedUpload receipt, String fileName, String contentType) {
+        log.info("Attaching staged receipt for expense ID: {} and user ID: {} ({} bytes)", expenseId, userId, receipt.size());
+
+        Expense expense = expenseRepository.findById(expenseId)
+                .orElseThrow(() -> new ExpenseException("Expense not found with ID: " + expenseId));
+
+        if (!expense.getUser().getId().equals(userId)) {
+            throw new ExpenseException("Expense does not belong to user ID: " + userId);
+        }
+
+        try {
+            // The receipt is already on disk; storing it is a move, not another copy
+            String previousPath = expense.getReceiptPath();
+            String receiptPath = fileStorageService.storeStagedUpload(receipt, fileName, contentType, "receipts/" + userId);
+            expense.setReceiptPath(receiptPath);
+            expenseRepository.save(expense);
+            releasePreviousReceipt(previousPath);
+
+            log.info("Staged receipt stored for expense ID: {} at path: {}", expenseId, receiptPath);
+            return receiptPath;
+        } catch (FileStorageException e) {
+            log.error("Failed to store staged receipt: {}", e.getMessage());
+            throw new ExpenseException("Failed to upload receipt: " + e.getMessage());
+        }
+    }
+
     public String uploadBase64Receipt(Long userId, Long expenseId, String base64Receipt, String fileName) {
         log.info("Uploading base64 receipt for expense ID: {} and user ID: {}", expenseId, userId);
 
@@ -408,11 +526,13 @@ public class ExpenseServiceImpl implements ExpenseService {
             MultipartFile receiptFile = convertBase64ToMultipartFile(base64Receipt, fileName);
             
             // Store file
+            String previousPath = expense.getReceiptPath();
             String receiptPath = fileStorageService.storeFile(receiptFile, "receipts/" + userId);
 
             // Update expense with receipt path
             expense.setReceiptPath(receiptPath);
             expenseRepository.save(expense);
+            releasePreviousReceipt(previousPath);
 
             log.info("Base64 receipt uploaded successfully for expense ID: {} at path: {}", expenseId, receiptPath);
             return receiptPath;
@@ -448,6 +568,13 @@ public class ExpenseServiceImpl implements ExpenseService {
         }
     }
 
+    // A replaced receipt is released only after the new one is stored, so re-uploading the same bytes never rewrites them
+    private void releasePreviousReceipt(String previousPath) {
+        if (previousPath != null && !previousPath.trim().isEmpty()) {
+            fileStorageService.deleteFile(previousPath);
+        }
+    }
+
     // Helper methods
     private ExpenseResponse buildExpenseResponse(Expense expense) {
         List<String> tagList = expense.getTags() != null ? 
@@ -459,9 +586,13 @@ public class ExpenseServiceImpl implements ExpenseService {
 
         // Convert file path to complete URL for frontend access
         String receiptUrl = null;
+        String receiptThumbnailUrl = null;
+        String receiptPreviewUrl = null;
         if (expense.getReceiptPath() != null && !expense.getReceiptPath().trim().isEmpty()) {
             receiptUrl = fileStorageService.getFileUrl(expense.getReceiptPath());
-            log.info("Converted receipt path to URL: {} -> {}", expense.getReceiptPath(), receiptUrl);
+            receiptThumbnailUrl = fileStorageService.getFileUrl(expense.getReceiptPath(), FileStorageService.Variant.THUMBNAIL);
+            receiptPreviewUrl = fileStorageService.getFileUrl(expense.getReceiptPath(), FileStorageService.Variant.PREVIEW);
+            log.debug("Converted receipt path to URL: {} -> {}", expense.getReceiptPath(), receiptUrl);
         }
 
         return ExpenseResponse.builder()
@@ -476,6 +607,8 @@ public class ExpenseServiceImpl implements ExpenseService {
                 .date(expense.getDate())
                 .source(expense.getSource())
                 .receiptPath(receiptUrl) // Return URL instead of file path
+                .receiptThumbnailUrl(receiptThumbnailUrl)
+                .receiptPreviewUrl(receiptPreviewUrl)
                 .paymentMethod(expense.getPaymentMethod())
                 .tags(expense.getTags())
                 .tagList(tagList)
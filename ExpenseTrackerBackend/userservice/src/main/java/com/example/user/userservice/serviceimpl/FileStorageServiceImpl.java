@@ -1,28 +1,59 @@
 package com.example.user.userservice.serviceimpl;
 
+import com.example.user.userservice.entity.StoredFile;
 import com.example.user.userservice.exception.FileStorageException;
+import com.example.user.userservice.repository.StoredFileRepository;
+import com.example.user.userservice.repository.StoredFileRepository.PerceptualHashRow;
+import com.example.user.userservice.security.ReceiptUrlSigner;
 import com.example.user.userservice.service.FileStorageService;
+import com.example.user.userservice.service.ReceiptImageNormalizer;
+import com.example.user.userservice.service.ReceiptPerceptualHasher;
+import com.example.user.userservice.service.ReceiptStorageBackend;
+import com.example.user.userservice.service.ReceiptThumbnailService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class FileStorageServiceImpl implements FileStorageService {
 
-    @Value("${app.file.upload-dir:uploads}")
-    private String uploadDir;
+    private static final String TEMP_DIR = ".tmp";
+    private static final int KNOWN_VARIANTS_LIMIT = 100_000;
+
+    private final StoredFileRepository storedFileRepository;
+    private final ReceiptThumbnailService receiptThumbnailService;
+    private final ReceiptStorageBackend storageBackend;
+    private final ReceiptImageNormalizer receiptImageNormalizer;
+    private final ReceiptPerceptualHasher receiptPerceptualHasher;
+    private final ReceiptUrlSigner receiptUrlSigner;
+    private final Set<String> knownVariants = ConcurrentHashMap.newKeySet();
 
     @Value("${app.file.max-size:10485760}") // 10MB default
     private long maxFileSize;
@@ -30,6 +61,25 @@ public class FileStorageServiceImpl implements FileStorageService {
     @Value("${app.file.allowed-extensions:jpg,jpeg,png,pdf}")
     private String allowedExtensions;
 
+    // Store identical bytes once under their SHA-256, reference-counted in stored_files
+    @Value("${app.file.content-addressed:false}")
+    private boolean contentAddressed;
+
+    // Expiring HMAC-signed URLs that FileController serves without a JWT or user lookup
+    @Value("${app.file.signed-urls:false}")
+    private boolean signedUrls;
+
+    // Hamming distance between perceptual hashes up to which two images count as the same receipt
+    @Value("${app.file.duplicate-max-distance:10}")
+    private int duplicateMaxDistance;
+
+    @PostConstruct
+    void checkUrlSigning() {
+        if (signedUrls && !receiptUrlSigner.isEnabled()) {
+            throw new IllegalStateException("app.file.signed-urls=true needs app.file.url-signing-key");
+        }
+    }
+
     @Override
     public String storeFile(MultipartFile file, String directory) {
         log.info("Storing file: {} with size: {} bytes", file.getOriginalFilename(), file.getSize());
@@ -37,55 +87,23 @@ public class FileStorageServiceImpl implements FileStorageService {
         // Validate file
         validateFile(file);
 
-        try {
-            // Create directory if it doesn't exist
-            Path uploadPath = Paths.get(uploadDir, directory);
-            log.info("Upload path: {}", uploadPath.toAbsolutePath());
-            
-            if (!Files.exists(uploadPath)) {
-                log.info("Creating directory: {}", uploadPath);
-                Files.createDirectories(uploadPath);
-                log.info("Successfully created directory: {}", uploadPath);
-            } else {
-                log.info("Directory already exists: {}", uploadPath);
-            }
-            
-            // Check if directory is writable
-            if (!Files.isWritable(uploadPath)) {
-                throw new FileStorageException("Upload directory is not writable: " + uploadPath);
-            }
-
-            // Generate unique filename
-            String originalFilename = StringUtils.cleanPath(file.getOriginalFilename());
-            String fileExtension = getFileExtension(originalFilename);
-            String uniqueFilename = generateUniqueFilename(fileExtension);
-            
-            Path filePath = uploadPath.resolve(uniqueFilename);
-            log.info("Full file path: {}", filePath.toAbsolutePath());
-
-            // Copy file to destination
-            log.info("Copying file to destination...");
-            Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
-            log.info("File copied successfully");
-
-            // Verify file was actually written
-            if (!Files.exists(filePath)) {
-                throw new FileStorageException("File was not created at expected location: " + filePath);
-            }
-            
-            long fileSize = Files.size(filePath);
-            log.info("File size on disk: {} bytes", fileSize);
-
-            // Return relative path
-            String relativePath = directory + "/" + uniqueFilename;
-            log.info("File stored successfully at: {}", relativePath);
-            
-            return relativePath;
-
+        String extension = getFileExtension(StringUtils.cleanPath(file.getOriginalFilename()));
+        StagedUpload upload;
+        try (InputStream in = file.getInputStream()) {
+            upload = stageUpload(in);
         } catch (IOException ex) {
             log.error("Failed to store file: {}", file.getOriginalFilename(), ex);
             throw new FileStorageException("Failed to store file: " + file.getOriginalFilename(), ex);
         }
+        String storedPath;
+        try {
+            storedPath = moveNormalized(upload, extension, directory);
+        } catch (RuntimeException ex) {
+            discardStagedUpload(upload);
+            throw ex;
+        }
+        receiptThumbnailService.generateAsync(storedPath);
+        return storedPath;
     }
 
     @Override
@@ -95,10 +113,15 @@ public class FileStorageServiceImpl implements FileStorageService {
             return;
         }
 
+        if (contentAddressed && releaseReference(filePath)) {
+            return;
+        }
+
         try {
-            Path fullPath = Paths.get(uploadDir, filePath);
-            if (Files.exists(fullPath)) {
-                Files.delete(fullPath);
+            if (storageBackend.stat(filePath).isPresent()) {
+                storageBackend.delete(filePath);
+                receiptThumbnailService.deleteVariants(filePath);
+                forgetVariants(filePath);
                 log.info("File deleted successfully: {}", filePath);
             } else {
                 log.warn("File not found for deletion: {}", filePath);
@@ -115,8 +138,13 @@ public class FileStorageServiceImpl implements FileStorageService {
             return false;
         }
 
-        Path fullPath = Paths.get(uploadDir, filePath);
-        boolean exists = Files.exists(fullPath);
+        boolean exists;
+        try {
+            exists = storageBackend.stat(filePath).isPresent();
+        } catch (IOException ex) {
+            log.warn("Failed to check file {}: {}", filePath, ex.getMessage());
+            exists = false;
+        }
         log.debug("File exists check for {}: {}", filePath, exists);
         return exists;
     }
@@ -127,13 +155,367 @@ public class FileStorageServiceImpl implements FileStorageService {
             return null;
         }
 
-        // For local storage, return the complete URL
-        // In production, this could return a CDN URL or cloud storage URL
-        String url = "/api/user/files/" + filePath;
+        // Always the service's own URL: FileController serves local files and redirects to a
+        // presigned backend URL otherwise, so access checks and links stay stable across backends
+        String url = signedUrls ? receiptUrlSigner.signedUrl(filePath) : "/api/user/files/" + filePath;
         log.debug("Generated file URL: {} for path: {}", url, filePath);
         return url;
     }
 
+    @Override
+    public String getFileUrl(String filePath, Variant variant) {
+        if (filePath == null || filePath.trim().isEmpty()) {
+            return null;
+        }
+        if (variant != Variant.ORIGINAL && ReceiptThumbnailService.supports(filePath)) {
+            String variantPath = ReceiptThumbnailService.variantPath(filePath, variant);
+            if (variantExists(variantPath)) {
+                return getFileUrl(variantPath);
+            }
+            // Not generated yet (or an upload from before variants existed): queue it, serve the original meanwhile
+            receiptThumbnailService.generateAsync(filePath);
+        }
+        return getFileUrl(filePath);
+    }
+
+    @Override
+    public List<String> findSimilarImages(String filePath, String directory) {
+        if (!contentAddressed || filePath == null) {
+            return List.of();
+        }
+        Long hash = storedFileRepository.findByPath(filePath).map(StoredFile::getPerceptualHash).orElse(null);
+        if (hash == null) {
+            return List.of();
+        }
+        // Pigeonhole: r differing bits spread over BANDS bands leave some band with at most
+        // floor(r / BANDS) of them, so that radius per band finds every match within r, however
+        // unevenly the bits fall. Rounding up would only add candidates; the full distance below decides.
+        int bandRadius = duplicateMaxDistance / ReceiptPerceptualHasher.BANDS;
+        int[] bands = ReceiptPerceptualHasher.bands(hash);
+        List<PerceptualHashRow> candidates = storedFileRepository.findHashCandidates(directory + "/%", filePath,
+                ReceiptPerceptualHasher.bandNeighbours(bands[0], bandRadius),
+                ReceiptPerceptualHasher.bandNeighbours(bands[1], bandRadius),
+                ReceiptPerceptualHasher.bandNeighbours(bands[2], bandRadius),
+                ReceiptPerceptualHasher.bandNeighbours(bands[3], bandRadius));
+        return candidates.stream()
+                .filter(row -> row.getPerceptualHash() != null
+                        && ReceiptPerceptualHasher.distance(hash, row.getPerceptualHash()) <= duplicateMaxDistance)
+                .sorted(Comparator.comparingInt(row -> ReceiptPerceptualHasher.distance(hash, row.getPerceptualHash())))
+                .map(PerceptualHashRow::getPath)
+                .toList();
+    }
+
+    @Override
+    public StagedUpload stageUpload(InputStream content) {
+        String tempKey = newTempKey();
+        try {
+            HashingLimitInputStream hashing = new HashingLimitInputStream(content, maxFileSize);
+            storageBackend.put(tempKey, hashing, null);
+            return new StagedUpload(tempKey, hashing.sha256(), hashing.size());
+
+        } catch (IOException ex) {
+            log.error("Failed to stage upload", ex);
+            deleteQuietly(tempKey);
+            throw new FileStorageException("Failed to store file: " + ex.getMessage(), ex);
+        } catch (RuntimeException ex) {
+            deleteQuietly(tempKey);
+            throw ex;
+        }
+    }
+
+    @Override
+    public StagedUpload stageFile(Path file) {
+        String tempKey = newTempKey();
+        try {
+            long size = Files.size(file);
+            if (size > maxFileSize) {
+                throw new FileStorageException("File size exceeds maximum allowed size of "
+                        + (maxFileSize / 1024 / 1024) + "MB");
+            }
+            HashingLimitInputStream hashing = new HashingLimitInputStream(Files.newInputStream(file), maxFileSize);
+            try (hashing) {
+                hashing.transferTo(OutputStream.nullOutputStream());
+            }
+            storageBackend.putFile(tempKey, file, null);
+            return new StagedUpload(tempKey, hashing.sha256(), size);
+        } catch (IOException ex) {
+            log.error("Failed to stage file: {}", file, ex);
+            throw new FileStorageException("Failed to store file: " + ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public String storeStagedUpload(StagedUpload upload, String originalFilename, String contentType, String directory) {
+        try {
+            if (upload.size() == 0) {
+                throw new FileStorageException("File is empty");
+            }
+            validateNameAndType(originalFilename, contentType);
+            String storedPath = moveNormalized(upload, getFileExtension(StringUtils.cleanPath(originalFilename)), directory);
+            receiptThumbnailService.generateAsync(storedPath);
+            return storedPath;
+        } catch (RuntimeException ex) {
+            // A successful move already consumed it; only failures leave a staged copy behind
+            discardStagedUpload(upload);
+            throw ex;
+        }
+    }
+
+    @Override
+    public void discardStagedUpload(StagedUpload upload) {
+        if (upload != null) {
+            deleteQuietly(upload.key());
+        }
+    }
+
+    /**
+     * Stores the normalized JPEG in place of the staged upload when {@link ReceiptImageNormalizer}
+     * produces one. It is hashed as what is actually stored, so the same photo uploaded twice still
+     * deduplicates. The caller still discards {@code upload} on failure; that is a no-op once replaced.
+     */
+    private String moveNormalized(StagedUpload upload, String extension, String directory) {
+        if (!receiptImageNormalizer.appliesTo(extension)) {
+            return moveStaged(upload, extension, directory);
+        }
+        Optional<StagedUpload> normalized = normalizeStaged(upload);
+        if (normalized.isEmpty()) {
+            return moveStaged(upload, extension, directory);
+        }
+        discardStagedUpload(upload);
+        try {
+            return moveStaged(normalized.get(), "jpg", directory);
+        } catch (RuntimeException ex) {
+            discardStagedUpload(normalized.get());
+            throw ex;
+        }
+    }
+
+    private Optional<StagedUpload> normalizeStaged(StagedUpload upload) {
+        // Next to the staged files when local, so staging the result is a rename
+        Path tempDir = storageBackend.localPath(upload.key()).map(Path::getParent).orElse(null);
+        Optional<Path> normalized;
+        try (InputStream in = storageBackend.get(upload.key())) {
+            normalized = receiptImageNormalizer.normalize(in, upload.size(), tempDir);
+        } catch (IOException ex) {
+            log.warn("Failed to read staged upload {} for normalization: {}", upload.key(), ex.getMessage());
+            return Optional.empty();
+        }
+        if (normalized.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(stageFile(normalized.get()));
+        } catch (FileStorageException ex) {
+            log.warn("Failed to stage normalized receipt, storing it as uploaded: {}", ex.getMessage());
+            return Optional.empty();
+        } finally {
+            try {
+                Files.deleteIfExists(normalized.get());
+            } catch (IOException ex) {
+                log.warn("Failed to delete {}: {}", normalized.get(), ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Moves a staged upload to {@code directory/<first two hex chars>/<sha256>.<ext>}. When that
+     * object already exists the staged copy is dropped, so a repeated upload costs no write beyond
+     * the temp copy. The reference is counted only once the file is in place; if counting fails,
+     * a newly moved file is left unreferenced for {@link com.example.user.userservice.service.ReceiptGarbageCollector}.
+     */
+    private String moveStaged(StagedUpload upload, String extension, String directory) {
+        String hash = upload.sha256();
+        String relativePath = contentAddressed
+                ? directory + "/" + hash.substring(0, 2) + "/" + hash + "." + extension
+                : directory + "/" + generateUniqueFilename(extension);
+        try {
+            boolean moved = storageBackend.moveIfAbsent(upload.key(), relativePath);
+            if (contentAddressed) {
+                storedFileRepository.addReference(relativePath, hash, upload.size());
+                // A release of the last reference may have deleted the existing copy before ours was counted
+                if (!moved && storageBackend.stat(relativePath).isEmpty()) {
+                    releaseReference(relativePath);
+                    throw new FileStorageException("File was deleted while storing, retry the upload: " + relativePath);
+                }
+            }
+            if (!moved) {
+                log.debug("Upload deduplicated to {}", relativePath);
+            } else if (contentAddressed && receiptPerceptualHasher.appliesTo(extension)) {
+                recordPerceptualHash(relativePath);
+            }
+            log.info("File stored at: {} ({} bytes)", relativePath, upload.size());
+            return relativePath;
+        } catch (IOException ex) {
+            log.error("Failed to store file at: {}", relativePath, ex);
+            throw new FileStorageException("Failed to store file: " + relativePath, ex);
+        }
+    }
+
+    /**
+     * Hashes a newly stored image for near-duplicate lookups. Best effort: an image that cannot
+     * be hashed is stored all the same, it just never matches.
+     */
+    private void recordPerceptualHash(String relativePath) {
+        try (InputStream in = storageBackend.get(relativePath)) {
+            OptionalLong hash = receiptPerceptualHasher.hash(in);
+            if (hash.isPresent()) {
+                int[] bands = ReceiptPerceptualHasher.bands(hash.getAsLong());
+                storedFileRepository.setPerceptualHash(relativePath, hash.getAsLong(), bands[0], bands[1], bands[2], bands[3]);
+            }
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Failed to hash {} for duplicate detection: {}", relativePath, ex.getMessage());
+        }
+    }
+
+    /**
+     * Drops one reference to a content-addressed file. The file itself is deleted after the
+     * surrounding transaction commits, and only if nothing referenced it again meanwhile.
+     *
+     * @return false when the path is not tracked (stored before content addressing)
+     */
+    private boolean releaseReference(String filePath) {
+        if (storedFileRepository.releaseReference(filePath) == 0) {
+            return false;
+        }
+        if (storedFileRepository.deleteIfUnreferenced(filePath) == 0) {
+            log.debug("Released reference to {}, still in use", filePath);
+            return true;
+        }
+
+        Runnable deleteFile = () -> {
+            if (!storedFileRepository.existsByPath(filePath)) {
+                deleteQuietly(filePath);
+                receiptThumbnailService.deleteVariants(filePath);
+                forgetVariants(filePath);
+                log.info("File deleted successfully: {}", filePath);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    deleteFile.run();
+                }
+            });
+        } else {
+            deleteFile.run();
+        }
+        return true;
+    }
+
+    /**
+     * Variants never change once written, so a positive answer is remembered: listing expenses
+     * then costs no backend round trip per receipt. Misses are not cached; the variant may be
+     * generated at any moment.
+     */
+    private boolean variantExists(String variantPath) {
+        if (knownVariants.contains(variantPath)) {
+            return true;
+        }
+        try {
+            if (storageBackend.stat(variantPath).isEmpty()) {
+                return false;
+            }
+        } catch (IOException e) {
+            log.warn("Failed to check variant {}: {}", variantPath, e.getMessage());
+            return false;
+        }
+        if (knownVariants.size() >= KNOWN_VARIANTS_LIMIT) {
+            knownVariants.clear();
+        }
+        knownVariants.add(variantPath);
+        return true;
+    }
+
+    private void forgetVariants(String filePath) {
+        for (Variant variant : Variant.values()) {
+            if (variant != Variant.ORIGINAL) {
+                knownVariants.remove(ReceiptThumbnailService.variantPath(filePath, variant));
+            }
+        }
+    }
+
+    private String newTempKey() {
+        return TEMP_DIR + "/upload-" + UUID.randomUUID() + ".part";
+    }
+
+    private void deleteQuietly(String key) {
+        if (key == null) {
+            return;
+        }
+        try {
+            storageBackend.delete(key);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to delete {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Hashes and counts the bytes read through it, failing once more than {@code limit} arrive.
+     */
+    private static final class HashingLimitInputStream extends FilterInputStream {
+
+        private final MessageDigest digest;
+        private final long limit;
+        private long size;
+
+        HashingLimitInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+                digest.update((byte) b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count(read);
+                digest.update(b, off, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            return 0; // Every byte must be hashed
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void count(int read) {
+            size += read;
+            if (size > limit) {
+                throw new FileStorageException("File size exceeds maximum allowed size of "
+                        + (limit / 1024 / 1024) + "MB");
+            }
+        }
+
+        String sha256() {
+            return HexFormat.of().formatHex(digest.digest());
+        }
+
+        long size() {
+            return size;
+        }
+    }
+
     // Helper methods
     private void validateFile(MultipartFile file) {
         log.info("Validating file: {} with size: {} bytes", 
@@ -147,7 +529,11 @@ public class FileStorageServiceImpl implements FileStorageService {
             throw new FileStorageException("File size exceeds maximum allowed size of " + (maxFileSize / 1024 / 1024) + "MB");
         }
 
-        String originalFilename = file.getOriginalFilename();
+        validateNameAndType(file.getOriginalFilename(), file.getContentType());
+        log.info("File validation passed for: {}", file.getOriginalFilename());
+    }
+
+    private void validateNameAndType(String originalFilename, String contentType) {
         if (originalFilename == null || originalFilename.trim().isEmpty()) {
             throw new FileStorageException("File name is empty");
         }
@@ -160,13 +546,10 @@ public class FileStorageServiceImpl implements FileStorageService {
         }
         
         // Also check content type if available
-        String contentType = file.getContentType();
         if (contentType != null && !contentType.startsWith("image/")) {
             log.warn("Content type '{}' not allowed for file: {}", contentType, originalFilename);
             throw new FileStorageException("Invalid content type: " + contentType);
         }
-        
-        log.info("File validation passed for: {}", originalFilename);
     }
 
     private String getFileExtension(String filename) {
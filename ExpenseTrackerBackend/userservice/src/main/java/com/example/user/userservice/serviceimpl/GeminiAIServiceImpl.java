@@ -1,298 +1,180 @@
 package com.example.user.userservice.serviceimpl;
 
 import com.example.user.userservice.dto.ExpenseRequest;
+import com.example.user.userservice.exception.AiCapacityException;
+import com.example.user.userservice.service.AiCallLedger;
+import com.example.user.userservice.service.AiProviderRouter;
+import com.example.user.userservice.service.CategoryCache;
+import com.example.user.userservice.service.ExpenseCategoryClassifier;
+import com.example.user.userservice.service.ExpensePromptBuilder;
+import com.example.user.userservice.service.ExpenseTextExtractor;
 import com.example.user.userservice.service.GeminiAIService;
+import com.example.user.userservice.service.GeminiResponseParser;
+import com.example.user.userservice.service.GeminiResponseParser.ParsedVoiceExpense;
+import com.example.user.userservice.service.MerchantCategoryMemory;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.JsonNode;
 
 import java.time.LocalDate;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class GeminiAIServiceImpl implements GeminiAIService {
 
-    @Value("${gemini.api.key}")
-    private String apiKey;
+    private final AiProviderRouter aiProviderRouter;
+    private final ExpensePromptBuilder expensePromptBuilder;
+    private final CategoryCache categoryCache;
+    private final GeminiResponseParser geminiResponseParser;
+    private final MerchantCategoryMemory merchantCategoryMemory;
+    private final ExpenseCategoryClassifier expenseCategoryClassifier;
+    private final AiCallLedger aiCallLedger;
 
-    @Value("${gemini.model.name}")
-    private String modelName;
-
-    private final RestTemplate restTemplate = new RestTemplate();
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final Pattern FALLBACK_AMOUNT_PATTERN =
+            Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*(?:rs|inr|rupees)?", Pattern.CASE_INSENSITIVE);
 
     @Override
-    public ExpenseRequest parseVoiceToExpense(String voiceText) {
+    public List<ExpenseRequest> parseVoiceToExpenses(Long userId, String voiceText) {
         try {
             log.info("Parsing voice text: {}", voiceText);
-            
+
+            // An unambiguous single expense with a confident local category needs no model call
+            Optional<ExpenseRequest> local = parseWithoutAi(userId, voiceText);
+            if (local.isPresent()) {
+                return List.of(local.get());
+            }
+
             // Create prompt for expense parsing
-            String prompt = createExpenseParsingPrompt(voiceText);
-            
-            // Call Gemini API using HTTP
-            String aiResponse = callGeminiAPI(prompt);
-            
-            log.info("Gemini AI Response: {}", aiResponse);
-            
-            // Parse the AI response into ExpenseRequest
-            ExpenseRequest expenseRequest = parseAIResponse(aiResponse, voiceText);
+            String prompt = expensePromptBuilder.build(voiceText, LocalDate.now());
+            
+            log.debug("AI prompt: {}", prompt);
+            
+            // One call for every expense in the utterance; unparseable output fails over
+            List<ParsedVoiceExpense> parsed = aiProviderRouter.complete("voice-parse", null, prompt,
+                    geminiResponseParser::parseAll);
+            
+            // Map the AI response into ExpenseRequests
+            List<ExpenseRequest> expenseRequests = new ArrayList<>(parsed.size());
+            for (ParsedVoiceExpense expense : parsed) {
+                ExpenseRequest expenseRequest = toExpenseRequest(expense, voiceText);
+                // Amount, date and name stay the model's; only the category defers to history and the classifier
+                categoryOverride(userId, expenseRequest).ifPresent(override -> {
+                    expenseRequest.setCategoryId(override.categoryId());
+                    expenseRequest.setSource(override.source());
+                });
+                expenseRequests.add(expenseRequest);
+            }
             
-            log.info("Parsed expense request: {}", expenseRequest);
-            return expenseRequest;
+            log.debug("Parsed {} expense requests: {}", expenseRequests.size(), expenseRequests);
+            return expenseRequests;
             
+        } catch (AiCapacityException e) {
+            log.warn("AI providers are saturated, using regex fallback: {}", e.getMessage());
+            return List.of(fallbackToRegex(userId, voiceText, e));
         } catch (Exception e) {
             log.error("Error parsing voice text with Gemini AI: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to parse voice text", e);
         }
     }
 
-    private String callGeminiAPI(String prompt) {
-        try {
-            String url = "https://generativelanguage.googleapis.com/v1beta/models/" + modelName + ":generateContent?key=" + apiKey;
-            
-            Map<String, Object> requestBody = new HashMap<>();
-            Map<String, Object> content = new HashMap<>();
-            content.put("parts", new Object[]{
-                Map.of("text", prompt)
-            });
-            requestBody.put("contents", new Object[]{content});
-            
-            String requestJson = objectMapper.writeValueAsString(requestBody);
-            log.info("Gemini API Request: {}", requestJson);
-            
-            String response = restTemplate.postForObject(url, requestJson, String.class);
-            log.info("Gemini API Raw Response: {}", response);
-            
-            if (response != null) {
-                JsonNode responseNode = objectMapper.readTree(response);
-                if (responseNode.has("candidates") && responseNode.get("candidates").isArray() && responseNode.get("candidates").size() > 0) {
-                    JsonNode candidate = responseNode.get("candidates").get(0);
-                    if (candidate.has("content") && candidate.get("content").has("parts")) {
-                        JsonNode parts = candidate.get("content").get("parts");
-                        if (parts.isArray() && parts.size() > 0) {
-                            return parts.get(0).get("text").asText();
-                        }
-                    }
-                }
-            }
-            
-            throw new RuntimeException("Invalid response from Gemini API");
-            
-        } catch (Exception e) {
-            log.error("Error calling Gemini API: {}", e.getMessage(), e);
-            throw new RuntimeException("Failed to call Gemini API", e);
+    /**
+     * The expense from the transcript alone when it holds exactly one amount, a date resolvable
+     * without the model and a category the user's memory or the classifier is confident about.
+     */
+    private Optional<ExpenseRequest> parseWithoutAi(Long userId, String voiceText) {
+        Optional<Double> amount = ExpenseTextExtractor.amount(voiceText);
+        Optional<LocalDate> date = ExpenseTextExtractor.date(voiceText, LocalDate.now());
+        if (amount.isEmpty() || date.isEmpty()) {
+            return Optional.empty();
         }
+
+        ExpenseRequest expenseRequest = new ExpenseRequest();
+        expenseRequest.setName(ExpenseTextExtractor.describe(voiceText).orElse("Voice Expense"));
+        expenseRequest.setAmount(amount.get());
+        expenseRequest.setDate(date.get());
+        expenseRequest.setDescription(voiceText);
+        return categoryOverride(userId, expenseRequest)
+                .filter(override -> categoryCache.snapshot().contains(override.categoryId()))
+                .map(override -> {
+                    expenseRequest.setCategoryId(override.categoryId());
+                    expenseRequest.setSource(override.source());
+                    log.debug("Parsed voice expense without the model ({})", override.source());
+                    return expenseRequest;
+                });
     }
 
-    private String createExpenseParsingPrompt(String voiceText) {
-        LocalDate today = LocalDate.now();
-        LocalDate yesterday = today.minusDays(1);
-        LocalDate lastWeek = today.minusDays(7);
-        
-        return String.format("""
-            You are an intelligent expense parsing assistant. Parse the following voice input into a structured expense format with high accuracy.
-            
-            CURRENT DATE CONTEXT:
-            - Today's date is: %s
-            - Yesterday's date is: %s
-            - Last week's date is: %s
-            
-            Voice Input: "%s"
-            
-            CATEGORY MAPPING (be very specific):
-            - 1 (Food & Dining): restaurants, cafes, food delivery, groceries, dining out, lunch, dinner, breakfast, snacks, food items
-            - 2 (Transportation): fuel, gas, petrol, diesel, taxi, uber, bus, train, metro, parking, toll, car maintenance, bike, scooter
-            - 3 (Shopping): clothes, electronics, gadgets, accessories, fashion, retail stores, online shopping, malls, department stores
-            - 4 (Entertainment): movies, cinema, games, streaming services, Netflix, Amazon Prime, sports events, concerts, shows, amusement parks
-            - 5 (Healthcare): medicines, doctor visits, hospital, medical tests, pharmacy, health insurance, dental, optical, fitness
-            - 6 (Education): books, courses, tuition, school fees, college fees, training, workshops, online courses, educational materials
-            - 7 (Utilities): electricity, water, gas, internet, phone bills, mobile recharge, broadband, cable TV, maintenance
-            - 8 (Travel): flights, hotels, vacation, holiday, travel packages, tourism, sightseeing, accommodation
-            - 9 (Business): office supplies, business meetings, client expenses, work-related travel, professional services
-            - 10 (Other): anything that doesn't fit above categories
-            
-            DATE PARSING RULES (CRITICAL - USE CURRENT DATE CONTEXT ABOVE):
-            - "yesterday" = %s
-            - "today" = %s
-            - "last week" = %s
-            - "last month" = %s (approximately)
-            - "Monday", "Tuesday", etc. = most recent occurrence of that day
-            - "last Monday" = previous Monday from today
-            - "this week" = within last 7 days from today
-            - "this month" = within current month
-            - If no date mentioned, use today's date: %s
-            
-            Extract and return in this exact JSON format:
-            {
-                "name": "clear expense name",
-                "amount": 0.0,
-                "categoryId": 1,
-                "date": "YYYY-MM-DD",
-                "description": "detailed description"
-            }
-            
-            EXAMPLES WITH CURRENT DATES:
-            Input: "I spent 500 rupees on lunch yesterday at McDonald's"
-            Output: {"name": "Lunch at McDonald's", "amount": 500.0, "categoryId": 1, "date": "%s", "description": "Lunch at McDonald's restaurant"}
-            
-            Input: "Bought petrol for 2000 rupees today"
-            Output: {"name": "Petrol", "amount": 2000.0, "categoryId": 2, "date": "%s", "description": "Fuel purchase for vehicle"}
-            
-            Input: "Paid 1500 for movie tickets last week"
-            Output: {"name": "Movie Tickets", "amount": 1500.0, "categoryId": 4, "date": "%s", "description": "Cinema tickets for entertainment"}
-            
-            CRITICAL RULES:
-            1. ALWAYS use the current date context provided above
-            2. Be very specific with category mapping based on the examples above
-            3. Parse dates accurately using the date rules and current date context
-            4. Extract amounts carefully (look for numbers followed by currency words)
-            5. Create descriptive names that clearly identify the expense
-            6. Only return valid JSON, no additional text or explanations
-            7. NEVER use hardcoded years like 2023 or 2024 - always calculate from the current date context
-            """, 
-            today.toString(), yesterday.toString(), lastWeek.toString(), // Current date context
-            voiceText, // Voice input
-            yesterday.toString(), today.toString(), lastWeek.toString(), today.minusMonths(1).toString(), today.toString(), // Date parsing rules
-            yesterday.toString(), today.toString(), lastWeek.toString() // Examples
-        );
+    /**
+     * Category from the user's memory of the expense name, else from a confident classifier prediction.
+     */
+    private Optional<CategoryOverride> categoryOverride(Long userId, ExpenseRequest expenseRequest) {
+        String text = expenseRequest.getDescription() == null ? expenseRequest.getName()
+                : expenseRequest.getName() + " " + expenseRequest.getDescription();
+        return merchantCategoryMemory.lookup(userId, expenseRequest.getName())
+                .map(categoryId -> new CategoryOverride(categoryId, "MEMORY"))
+                .or(() -> expenseCategoryClassifier.predict(text)
+                        .map(prediction -> new CategoryOverride(prediction.categoryId(), "CLASSIFIER")));
     }
 
-    private ExpenseRequest parseAIResponse(String aiResponse, String originalVoiceText) {
-        try {
-            log.info("Raw AI response: {}", aiResponse);
-            
-            // Clean the response to extract JSON
-            String jsonResponse = extractJsonFromResponse(aiResponse);
-            log.info("Extracted JSON: {}", jsonResponse);
-            
-            // Parse JSON using simple regex (for simplicity, you could use Jackson)
-            ExpenseRequest expenseRequest = new ExpenseRequest();
-            
-            // Extract name
-            Pattern namePattern = Pattern.compile("\"name\"\\s*:\\s*\"([^\"]+)\"");
-            Matcher nameMatcher = namePattern.matcher(jsonResponse);
-            if (nameMatcher.find()) {
-                String name = nameMatcher.group(1).trim();
-                if (!name.isEmpty()) {
-                    expenseRequest.setName(name);
-                } else {
-                    log.warn("Empty name found. Using default name");
-                    expenseRequest.setName("Voice Expense");
-                }
-            }
-            
-            // Extract amount
-            Pattern amountPattern = Pattern.compile("\"amount\"\\s*:\\s*(\\d+\\.?\\d*)");
-            Matcher amountMatcher = amountPattern.matcher(jsonResponse);
-            if (amountMatcher.find()) {
-                try {
-                    String amountStr = amountMatcher.group(1);
-                    expenseRequest.setAmount(Double.parseDouble(amountStr));
-                } catch (Exception e) {
-                    log.warn("Failed to parse amount. Using 0.0");
-                    expenseRequest.setAmount(0.0);
-                }
-            }
-            
-            // Extract categoryId
-            Pattern categoryPattern = Pattern.compile("\"categoryId\"\\s*:\\s*(\\d+)");
-            Matcher categoryMatcher = categoryPattern.matcher(jsonResponse);
-            if (categoryMatcher.find()) {
-                try {
-                    String categoryIdStr = categoryMatcher.group(1);
-                    long categoryId = Long.parseLong(categoryIdStr);
-                    // Validate category ID is within range
-                    if (categoryId >= 1 && categoryId <= 10) {
-                        expenseRequest.setCategoryId(categoryId);
-                    } else {
-                        log.warn("Invalid category ID: {}. Using default (10)", categoryId);
-                        expenseRequest.setCategoryId(10L);
-                    }
-                } catch (Exception e) {
-                    log.warn("Failed to parse category ID. Using default (10)");
-                    expenseRequest.setCategoryId(10L);
-                }
-            }
-            
-            // Extract date
-            Pattern datePattern = Pattern.compile("\"date\"\\s*:\\s*\"([^\"]+)\"");
-            Matcher dateMatcher = datePattern.matcher(jsonResponse);
-            if (dateMatcher.find()) {
-                String dateStr = dateMatcher.group(1);
-                LocalDate finalDate = parseAndValidateDate(dateStr, originalVoiceText);
-                expenseRequest.setDate(finalDate);
-                log.info("Final parsed date: {}", finalDate);
-            } else {
-                // Use today's date if not found
-                expenseRequest.setDate(LocalDate.now());
-                log.info("No date found in AI response. Using today's date");
-            }
-            
-            // Extract description
-            Pattern descPattern = Pattern.compile("\"description\"\\s*:\\s*\"([^\"]*)\"");
-            Matcher descMatcher = descPattern.matcher(jsonResponse);
-            if (descMatcher.find()) {
-                String description = descMatcher.group(1).trim();
-                if (!description.isEmpty()) {
-                    expenseRequest.setDescription(description);
-                } else {
-                    expenseRequest.setDescription("Expense from voice input");
-                }
-            }
-            
+    private record CategoryOverride(Long categoryId, String source) {
+    }
 
-            
-            // Validate and set defaults if needed
-            validateAndSetDefaults(expenseRequest);
-            
-            log.info("Successfully parsed expense: name={}, amount={}, categoryId={}, date={}", 
-                expenseRequest.getName(), expenseRequest.getAmount(), 
-                expenseRequest.getCategoryId(), expenseRequest.getDate());
-            
-            return expenseRequest;
-            
-        } catch (Exception e) {
-            log.error("Error parsing AI response: {}", e.getMessage(), e);
-            // Return default expense request
-            ExpenseRequest defaultRequest = new ExpenseRequest();
-            defaultRequest.setName("Voice Expense");
-            defaultRequest.setAmount(0.0);
-            defaultRequest.setCategoryId(10L); // Default to "Other" category
-            defaultRequest.setDate(LocalDate.now());
-            defaultRequest.setDescription("Failed to parse voice input");
-            return defaultRequest;
+    private ExpenseRequest fallbackToRegex(Long userId, String voiceText, AiCapacityException cause) {
+        Matcher matcher = FALLBACK_AMOUNT_PATTERN.matcher(voiceText);
+        if (!matcher.find()) {
+            // Nothing usable without the model, surface the rejection to the caller
+            throw cause;
         }
+        aiCallLedger.recordFallback("voice-parse", voiceText.length());
+
+        ExpenseRequest expenseRequest = new ExpenseRequest();
+        expenseRequest.setName(voiceText.length() > 60 ? voiceText.substring(0, 60) : voiceText);
+        expenseRequest.setAmount(Double.parseDouble(matcher.group(1)));
+        expenseRequest.setDate(parseRelativeDateFromVoiceText(voiceText));
+        expenseRequest.setDescription(voiceText);
+        expenseRequest.setSource("AI_FALLBACK");
+        // A remembered or classified category still beats "Others" when the model is unavailable
+        expenseRequest.setCategoryId(categoryOverride(userId, expenseRequest)
+                .map(CategoryOverride::categoryId)
+                .orElseGet(() -> categoryCache.snapshot().othersId()));
+        return expenseRequest;
     }
 
-    private String extractJsonFromResponse(String response) {
-        try {
-            // First, try to find a complete JSON object
-            Pattern jsonPattern = Pattern.compile("\\{[^}]*\"name\"[^}]*\"amount\"[^}]*\"categoryId\"[^}]*\"date\"[^}]*\"description\"[^}]*\\}");
-            Matcher matcher = jsonPattern.matcher(response);
-            if (matcher.find()) {
-                return matcher.group(0);
-            }
-            
-            // If not found, try to find any JSON object
-            Pattern simpleJsonPattern = Pattern.compile("\\{[^}]*\\}");
-            Matcher simpleMatcher = simpleJsonPattern.matcher(response);
-            if (simpleMatcher.find()) {
-                return simpleMatcher.group(0);
-            }
-            
-            log.warn("No JSON object found in response: {}", response);
-            return response;
-        } catch (Exception e) {
-            log.error("Error extracting JSON from response: {}", e.getMessage());
-            return response;
+    private ExpenseRequest toExpenseRequest(ParsedVoiceExpense parsed, String originalVoiceText) {
+        ExpenseRequest expenseRequest = new ExpenseRequest();
+        expenseRequest.setName(parsed.name() != null ? parsed.name().trim() : null);
+        expenseRequest.setAmount(parsed.amount());
+
+        // Validate category ID against the live category table
+        if (categoryCache.snapshot().contains(parsed.categoryId())) {
+            expenseRequest.setCategoryId(parsed.categoryId());
+        } else {
+            log.warn("Unknown category ID: {}. Using default (Others)", parsed.categoryId());
+            expenseRequest.setCategoryId(categoryCache.snapshot().othersId());
+        }
+
+        if (parsed.date() != null) {
+            expenseRequest.setDate(parseAndValidateDate(parsed.date(), originalVoiceText));
+        } else {
+            log.debug("No date found in AI response. Using today's date");
+            expenseRequest.setDate(LocalDate.now());
         }
+
+        expenseRequest.setDescription(parsed.description() != null ? parsed.description().trim() : null);
+
+        // Validate and set defaults if needed
+        validateAndSetDefaults(expenseRequest);
+
+        log.info("Successfully parsed expense: name={}, amount={}, categoryId={}, date={}",
+            expenseRequest.getName(), expenseRequest.getAmount(),
+            expenseRequest.getCategoryId(), expenseRequest.getDate());
+
+        return expenseRequest;
     }
 
     private LocalDate parseAndValidateDate(String dateStr, String originalVoiceText) {
@@ -397,11 +279,9 @@ public class GeminiAIServiceImpl implements GeminiAIService {
         }
 
         // Validate categoryId
-        if (expenseRequest.getCategoryId() == null || 
-            expenseRequest.getCategoryId() < 1 || 
-            expenseRequest.getCategoryId() > 10) {
-            expenseRequest.setCategoryId(10L);
-            log.warn("Setting default categoryId: 10 (Other)");
+        if (!categoryCache.snapshot().contains(expenseRequest.getCategoryId())) {
+            expenseRequest.setCategoryId(categoryCache.snapshot().othersId());
+            log.warn("Setting default categoryId: {} (Others)", expenseRequest.getCategoryId());
         }
 
         // Validate date
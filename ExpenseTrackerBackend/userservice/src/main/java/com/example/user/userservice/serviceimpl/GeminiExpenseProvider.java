@@ -0,0 +1,106 @@
+package com.example.user.userservice.serviceimpl;
+
+import com.example.user.userservice.exception.AiCapacityException;
+import com.example.user.userservice.service.AiCallBulkhead;
+import com.example.user.userservice.service.AiExpenseProvider;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Component
+@Order(2)
+@Slf4j
+public class GeminiExpenseProvider implements AiExpenseProvider {
+
+    @Value("${gemini.api.key}")
+    private String apiKey;
+
+    @Value("${gemini.model.name}")
+    private String modelName;
+
+    // Overridable so load tests can point at a local simulator
+    @Value("${gemini.api-base:https://generativelanguage.googleapis.com}")
+    private String apiBase;
+
+    private final AiCallBulkhead aiCallBulkhead;
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public GeminiExpenseProvider(AiCallBulkhead aiCallBulkhead,
+                                 @Value("${ai.call-timeout-ms:20000}") int callTimeoutMs) {
+        this.aiCallBulkhead = aiCallBulkhead;
+
+        // Bound every call so a hung connection cannot hold a bulkhead permit forever
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(callTimeoutMs);
+        requestFactory.setReadTimeout(callTimeoutMs);
+        this.restTemplate = new RestTemplate(requestFactory);
+    }
+
+    @Override
+    public String getName() {
+        return AiCallBulkhead.GEMINI;
+    }
+
+    @Override
+    public String complete(String systemPrompt, String userPrompt) {
+        return completeWithUsage(systemPrompt, userPrompt).text();
+    }
+
+    @Override
+    public AiCompletion completeWithUsage(String systemPrompt, String userPrompt) {
+        try {
+            String url = apiBase + "/v1beta/models/" + modelName + ":generateContent?key=" + apiKey;
+
+            Map<String, Object> requestBody = new HashMap<>();
+            if (systemPrompt != null) {
+                requestBody.put("systemInstruction", Map.of("parts", List.of(Map.of("text", systemPrompt))));
+            }
+            requestBody.put("contents", List.of(Map.of(
+                    "role", "user",
+                    "parts", List.of(Map.of("text", userPrompt)))));
+
+            String requestJson = objectMapper.writeValueAsString(requestBody);
+            log.debug("Gemini API Request: {}", requestJson);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            HttpEntity<String> entity = new HttpEntity<>(requestJson, headers);
+
+            String response = aiCallBulkhead.execute(AiCallBulkhead.GEMINI,
+                    () -> restTemplate.postForObject(url, entity, String.class));
+            log.debug("Gemini API Raw Response: {}", response);
+
+            if (response != null) {
+                JsonNode json = objectMapper.readTree(response);
+                JsonNode parts = json.path("candidates").path(0).path("content").path("parts");
+                if (parts.isArray() && parts.size() > 0 && parts.get(0).has("text")) {
+                    JsonNode usage = json.path("usageMetadata");
+                    return new AiCompletion(parts.get(0).get("text").asText(), modelName,
+                            usage.has("promptTokenCount") ? usage.get("promptTokenCount").asInt() : null,
+                            usage.has("candidatesTokenCount") ? usage.get("candidatesTokenCount").asInt() : null);
+                }
+            }
+
+            throw new RuntimeException("Invalid response from Gemini API");
+
+        } catch (AiCapacityException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error calling Gemini API: {}", e.getMessage());
+            throw new RuntimeException("Failed to call Gemini API", e);
+        }
+    }
+}
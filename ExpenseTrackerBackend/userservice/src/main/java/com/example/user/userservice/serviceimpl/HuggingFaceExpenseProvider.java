@@ -0,0 +1,118 @@
+package com.example.user.userservice.serviceimpl;
+
+import com.example.user.userservice.service.AiCallBulkhead;
+import com.example.user.userservice.service.AiExpenseProvider;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Component
+@Order(1)
+@RequiredArgsConstructor
+@Slf4j
+public class HuggingFaceExpenseProvider implements AiExpenseProvider {
+
+    private final WebClient hfWebClient;
+    private final AiCallBulkhead aiCallBulkhead;
+    private final ObjectMapper objectMapper;
+
+    @Value("${hf.model}")
+    private String modelId;
+
+    @Value("${ai.call-timeout-ms:20000}")
+    private long callTimeoutMs;
+
+    @Override
+    public String getName() {
+        return AiCallBulkhead.HUGGING_FACE;
+    }
+
+    @Override
+    public String complete(String systemPrompt, String userPrompt) {
+        return completeWithUsage(systemPrompt, userPrompt).text();
+    }
+
+    @Override
+    public AiCompletion completeWithUsage(String systemPrompt, String userPrompt) {
+        var body = requestBody(systemPrompt, userPrompt, false);
+
+        return aiCallBulkhead.execute(AiCallBulkhead.HUGGING_FACE, () -> hfWebClient.post()
+                .uri("/v1/chat/completions")
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .map(json -> {
+                    JsonNode usage = json.path("usage");
+                    return new AiCompletion(json.path("choices").get(0).path("message").path("content").asText(),
+                            json.path("model").asText(modelId),
+                            usage.has("prompt_tokens") ? usage.get("prompt_tokens").asInt() : null,
+                            usage.has("completion_tokens") ? usage.get("completion_tokens").asInt() : null);
+                })
+                .block(Duration.ofMillis(callTimeoutMs)));
+    }
+
+    /**
+     * Streams the completion as content deltas from the chat-completions SSE stream.
+     * The bulkhead permit is held until the stream completes, fails or is cancelled.
+     */
+    @Override
+    public Flux<String> streamCompletion(String systemPrompt, String userPrompt) {
+        var body = requestBody(systemPrompt, userPrompt, true);
+
+        return Flux.defer(() -> {
+            aiCallBulkhead.tryAcquire(AiCallBulkhead.HUGGING_FACE);
+            return hfWebClient.post()
+                    .uri("/v1/chat/completions")
+                    .accept(MediaType.TEXT_EVENT_STREAM)
+                    .bodyValue(body)
+                    .retrieve()
+                    .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
+                    .timeout(Duration.ofMillis(callTimeoutMs))
+                    .mapNotNull(ServerSentEvent::data)
+                    .takeWhile(data -> !"[DONE]".equals(data))
+                    .map(this::deltaContent)
+                    .filter(delta -> !delta.isEmpty())
+                    .doFinally(signal -> aiCallBulkhead.release(AiCallBulkhead.HUGGING_FACE));
+        });
+    }
+
+    private Map<String, Object> requestBody(String systemPrompt, String userPrompt, boolean stream) {
+        List<Map<String, String>> messages = new ArrayList<>();
+        if (systemPrompt != null) {
+            messages.add(Map.of("role", "system", "content", systemPrompt));
+        }
+        messages.add(Map.of("role", "user", "content", userPrompt));
+
+        return Map.of(
+                "model", modelId,
+                "stream", stream,
+                "messages", messages
+        );
+    }
+
+    private String deltaContent(String data) {
+        if (data == null || data.isBlank()) {
+            return "";
+        }
+        try {
+            return objectMapper.readTree(data).path("choices").path(0).path("delta").path("content").asText("");
+        } catch (Exception e) {
+            log.warn("Skipping unreadable stream chunk: {}", data);
+            return "";
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.example.user.userservice.serviceimpl;
+
+import com.example.user.userservice.service.ReceiptStorageBackend;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.checksums.RequestChecksumCalculation;
+import software.amazon.awssdk.core.checksums.ResponseChecksumValidation;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+
+/**
+ * Receipts in an S3-compatible bucket (AWS, MinIO, Ceph, R2), so every instance can serve every
+ * receipt and no bytes sit on instance disks. Streams of unknown length are uploaded as multipart
+ * uploads one part at a time, so memory per upload is one part buffer whatever the file size;
+ * anything smaller than a part is a single PutObject. Enabled with {@code app.file.storage=s3}.
+ */
+@Component
+@ConditionalOnProperty(name = "app.file.storage", havingValue = "s3")
+@Slf4j
+public class S3StorageBackend implements ReceiptStorageBackend {
+
+    // S3's minimum for every part but the last
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private final S3Client s3;
+    private final S3Presigner presigner;
+    private final String bucket;
+    private final String keyPrefix;
+    private final int partSize;
+
+    public S3StorageBackend(@Value("${app.file.s3.bucket}") String bucket,
+                            @Value("${app.file.s3.region:us-east-1}") String region,
+                            @Value("${app.file.s3.endpoint:}") String endpoint,
+                            @Value("${app.file.s3.path-style:false}") boolean pathStyle,
+                            @Value("${app.file.s3.access-key:}") String accessKey,
+                            @Value("${app.file.s3.secret-key:}") String secretKey,
+                            @Value("${app.file.s3.key-prefix:}") String keyPrefix,
+                            @Value("${app.file.s3.part-size:8388608}") int partSize) {
+        this.bucket = bucket;
+        this.keyPrefix = keyPrefix;
+        this.partSize = Math.max(MIN_PART_SIZE, partSize);
+
+        AwsCredentialsProvider credentials = accessKey.isBlank()
+                ? DefaultCredentialsProvider.builder().build()
+                : StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+        S3Configuration serviceConfiguration = S3Configuration.builder()
+                .pathStyleAccessEnabled(pathStyle)
+                .build();
+
+        S3ClientBuilder clientBuilder = S3Client.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials)
+                .serviceConfiguration(serviceConfiguration)
+                // Receipts are SHA-256 verified by FileStorageService; S3-compatible stores
+                // often reject the SDK's default flexible checksums
+                .requestChecksumCalculation(RequestChecksumCalculation.WHEN_REQUIRED)
+                .responseChecksumValidation(ResponseChecksumValidation.WHEN_REQUIRED);
+        S3Presigner.Builder presignerBuilder = S3Presigner.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials)
+                .serviceConfiguration(serviceConfiguration);
+        if (!endpoint.isBlank()) {
+            clientBuilder.endpointOverride(URI.create(endpoint));
+            presignerBuilder.endpointOverride(URI.create(endpoint));
+        }
+        this.s3 = clientBuilder.build();
+        this.presigner = presignerBuilder.build();
+        log.info("Storing receipts in S3 bucket {} ({})", bucket, endpoint.isBlank() ? region : endpoint);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        presigner.close();
+        s3.close();
+    }
+
+    @Override
+    public void put(String key, InputStream content, String contentType) throws IOException {
+        String objectKey = objectKey(key);
+        byte[] part = content.readNBytes(partSize);
+        if (part.length < partSize) {
+            try {
+                s3.putObject(b -> b.bucket(bucket).key(objectKey).contentType(contentType), body(part));
+            } catch (SdkException e) {
+                throw new IOException("Failed to upload " + key + ": " + e.getMessage(), e);
+            }
+            return;
+        }
+
+        String uploadId;
+        try {
+            uploadId = s3.createMultipartUpload(b -> b.bucket(bucket).key(objectKey).contentType(contentType)).uploadId();
+        } catch (SdkException e) {
+            throw new IOException("Failed to start upload of " + key + ": " + e.getMessage(), e);
+        }
+        try {
+            List<CompletedPart> parts = new ArrayList<>();
+            while (part.length > 0) {
+                int partNumber = parts.size() + 1;
+                byte[] current = part;
+                UploadPartResponse response = s3.uploadPart(b -> b.bucket(bucket).key(objectKey)
+                        .uploadId(uploadId).partNumber(partNumber).contentLength((long) current.length), body(current));
+                parts.add(CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build());
+                part = content.readNBytes(partSize);
+            }
+            s3.completeMultipartUpload(b -> b.bucket(bucket).key(objectKey).uploadId(uploadId)
+                    .multipartUpload(m -> m.parts(parts)));
+            log.debug("Uploaded {} in {} parts", key, parts.size());
+        } catch (SdkException e) {
+            abortQuietly(objectKey, uploadId);
+            throw new IOException("Failed to upload " + key + ": " + e.getMessage(), e);
+        } catch (IOException | RuntimeException e) {
+            // The source failed (e.g. the size limit): nothing may be left behind
+            abortQuietly(objectKey, uploadId);
+            throw e;
+        }
+    }
+
+    @Override
+    public void putFile(String key, Path file, String contentType) throws IOException {
+        try {
+            s3.putObject(b -> b.bucket(bucket).key(objectKey(key)).contentType(contentType), RequestBody.fromFile(file));
+        } catch (SdkException e) {
+            throw new IOException("Failed to upload " + key + ": " + e.getMessage(), e);
+        }
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public boolean moveIfAbsent(String sourceKey, String targetKey) throws IOException {
+        boolean moved = stat(targetKey).isEmpty();
+        try {
+            if (moved) {
+                // Server-side copy: the bytes do not come back through this instance
+                s3.copyObject(b -> b.sourceBucket(bucket).sourceKey(objectKey(sourceKey))
+                        .destinationBucket(bucket).destinationKey(objectKey(targetKey)));
+            }
+        } catch (SdkException e) {
+            throw new IOException("Failed to move " + sourceKey + " to " + targetKey + ": " + e.getMessage(), e);
+        }
+        delete(sourceKey);
+        return moved;
+    }
+
+    @Override
+    public Optional<ObjectInfo> stat(String key) throws IOException {
+        try {
+            HeadObjectResponse head = s3.headObject(b -> b.bucket(bucket).key(objectKey(key)));
+            return Optional.of(new ObjectInfo(head.contentLength(), head.lastModified()));
+        } catch (NoSuchKeyException e) {
+            return Optional.empty();
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return Optional.empty();
+            }
+            throw new IOException("Failed to stat " + key + ": " + e.getMessage(), e);
+        } catch (SdkException e) {
+            throw new IOException("Failed to stat " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        try {
+            return s3.getObject(b -> b.bucket(bucket).key(objectKey(key)));
+        } catch (SdkException e) {
+            throw new IOException("Failed to read " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            s3.deleteObject(b -> b.bucket(bucket).key(objectKey(key)));
+        } catch (SdkException e) {
+            throw new IOException("Failed to delete " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public List<String> listPrefixes(String prefix) throws IOException {
+        try {
+            List<String> prefixes = new ArrayList<>();
+            s3.listObjectsV2Paginator(b -> b.bucket(bucket).prefix(objectKey(prefix)).delimiter("/"))
+                    .commonPrefixes()
+                    .forEach(common -> prefixes.add(common.prefix().substring(keyPrefix.length())));
+            return prefixes;
+        } catch (SdkException e) {
+            throw new IOException("Failed to list " + prefix + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void walk(String prefix, BiConsumer<String, ObjectInfo> visitor) throws IOException {
+        try {
+            // Pages of up to 1000 keys, fetched as the iteration reaches them
+            for (S3Object object : s3.listObjectsV2Paginator(b -> b.bucket(bucket).prefix(objectKey(prefix))).contents()) {
+                visitor.accept(object.key().substring(keyPrefix.length()),
+                        new ObjectInfo(object.size(), object.lastModified()));
+            }
+        } catch (SdkException e) {
+            throw new IOException("Failed to list " + prefix + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Optional<String> presignGet(String key, Duration ttl) {
+        return Optional.of(presigner.presignGetObject(p -> p.signatureDuration(ttl)
+                        .getObjectRequest(b -> b.bucket(bucket).key(objectKey(key))))
+                .url()
+                .toString());
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        return Optional.empty();
+    }
+
+    private String objectKey(String key) {
+        return keyPrefix + key;
+    }
+
+    // Wraps the buffer without the copy RequestBody.fromBytes makes
+    private static RequestBody body(byte[] bytes) {
+        return RequestBody.fromInputStream(new ByteArrayInputStream(bytes), bytes.length);
+    }
+
+    private void abortQuietly(String objectKey, String uploadId) {
+        try {
+            s3.abortMultipartUpload(b -> b.bucket(bucket).key(objectKey).uploadId(uploadId));
+        } catch (SdkException e) {
+            log.warn("Failed to abort multipart upload {} of {}: {}", uploadId, objectKey, e.getMessage());
+        }
+    }
+}
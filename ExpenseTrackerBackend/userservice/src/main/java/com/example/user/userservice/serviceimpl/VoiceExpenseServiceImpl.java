@@ -13,6 +13,8 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
 @Service
 @RequiredArgsConstructor
 @Slf4j
@@ -36,22 +38,26 @@ public class VoiceExpenseServiceImpl implements VoiceExpenseService {
                     .build();
             }
             
-            // Parse voice text using Gemini AI
-            ExpenseRequest parsedExpense = geminiAIService.parseVoiceToExpense(request.getVoiceText());
+            // Parse voice text using Gemini AI; one utterance may hold several expenses
+            List<ExpenseRequest> parsedExpenses = geminiAIService.parseVoiceToExpenses(request.getUserId(), request.getVoiceText());
             
-            log.info("Parsed expense from voice: {}", parsedExpense);
+            log.info("Parsed {} expenses from voice: {}", parsedExpenses.size(), parsedExpenses);
             
-            // Create the expense
-            ExpenseResponse createdExpense = expenseService.createExpense(request.getUserId(), parsedExpense);
+            // Create all expenses in one transaction
+            List<ExpenseResponse> createdExpenses = expenseService.createExpenses(request.getUserId(), parsedExpenses);
             
-            log.info("Created expense from voice: {}", createdExpense);
+            log.info("Created {} expenses from voice", createdExpenses.size());
             
+            boolean fallback = parsedExpenses.stream().anyMatch(expense -> "AI_FALLBACK".equals(expense.getSource()));
             return VoiceExpenseResponse.builder()
                 .success(true)
-                .message("Expense created successfully from voice input")
-                .expense(createdExpense)
+                .message(createdExpenses.size() == 1
+                    ? "Expense created successfully from voice input"
+                    : createdExpenses.size() + " expenses created successfully from voice input")
+                .expense(createdExpenses.get(0))
+                .expenses(createdExpenses)
                 .parsedText(request.getVoiceText())
-                .confidence("High")
+                .confidence(fallback ? "Low" : "High")
                 .build();
                 
         } catch (Exception e) {
@@ -0,0 +1,10 @@
+-- Per-user learned merchant -> category memory, consulted before any AI categorization
+CREATE TABLE IF NOT EXISTS merchant_category_mappings (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    merchant_key VARCHAR(64) NOT NULL,
+    category_id BIGINT NOT NULL,
+    hits INT NOT NULL,
+    updated_at DATETIME(6) NOT NULL,
+    CONSTRAINT uk_merchant_category_user_key UNIQUE (user_id, merchant_key)
+);
@@ -0,0 +1,16 @@
+-- Every outbound LLM call and every regex fallback, written in batches by AiCallLedger
+CREATE TABLE IF NOT EXISTS ai_call_ledger (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    created_at DATETIME(6) NOT NULL,
+    purpose VARCHAR(32) NOT NULL,
+    provider VARCHAR(32) NOT NULL,
+    model VARCHAR(128) NULL,
+    prompt_chars INT NOT NULL,
+    response_chars INT NOT NULL,
+    prompt_tokens INT NULL,
+    completion_tokens INT NULL,
+    latency_ms BIGINT NOT NULL,
+    outcome VARCHAR(16) NOT NULL,
+    fallback_used BOOLEAN NOT NULL,
+    INDEX idx_ai_call_ledger_created_at (created_at)
+);
@@ -0,0 +1,16 @@
+-- Checkpointed progress of CategoryBackfillService runs over the "Others" category
+CREATE TABLE IF NOT EXISTS category_backfill_jobs (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    status VARCHAR(16) NOT NULL,
+    source_category_id BIGINT NOT NULL,
+    last_expense_id BIGINT NOT NULL,
+    scanned BIGINT NOT NULL,
+    by_classifier BIGINT NOT NULL,
+    by_ai BIGINT NOT NULL,
+    unchanged BIGINT NOT NULL,
+    failed BIGINT NOT NULL,
+    last_error VARCHAR(512) NULL,
+    started_at DATETIME(6) NOT NULL,
+    updated_at DATETIME(6) NOT NULL,
+    finished_at DATETIME(6) NULL
+);
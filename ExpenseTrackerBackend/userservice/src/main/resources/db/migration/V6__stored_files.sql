@@ -0,0 +1,11 @@
+-- Reference counts for content-addressed uploads (FileStorageServiceImpl with app.file.content-addressed=true)
+CREATE TABLE IF NOT EXISTS stored_files (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    path VARCHAR(255) NOT NULL,
+    sha256 CHAR(64) NOT NULL,
+    size_bytes BIGINT NOT NULL,
+    ref_count INT NOT NULL,
+    created_at DATETIME(6) NOT NULL,
+    updated_at DATETIME(6) NOT NULL,
+    CONSTRAINT uk_stored_files_path UNIQUE (path)
+);
@@ -0,0 +1,2 @@
+-- Lets ReceiptGarbageCollector page one user's receipt paths as an index range scan
+CREATE INDEX idx_expenses_receipt_path ON expenses (receipt_path);
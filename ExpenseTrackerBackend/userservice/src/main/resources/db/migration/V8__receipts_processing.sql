@@ -0,0 +1,31 @@
+-- Receipt records processed asynchronously by ReceiptProcessingService
+-- (PENDING -> PROCESSING -> EXTRACTED -> LINKED, or FAILED once retries run out).
+-- The receipts table predates this (see V1 and database_migration.sql); it already has
+-- id, user_id, file_name, image_url, extracted_data, status and created_at.
+ALTER TABLE receipts
+    ADD COLUMN expense_id BIGINT NULL,
+    ADD COLUMN attempts INT NOT NULL DEFAULT 0,
+    ADD COLUMN last_error VARCHAR(512) NULL,
+    ADD COLUMN next_attempt_at DATETIME(6) NULL,
+    ADD COLUMN claimed_at DATETIME(6) NULL,
+    ADD COLUMN updated_at DATETIME(6) NULL;
+
+-- Existing rows were already extracted on the client; none of them is waiting for a worker
+UPDATE receipts
+SET status = 'EXTRACTED'
+WHERE status IS NULL OR status NOT IN ('PENDING', 'PROCESSING', 'EXTRACTED', 'LINKED', 'FAILED');
+
+UPDATE receipts
+SET next_attempt_at = COALESCE(created_at, NOW(6)),
+    updated_at = COALESCE(created_at, NOW(6));
+
+ALTER TABLE receipts
+    MODIFY COLUMN status VARCHAR(16) NOT NULL,
+    MODIFY COLUMN next_attempt_at DATETIME(6) NOT NULL,
+    MODIFY COLUMN updated_at DATETIME(6) NOT NULL;
+
+-- Workers claim with: WHERE status = 'PENDING' AND next_attempt_at <= ? ORDER BY next_attempt_at FOR UPDATE SKIP LOCKED
+CREATE INDEX idx_receipts_status_next_attempt ON receipts(status, next_attempt_at);
+
+-- Orphan sweeper: prefix range scans of image paths per user directory
+CREATE INDEX idx_receipts_image_url ON receipts(image_url);
@@ -0,0 +1,15 @@
+-- Perceptual (dHash) fingerprints of stored images, for flagging the same receipt uploaded twice.
+-- The 64-bit hash is also split into four 16-bit bands (multi-index hashing): a near-duplicate
+-- within r bits shares a band within r/4 bits, so lookups probe a few band values per index.
+ALTER TABLE stored_files
+    ADD COLUMN perceptual_hash BIGINT NULL,
+    ADD COLUMN phash_band0 INT NULL,
+    ADD COLUMN phash_band1 INT NULL,
+    ADD COLUMN phash_band2 INT NULL,
+    ADD COLUMN phash_band3 INT NULL;
+
+-- Band first, then path: the per-user directory prefix narrows each band probe
+CREATE INDEX idx_stored_files_phash_band0 ON stored_files(phash_band0, path);
+CREATE INDEX idx_stored_files_phash_band1 ON stored_files(phash_band1, path);
+CREATE INDEX idx_stored_files_phash_band2 ON stored_files(phash_band2, path);
+CREATE INDEX idx_stored_files_phash_band3 ON stored_files(phash_band3, path);
@@ -0,0 +1,294 @@
+package com.example.user.userservice.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.example.user.userservice.config.WebClientConfig;
+import com.example.user.userservice.dto.ExpenseRequest;
+import com.example.user.userservice.dto.ExpenseResponse;
+import com.example.user.userservice.dto.ParseExpenseRequest;
+import com.example.user.userservice.dto.ParsedExpenseResponse;
+import com.example.user.userservice.dto.UserProfileDTO;
+import com.example.user.userservice.dto.VoiceExpenseRequest;
+import com.example.user.userservice.dto.VoiceExpenseResponse;
+import com.example.user.userservice.entity.Category;
+import com.example.user.userservice.entity.Expense;
+import com.example.user.userservice.entity.User;
+import com.example.user.userservice.repository.CategoryRepository;
+import com.example.user.userservice.repository.ExpenseRepository;
+import com.example.user.userservice.repository.UserRepository;
+import com.example.user.userservice.service.AiCallBulkhead;
+import com.example.user.userservice.service.AiCallLedger;
+import com.example.user.userservice.service.AiExpenseParserService;
+import com.example.user.userservice.service.AiProviderRouter;
+import com.example.user.userservice.service.AuthService;
+import com.example.user.userservice.service.CategoryCache;
+import com.example.user.userservice.service.ExpenseCategoryClassifier;
+import com.example.user.userservice.service.ExpensePromptBuilder;
+import com.example.user.userservice.service.ExpenseService;
+import com.example.user.userservice.service.GeminiResponseParser;
+import com.example.user.userservice.service.MerchantCategoryMemory;
+import com.example.user.userservice.serviceimpl.GeminiAIServiceImpl;
+import com.example.user.userservice.serviceimpl.GeminiExpenseProvider;
+import com.example.user.userservice.serviceimpl.HuggingFaceExpenseProvider;
+import com.example.user.userservice.serviceimpl.VoiceExpenseServiceImpl;
+import com.example.user.userservice.simulator.AiProviderSimulator;
+import com.example.user.userservice.simulator.GoldenUtterances;
+import com.example.user.userservice.simulator.GoldenUtterances.Expected;
+import com.example.user.userservice.simulator.GoldenUtterances.Utterance;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.Mockito;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Drives the real voice ({@link VoiceExpenseServiceImpl}) and text ({@link AiExpenseParserService})
+ * AI paths against {@link AiProviderSimulator} at fixed concurrency. Providers, router, bulkhead,
+ * prompt building and response parsing are the production classes; persistence is stubbed, and
+ * merchant memory and the classifier are disabled so every request reaches the LLM path.
+ * Reports throughput, latency percentiles and accuracy against the golden utterances.
+ * Not part of the test suite. Run {@link #main} from the IDE, or:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -Dbench.concurrency=1,8,32 -Dbench.requests=400 -Dsim.latency.median-ms=300 -Dsim.error-rate=0.02 \
+ *     -Dsim.malformed-rate=0.02 -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *     com.example.user.userservice.benchmark.AiPathLoadBenchmark
+ * </pre>
+ */
+public class AiPathLoadBenchmark {
+
+    private static final long USER_ID = 1L;
+
+    private final GoldenUtterances golden = GoldenUtterances.load();
+    private final AiProviderRouter router;
+    private final VoiceExpenseServiceImpl voiceExpenseService;
+    private final AiExpenseParserService aiExpenseParserService;
+
+    public static void main(String[] args) throws Exception {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        int[] concurrencyLevels = Arrays.stream(System.getProperty("bench.concurrency", "1,8,32").split(","))
+                .mapToInt(level -> Integer.parseInt(level.trim()))
+                .toArray();
+        int requests = Integer.getInteger("bench.requests", 400);
+
+        AiProviderSimulator.Settings settings = AiProviderSimulator.Settings.fromSystemProperties().port(0);
+        try (AiProviderSimulator simulator = new AiProviderSimulator(settings)) {
+            AiPathLoadBenchmark benchmark = new AiPathLoadBenchmark(simulator);
+            System.out.printf("Simulator: %s%n%n", settings);
+            System.out.printf("%-6s %5s %7s %9s %7s %7s %7s %7s %6s %9s %8s%n",
+                    "path", "conc", "reqs", "req/s", "p50ms", "p95ms", "p99ms", "maxms", "errors", "fallbacks", "accuracy");
+
+            benchmark.run("voice", 4, Math.min(requests, 50), benchmark::voice); // warm-up, not reported
+            benchmark.run("text", 4, Math.min(requests, 50), benchmark::text);
+            for (int concurrency : concurrencyLevels) {
+                System.out.println(benchmark.run("voice", concurrency, requests, benchmark::voice));
+                System.out.println(benchmark.run("text", concurrency, requests, benchmark::text));
+            }
+            System.out.printf("%nSimulator served %d requests (%d errors, %d malformed); provider health: %s%n",
+                    simulator.requests(), simulator.errors(), simulator.malformed(), benchmark.router.snapshot());
+        }
+    }
+
+    AiPathLoadBenchmark(AiProviderSimulator simulator) {
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<Category> categories = GoldenUtterances.categories();
+
+        AiCallBulkhead bulkhead = new AiCallBulkhead(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(bulkhead, "maxConcurrent", Integer.getInteger("ai.bulkhead.max-concurrent", 4));
+        ReflectionTestUtils.setField(bulkhead, "maxQueued", Integer.getInteger("ai.bulkhead.max-queued", 8));
+        ReflectionTestUtils.setField(bulkhead, "maxWaitMs", Long.getLong("ai.bulkhead.max-wait-ms", 500));
+
+        GeminiExpenseProvider gemini = new GeminiExpenseProvider(bulkhead, 20_000);
+        ReflectionTestUtils.setField(gemini, "apiKey", "simulated");
+        ReflectionTestUtils.setField(gemini, "modelName", "gemini-sim");
+        ReflectionTestUtils.setField(gemini, "apiBase", simulator.baseUrl());
+
+        HuggingFaceExpenseProvider huggingFace = new HuggingFaceExpenseProvider(
+                new WebClientConfig().hfWebClient(simulator.baseUrl(), "simulated"), bulkhead, objectMapper);
+        ReflectionTestUtils.setField(huggingFace, "modelId", "hf-sim");
+        ReflectionTestUtils.setField(huggingFace, "callTimeoutMs", 20_000L);
+
+        AiCallLedger ledger = new AiCallLedger(stub(JdbcTemplate.class), 1024, 200);
+        this.router = new AiProviderRouter(List.of(huggingFace, gemini), ledger, true, 300, 20, 0.2, 16);
+
+        CategoryRepository categoryRepository = stub(CategoryRepository.class);
+        when(categoryRepository.findAllByOrderByIdAsc()).thenReturn(categories);
+        when(categoryRepository.findByName(anyString())).thenAnswer(invocation -> categories.stream()
+                .filter(category -> category.getName().equalsIgnoreCase(invocation.getArgument(0)))
+                .findFirst());
+        when(categoryRepository.findById(anyLong())).thenAnswer(invocation -> categories.stream()
+                .filter(category -> category.getId().equals(invocation.getArgument(0)))
+                .findFirst());
+        CategoryCache categoryCache = new CategoryCache(categoryRepository);
+
+        // No remembered or classified categories: mocks return Optional.empty(), so the LLM picks every category
+        MerchantCategoryMemory memory = stub(MerchantCategoryMemory.class);
+        ExpenseCategoryClassifier classifier = stub(ExpenseCategoryClassifier.class);
+
+        AtomicLong ids = new AtomicLong();
+        ExpenseService expenseService = stub(ExpenseService.class);
+        when(expenseService.createExpenses(anyLong(), any())).thenAnswer(invocation -> {
+            List<ExpenseResponse> created = new ArrayList<>();
+            for (ExpenseRequest request : invocation.<List<ExpenseRequest>>getArgument(1)) {
+                created.add(ExpenseResponse.builder()
+                        .id(ids.incrementAndGet())
+                        .name(request.getName())
+                        .amount(request.getAmount())
+                        .categoryId(request.getCategoryId())
+                        .date(request.getDate())
+                        .source(request.getSource())
+                        .build());
+            }
+            return created;
+        });
+        AuthService authService = stub(AuthService.class);
+        when(authService.getUserProfile(anyLong())).thenReturn(UserProfileDTO.builder().id(USER_ID).name("bench").build());
+
+        ExpenseRepository expenseRepository = stub(ExpenseRepository.class);
+        when(expenseRepository.save(any(Expense.class))).thenAnswer(invocation -> {
+            Expense expense = invocation.getArgument(0);
+            expense.setId(ids.incrementAndGet());
+            return expense;
+        });
+        UserRepository userRepository = stub(UserRepository.class);
+        when(userRepository.findById(anyLong())).thenReturn(Optional.of(User.builder().id(USER_ID).name("bench").build()));
+
+        this.voiceExpenseService = new VoiceExpenseServiceImpl(new GeminiAIServiceImpl(router,
+                new ExpensePromptBuilder(categoryCache, 400), categoryCache, new GeminiResponseParser(),
+                memory, classifier, ledger), expenseService, authService);
+        this.aiExpenseParserService = new AiExpenseParserService(router, expenseRepository, categoryRepository,
+                userRepository, objectMapper, memory, classifier, ledger);
+    }
+
+    /**
+     * Runs {@code requests} calls over the golden utterances from {@code concurrency} closed-loop workers.
+     */
+    Result run(String path, int concurrency, int requests, Function<Utterance, Outcome> call) throws InterruptedException {
+        List<Utterance> utterances = golden.utterances();
+        long[] latencies = new long[requests];
+        double[] accuracy = new double[requests];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        AtomicInteger fallbacks = new AtomicInteger();
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        for (int worker = 0; worker < concurrency; worker++) {
+            workers.execute(() -> {
+                for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+                    long callStart = System.nanoTime();
+                    Outcome outcome;
+                    try {
+                        outcome = call.apply(utterances.get(i % utterances.size()));
+                    } catch (RuntimeException e) {
+                        outcome = Outcome.ERROR;
+                    }
+                    latencies[i] = System.nanoTime() - callStart;
+                    accuracy[i] = outcome.accuracy();
+                    if (outcome.error()) {
+                        errors.incrementAndGet();
+                    } else if (outcome.fallback()) {
+                        fallbacks.incrementAndGet();
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.HOURS);
+        long elapsedNanos = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        return new Result(path, concurrency, requests, requests / (elapsedNanos / 1e9),
+                millis(latencies, 0.50), millis(latencies, 0.95), millis(latencies, 0.99), millis(latencies, 1.0),
+                errors.get(), fallbacks.get(), Arrays.stream(accuracy).average().orElse(0));
+    }
+
+    Outcome voice(Utterance utterance) {
+        VoiceExpenseRequest request = new VoiceExpenseRequest();
+        request.setUserId(USER_ID);
+        request.setVoiceText(utterance.text());
+        VoiceExpenseResponse response = voiceExpenseService.processVoiceExpense(request);
+        if (!response.isSuccess()) {
+            return Outcome.ERROR;
+        }
+
+        // Each expected expense counts once; a parse that splits or merges expenses loses the difference
+        List<ExpenseResponse> remaining = new ArrayList<>(response.getExpenses());
+        int matched = 0;
+        for (Expected expected : utterance.expenses()) {
+            for (int i = 0; i < remaining.size(); i++) {
+                ExpenseResponse actual = remaining.get(i);
+                if (matches(expected, actual.getAmount(), actual.getCategoryId())) {
+                    remaining.remove(i);
+                    matched++;
+                    break;
+                }
+            }
+        }
+        int total = Math.max(utterance.expenses().size(), response.getExpenses().size());
+        return new Outcome((double) matched / total, "Low".equals(response.getConfidence()), false);
+    }
+
+    Outcome text(Utterance utterance) {
+        ParseExpenseRequest request = ParseExpenseRequest.builder()
+                .text(utterance.text())
+                .timezone("Asia/Kolkata")
+                .currency("INR")
+                .locale("en-IN")
+                .build();
+        ParsedExpenseResponse response = aiExpenseParserService.parseAndCreateExpense(request, USER_ID);
+
+        // The text path creates one expense; it is scored against the first expected one
+        Expected expected = utterance.expenses().get(0);
+        boolean correct = matches(expected, response.getAmount(), GoldenUtterances.categoryId(response.getCategory()));
+        return new Outcome(correct ? 1 : 0, "AI_FALLBACK".equals(response.getSource()), false);
+    }
+
+    private static boolean matches(Expected expected, Double amount, Long categoryId) {
+        return amount != null && Math.abs(amount - expected.amount()) < 0.005
+                && categoryId != null && categoryId == GoldenUtterances.categoryId(expected.category());
+    }
+
+    private static double millis(long[] sortedNanos, double quantile) {
+        int index = Math.max(0, (int) Math.ceil(quantile * sortedNanos.length) - 1);
+        return sortedNanos[index] / 1e6;
+    }
+
+    private static <T> T stub(Class<T> type) {
+        // Stub-only mocks do not record invocations, so they neither grow nor contend under load
+        return Mockito.mock(type, Mockito.withSettings().stubOnly());
+    }
+
+    record Outcome(double accuracy, boolean fallback, boolean error) {
+        static final Outcome ERROR = new Outcome(0, false, true);
+    }
+
+    record Result(String path, int concurrency, int requests, double throughput, double p50Ms, double p95Ms,
+                  double p99Ms, double maxMs, int errors, int fallbacks, double accuracy) {
+
+        @Override
+        public String toString() {
+            return String.format("%-6s %5d %7d %9.1f %7.1f %7.1f %7.1f %7.1f %6d %9d %7.1f%%",
+                    path, concurrency, requests, throughput, p50Ms, p95Ms, p99Ms, maxMs, errors, fallbacks,
+                    accuracy * 100);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.user.userservice.benchmark;
+
+import com.example.user.userservice.service.GeminiResponseParser;
+import com.example.user.userservice.service.GeminiResponseParser.ParsedVoiceExpense;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the previous regex-based parsing of voice-parsing completions with {@link GeminiResponseParser}.
+ * Not part of the test suite. Run {@link #main} from the IDE, or:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *     com.example.user.userservice.benchmark.AiResponseParsingBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AiResponseParsingBenchmark {
+
+    @Param({"plain", "fenced", "chatty", "truncated", "adversarial"})
+    private String shape;
+
+    private String response;
+    private GeminiResponseParser parser;
+
+    @Setup
+    public void setUp() {
+        parser = new GeminiResponseParser();
+        String json = "{\"name\": \"Lunch at McDonald's\", \"amount\": 500.0, \"categoryId\": 1, "
+                + "\"date\": \"2025-03-13\", \"description\": \"Lunch at McDonald's restaurant\"}";
+        response = switch (shape) {
+            case "plain" -> json;
+            case "fenced" -> "```json\n" + json + "\n```";
+            case "chatty" -> "Sure! Here is the parsed expense based on your input:\n\n```json\n" + json
+                    + "\n```\n\nI mapped it to Food & Dining because it mentions lunch. Let me know if the date is wrong.";
+            case "truncated" -> json.substring(0, json.length() - 40);
+            // Many unclosed objects that each mention the keys: worst case for the old [^}]* scans
+            case "adversarial" -> "{\"name\" \"amount\" \"categoryId\" \"date\" ".repeat(50);
+            default -> throw new IllegalArgumentException(shape);
+        };
+    }
+
+    @Benchmark
+    public Object legacyRegex() {
+        return LegacyRegexParser.parse(response);
+    }
+
+    @Benchmark
+    public Object jacksonSinglePass() {
+        try {
+            return parser.parse(response);
+        } catch (IllegalArgumentException e) {
+            return e;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AiResponseParsingBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * Copy of the regex parsing that GeminiAIServiceImpl used before the single-pass parser.
+     */
+    static final class LegacyRegexParser {
+
+        static ParsedVoiceExpense parse(String aiResponse) {
+            String json = extractJsonFromResponse(aiResponse);
+
+            String name = group(Pattern.compile("\"name\"\\s*:\\s*\"([^\"]+)\""), json);
+            String amount = group(Pattern.compile("\"amount\"\\s*:\\s*(\\d+\\.?\\d*)"), json);
+            String categoryId = group(Pattern.compile("\"categoryId\"\\s*:\\s*(\\d+)"), json);
+            String date = group(Pattern.compile("\"date\"\\s*:\\s*\"([^\"]+)\""), json);
+            String description = group(Pattern.compile("\"description\"\\s*:\\s*\"([^\"]*)\""), json);
+
+            return new ParsedVoiceExpense(name,
+                    amount != null ? Double.valueOf(amount) : null,
+                    categoryId != null ? Long.valueOf(categoryId) : null,
+                    date, description);
+        }
+
+        private static String extractJsonFromResponse(String response) {
+            Matcher matcher = Pattern.compile(
+                    "\\{[^}]*\"name\"[^}]*\"amount\"[^}]*\"categoryId\"[^}]*\"date\"[^}]*\"description\"[^}]*\\}")
+                    .matcher(response);
+            if (matcher.find()) {
+                return matcher.group(0);
+            }
+            Matcher simpleMatcher = Pattern.compile("\\{[^}]*\\}").matcher(response);
+            if (simpleMatcher.find()) {
+                return simpleMatcher.group(0);
+            }
+            return response;
+        }
+
+        private static String group(Pattern pattern, String text) {
+            Matcher matcher = pattern.matcher(text);
+            return matcher.find() ? matcher.group(1) : null;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.user.userservice.controller;
+
+import com.example.user.userservice.security.ReceiptUrlSigner;
+import com.example.user.userservice.service.ReceiptStorageBackend;
+import com.example.user.userservice.serviceimpl.LocalFileStorageBackend;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class FileControllerTest {
+
+    private static final String HASH = "ab".repeat(32);
+
+    @TempDir
+    Path uploadDir;
+
+    private final ReceiptUrlSigner signer = new ReceiptUrlSigner("test-signing-key", 3600);
+    private FileController controller;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        controller = new FileController(new LocalFileStorageBackend(uploadDir.toString()), signer);
+        Path dir = Files.createDirectories(uploadDir.resolve("receipts/7/ab"));
+        Files.writeString(dir.resolve(HASH + ".pdf"), "0123456789");
+        Files.createDirectories(uploadDir.resolve(".tmp"));
+        Files.writeString(uploadDir.resolve(".tmp/upload-1.part"), "partial");
+    }
+
+    @Test
+    void testServesNestedPathWithCacheHeaders() throws Exception {
+        MockHttpServletResponse response = serve(request("GET"));
+
+        assertEquals(200, response.getStatus());
+        assertEquals("0123456789", response.getContentAsString());
+        assertEquals("\"" + HASH + "\"", response.getHeader("ETag"));
+        assertEquals("private, max-age=31536000, immutable", response.getHeader("Cache-Control"));
+        assertEquals("application/pdf", response.getContentType());
+        assertEquals("bytes", response.getHeader("Accept-Ranges"));
+    }
+
+    @Test
+    void testMatchingEtagReturns304WithoutBody() throws Exception {
+        MockHttpServletRequest request = request("GET");
+        request.addHeader("If-None-Match", "\"" + HASH + "\"");
+
+        MockHttpServletResponse response = serve(request);
+
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void testServesSingleByteRange() throws Exception {
+        MockHttpServletRequest request = request("GET");
+        request.addHeader("Range", "bytes=2-5");
+
+        MockHttpServletResponse response = serve(request);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("2345", response.getContentAsString());
+        assertEquals("bytes 2-5/10", response.getHeader("Content-Range"));
+    }
+
+    @Test
+    void testStaleIfRangeServesWholeFile() throws Exception {
+        MockHttpServletRequest request = request("GET");
+        request.addHeader("Range", "bytes=2-5");
+        request.addHeader("If-Range", "\"old\"");
+
+        MockHttpServletResponse response = serve(request);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("0123456789", response.getContentAsString());
+    }
+
+    @Test
+    void testUnsatisfiableRange() throws Exception {
+        MockHttpServletRequest request = request("GET");
+        request.addHeader("Range", "bytes=20-30");
+
+        MockHttpServletResponse response = serve(request);
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeader("Content-Range"));
+    }
+
+    @Test
+    void testRejectsTraversalAndTempFiles() throws Exception {
+        MockHttpServletResponse traversal = new MockHttpServletResponse();
+        controller.serveFileFromController("/../secret.txt", request("GET"), traversal);
+        assertEquals(404, traversal.getStatus());
+
+        MockHttpServletResponse temp = new MockHttpServletResponse();
+        controller.serveFileFromController("/.tmp/upload-1.part", request("GET"), temp);
+        assertEquals(404, temp.getStatus());
+    }
+
+    @Test
+    void testRemoteBackendRedirectsToPresignedUrl() throws Exception {
+        ReceiptStorageBackend remote = mock(ReceiptStorageBackend.class);
+        when(remote.localPath(anyString())).thenReturn(Optional.empty());
+        when(remote.presignGet(eq("receipts/7/ab/" + HASH + ".pdf"), any()))
+                .thenReturn(Optional.of("https://bucket.example/receipts/7/ab/" + HASH + ".pdf?X-Amz-Signature=x"));
+        controller = new FileController(remote, signer);
+        ReflectionTestUtils.setField(controller, "presignTtlSeconds", 300L);
+
+        MockHttpServletResponse response = serve(request("GET"));
+
+        assertEquals(302, response.getStatus());
+        assertEquals("https://bucket.example/receipts/7/ab/" + HASH + ".pdf?X-Amz-Signature=x", response.getHeader("Location"));
+        assertEquals("private, max-age=150", response.getHeader("Cache-Control"));
+        verify(remote, never()).get(anyString());
+    }
+
+    @Test
+    void testSignedUrlServesWithPublicCachingAndRejectsTampering() throws Exception {
+        String path = "receipts/7/ab/" + HASH + ".pdf";
+        String url = signer.signedUrl(path);
+        long expires = Long.parseLong(url.substring(url.indexOf("expires=") + 8, url.indexOf('&')));
+        String signature = url.substring(url.indexOf("signature=") + 10);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.serveSignedFile("/" + path, expires, signature, request("GET"), response);
+        assertEquals(200, response.getStatus());
+        assertEquals("0123456789", response.getContentAsString());
+        long maxAge = Long.parseLong(response.getHeader("Cache-Control").replaceAll("\\D+", " ").trim());
+        assertTrue(maxAge > 3500 && maxAge <= 7200, response.getHeader("Cache-Control"));
+        assertTrue(response.getHeader("Cache-Control").startsWith("public"));
+
+        MockHttpServletResponse otherFile = new MockHttpServletResponse();
+        controller.serveSignedFile("/receipts/8/ab/" + HASH + ".pdf", expires, signature, request("GET"), otherFile);
+        assertEquals(403, otherFile.getStatus());
+
+        MockHttpServletResponse extended = new MockHttpServletResponse();
+        controller.serveSignedFile("/" + path, expires + 3600, signature, request("GET"), extended);
+        assertEquals(403, extended.getStatus());
+
+        MockHttpServletResponse unsigned = new MockHttpServletResponse();
+        controller.serveSignedFile("/" + path, null, null, request("GET"), unsigned);
+        assertEquals(403, unsigned.getStatus());
+    }
+
+    private MockHttpServletRequest request(String method) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, "/api/user/files/receipts/7/ab/" + HASH + ".pdf");
+        request.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        return request;
+    }
+
+    private MockHttpServletResponse serve(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.serveFileFromController("/receipts/7/ab/" + HASH + ".pdf", request, response);
+        return response;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.user.userservice.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReceiptUrlSignerTest {
+
+    private static final String PATH = "receipts/7/ab/receipt.jpg";
+
+    @Test
+    void testUrlIsStableWithinAWindowAndValidForAtLeastOne() {
+        String first = signer(10_000).signedUrl(PATH);
+        String later = signer(10_799).signedUrl(PATH);
+        String nextWindow = signer(10_800).signedUrl(PATH);
+
+        assertEquals(first, later);
+        assertNotEquals(first, nextWindow);
+        assertEquals(3600 * 4, expires(first)); // window [7200, 10800) + 2 windows
+
+        String signature = first.substring(first.indexOf("signature=") + 10);
+        assertTrue(signer(10_000 + 3600).verify(PATH, expires(first), signature));
+        assertFalse(signer(expires(first) + 1).verify(PATH, expires(first), signature));
+    }
+
+    @Test
+    void testSignatureCoversPathExpiryAndKey() {
+        String url = signer(10_000).signedUrl(PATH);
+        String signature = url.substring(url.indexOf("signature=") + 10);
+        long expires = expires(url);
+
+        assertTrue(signer(10_000).verify(PATH, expires, signature));
+        assertFalse(signer(10_000).verify("receipts/8/ab/receipt.jpg", expires, signature));
+        assertFalse(signer(10_000).verify(PATH, expires + 3600, signature));
+        assertFalse(signer(10_000).verify(PATH, expires, signature.substring(1)));
+        assertFalse(new ReceiptUrlSigner("other-key", 3600, clockAt(10_000)).verify(PATH, expires, signature));
+    }
+
+    @Test
+    void testWithoutKeyNothingIsSignedOrVerified() {
+        String url = signer(10_000).signedUrl(PATH);
+        ReceiptUrlSigner unkeyed = new ReceiptUrlSigner(" ", 3600, clockAt(10_000));
+
+        assertFalse(unkeyed.isEnabled());
+        assertThrows(IllegalStateException.class, () -> unkeyed.signedUrl(PATH));
+        assertFalse(unkeyed.verify(PATH, expires(url), url.substring(url.indexOf("signature=") + 10)));
+    }
+
+    private static ReceiptUrlSigner signer(long epochSecond) {
+        return new ReceiptUrlSigner("test-signing-key", 3600, clockAt(epochSecond));
+    }
+
+    private static Clock clockAt(long epochSecond) {
+        return Clock.fixed(Instant.ofEpochSecond(epochSecond), ZoneOffset.UTC);
+    }
+
+    private static long expires(String url) {
+        return Long.parseLong(url.substring(url.indexOf("expires=") + 8, url.indexOf('&')));
+    }
+}
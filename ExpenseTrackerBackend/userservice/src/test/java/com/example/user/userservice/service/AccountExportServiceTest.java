@@ -0,0 +1,147 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.entity.User;
+import com.example.user.userservice.exception.ExpenseException;
+import com.example.user.userservice.repository.BudgetRepository;
+import com.example.user.userservice.repository.ExpenseRepository;
+import com.example.user.userservice.repository.ExpenseRepository.ExpenseExportRow;
+import com.example.user.userservice.repository.GoalRepository;
+import com.example.user.userservice.repository.MonthlyBudgetTargetRepository;
+import com.example.user.userservice.repository.ReceiptRepository;
+import com.example.user.userservice.repository.ReceiptRepository.ReceiptExportRow;
+import com.example.user.userservice.repository.UserRepository;
+import com.example.user.userservice.serviceimpl.LocalFileStorageBackend;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class AccountExportServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final ExpenseRepository expenseRepository = mock(ExpenseRepository.class);
+    private final ReceiptRepository receiptRepository = mock(ReceiptRepository.class);
+    private final BudgetRepository budgetRepository = mock(BudgetRepository.class);
+    private final MonthlyBudgetTargetRepository monthlyBudgetTargetRepository = mock(MonthlyBudgetTargetRepository.class);
+    private final GoalRepository goalRepository = mock(GoalRepository.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private AccountExportService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new AccountExportService(userRepository, expenseRepository, receiptRepository, budgetRepository,
+                monthlyBudgetTargetRepository, goalRepository, new LocalFileStorageBackend(uploadDir.toString()),
+                objectMapper, mock(PlatformTransactionManager.class), 1);
+        ReflectionTestUtils.setField(service, "pageSize", 1);
+        when(userRepository.existsById(7L)).thenReturn(true);
+        when(userRepository.getReferenceById(7L)).thenReturn(new User());
+    }
+
+    @Test
+    void testWritesDataEntriesImagesAndManifest() throws Exception {
+        Files.createDirectories(uploadDir.resolve("receipts/7/ab"));
+        Files.writeString(uploadDir.resolve("receipts/7/ab/lunch.jpg"), "jpeg bytes");
+        ExpenseExportRow lunch = expense(1L, "Lunch, with \"team\"", "receipts/7/ab/lunch.jpg");
+        ExpenseExportRow formula = expense(2L, "=HYPERLINK(\"x\")", null);
+        ReceiptExportRow gone = receipt(5L, "receipts/7/ab/gone.png");
+        when(expenseRepository.streamExportRows(7L)).thenReturn(Stream.of(lunch, formula));
+        when(receiptRepository.streamExportRows(7L)).thenReturn(Stream.of(gone));
+        // Pages of one, to exercise the keyset paging
+        when(expenseRepository.findArchivePaths(eq(7L), eq("receipts/7/%"), anyString(), eq(1)))
+                .thenReturn(List.of("receipts/7/ab/gone.png"));
+        when(expenseRepository.findArchivePaths(7L, "receipts/7/%", "receipts/7/ab/gone.png", 1))
+                .thenReturn(List.of("receipts/7/ab/lunch.jpg"));
+        when(expenseRepository.findArchivePaths(7L, "receipts/7/%", "receipts/7/ab/lunch.jpg", 1))
+                .thenReturn(List.of());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.writeArchive(7L, out);
+        Map<String, String> entries = unzip(out.toByteArray());
+
+        assertEquals(List.of("expenses.csv", "receipts.json", "budgets.json", "monthly-budget-targets.json",
+                "goals.json", "receipts/ab/lunch.jpg", "manifest.json"), List.copyOf(entries.keySet()));
+        String[] csv = entries.get("expenses.csv").split("\r\n");
+        assertEquals(3, csv.length);
+        assertEquals("1,2025-08-01,\"Lunch, with \"\"team\"\"\",,12.5,Food,card,,manual,receipts/ab/lunch.jpg", csv[1]);
+        assertTrue(csv[2].startsWith("2,2025-08-01,\"'=HYPERLINK(\"\"x\"\")\""));
+        assertEquals("jpeg bytes", entries.get("receipts/ab/lunch.jpg"));
+
+        JsonNode receipts = objectMapper.readTree(entries.get("receipts.json"));
+        assertEquals("Starbucks", receipts.get(0).get("extractedData").get("merchant").asText());
+        assertEquals("receipts/ab/gone.png", receipts.get(0).get("imageFile").asText());
+        assertEquals(0, objectMapper.readTree(entries.get("goals.json")).size());
+
+        JsonNode manifest = objectMapper.readTree(entries.get("manifest.json"));
+        assertEquals(2, manifest.get("expenses").asInt());
+        assertEquals(1, manifest.get("images").asInt());
+        assertEquals("receipts/7/ab/gone.png", manifest.get("missingImages").get(0).asText());
+    }
+
+    @Test
+    void testLimitsConcurrentExports() {
+        assertTrue(service.tryAcquire(7L));
+        assertFalse(service.tryAcquire(7L));
+        service.release();
+        assertTrue(service.tryAcquire(7L));
+        assertThrows(ExpenseException.class, () -> service.tryAcquire(8L));
+    }
+
+    private static Map<String, String> unzip(byte[] archive) throws Exception {
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                entries.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+
+    private static ExpenseExportRow expense(Long id, String name, String receiptPath) {
+        ExpenseExportRow row = mock(ExpenseExportRow.class);
+        when(row.getId()).thenReturn(id);
+        when(row.getDate()).thenReturn(LocalDate.of(2025, 8, 1));
+        when(row.getName()).thenReturn(name);
+        when(row.getAmount()).thenReturn(12.5);
+        when(row.getCategory()).thenReturn("Food");
+        when(row.getPaymentMethod()).thenReturn("card");
+        when(row.getSource()).thenReturn("manual");
+        when(row.getReceiptPath()).thenReturn(receiptPath);
+        return row;
+    }
+
+    private static ReceiptExportRow receipt(Long id, String imageUrl) {
+        ReceiptExportRow row = mock(ReceiptExportRow.class);
+        when(row.getId()).thenReturn(id);
+        when(row.getFileName()).thenReturn("receipt.png");
+        when(row.getImageUrl()).thenReturn(imageUrl);
+        when(row.getStatus()).thenReturn("EXTRACTED");
+        when(row.getExtractedData()).thenReturn("{\"merchant\":\"Starbucks\"}");
+        when(row.getCreatedAt()).thenReturn(LocalDateTime.of(2025, 8, 1, 12, 0));
+        return row;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.exception.AiCapacityException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AiCallBulkheadTest {
+
+    private static final String PROVIDER = AiCallBulkhead.HUGGING_FACE;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AiCallBulkhead bulkhead;
+
+    @BeforeEach
+    void setUp() {
+        bulkhead = new AiCallBulkhead(meterRegistry);
+        ReflectionTestUtils.setField(bulkhead, "maxConcurrent", 2);
+        ReflectionTestUtils.setField(bulkhead, "maxQueued", 1);
+        ReflectionTestUtils.setField(bulkhead, "maxWaitMs", 100L);
+    }
+
+    @Test
+    void testRejectsWhenPermitsAreExhausted() {
+        bulkhead.tryAcquire(PROVIDER);
+        bulkhead.tryAcquire(PROVIDER);
+
+        assertThrows(AiCapacityException.class, () -> bulkhead.tryAcquire(PROVIDER));
+        assertEquals(2, stat("inFlight"));
+        assertEquals(1L, stat("rejected"));
+
+        bulkhead.release(PROVIDER);
+        bulkhead.tryAcquire(PROVIDER);
+        assertEquals(2, stat("inFlight"));
+    }
+
+    @Test
+    void testRejectsImmediatelyWhenTheWaitQueueIsFull() throws Exception {
+        ReflectionTestUtils.setField(bulkhead, "maxWaitMs", 5_000L);
+        bulkhead.tryAcquire(PROVIDER);
+        bulkhead.tryAcquire(PROVIDER);
+        CompletableFuture<String> waiting = CompletableFuture.supplyAsync(() -> bulkhead.execute(PROVIDER, () -> "done"));
+        for (int i = 0; i < 100 && stat("queued").intValue() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, stat("queued"));
+
+        long start = System.nanoTime();
+        assertThrows(AiCapacityException.class, () -> bulkhead.execute(PROVIDER, () -> "rejected"));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1_000);
+
+        bulkhead.release(PROVIDER);
+        assertEquals("done", waiting.get(2, TimeUnit.SECONDS));
+        assertEquals(1, stat("inFlight"));
+        assertEquals(0, stat("queued"));
+    }
+
+    @Test
+    void testTimedOutWaitLeavesNoQueuedOrHeldPermit() {
+        bulkhead.tryAcquire(PROVIDER);
+        bulkhead.tryAcquire(PROVIDER);
+
+        assertThrows(AiCapacityException.class, () -> bulkhead.execute(PROVIDER, () -> "late"));
+        assertEquals(0, stat("queued"));
+        assertEquals(2, stat("inFlight"));
+
+        bulkhead.release(PROVIDER);
+        assertEquals("on time", bulkhead.execute(PROVIDER, () -> "on time"));
+        assertEquals(1, stat("inFlight"));
+    }
+
+    @Test
+    void testReleasesThePermitWhenTheCallThrows() {
+        assertThrows(IllegalStateException.class, () -> bulkhead.execute(PROVIDER, () -> {
+            throw new IllegalStateException("provider down");
+        }));
+
+        assertEquals(0, stat("inFlight"));
+    }
+
+    @Test
+    void testHeadroomOnlyWhileAtMostHalfBusyAndNobodyWaits() {
+        ReflectionTestUtils.setField(bulkhead, "maxConcurrent", 4);
+        assertTrue(bulkhead.hasHeadroom());
+
+        bulkhead.tryAcquire(PROVIDER);
+        bulkhead.tryAcquire(PROVIDER);
+        assertTrue(bulkhead.hasHeadroom());
+
+        bulkhead.tryAcquire(PROVIDER);
+        assertFalse(bulkhead.hasHeadroom());
+
+        bulkhead.release(PROVIDER);
+        assertTrue(bulkhead.hasHeadroom());
+    }
+
+    @Test
+    void testCancelledStreamReleasesItsPermit() {
+        // Same acquire/release shape as HuggingFaceExpenseProvider.streamCompletion
+        Flux<String> stream = Flux.defer(() -> {
+            bulkhead.tryAcquire(PROVIDER);
+            return Flux.<String>never().doFinally(signal -> bulkhead.release(PROVIDER));
+        });
+
+        Disposable first = stream.subscribe();
+        Disposable second = stream.subscribe();
+        assertEquals(2, stat("inFlight"));
+        assertThrows(AiCapacityException.class, () -> stream.blockFirst());
+
+        first.dispose();
+        second.dispose();
+        assertEquals(0, stat("inFlight"));
+        assertTrue(bulkhead.hasHeadroom());
+    }
+
+    private Number stat(String name) {
+        return bulkhead.snapshot().get(PROVIDER).get(name);
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.service.AiCallLedger.Entry;
+import com.example.user.userservice.service.AiCallLedger.Outcome;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.*;
+
+class AiCallLedgerTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+
+    @Test
+    void testFullRingOverwritesOldestEntries() {
+        AiCallLedger ledger = new AiCallLedger(jdbcTemplate, 3, 10);
+        for (int i = 0; i < 5; i++) {
+            ledger.record(entry("call-" + i));
+        }
+
+        assertEquals(3, ledger.snapshot().get("pending").intValue());
+        assertEquals(2L, ledger.snapshot().get("dropped"));
+
+        List<String> written = flushedPurposes(ledger);
+        assertEquals(List.of("call-2", "call-3", "call-4"), written);
+        assertEquals(0, ledger.snapshot().get("pending").intValue());
+    }
+
+    @Test
+    void testFlushWritesInBatches() {
+        AiCallLedger ledger = new AiCallLedger(jdbcTemplate, 16, 2);
+        for (int i = 0; i < 5; i++) {
+            ledger.record(entry("call-" + i));
+        }
+
+        ledger.flush();
+
+        verify(jdbcTemplate, times(3)).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+    }
+
+    @Test
+    void testFailedFlushDoesNotPropagate() {
+        AiCallLedger ledger = new AiCallLedger(jdbcTemplate, 16, 10);
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any()))
+                .thenThrow(new IllegalStateException("database down"));
+        ledger.recordFallback("voice-parse", 42);
+
+        assertDoesNotThrow(ledger::flush);
+    }
+
+    @Test
+    void testDailyStatsAggregatesInTheDatabase() throws Exception {
+        AiCallLedger ledger = new AiCallLedger(jdbcTemplate, 16, 10);
+        Date day = Date.valueOf(LocalDate.now());
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(row(Map.of("day", day, "provider", "gemini", "outcome", "SUCCESS",
+                    "calls", 40L, "prompt_tokens", 4000L, "completion_tokens", 800L)));
+            handler.processRow(row(Map.of("day", day, "provider", "gemini", "outcome", "PROVIDER_ERROR",
+                    "calls", 2L, "prompt_tokens", 0L, "completion_tokens", 0L)));
+            return null;
+        }).when(jdbcTemplate).query(contains("GROUP BY"), any(RowCallbackHandler.class), any(Timestamp.class));
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(row(Map.of("day", day, "provider", "gemini", "latency_ms", 300L,
+                    "is_p50", true, "is_p95", false, "is_p99", false)));
+            handler.processRow(row(Map.of("day", day, "provider", "gemini", "latency_ms", 900L,
+                    "is_p50", false, "is_p95", true, "is_p99", true)));
+            return null;
+        }).when(jdbcTemplate).query(contains("ROW_NUMBER"), any(RowCallbackHandler.class), any(Timestamp.class));
+
+        List<Map<String, Object>> stats = ledger.dailyStats(365);
+
+        assertEquals(1, stats.size());
+        assertEquals(42L, stats.get(0).get("calls"));
+        assertEquals(4000L, stats.get(0).get("promptTokens"));
+        assertEquals(300L, stats.get(0).get("p50LatencyMs"));
+        assertEquals(900L, stats.get(0).get("p99LatencyMs"));
+        ArgumentCaptor<Timestamp> since = ArgumentCaptor.forClass(Timestamp.class);
+        verify(jdbcTemplate).query(contains("GROUP BY"), any(RowCallbackHandler.class), since.capture());
+        assertEquals(LocalDate.now().minusDays(AiCallLedger.MAX_STATS_DAYS - 1).atStartOfDay(),
+                since.getValue().toLocalDateTime());
+    }
+
+    private static ResultSet row(Map<String, Object> columns) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getDate(anyString())).thenAnswer(invocation -> columns.get(invocation.<String>getArgument(0)));
+        when(rs.getString(anyString())).thenAnswer(invocation -> columns.get(invocation.<String>getArgument(0)));
+        when(rs.getLong(anyString())).thenAnswer(invocation -> columns.get(invocation.<String>getArgument(0)));
+        when(rs.getBoolean(anyString())).thenAnswer(invocation -> columns.get(invocation.<String>getArgument(0)));
+        return rs;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> flushedPurposes(AiCallLedger ledger) {
+        ArgumentCaptor<Collection<Entry>> batches = ArgumentCaptor.forClass(Collection.class);
+        ledger.flush();
+        verify(jdbcTemplate, atLeastOnce()).batchUpdate(anyString(), batches.capture(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+
+        List<String> purposes = new ArrayList<>();
+        batches.getAllValues().forEach(batch -> batch.forEach(entry -> purposes.add(entry.purpose())));
+        return purposes;
+    }
+
+    private static Entry entry(String purpose) {
+        return new Entry(LocalDateTime.now(), purpose, "gemini", "gemini-1.5-flash", 100, 50, 30, 12, 250, Outcome.SUCCESS);
+    }
+}
@@ -18,6 +18,7 @@ import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -39,6 +40,9 @@ class AiExpenseParserServiceTest {
     @Mock
     private WebClient.ResponseSpec responseSpec;
 
+    @Mock
+    private AiProviderRouter aiProviderRouter;
+
     @Mock
     private ExpenseRepository expenseRepository;
 
@@ -51,6 +55,15 @@ class AiExpenseParserServiceTest {
     @Mock
     private ObjectMapper objectMapper;
 
+    @Mock
+    private MerchantCategoryMemory merchantCategoryMemory;
+
+    @Mock
+    private ExpenseCategoryClassifier expenseCategoryClassifier;
+
+    @Mock
+    private AiCallLedger aiCallLedger;
+
     @InjectMocks
     private AiExpenseParserService aiExpenseParserService;
 
@@ -103,6 +116,31 @@ class AiExpenseParserServiceTest {
         verify(expenseRepository).save(any(Expense.class));
     }
 
+    @Test
+    void testConfidentClassifierSkipsTheModel() {
+        // Given
+        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+        when(expenseCategoryClassifier.predict(testRequest.getText()))
+                .thenReturn(Optional.of(new NaiveBayesCategoryModel.Prediction(1L, 0.93)));
+        when(categoryRepository.findById(1L)).thenReturn(Optional.of(testCategory));
+        when(expenseRepository.save(any(Expense.class))).thenAnswer(invocation -> {
+            Expense expense = invocation.getArgument(0);
+            expense.setId(1L);
+            return expense;
+        });
+
+        // When
+        var result = aiExpenseParserService.parseAndCreateExpense(testRequest, 1L);
+
+        // Then
+        assertEquals(300.0, result.getAmount());
+        assertEquals(LocalDate.now(ZoneId.of("Asia/Kolkata")).minusDays(1), result.getDate());
+        assertEquals("Food & Dining", result.getCategory());
+        assertEquals("CLASSIFIER", result.getSource());
+        assertEquals(0.93, result.getConfidence());
+        verifyNoInteractions(aiProviderRouter);
+    }
+
     @Test
     void testUserNotFound() {
         // Given
@@ -0,0 +1,230 @@
+package com.example.user.userservice.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class AiProviderRouterTest {
+
+    private final AiCallLedger ledger = new AiCallLedger(mock(JdbcTemplate.class), 64, 16);
+    private AiProviderRouter router;
+
+    @AfterEach
+    void tearDown() {
+        if (router != null) {
+            router.shutdown();
+        }
+    }
+
+    @Test
+    void testRoutesToProviderWithLowerLatency() {
+        StubProvider slow = new StubProvider("slow", prompt -> "slow");
+        StubProvider fast = new StubProvider("fast", prompt -> "fast");
+        router = new AiProviderRouter(List.of(slow, fast), ledger, false, 50, 3, 0.2, 4);
+
+        router.recordOutcome("slow", 900, true);
+        router.recordOutcome("fast", 100, true);
+
+        assertEquals("fast", router.complete(null, "lunch 250"));
+        assertEquals(0, slow.calls.get());
+        assertEquals(1, fast.calls.get());
+    }
+
+    @Test
+    void testFailsOverAndDemotesFailingProvider() {
+        StubProvider broken = new StubProvider("broken", prompt -> {
+            throw new RuntimeException("503 from upstream");
+        });
+        StubProvider healthy = new StubProvider("healthy", prompt -> "ok");
+        router = new AiProviderRouter(List.of(broken, healthy), ledger, false, 50, 3, 0.2, 4);
+
+        assertEquals("ok", router.complete(null, "cab 180"));
+        assertEquals(1, broken.calls.get());
+
+        // The failure raised the error rate, so the next call goes straight to the healthy provider
+        assertEquals("healthy", router.rankProviders().get(0).getName());
+        assertEquals("ok", router.complete(null, "cab 180"));
+        assertEquals(1, broken.calls.get());
+    }
+
+    @Test
+    void testProviderThatAlwaysFailsFastRanksLast() {
+        StubProvider dead = new StubProvider("dead", prompt -> {
+            throw new RuntimeException("401 invalid API key");
+        });
+        StubProvider healthy = new StubProvider("healthy", prompt -> "ok");
+        router = new AiProviderRouter(List.of(dead, healthy), ledger, false, 50, 3, 0.2, 4);
+        // Slower than the dead provider ever is: it fails in well under a millisecond
+        router.recordOutcome("healthy", 800, true);
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals("ok", router.complete(null, "cab 180"));
+        }
+
+        assertEquals(1, dead.calls.get());
+        assertEquals(List.of("healthy", "dead"), router.rankProviders().stream().map(AiExpenseProvider::getName).toList());
+
+        // Even a provider that takes seconds beats one that has only ever failed
+        for (int i = 0; i < 30; i++) {
+            router.recordOutcome("dead", 0, false);
+            router.recordOutcome("healthy", 4_000, true);
+        }
+        assertEquals("healthy", router.rankProviders().get(0).getName());
+    }
+
+    @Test
+    void testUnparseableResponseCountsAsFailure() {
+        StubProvider garbage = new StubProvider("garbage", prompt -> "not json");
+        StubProvider valid = new StubProvider("valid", prompt -> "{\"amount\": 250}");
+        router = new AiProviderRouter(List.of(garbage, valid), ledger, false, 50, 3, 0.2, 4);
+
+        Function<String, String> parser = content -> {
+            if (!content.startsWith("{")) {
+                throw new IllegalArgumentException("AI did not return JSON");
+            }
+            return content;
+        };
+
+        assertEquals("{\"amount\": 250}", router.complete(null, "lunch 250", parser));
+        assertEquals(1, ((Number) router.snapshot().get("garbage").get("failures")).intValue());
+        // One PARSE_ERROR and one SUCCESS entry wait in the ledger for the next flush
+        assertEquals(2, ledger.snapshot().get("pending").intValue());
+    }
+
+    @Test
+    void testHedgesWhenPrimaryIsSlowerThanHedgeDelay() throws Exception {
+        CountDownLatch primaryRelease = new CountDownLatch(1);
+        StubProvider stalled = new StubProvider("stalled", prompt -> {
+            awaitQuietly(primaryRelease);
+            return "late";
+        });
+        StubProvider backup = new StubProvider("backup", prompt -> "hedged");
+        router = new AiProviderRouter(List.of(stalled, backup), ledger, true, 20, 3, 0.2, 4);
+        seed("stalled", 10);
+        seed("backup", 50);
+
+        try {
+            assertEquals("hedged", router.complete(null, "coffee 120"));
+            assertEquals(1, stalled.calls.get());
+            assertEquals(1, backup.calls.get());
+        } finally {
+            primaryRelease.countDown();
+        }
+    }
+
+    @Test
+    void testCancelsTheSlowerCallOnceTheHedgeWins() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        StubProvider stalled = new StubProvider("stalled", prompt -> {
+            try {
+                Thread.sleep(5_000);
+                return "late";
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Call interrupted");
+            }
+        });
+        StubProvider backup = new StubProvider("backup", prompt -> "hedged");
+        router = new AiProviderRouter(List.of(stalled, backup), ledger, true, 20, 3, 0.2, 4);
+        seed("stalled", 10);
+        seed("backup", 50);
+
+        assertEquals("hedged", router.complete(null, "coffee 120"));
+        assertTrue(interrupted.await(2, TimeUnit.SECONDS));
+        // Being cancelled is not held against the provider
+        Thread.sleep(50);
+        assertEquals(0, ((Number) router.snapshot().get("stalled").get("failures")).intValue());
+    }
+
+    @Test
+    void testDoesNotHedgeBeforeEnoughSamples() {
+        StubProvider slow = new StubProvider("slow", prompt -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "slow";
+        });
+        StubProvider backup = new StubProvider("backup", prompt -> "hedged");
+        router = new AiProviderRouter(List.of(slow, backup), ledger, true, 20, 3, 0.2, 4);
+
+        // No p95 yet: the first calls must not all be doubled
+        assertEquals("slow", router.complete(null, "coffee 120"));
+        assertEquals(0, backup.calls.get());
+    }
+
+    @Test
+    void testHedgedPrimaryFailureFailsOverImmediately() {
+        StubProvider broken = new StubProvider("broken", prompt -> {
+            throw new RuntimeException("connection reset");
+        });
+        StubProvider backup = new StubProvider("backup", prompt -> "backup");
+        router = new AiProviderRouter(List.of(broken, backup), ledger, true, 5_000, 3, 0.2, 4);
+        seed("broken", 10);
+        seed("backup", 50);
+
+        assertEquals("backup", router.complete(null, "groceries 900"));
+    }
+
+    @Test
+    void testThrowsWhenAllProvidersFail() {
+        StubProvider first = new StubProvider("first", prompt -> {
+            throw new RuntimeException("first down");
+        });
+        StubProvider second = new StubProvider("second", prompt -> {
+            throw new RuntimeException("second down");
+        });
+        router = new AiProviderRouter(List.of(first, second), ledger, false, 50, 3, 0.2, 4);
+
+        RuntimeException error = assertThrows(RuntimeException.class, () -> router.complete(null, "rent 15000"));
+        assertEquals("second down", error.getMessage());
+    }
+
+    private void seed(String provider, long latencyMs) {
+        for (int i = 0; i < 3; i++) {
+            router.recordOutcome(provider, latencyMs, true);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class StubProvider implements AiExpenseProvider {
+
+        private final String name;
+        private final Function<String, String> behaviour;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private StubProvider(String name, Function<String, String> behaviour) {
+            this.name = name;
+            this.behaviour = behaviour;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String complete(String systemPrompt, String userPrompt) {
+            calls.incrementAndGet();
+            return behaviour.apply(userPrompt);
+        }
+    }
+}
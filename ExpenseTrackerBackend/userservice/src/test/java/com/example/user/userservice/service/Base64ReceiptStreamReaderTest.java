@@ -0,0 +1,98 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.exception.ExpenseException;
+import com.example.user.userservice.service.FileStorageService.StagedUpload;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class Base64ReceiptStreamReaderTest {
+
+    private final FileStorageService fileStorageService = mock(FileStorageService.class);
+    private byte[] staged;
+    private Base64ReceiptStreamReader reader;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(fileStorageService.stageUpload(any())).thenAnswer(invocation -> {
+            staged = invocation.<InputStream>getArgument(0).readAllBytes();
+            return new StagedUpload(".tmp/upload-1.part", "hash", staged.length);
+        });
+        ObjectProvider<Validator> validator = mock(ObjectProvider.class);
+        reader = new Base64ReceiptStreamReader(new ObjectMapper().findAndRegisterModules(), fileStorageService, validator);
+    }
+
+    @Test
+    void testDecodesDataUrlAndReadsFieldsAfterIt() throws Exception {
+        byte[] image = randomBytes(300_000);
+        String json = "{\"name\":\"Lunch\",\"amount\":12.5,\"base64Receipt\":\"data:image/png;base64,"
+                + Base64.getEncoder().encodeToString(image) + "\" , \"fileName\":\"r.png\",\"date\":\"2026-01-02\",\"categoryId\":1}";
+
+        Base64ReceiptStreamReader.Body body = reader.read(stream(json));
+
+        assertArrayEquals(image, staged);
+        assertEquals("image/png", body.contentType());
+        assertEquals(image.length, body.receipt().size());
+        assertEquals("r.png", body.request().getFileName());
+        assertEquals("Lunch", body.request().getName());
+        assertEquals(LocalDate.of(2026, 1, 2), body.request().getDate());
+        assertEquals(1L, body.request().getCategoryId());
+        assertNull(body.request().getBase64Receipt());
+    }
+
+    @Test
+    void testPlainBase64WithEscapedSlashes() throws Exception {
+        byte[] image = randomBytes(50_000);
+        String escaped = Base64.getEncoder().encodeToString(image).replace("/", "\\/");
+
+        Base64ReceiptStreamReader.Body body = reader.read(stream("{\"fileName\":\"r.jpg\",\"base64Receipt\":\"" + escaped + "\"}"));
+
+        assertArrayEquals(image, staged);
+        assertEquals("image/jpeg", body.contentType());
+        assertEquals("r.jpg", body.request().getFileName());
+    }
+
+    @Test
+    void testInvalidBase64IsAClientError() {
+        ExpenseException error = assertThrows(ExpenseException.class,
+                () -> reader.read(stream("{\"base64Receipt\":\"ab!d\",\"fileName\":\"a.jpg\"}")));
+        assertTrue(error.getMessage().startsWith("Invalid base64 receipt data"));
+    }
+
+    @Test
+    void testMissingReceiptIsRejected() {
+        ExpenseException error = assertThrows(ExpenseException.class,
+                () -> reader.read(stream("{\"fileName\":\"a.jpg\",\"base64Receipt\":\"\"}")));
+        assertEquals("Base64 receipt data is required", error.getMessage());
+        verify(fileStorageService, never()).stageUpload(any());
+    }
+
+    @Test
+    void testTruncatedBodyFails() {
+        assertThrows(ExpenseException.class, () -> reader.read(stream("{\"base64Receipt\":\"QUJD")));
+    }
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(1).nextBytes(bytes);
+        return bytes;
+    }
+}
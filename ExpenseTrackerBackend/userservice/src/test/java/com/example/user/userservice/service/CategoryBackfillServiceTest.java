@@ -0,0 +1,34 @@
+package com.example.user.userservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CategoryBackfillServiceTest {
+
+    private final CategoryBackfillService service = new CategoryBackfillService(
+            null, null, null, null, null, null, null, new ObjectMapper(), null);
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void testParsesAssignmentsAndSkipsMalformedEntries() {
+        Map<Long, Long> assigned = service.parseAssignments("Here you go:\n```json\n[{\"id\": 11, \"categoryId\": 2}, "
+                + "{\"id\": \"12\", \"categoryId\": 5}, {\"id\": 13}, {\"categoryId\": 4}]\n```");
+
+        assertEquals(Map.of(11L, 2L, 12L, 5L), assigned);
+    }
+
+    @Test
+    void testRejectsRepliesWithoutAnArray() {
+        assertThrows(IllegalArgumentException.class, () -> service.parseAssignments("I cannot help with that."));
+        assertThrows(IllegalArgumentException.class, () -> service.parseAssignments("[{\"id\": 1, \"categoryId\": ]"));
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.entity.Category;
+import com.example.user.userservice.repository.CategoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ExpensePromptBuilderTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2025, 3, 14);
+
+    private CategoryRepository categoryRepository;
+    private CategoryCache categoryCache;
+
+    @BeforeEach
+    void setUp() {
+        categoryRepository = mock(CategoryRepository.class);
+        when(categoryRepository.findAllByOrderByIdAsc()).thenReturn(List.of(
+                new Category(3L, "Food & Dining"),
+                new Category(7L, "Transportation"),
+                new Category(12L, "Others")));
+        categoryCache = new CategoryCache(categoryRepository);
+    }
+
+    @Test
+    void testUsesLiveCategoryIdsAndAppendsDateAndInput() {
+        ExpensePromptBuilder builder = new ExpensePromptBuilder(categoryCache, 400);
+
+        String prompt = builder.build("uber 250 yesterday", TODAY);
+
+        assertTrue(prompt.contains("3:Food & Dining - restaurant"));
+        assertTrue(prompt.contains("7:Transportation"));
+        assertTrue(prompt.contains("otherwise 12 (Others)"));
+        assertTrue(prompt.endsWith("Today: 2025-03-14 (FRIDAY)\nInput: \"uber 250 yesterday\""));
+    }
+
+    @Test
+    void testRendersStaticPrefixOncePerCategorySnapshot() {
+        ExpensePromptBuilder builder = new ExpensePromptBuilder(categoryCache, 400);
+
+        builder.build("coffee 120", TODAY);
+        builder.build("lunch 300", TODAY);
+        verify(categoryRepository, times(1)).findAllByOrderByIdAsc();
+
+        categoryCache.invalidate();
+        builder.build("lunch 300", TODAY);
+        verify(categoryRepository, times(2)).findAllByOrderByIdAsc();
+    }
+
+    @Test
+    void testStaysWithinTokenBudget() {
+        ExpensePromptBuilder builder = new ExpensePromptBuilder(categoryCache, 160);
+
+        String prompt = builder.build("groceries ".repeat(200), TODAY);
+
+        assertFalse(prompt.contains(" - restaurant"));
+        assertTrue(ExpensePromptBuilder.estimateTokens(prompt) <= 160);
+    }
+
+    @Test
+    void testCapsTheCategoryListWhenNamesAloneExceedTheBudget() {
+        List<Category> many = new ArrayList<>();
+        for (long id = 1; id <= 60; id++) {
+            many.add(new Category(id, "User category number " + id));
+        }
+        when(categoryRepository.findAllByOrderByIdAsc()).thenReturn(many);
+        categoryCache.invalidate();
+        ExpensePromptBuilder builder = new ExpensePromptBuilder(categoryCache, 250);
+
+        String prompt = builder.build("coffee 120", TODAY);
+
+        assertTrue(prompt.contains("1:User category number 1\n"));
+        assertFalse(prompt.contains("60:User category number 60"));
+        assertTrue(ExpensePromptBuilder.estimateTokens(prompt) <= 250);
+    }
+}
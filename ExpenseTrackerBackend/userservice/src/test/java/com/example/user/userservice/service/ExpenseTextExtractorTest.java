@@ -0,0 +1,43 @@
+package com.example.user.userservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpenseTextExtractorTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 5, 15); // a Wednesday
+
+    @Test
+    void testAmountOnlyWhenUnambiguous() {
+        assertEquals(Optional.of(250.0), ExpenseTextExtractor.amount("lunch 250 yesterday"));
+        assertEquals(Optional.of(1200.0), ExpenseTextExtractor.amount("paid rs 1,200 for groceries"));
+        assertEquals(Optional.of(99.5), ExpenseTextExtractor.amount("coffee 99.5rs"));
+        assertTrue(ExpenseTextExtractor.amount("2 coffees for 150").isEmpty());
+        assertTrue(ExpenseTextExtractor.amount("dinner 800 at 9pm").isEmpty());
+        assertTrue(ExpenseTextExtractor.amount("movie on the 5th").isEmpty());
+        assertTrue(ExpenseTextExtractor.amount("some money on food").isEmpty());
+    }
+
+    @Test
+    void testResolvesRelativeDatesOnly() {
+        assertEquals(Optional.of(TODAY), ExpenseTextExtractor.date("lunch 250", TODAY));
+        assertEquals(Optional.of(TODAY.minusDays(1)), ExpenseTextExtractor.date("cab 180 yesterday", TODAY));
+        assertEquals(Optional.of(TODAY.minusDays(2)), ExpenseTextExtractor.date("day before yesterday 90", TODAY));
+        assertEquals(Optional.of(LocalDate.of(2024, 5, 10)), ExpenseTextExtractor.date("friday movie 400", TODAY));
+        assertEquals(Optional.of(TODAY.minusDays(7)), ExpenseTextExtractor.date("wednesday gym 500", TODAY));
+        assertTrue(ExpenseTextExtractor.date("rent 15000 on the 1st", TODAY).isEmpty());
+        assertTrue(ExpenseTextExtractor.date("flight 5000 on 12/03", TODAY).isEmpty());
+        assertTrue(ExpenseTextExtractor.date("hotel in march 3000", TODAY).isEmpty());
+    }
+
+    @Test
+    void testDescribeStripsAmountsAndFiller() {
+        assertEquals(Optional.of("Sandwich"), ExpenseTextExtractor.describe("I spent 300 rs yesterday on sandwich"));
+        assertTrue(ExpenseTextExtractor.describe("paid 250 rs today").isEmpty());
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.service.GeminiResponseParser.ParsedVoiceExpense;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeminiResponseParserTest {
+
+    private final GeminiResponseParser parser = new GeminiResponseParser();
+
+    @Test
+    void testParsesFencedJsonAndIgnoresTrailingChatter() {
+        ParsedVoiceExpense parsed = parser.parse("Sure!\n```json\n{\"name\": \"Lunch\", \"amount\": 500.0, "
+                + "\"categoryId\": 1, \"date\": \"2025-03-13\", \"description\": \"Lunch {with} team\", \"extra\": true}\n```"
+                + "\nLet me know {if} this is wrong.");
+
+        assertEquals("Lunch", parsed.name());
+        assertEquals(500.0, parsed.amount());
+        assertEquals(1L, parsed.categoryId());
+        assertEquals("2025-03-13", parsed.date());
+        assertEquals("Lunch {with} team", parsed.description());
+    }
+
+    @Test
+    void testAcceptsLenientJson() {
+        ParsedVoiceExpense parsed = parser.parse("{'name': 'Taxi', amount: 120, \"categoryId\": \"2\",}");
+
+        assertEquals("Taxi", parsed.name());
+        assertEquals(120.0, parsed.amount());
+        assertEquals(2L, parsed.categoryId());
+        assertNull(parsed.date());
+    }
+
+    @Test
+    void testFallsBackToFieldPatternsOnTruncatedJson() {
+        ParsedVoiceExpense parsed = parser.parse("{\"name\": \"Say \\\"hi\\\"\", \"amount\": 99.5, \"categoryId\": 3, \"date\": \"2025-0");
+
+        assertEquals("Say \"hi\"", parsed.name());
+        assertEquals(99.5, parsed.amount());
+        assertEquals(3L, parsed.categoryId());
+        assertNull(parsed.date());
+    }
+
+    @Test
+    void testFallbackDecodesEscapesInOnePass() {
+        ParsedVoiceExpense parsed = parser.parse("{\"name\": \"C:\\\\new \\u20b9 fee\", \"amount\": 10, \"description\": \"a\\\\\\\"b\\nc\", \"date\": \"2025-0");
+
+        assertEquals("C:\\new \u20b9 fee", parsed.name());
+        assertEquals("a\\\"b c", parsed.description());
+    }
+
+    @Test
+    void testRejectsResponsesWithoutJson() {
+        assertThrows(IllegalArgumentException.class, () -> parser.parse("I could not understand that."));
+        assertThrows(IllegalArgumentException.class,
+                () -> parser.parse("{\"name\" \"amount\" \"categoryId\" \"date\" ".repeat(50)));
+    }
+
+    @Test
+    void testParsesEveryExpenseOfAnArray() {
+        List<ParsedVoiceExpense> parsed = parser.parseAll("```json\n[{\"name\": \"Lunch\", \"amount\": 250, \"categoryId\": 1}, "
+                + "{\"name\": \"Cab\", \"amount\": 180, \"categoryId\": 2}]\n```");
+
+        assertEquals(2, parsed.size());
+        assertEquals("Lunch", parsed.get(0).name());
+        assertEquals(180.0, parsed.get(1).amount());
+    }
+
+    @Test
+    void testParseAllAcceptsASingleObjectAndTruncatedArrays() {
+        assertEquals(1, parser.parseAll("{\"name\": \"Lunch\", \"amount\": 250}").size());
+
+        List<ParsedVoiceExpense> parsed = parser.parseAll("[{\"name\": \"Lunch\", \"amount\": 250}, {\"name\": \"Cab\", \"amo");
+        assertEquals(2, parsed.size());
+        assertEquals("Cab", parsed.get(1).name());
+        assertNull(parsed.get(1).amount());
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.user.userservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalJsonFieldParserTest {
+
+    @Test
+    void testReportsFieldsAsSoonAsTheyComplete() {
+        IncrementalJsonFieldParser parser = new IncrementalJsonFieldParser();
+
+        assertTrue(parser.feed("```json\n{\"amo").isEmpty());
+        List<Map.Entry<String, Object>> fields = parser.feed("unt\": 250, \"category\": \"Fo");
+        assertEquals(1, fields.size());
+        assertEquals("amount", fields.get(0).getKey());
+        assertEquals(250, ((Number) fields.get(0).getValue()).intValue());
+
+        fields = parser.feed("od\", \"tags\": [\"x\"], ");
+        assertEquals(1, fields.size());
+        assertEquals("Food", fields.get(0).getValue());
+        assertFalse(parser.isComplete());
+    }
+
+    @Test
+    void testCompletesOnClosingBraceAndIgnoresTrailingText() {
+        IncrementalJsonFieldParser parser = new IncrementalJsonFieldParser();
+
+        parser.feed("{\"merchant\": \"Uber\", \"meta\": {\"a\": 1}, \"confidence\": 0.9}");
+        assertTrue(parser.isComplete());
+        assertTrue(parser.feed("\n```").isEmpty());
+        assertEquals(List.of("merchant", "confidence"), List.copyOf(parser.getFields().keySet()));
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.service.IncrementalVoiceParser.Categorization;
+import com.example.user.userservice.service.IncrementalVoiceParser.Preview;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalVoiceParserTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2025, 3, 14);
+
+    private final List<String> categorized = new ArrayList<>();
+    private final IncrementalVoiceParser parser = new IncrementalVoiceParser(text -> {
+        categorized.add(text);
+        return text.contains("cab") ? new Categorization(7L, 0.95, "CLASSIFIER") : new Categorization(3L, 0.9, "MEMORY");
+    });
+
+    @Test
+    void testParsesSeveralExpensesWithSharedDate() {
+        Preview preview = parser.update("lunch 250 and cab 180 yesterday", TODAY);
+
+        assertEquals(2, preview.expenses().size());
+        assertEquals("Lunch", preview.expenses().get(0).name());
+        assertEquals(250.0, preview.expenses().get(0).amount());
+        assertEquals(7L, preview.expenses().get(1).categoryId());
+        assertEquals(TODAY.minusDays(1), preview.expenses().get(1).date());
+        assertEquals(0.9, preview.confidence());
+    }
+
+    @Test
+    void testReusesSegmentsOfAnUnchangedPrefix() {
+        parser.update("lunch 250", TODAY);
+        parser.update("lunch 250 and cab", TODAY);
+        Preview preview = parser.update("lunch 250 and cab 180", TODAY);
+
+        assertEquals(2, preview.expenses().size());
+        assertEquals(List.of("lunch 250", "cab 180"), categorized);
+        assertEquals(3, parser.segmentsParsed());
+        assertSame(preview, parser.update("lunch 250 and cab 180 ", TODAY));
+    }
+
+    @Test
+    void testSeveralNumbersInOneSegmentLowerConfidence() {
+        Preview preview = parser.update("2 coffees for 150", TODAY);
+
+        assertEquals(1, preview.expenses().size());
+        assertTrue(preview.confidence() < 0.75);
+    }
+
+    @Test
+    void testUnresolvedDateLowersConfidence() {
+        Preview preview = parser.update("rent 15000 on the 1st", TODAY);
+
+        assertEquals(TODAY, preview.expenses().get(0).date());
+        assertTrue(preview.confidence() < 0.75);
+    }
+
+    @Test
+    void testNoAmountMeansNoConfidence() {
+        Preview preview = parser.update("I had lunch at", TODAY);
+
+        assertTrue(preview.expenses().isEmpty());
+        assertEquals(0.0, preview.confidence());
+    }
+}
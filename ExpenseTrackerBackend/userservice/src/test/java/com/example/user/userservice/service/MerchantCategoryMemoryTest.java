@@ -0,0 +1,99 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.entity.Category;
+import com.example.user.userservice.entity.MerchantCategoryMapping;
+import com.example.user.userservice.repository.CategoryRepository;
+import com.example.user.userservice.repository.MerchantCategoryMappingRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class MerchantCategoryMemoryTest {
+
+    private MerchantCategoryMappingRepository mappingRepository;
+    private MerchantCategoryMemory memory;
+
+    @BeforeEach
+    void setUp() {
+        CategoryRepository categoryRepository = mock(CategoryRepository.class);
+        when(categoryRepository.findAllByOrderByIdAsc()).thenReturn(List.of(
+                new Category(3L, "Food & Dining"),
+                new Category(7L, "Transportation"),
+                new Category(12L, "Others")));
+        mappingRepository = mock(MerchantCategoryMappingRepository.class);
+        when(mappingRepository.findByUserIdAndMerchantKey(any(), any())).thenReturn(Optional.empty());
+
+        memory = new MerchantCategoryMemory(mappingRepository, new CategoryCache(categoryRepository),
+                mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(memory, "maxUsers", 10);
+        ReflectionTestUtils.setField(memory, "maxKeysPerUser", 100);
+        ReflectionTestUtils.setField(memory, "minHits", 2);
+    }
+
+    @Test
+    void testKeysOnTheLeadingMerchant() {
+        assertEquals(Optional.of("mcdonalds"), MerchantCategoryMemory.key("McDonald's"));
+        assertEquals(Optional.of("uber"), MerchantCategoryMemory.key("paid 250 rs for Uber yesterday"));
+        assertEquals(Optional.of("uber"), MerchantCategoryMemory.key("Uber ride"));
+        assertEquals(Optional.of("uber"), MerchantCategoryMemory.key("paid 200 for uber"));
+        assertEquals(Optional.of("subway"), MerchantCategoryMemory.key("lunch at Subway 250"));
+        assertEquals(Optional.of("big bazaar"), MerchantCategoryMemory.key("groceries from Big Bazaar 450"));
+        assertEquals(Optional.of("big basket"), MerchantCategoryMemory.key("Big Basket order 300"));
+        assertTrue(MerchantCategoryMemory.key("paid 250 rs today").isEmpty());
+    }
+
+    @Test
+    void testLearnsFromWritesAndPersists() {
+        memory.learn(1L, "Uber ride", 7L, false);
+        // One expense is not a habit yet
+        assertTrue(memory.lookup(1L, "250 rs uber to office").isEmpty());
+
+        memory.learn(1L, "Uber to office", 7L, false);
+
+        assertEquals(Optional.of(7L), memory.lookup(1L, "250 rs uber to office"));
+        assertTrue(memory.lookup(1L, "ride to the airport 600").isEmpty());
+        assertTrue(memory.lookup(2L, "250 rs uber to office").isEmpty());
+        verify(mappingRepository, times(2)).save(any(MerchantCategoryMapping.class));
+    }
+
+    @Test
+    void testMerchantsSharingAFirstWordStayApart() {
+        memory.learn(1L, "Big Bazaar", 12L, false);
+        memory.learn(1L, "Big Bazaar", 12L, false);
+
+        assertEquals(Optional.of(12L), memory.lookup(1L, "big bazaar 450"));
+        assertTrue(memory.lookup(1L, "big basket 450").isEmpty());
+    }
+
+    @Test
+    void testManualCorrectionOverridesHabit() {
+        memory.learn(1L, "Starbucks", 12L, false);
+        memory.learn(1L, "Starbucks", 12L, false);
+        memory.learn(1L, "Starbucks", 12L, false);
+
+        memory.learn(1L, "Starbucks", 7L, false);
+        assertEquals(Optional.of(12L), memory.lookup(1L, "starbucks 300"));
+
+        memory.learn(1L, "Starbucks", 3L, true);
+        assertEquals(Optional.of(3L), memory.lookup(1L, "starbucks 300"));
+    }
+
+    @Test
+    void testLoadsFromTableAndIgnoresDeletedCategories() {
+        when(mappingRepository.findByUserId(5L)).thenReturn(List.of(
+                MerchantCategoryMapping.builder().userId(5L).merchantKey("swiggy").categoryId(3L).hits(4).build(),
+                MerchantCategoryMapping.builder().userId(5L).merchantKey("ola").categoryId(99L).hits(2).build()));
+
+        assertEquals(Optional.of(3L), memory.lookup(5L, "swiggy 400"));
+        assertTrue(memory.lookup(5L, "ola 150").isEmpty());
+        verify(mappingRepository, times(1)).findByUserId(5L);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.service.NaiveBayesCategoryModel.Prediction;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NaiveBayesCategoryModelTest {
+
+    private static final long FOOD = 3L;
+    private static final long TRANSPORT = 7L;
+
+    private NaiveBayesCategoryModel train() {
+        NaiveBayesCategoryModel.Trainer trainer = new NaiveBayesCategoryModel.Trainer(12, 1.0);
+        trainer.add("Lunch at McDonald's", FOOD);
+        trainer.add("Dinner with friends", FOOD);
+        trainer.add("Swiggy order pizza", FOOD);
+        trainer.add("Coffee at Starbucks", FOOD);
+        trainer.add("Uber to office", TRANSPORT);
+        trainer.add("Ola cab airport", TRANSPORT);
+        trainer.add("Metro card recharge", TRANSPORT);
+        trainer.add("Petrol 40 litres", TRANSPORT);
+        return trainer.build();
+    }
+
+    @Test
+    void testPredictsCategoryOfSeenWords() {
+        NaiveBayesCategoryModel model = train();
+
+        Prediction food = model.predict("mcdonalds lunch 250");
+        assertEquals(FOOD, food.categoryId());
+        assertTrue(food.confidence() > 0.5);
+
+        assertEquals(TRANSPORT, model.predict("uber cab yesterday 180").categoryId());
+        assertNull(model.predict("250"));
+    }
+
+    @Test
+    void testSerializationRoundTrip() throws IOException {
+        NaiveBayesCategoryModel model = train();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        model.writeTo(new DataOutputStream(bytes));
+
+        NaiveBayesCategoryModel copy = NaiveBayesCategoryModel.readFrom(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(8, copy.trainedOn());
+        assertEquals(2, copy.categoryCount());
+        assertEquals(model.predict("metro recharge"), copy.predict("metro recharge"));
+    }
+
+    @Test
+    void testRejectsForeignFiles() {
+        assertThrows(IOException.class, () -> NaiveBayesCategoryModel.readFrom(
+                new DataInputStream(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}))));
+    }
+}
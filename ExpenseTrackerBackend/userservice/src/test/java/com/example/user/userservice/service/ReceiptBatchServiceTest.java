@@ -0,0 +1,223 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.dto.ExpenseRequest;
+import com.example.user.userservice.dto.ExpenseResponse;
+import com.example.user.userservice.dto.ReceiptBatchItemResult;
+import com.example.user.userservice.dto.ReceiptBatchResponse;
+import com.example.user.userservice.entity.Expense;
+import com.example.user.userservice.entity.Receipt;
+import com.example.user.userservice.exception.ExpenseException;
+import com.example.user.userservice.repository.ExpenseRepository;
+import com.example.user.userservice.repository.ReceiptRepository;
+import com.example.user.userservice.service.FileStorageService.StagedUpload;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class ReceiptBatchServiceTest {
+
+    private final FileStorageService fileStorageService = mock(FileStorageService.class);
+    private final ReceiptProcessingService receiptProcessingService = mock(ReceiptProcessingService.class);
+    private final ExpenseService expenseService = mock(ExpenseService.class);
+    private final ExpenseRepository expenseRepository = mock(ExpenseRepository.class);
+    private final ReceiptRepository receiptRepository = mock(ReceiptRepository.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Set<String> extractThreads = ConcurrentHashMap.newKeySet();
+    private ReceiptBatchService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ReceiptBatchService(fileStorageService, receiptProcessingService, expenseService,
+                expenseRepository, receiptRepository, objectMapper, mock(PlatformTransactionManager.class), 4);
+        ReflectionTestUtils.setField(service, "maxFiles", 10);
+        ReflectionTestUtils.setField(service, "timeoutMs", 5_000L);
+
+        when(fileStorageService.storeFile(any(), eq("receipts/7")))
+                .thenAnswer(call -> "receipts/7/" + call.getArgument(0, MultipartFile.class).getOriginalFilename());
+        when(fileStorageService.stageUpload(any())).thenAnswer(call -> {
+            try (InputStream in = call.getArgument(0)) {
+                return new StagedUpload(new String(in.readAllBytes(), StandardCharsets.UTF_8), "sha", 1);
+            }
+        });
+        when(fileStorageService.storeStagedUpload(any(), anyString(), isNull(), eq("receipts/7")))
+                .thenAnswer(call -> "receipts/7/" + call.getArgument(1, String.class));
+        when(fileStorageService.findSimilarImages(anyString(), eq("receipts/7"))).thenReturn(List.of());
+        when(expenseRepository.findByUserIdAndReceiptPathIn(eq(7L), any())).thenReturn(List.of());
+        when(receiptRepository.saveAll(anyList())).thenAnswer(call -> {
+            List<Receipt> receipts = call.getArgument(0);
+            for (int i = 0; i < receipts.size(); i++) {
+                receipts.get(i).setId(100L + i);
+            }
+            return receipts;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void testExtractsInParallelAndCreatesExpensesTogether() throws Exception {
+        // Every extraction waits for all four, so this only finishes when they run side by side
+        CountDownLatch allExtracting = new CountDownLatch(4);
+        suggestCategory(receipt -> {
+            allExtracting.countDown();
+            try {
+                assertTrue(allExtracting.await(2, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return 3L;
+        });
+        when(expenseService.createExpensesWithReceipts(eq(7L), anyList(), anyList())).thenReturn(List.of(
+                ExpenseResponse.builder().id(50L).build(), ExpenseResponse.builder().id(51L).build()));
+
+        ReceiptBatchResponse response = service.upload(7L, "month-end", List.of(
+                        image("lunch.jpg"), image("taxi.jpg"),
+                        zip("scans.zip", "2025-08/hotel.jpg", "__MACOSX/._hotel.jpg", "2025-08/parking.jpg")),
+                Map.of("lunch.jpg", expense("Lunch", 12.5, null),
+                        "taxi.jpg", expense("Taxi", null, null),
+                        "hotel.jpg", expense("Hotel", 240.0, 5L)),
+                false);
+
+        assertEquals(ReceiptBatchService.COMPLETED, response.getStatus());
+        assertEquals(List.of("lunch.jpg", "taxi.jpg", "hotel.jpg", "parking.jpg"),
+                response.getItems().stream().map(ReceiptBatchItemResult::getFileName).toList());
+        assertEquals(List.of("CREATED", "FAILED", "CREATED", "RECEIPT_ONLY"),
+                response.getItems().stream().map(ReceiptBatchItemResult::getStatus).toList());
+        assertEquals(2, response.getCreated());
+        assertEquals(1, response.getReceiptsOnly());
+        assertEquals(1, response.getFailed());
+        assertTrue(extractThreads.stream().allMatch(name -> name.startsWith("receipt-batch-")), extractThreads.toString());
+
+        ArgumentCaptor<List<ExpenseRequest>> requests = ArgumentCaptor.captor();
+        verify(expenseService).createExpensesWithReceipts(eq(7L), requests.capture(),
+                eq(List.of("receipts/7/lunch.jpg", "receipts/7/hotel.jpg")));
+        assertEquals(List.of(3L, 5L), requests.getValue().stream().map(ExpenseRequest::getCategoryId).toList());
+        assertEquals("receipt", requests.getValue().get(0).getSource());
+
+        ArgumentCaptor<List<Receipt>> receipts = ArgumentCaptor.captor();
+        verify(receiptRepository).saveAll(receipts.capture());
+        assertEquals(List.of(Receipt.LINKED, Receipt.LINKED, Receipt.EXTRACTED),
+                receipts.getValue().stream().map(Receipt::getStatus).toList());
+        assertEquals(51L, receipts.getValue().get(1).getExpenseId());
+        assertEquals("parking.jpg", receipts.getValue().get(2).getFileName());
+
+        // The file of the expense that could not be created is released; ZIP entries came straight from the archive
+        verify(fileStorageService).deleteFile("receipts/7/taxi.jpg");
+        verify(fileStorageService, never()).deleteFile("receipts/7/lunch.jpg");
+        verify(fileStorageService).storeStagedUpload(eq(new StagedUpload("hotel.jpg bytes", "sha", 1)),
+                eq("hotel.jpg"), isNull(), eq("receipts/7"));
+        assertEquals(response.getItems(), service.getBatch(7L, "month-end").getItems());
+    }
+
+    @Test
+    void testDuplicatesAndFailuresStayPerFile() {
+        suggestCategory(receipt -> {
+            if (receipt.getImageUrl().endsWith("blurry.jpg")) {
+                throw new IllegalStateException("Unreadable image");
+            }
+            return 3L;
+        });
+        when(fileStorageService.findSimilarImages("receipts/7/again.jpg", "receipts/7"))
+                .thenReturn(List.of("receipts/7/original.jpg"));
+        when(expenseRepository.findByUserIdAndReceiptPathIn(7L, List.of("receipts/7/again.jpg", "receipts/7/original.jpg")))
+                .thenReturn(List.of(new Expense()));
+        when(expenseService.createExpensesWithReceipts(eq(7L), anyList(), anyList()))
+                .thenReturn(List.of(ExpenseResponse.builder().id(50L).build()));
+
+        ReceiptBatchResponse response = service.upload(7L, null, List.of(image("again.jpg"), image("blurry.jpg"), image("lunch.jpg")),
+                Map.of("again.jpg", expense("Lunch", 12.5, 3L), "lunch.jpg", expense("Lunch", 12.5, 3L)), false);
+
+        assertEquals(List.of("DUPLICATE", "FAILED", "CREATED"),
+                response.getItems().stream().map(ReceiptBatchItemResult::getStatus).toList());
+        assertEquals("Unreadable image", response.getItems().get(1).getError());
+        verify(fileStorageService).deleteFile("receipts/7/again.jpg");
+        verify(fileStorageService).deleteFile("receipts/7/blurry.jpg");
+        verify(expenseService).createExpensesWithReceipts(eq(7L), anyList(), eq(List.of("receipts/7/lunch.jpg")));
+    }
+
+    @Test
+    void testFailedTransactionReleasesEveryFile() {
+        suggestCategory(receipt -> 3L);
+        when(expenseService.createExpensesWithReceipts(eq(7L), anyList(), anyList()))
+                .thenThrow(new IllegalStateException("Connection reset"));
+
+        assertThrows(IllegalStateException.class, () -> service.upload(7L, "batch-1",
+                List.of(image("lunch.jpg"), image("parking.jpg")), Map.of("lunch.jpg", expense("Lunch", 12.5, null)), false));
+
+        verify(fileStorageService).deleteFile("receipts/7/lunch.jpg");
+        verify(fileStorageService).deleteFile("receipts/7/parking.jpg");
+        ReceiptBatchResponse progress = service.getBatch(7L, "batch-1");
+        assertEquals(ReceiptBatchService.FAILED, progress.getStatus());
+        assertEquals(2, progress.getFailed());
+        assertThrows(ExpenseException.class, () -> service.getBatch(8L, "batch-1"));
+        assertThrows(ExpenseException.class, () -> service.upload(7L, "batch-1", List.of(image("a.jpg")), null, false));
+    }
+
+    // Extraction as the real service does it, minus the variants: the client's fields plus a suggested category
+    private void suggestCategory(Function<Receipt, Long> suggestion) {
+        when(receiptProcessingService.extract(any())).thenAnswer(call -> {
+            extractThreads.add(Thread.currentThread().getName());
+            Receipt receipt = call.getArgument(0);
+            ObjectNode data = receipt.getExtractedData() == null ? objectMapper.createObjectNode()
+                    : (ObjectNode) objectMapper.readTree(receipt.getExtractedData());
+            Long categoryId = suggestion.apply(receipt);
+            if (!data.hasNonNull("categoryId")) {
+                data.put("categoryId", categoryId);
+                data.put("categorySource", "MEMORY");
+            }
+            return data.toString();
+        });
+    }
+
+    private static ExpenseRequest expense(String name, Double amount, Long categoryId) {
+        return ExpenseRequest.builder().name(name).amount(amount).categoryId(categoryId).date(LocalDate.of(2025, 8, 1)).build();
+    }
+
+    private static MockMultipartFile image(String name) {
+        return new MockMultipartFile("files", name, "image/jpeg", (name + " bytes").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static MockMultipartFile zip(String name, String... entries) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("2025-08/"));
+            for (String entry : entries) {
+                zip.putNextEntry(new ZipEntry(entry));
+                zip.write((entry.substring(entry.lastIndexOf('/') + 1) + " bytes").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return new MockMultipartFile("files", name, "application/zip", out.toByteArray());
+    }
+}
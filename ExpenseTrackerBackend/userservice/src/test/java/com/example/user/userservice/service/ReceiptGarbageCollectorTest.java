@@ -0,0 +1,139 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.repository.ExpenseRepository;
+import com.example.user.userservice.repository.ReceiptRepository;
+import com.example.user.userservice.repository.StoredFileRepository;
+import com.example.user.userservice.serviceimpl.LocalFileStorageBackend;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ReceiptGarbageCollectorTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private final ExpenseRepository expenseRepository = mock(ExpenseRepository.class);
+    private final ReceiptRepository receiptRepository = mock(ReceiptRepository.class);
+    private final StoredFileRepository storedFileRepository = mock(StoredFileRepository.class);
+    private ReceiptGarbageCollector collector;
+
+    @BeforeEach
+    void setUp() {
+        collector = new ReceiptGarbageCollector(new LocalFileStorageBackend(uploadDir.toString()),
+                expenseRepository, receiptRepository, storedFileRepository);
+        ReflectionTestUtils.setField(collector, "graceHours", 24L);
+        ReflectionTestUtils.setField(collector, "threads", 2);
+        ReflectionTestUtils.setField(collector, "batchSize", 2);
+        ReflectionTestUtils.setField(collector, "maxReclaimsPerSecond", 1000);
+        when(expenseRepository.findReceiptPaths(anyString(), anyString(), any())).thenReturn(List.of());
+        when(receiptRepository.findImagePaths(anyString(), anyString(), any())).thenReturn(List.of());
+    }
+
+    @Test
+    void testDeletesOldUnreferencedFilesAndTheirVariants() throws Exception {
+        Path kept = file("receipts/7/ab/kept.png", 5, true);
+        Path keptThumb = file("receipts/7/ab/kept.thumb.jpg", 3, true);
+        Path orphan = file("receipts/7/cd/orphan.jpg", 100, true);
+        Path orphanPreview = file("receipts/7/cd/orphan.preview.jpg", 20, true);
+        Path fresh = file("receipts/7/cd/fresh.jpg", 7, false);
+        Path scanned = file("receipts/7/ef/scanned.jpg", 9, true);
+        Path otherUser = file("receipts/8/ef/other.jpg", 50, true);
+        when(expenseRepository.findReceiptPaths(eq("receipts/7/%"), eq(""), any()))
+                .thenReturn(List.of("receipts/7/aa/a.jpg", "receipts/7/ab/kept.png"));
+        when(expenseRepository.findReceiptPaths(eq("receipts/7/%"), eq("receipts/7/ab/kept.png"), any()))
+                .thenReturn(List.of());
+        when(receiptRepository.findImagePaths(eq("receipts/7/%"), eq(""), any()))
+                .thenReturn(List.of("receipts/7/ef/scanned.jpg"));
+
+        ReceiptGarbageCollector.Report report = collector.sweep().orElseThrow();
+
+        assertTrue(Files.exists(kept));
+        assertTrue(Files.exists(scanned));
+        assertTrue(Files.exists(keptThumb));
+        assertTrue(Files.exists(fresh));
+        assertFalse(Files.exists(orphan));
+        assertFalse(Files.exists(orphanPreview));
+        assertFalse(Files.exists(otherUser));
+        assertEquals(2, report.directories());
+        assertEquals(7, report.filesScanned());
+        assertEquals(3, report.filesReclaimed());
+        assertEquals(170, report.bytesReclaimed());
+        verify(storedFileRepository).deleteIfUntouchedSince(eq("receipts/7/cd/orphan.jpg"), any());
+    }
+
+    @Test
+    void testSparesFilesAnUploadJustReReferenced() throws Exception {
+        Path orphan = file("receipts/7/cd/orphan.jpg", 100, true);
+        Path thumb = file("receipts/7/cd/orphan.thumb.jpg", 10, true);
+        when(storedFileRepository.existsByPath("receipts/7/cd/orphan.jpg")).thenReturn(true);
+
+        ReceiptGarbageCollector.Report report = collector.sweep().orElseThrow();
+
+        assertTrue(Files.exists(orphan));
+        assertTrue(Files.exists(thumb));
+        assertEquals(0, report.filesReclaimed());
+        assertEquals(1, report.filesSpared());
+    }
+
+    @Test
+    void testQuarantineMovesInsteadOfDeleting() throws Exception {
+        file("receipts/7/cd/orphan.jpg", 100, true);
+        ReflectionTestUtils.setField(collector, "quarantine", true);
+
+        collector.sweep();
+
+        assertFalse(Files.exists(uploadDir.resolve("receipts/7/cd/orphan.jpg")));
+        assertTrue(Files.exists(uploadDir.resolve(".quarantine/receipts/7/cd/orphan.jpg")));
+    }
+
+    @Test
+    void testScheduledSweepDoesNotHoldTheSchedulerThread() throws Exception {
+        Path orphan = file("receipts/7/cd/orphan.jpg", 100, true);
+        file("receipts/7/cd/other.jpg", 100, true);
+        ReflectionTestUtils.setField(collector, "enabled", true);
+        ReflectionTestUtils.setField(collector, "maxReclaimsPerSecond", 1);
+
+        long start = System.nanoTime();
+        collector.scheduledSweep();
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 500);
+        for (int i = 0; i < 50 && Files.exists(orphan); i++) {
+            Thread.sleep(100);
+        }
+        assertFalse(Files.exists(orphan));
+        collector.shutdown();
+    }
+
+    @Test
+    void testBaseMatchesOriginalsAndVariants() {
+        assertEquals("receipts/7/ab/x", ReceiptGarbageCollector.base("receipts/7/ab/x.png"));
+        assertEquals("receipts/7/ab/x", ReceiptGarbageCollector.base("receipts/7/ab/x.thumb.jpg"));
+        assertEquals("receipts/7/ab/x", ReceiptGarbageCollector.base("receipts/7/ab/x.preview.jpg"));
+        assertEquals("receipts/7/ab/x", ReceiptGarbageCollector.base("receipts/7/ab/x"));
+    }
+
+    private Path file(String key, int size, boolean old) throws Exception {
+        Path file = uploadDir.resolve(key);
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[size]);
+        if (old) {
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+        }
+        return file;
+    }
+}
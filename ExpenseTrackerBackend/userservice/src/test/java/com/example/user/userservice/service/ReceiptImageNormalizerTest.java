@@ -0,0 +1,142 @@
+package com.example.user.userservice.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReceiptImageNormalizerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ReceiptImageNormalizer normalizer;
+
+    @BeforeEach
+    void setUp() {
+        normalizer = new ReceiptImageNormalizer(1, 10, 48);
+        ReflectionTestUtils.setField(normalizer, "enabled", true);
+        ReflectionTestUtils.setField(normalizer, "maxDimension", 1000);
+        ReflectionTestUtils.setField(normalizer, "jpegQuality", 0.85f);
+        ReflectionTestUtils.setField(normalizer, "timeoutMs", 10_000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        normalizer.shutdown();
+    }
+
+    @Test
+    void testDownscalesRotatesAndStripsMetadata() throws Exception {
+        // Sideways phone photo: landscape pixels, red marker at the top left, orientation 6
+        BufferedImage photo = new BufferedImage(3000, 1500, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = photo.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, 3000, 1500);
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 300, 300);
+        graphics.dispose();
+        byte[] source = withExifOrientation(jpeg(photo), 6, ByteOrder.LITTLE_ENDIAN);
+
+        Path normalized = normalizer.normalize(new ByteArrayInputStream(source), source.length, tempDir).orElseThrow();
+
+        byte[] stored = Files.readAllBytes(normalized);
+        BufferedImage upright = ImageIO.read(normalized.toFile());
+        assertEquals(500, upright.getWidth());
+        assertEquals(1000, upright.getHeight());
+        // Rotated clockwise: the marker is now at the top right
+        assertTrue(new Color(upright.getRGB(480, 20)).getRed() > 200);
+        assertTrue(new Color(upright.getRGB(480, 20)).getGreen() < 80);
+        assertFalse(new String(stored, StandardCharsets.ISO_8859_1).contains("Exif"));
+        assertTrue(stored.length < source.length);
+        assertEquals(tempDir, normalized.getParent());
+    }
+
+    @Test
+    void testReadsExifOrientationInBothByteOrders() throws Exception {
+        byte[] jpeg = jpeg(new BufferedImage(40, 20, BufferedImage.TYPE_INT_RGB));
+
+        assertEquals(8, ReceiptImageNormalizer.readExifOrientation(
+                new ByteArrayInputStream(withExifOrientation(jpeg, 8, ByteOrder.BIG_ENDIAN)), 1 << 17));
+        assertEquals(3, ReceiptImageNormalizer.readExifOrientation(
+                new ByteArrayInputStream(withExifOrientation(jpeg, 3, ByteOrder.LITTLE_ENDIAN)), 1 << 17));
+        assertEquals(1, ReceiptImageNormalizer.readExifOrientation(new ByteArrayInputStream(jpeg), 1 << 17));
+        assertEquals(1, ReceiptImageNormalizer.readExifOrientation(new ByteArrayInputStream("%PDF-1.7".getBytes()), 1 << 17));
+    }
+
+    @Test
+    void testLeavesSmallUprightImagesAndNonImagesAlone() throws Exception {
+        byte[] small = png(new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB));
+        byte[] text = "not an image".getBytes();
+
+        assertEquals(Optional.empty(), normalizer.normalize(new ByteArrayInputStream(small), small.length, tempDir));
+        assertEquals(Optional.empty(), normalizer.normalize(new ByteArrayInputStream(text), text.length, tempDir));
+        assertTrue(normalizer.appliesTo("JPG"));
+        assertFalse(normalizer.appliesTo("pdf"));
+    }
+
+    @Test
+    void testDecodesWithinThePixelBudget() throws Exception {
+        normalizer.shutdown();
+        normalizer = new ReceiptImageNormalizer(1, 10, 1);
+        ReflectionTestUtils.setField(normalizer, "enabled", true);
+        ReflectionTestUtils.setField(normalizer, "maxDimension", 1000);
+        ReflectionTestUtils.setField(normalizer, "jpegQuality", 0.85f);
+        ReflectionTestUtils.setField(normalizer, "timeoutMs", 10_000L);
+        byte[] source = png(new BufferedImage(4000, 3000, BufferedImage.TYPE_INT_RGB));
+
+        // 12MP source, 1MP budget: decoded at 1/5 rather than 1/4 instead of being refused
+        Path normalized = normalizer.normalize(new ByteArrayInputStream(source), source.length, tempDir).orElseThrow();
+
+        BufferedImage result = ImageIO.read(normalized.toFile());
+        assertEquals(800, result.getWidth());
+        assertEquals(600, result.getHeight());
+    }
+
+    private static byte[] jpeg(BufferedImage image) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", out);
+        return out.toByteArray();
+    }
+
+    private static byte[] png(BufferedImage image) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    // Inserts an APP1 segment holding a one-entry IFD0 right after SOI
+    private static byte[] withExifOrientation(byte[] jpeg, int orientation, ByteOrder order) {
+        ByteBuffer tiff = ByteBuffer.allocate(26).order(order);
+        tiff.put(order == ByteOrder.LITTLE_ENDIAN ? new byte[]{'I', 'I'} : new byte[]{'M', 'M'});
+        tiff.putShort((short) 42).putInt(8);
+        tiff.putShort((short) 1);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        tiff.putInt(0);
+
+        byte[] exif = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+        int length = 2 + exif.length + tiff.capacity();
+        ByteBuffer out = ByteBuffer.allocate(jpeg.length + 2 + length);
+        out.put(jpeg, 0, 2);
+        out.put((byte) 0xFF).put((byte) 0xE1).putShort((short) length);
+        out.put(exif).put(tiff.array());
+        out.put(jpeg, 2, jpeg.length - 2);
+        return out.array();
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.user.userservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReceiptPerceptualHasherTest {
+
+    private final ReceiptPerceptualHasher hasher = new ReceiptPerceptualHasher();
+
+    @Test
+    void testRescaledAndReencodedPhotoHashesClose() throws Exception {
+        BufferedImage original = receipt(1200, 1800, 42);
+        BufferedImage smaller = scaled(original, 500, 750);
+        BufferedImage other = receipt(1200, 1800, 7);
+
+        long originalHash = hasher.hash(new ByteArrayInputStream(encode(original, "png"))).orElseThrow();
+        long smallerHash = hasher.hash(new ByteArrayInputStream(encode(smaller, "jpg"))).orElseThrow();
+        long otherHash = hasher.hash(new ByteArrayInputStream(encode(other, "jpg"))).orElseThrow();
+
+        assertTrue(ReceiptPerceptualHasher.distance(originalHash, smallerHash) <= 4,
+                "distance " + ReceiptPerceptualHasher.distance(originalHash, smallerHash));
+        assertTrue(ReceiptPerceptualHasher.distance(originalHash, otherHash) > 10,
+                "distance " + ReceiptPerceptualHasher.distance(originalHash, otherHash));
+    }
+
+    @Test
+    void testNonImagesHaveNoHash() throws Exception {
+        assertTrue(hasher.hash(new ByteArrayInputStream("%PDF-1.7".getBytes(StandardCharsets.US_ASCII))).isEmpty());
+        assertFalse(hasher.appliesTo("pdf"));
+        assertTrue(hasher.appliesTo("JPG"));
+    }
+
+    @Test
+    void testBandsAndTheirNeighbours() {
+        long hash = 0x0123_4567_89AB_CDEFL;
+        int[] bands = ReceiptPerceptualHasher.bands(hash);
+        assertArrayEquals(new int[]{0x0123, 0x4567, 0x89AB, 0xCDEF}, bands);
+
+        List<Integer> neighbours = ReceiptPerceptualHasher.bandNeighbours(bands[0], 2);
+        assertEquals(1 + 16 + 120, neighbours.size());
+        assertEquals(neighbours.size(), new HashSet<>(neighbours).size());
+        assertTrue(neighbours.stream().allMatch(value -> Integer.bitCount(value ^ bands[0]) <= 2));
+        assertEquals(List.of(bands[0]), ReceiptPerceptualHasher.bandNeighbours(bands[0], 0));
+    }
+
+    // Dark lines of varying length and position on white, like printed receipt text
+    private static BufferedImage receipt(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+        graphics.setColor(Color.DARK_GRAY);
+        for (int y = 40; y < height - 40; y += 30 + random.nextInt(60)) {
+            int x = random.nextInt(width / 2);
+            graphics.fillRect(x, y, 100 + random.nextInt(width - x - 100), 10 + random.nextInt(30));
+        }
+        graphics.dispose();
+        return image;
+    }
+
+    private static BufferedImage scaled(BufferedImage source, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(source, 0, 0, width, height, null);
+        graphics.dispose();
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+}
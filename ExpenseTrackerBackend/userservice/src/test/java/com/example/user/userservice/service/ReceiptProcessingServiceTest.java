@@ -0,0 +1,107 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.entity.Receipt;
+import com.example.user.userservice.repository.ReceiptRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ReceiptProcessingServiceTest {
+
+    private final ReceiptRepository receiptRepository = mock(ReceiptRepository.class);
+    private final FileStorageService fileStorageService = mock(FileStorageService.class);
+    private final ReceiptThumbnailService receiptThumbnailService = mock(ReceiptThumbnailService.class);
+    private final MerchantCategoryMemory merchantCategoryMemory = mock(MerchantCategoryMemory.class);
+    private final ExpenseCategoryClassifier expenseCategoryClassifier = mock(ExpenseCategoryClassifier.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ReceiptProcessingService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ReceiptProcessingService(receiptRepository, fileStorageService, receiptThumbnailService,
+                merchantCategoryMemory, expenseCategoryClassifier, objectMapper,
+                mock(PlatformTransactionManager.class), 2);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "maxAttempts", 3);
+        ReflectionTestUtils.setField(service, "retryBaseDelayMs", 30_000L);
+        when(fileStorageService.fileExists(anyString())).thenReturn(true);
+        when(expenseCategoryClassifier.predict(anyString())).thenReturn(Optional.empty());
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void testClaimsOnlyWhatIdleWorkersCanTakeAndExtracts() throws Exception {
+        when(receiptRepository.lockDueIds(any(), eq(2))).thenReturn(List.of(11L)).thenReturn(List.of());
+        when(receiptRepository.findById(11L)).thenReturn(Optional.of(receipt(11L, 1,
+                "{\"merchant\":\"Starbucks\",\"amount\":250,\"confidence\":60}")));
+        when(merchantCategoryMemory.lookup(7L, "Starbucks")).thenReturn(Optional.of(3L));
+
+        assertEquals(1, service.poll());
+
+        ArgumentCaptor<String> extracted = ArgumentCaptor.forClass(String.class);
+        verify(receiptRepository).markProcessing(eq(List.of(11L)), any());
+        verify(receiptRepository, timeout(2000)).markExtracted(eq(11L), any(), extracted.capture());
+        verify(receiptThumbnailService).generate("receipts/7/ab/receipt.jpg");
+        JsonNode data = objectMapper.readTree(extracted.getValue());
+        assertEquals(3, data.get("categoryId").asLong());
+        assertEquals("MEMORY", data.get("categorySource").asText());
+        assertEquals(250, data.get("amount").asInt());
+    }
+
+    @Test
+    void testFailedAttemptIsRetriedLaterThenFailed() {
+        when(fileStorageService.fileExists(anyString())).thenReturn(false);
+        LocalDateTime claimedAt = LocalDateTime.now();
+
+        when(receiptRepository.findById(11L)).thenReturn(Optional.of(receipt(11L, 1, null)));
+        service.process(11L, claimedAt);
+        ArgumentCaptor<LocalDateTime> nextAttempt = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(receiptRepository).markAttemptFailed(eq(11L), eq(claimedAt), eq(Receipt.PENDING),
+                contains("missing"), nextAttempt.capture());
+        assertTrue(nextAttempt.getValue().isAfter(claimedAt.plusSeconds(25)));
+
+        when(receiptRepository.findById(12L)).thenReturn(Optional.of(receipt(12L, 3, null)));
+        service.process(12L, claimedAt);
+        verify(receiptRepository).markAttemptFailed(eq(12L), eq(claimedAt), eq(Receipt.FAILED), anyString(), any());
+        verify(receiptRepository, never()).markExtracted(any(), any(), any());
+    }
+
+    @Test
+    void testRetryDelayDoubles() {
+        assertEquals(Duration.ofSeconds(30), ReceiptProcessingService.retryDelay(30_000, 1));
+        assertEquals(Duration.ofSeconds(60), ReceiptProcessingService.retryDelay(30_000, 2));
+        assertEquals(Duration.ofSeconds(240), ReceiptProcessingService.retryDelay(30_000, 4));
+    }
+
+    private static Receipt receipt(Long id, int attempts, String extractedData) {
+        return Receipt.builder()
+                .id(id)
+                .userId(7L)
+                .imageUrl("receipts/7/ab/receipt.jpg")
+                .status(Receipt.PROCESSING)
+                .attempts(attempts)
+                .extractedData(extractedData)
+                .build();
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.service.FileStorageService.Variant;
+import com.example.user.userservice.serviceimpl.LocalFileStorageBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReceiptThumbnailServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private ReceiptThumbnailService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ReceiptThumbnailService(new LocalFileStorageBackend(uploadDir.toString()), 1, 10);
+        ReflectionTestUtils.setField(service, "thumbSize", 240);
+        ReflectionTestUtils.setField(service, "previewSize", 1024);
+        ReflectionTestUtils.setField(service, "jpegQuality", 0.8f);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void testVariantPaths() {
+        assertEquals("receipts/7/ab/abc.thumb.jpg", ReceiptThumbnailService.variantPath("receipts/7/ab/abc.png", Variant.THUMBNAIL));
+        assertEquals("receipts/7/ab/abc.preview.jpg", ReceiptThumbnailService.variantPath("receipts/7/ab/abc.jpg", Variant.PREVIEW));
+        assertEquals("receipts/7/ab/abc.jpg", ReceiptThumbnailService.variantPath("receipts/7/ab/abc.jpg", Variant.ORIGINAL));
+        assertFalse(ReceiptThumbnailService.supports("receipts/7/scan.pdf"));
+    }
+
+    @Test
+    void testGeneratesBoundedVariants() throws Exception {
+        Path original = Files.createDirectories(uploadDir.resolve("receipts/7")).resolve("receipt.png");
+        ImageIO.write(new BufferedImage(3000, 4000, BufferedImage.TYPE_INT_ARGB), "png", original.toFile());
+
+        service.generate("receipts/7/receipt.png");
+
+        BufferedImage thumb = ImageIO.read(uploadDir.resolve("receipts/7/receipt.thumb.jpg").toFile());
+        BufferedImage preview = ImageIO.read(uploadDir.resolve("receipts/7/receipt.preview.jpg").toFile());
+        assertEquals(240, thumb.getHeight());
+        assertEquals(180, thumb.getWidth());
+        assertEquals(1024, preview.getHeight());
+        assertEquals(768, preview.getWidth());
+
+        service.deleteVariants("receipts/7/receipt.png");
+        assertFalse(Files.exists(uploadDir.resolve("receipts/7/receipt.thumb.jpg")));
+        assertTrue(Files.exists(original));
+    }
+
+    @Test
+    void testUnreadableFilesAreSkipped() throws Exception {
+        Path original = Files.createDirectories(uploadDir.resolve("receipts/7")).resolve("broken.jpg");
+        Files.writeString(original, "not an image");
+
+        service.generate("receipts/7/broken.jpg");
+
+        assertFalse(Files.exists(uploadDir.resolve("receipts/7/broken.thumb.jpg")));
+    }
+}
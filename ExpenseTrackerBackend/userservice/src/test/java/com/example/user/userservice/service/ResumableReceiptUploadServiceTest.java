@@ -0,0 +1,163 @@
+package com.example.user.userservice.service;
+
+import com.example.user.userservice.dto.ReceiptUploadInitRequest;
+import com.example.user.userservice.dto.ReceiptUploadStatusResponse;
+import com.example.user.userservice.exception.ExpenseException;
+import com.example.user.userservice.service.FileStorageService.StagedUpload;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ResumableReceiptUploadServiceTest {
+
+    private static final long USER_ID = 7L;
+    private static final long EXPENSE_ID = 42L;
+
+    @TempDir
+    Path uploadDir;
+
+    private final ExpenseService expenseService = mock(ExpenseService.class);
+    private final FileStorageService fileStorageService = mock(FileStorageService.class);
+    private final ResumableReceiptUploadService service = new ResumableReceiptUploadService(expenseService, fileStorageService);
+    private byte[] staged;
+    private byte[] attached;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "uploadDir", uploadDir.toString());
+        ReflectionTestUtils.setField(service, "maxFileSize", 10_485_760L);
+        ReflectionTestUtils.setField(service, "chunkSize", 1000);
+        ReflectionTestUtils.setField(service, "sessionTtlMinutes", 60L);
+        ReflectionTestUtils.setField(service, "maxSessionsPerUser", 2);
+
+        when(fileStorageService.stageFile(any())).thenAnswer(invocation -> {
+            staged = Files.readAllBytes(invocation.<Path>getArgument(0));
+            return new StagedUpload(".tmp/upload-1.part", sha256(staged), staged.length);
+        });
+        when(expenseService.attachStagedReceipt(eq(USER_ID), eq(EXPENSE_ID), any(), anyString(), any())).thenAnswer(invocation -> {
+            attached = staged;
+            return "receipts/7/ab/abc.pdf";
+        });
+    }
+
+    @Test
+    void testChunksInAnyOrderAssembleTheFile() throws Exception {
+        byte[] file = randomBytes(2500);
+        ReceiptUploadStatusResponse upload = service.initiate(USER_ID, EXPENSE_ID, request(file));
+        assertEquals(3, upload.getChunkCount());
+        assertEquals(List.of(0, 1, 2), upload.getMissingChunks());
+
+        put(upload, 2, file);
+        ReceiptUploadStatusResponse status = put(upload, 0, file);
+        assertEquals(List.of(1), status.getMissingChunks());
+        assertEquals(1500L, status.getReceivedBytes());
+
+        ExpenseException incomplete = assertThrows(ExpenseException.class,
+                () -> service.complete(USER_ID, EXPENSE_ID, upload.getUploadId()));
+        assertTrue(incomplete.getMessage().contains("[1]"));
+
+        put(upload, 1, file);
+        ReceiptUploadStatusResponse completed = service.complete(USER_ID, EXPENSE_ID, upload.getUploadId());
+
+        assertEquals("receipts/7/ab/abc.pdf", completed.getReceiptPath());
+        assertArrayEquals(file, attached);
+        assertThrows(ExpenseException.class, () -> service.status(USER_ID, EXPENSE_ID, upload.getUploadId()));
+    }
+
+    @Test
+    void testCorruptChunkIsNotCounted() throws Exception {
+        byte[] file = randomBytes(1500);
+        ReceiptUploadStatusResponse upload = service.initiate(USER_ID, EXPENSE_ID, request(file));
+
+        byte[] chunk = Arrays.copyOfRange(file, 0, 1000);
+        assertThrows(ExpenseException.class, () -> service.writeChunk(USER_ID, EXPENSE_ID, upload.getUploadId(), 0,
+                sha256(new byte[1000]), new ByteArrayInputStream(chunk)));
+        assertThrows(ExpenseException.class, () -> service.writeChunk(USER_ID, EXPENSE_ID, upload.getUploadId(), 1,
+                sha256(chunk), new ByteArrayInputStream(chunk)));
+
+        assertEquals(List.of(0, 1), service.status(USER_ID, EXPENSE_ID, upload.getUploadId()).getMissingChunks());
+    }
+
+    @Test
+    void testWholeFileChecksumIsVerified() throws Exception {
+        byte[] file = randomBytes(800);
+        ReceiptUploadInitRequest request = request(file);
+        request.setSha256(sha256(new byte[800]));
+        ReceiptUploadStatusResponse upload = service.initiate(USER_ID, EXPENSE_ID, request);
+        put(upload, 0, file);
+
+        assertThrows(ExpenseException.class, () -> service.complete(USER_ID, EXPENSE_ID, upload.getUploadId()));
+        verify(expenseService, never()).attachStagedReceipt(any(), any(), any(), any(), any());
+        verify(fileStorageService).discardStagedUpload(any());
+    }
+
+    @Test
+    void testSessionsAreScopedToTheirOwner() throws Exception {
+        ReceiptUploadStatusResponse upload = service.initiate(USER_ID, EXPENSE_ID, request(randomBytes(10)));
+
+        assertThrows(ExpenseException.class, () -> service.status(8L, EXPENSE_ID, upload.getUploadId()));
+        assertThrows(ExpenseException.class, () -> service.abort(USER_ID, 43L, upload.getUploadId()));
+    }
+
+    @Test
+    void testLimitsOnSizeAndOpenSessions() throws Exception {
+        ReceiptUploadInitRequest tooLarge = request(new byte[1]);
+        tooLarge.setTotalSize(20_000_000L);
+        assertThrows(ExpenseException.class, () -> service.initiate(USER_ID, EXPENSE_ID, tooLarge));
+
+        service.initiate(USER_ID, EXPENSE_ID, request(randomBytes(10)));
+        service.initiate(USER_ID, EXPENSE_ID, request(randomBytes(10)));
+        assertThrows(ExpenseException.class, () -> service.initiate(USER_ID, EXPENSE_ID, request(randomBytes(10))));
+    }
+
+    @Test
+    void testAbandonedSessionsAreRemoved() throws Exception {
+        ReceiptUploadStatusResponse upload = service.initiate(USER_ID, EXPENSE_ID, request(randomBytes(10)));
+        Path orphan = uploadDir.resolve(".tmp/resumable/left-by-restart.part");
+        Files.writeString(orphan, "x");
+
+        ReflectionTestUtils.setField(service, "sessionTtlMinutes", -1L);
+        service.removeExpiredSessions();
+
+        assertThrows(ExpenseException.class, () -> service.status(USER_ID, EXPENSE_ID, upload.getUploadId()));
+        try (var parts = Files.list(uploadDir.resolve(".tmp/resumable"))) {
+            assertEquals(0, parts.count());
+        }
+    }
+
+    private ReceiptUploadStatusResponse put(ReceiptUploadStatusResponse upload, int index, byte[] file) throws Exception {
+        int from = index * upload.getChunkSize();
+        byte[] chunk = Arrays.copyOfRange(file, from, Math.min(file.length, from + upload.getChunkSize()));
+        return service.writeChunk(USER_ID, EXPENSE_ID, upload.getUploadId(), index, sha256(chunk), new ByteArrayInputStream(chunk));
+    }
+
+    private static ReceiptUploadInitRequest request(byte[] file) {
+        return ReceiptUploadInitRequest.builder().fileName("receipt.pdf").totalSize((long) file.length).build();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+}
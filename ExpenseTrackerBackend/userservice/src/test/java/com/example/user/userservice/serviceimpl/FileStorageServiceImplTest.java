@@ -0,0 +1,198 @@
+package com.example.user.userservice.serviceimpl;
+
+import com.example.user.userservice.entity.StoredFile;
+import com.example.user.userservice.exception.FileStorageException;
+import com.example.user.userservice.repository.StoredFileRepository;
+import com.example.user.userservice.repository.StoredFileRepository.PerceptualHashRow;
+import com.example.user.userservice.security.ReceiptUrlSigner;
+import com.example.user.userservice.service.FileStorageService.StagedUpload;
+import com.example.user.userservice.service.FileStorageService.Variant;
+import com.example.user.userservice.service.ReceiptImageNormalizer;
+import com.example.user.userservice.service.ReceiptPerceptualHasher;
+import com.example.user.userservice.service.ReceiptThumbnailService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class FileStorageServiceImplTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private final StoredFileRepository storedFileRepository = mock(StoredFileRepository.class);
+    private final ReceiptThumbnailService receiptThumbnailService = mock(ReceiptThumbnailService.class);
+    private FileStorageServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        service = new FileStorageServiceImpl(storedFileRepository, receiptThumbnailService,
+                new LocalFileStorageBackend(uploadDir.toString()), mock(ReceiptImageNormalizer.class),
+                new ReceiptPerceptualHasher(), new ReceiptUrlSigner("test-signing-key", 3600));
+        ReflectionTestUtils.setField(service, "maxFileSize", 1024L);
+        ReflectionTestUtils.setField(service, "allowedExtensions", "jpg,png");
+        ReflectionTestUtils.setField(service, "duplicateMaxDistance", 10);
+        ReflectionTestUtils.setField(service, "contentAddressed", true);
+    }
+
+    @Test
+    void testIdenticalUploadsShareOneFile() throws Exception {
+        String first = service.storeFile(receipt("a.jpg", "same bytes"), "receipts/7");
+        String second = service.storeFile(receipt("b.jpg", "same bytes"), "receipts/7");
+
+        assertEquals(first, second);
+        assertTrue(first.matches("receipts/7/[0-9a-f]{2}/[0-9a-f]{64}\\.jpg"), first);
+        assertEquals("same bytes", Files.readString(uploadDir.resolve(first)));
+        verify(storedFileRepository, times(2)).addReference(eq(first), anyString(), eq(10L));
+        try (var temp = Files.list(uploadDir.resolve(".tmp"))) {
+            assertEquals(0, temp.count());
+        }
+    }
+
+    @Test
+    void testReferenceIsCountedOnceTheFileIsInPlace() {
+        when(storedFileRepository.addReference(anyString(), anyString(), anyLong())).thenAnswer(call -> {
+            assertTrue(Files.exists(uploadDir.resolve(call.getArgument(0, String.class))));
+            return 1;
+        });
+
+        service.storeFile(receipt("a.jpg", "receipt"), "receipts/7");
+
+        verify(storedFileRepository).addReference(anyString(), anyString(), eq(7L));
+    }
+
+    @Test
+    void testFileIsDeletedWithItsLastReference() throws Exception {
+        String path = service.storeFile(receipt("a.jpg", "receipt"), "receipts/7");
+
+        when(storedFileRepository.releaseReference(path)).thenReturn(1);
+        when(storedFileRepository.deleteIfUnreferenced(path)).thenReturn(0);
+        service.deleteFile(path);
+        assertTrue(Files.exists(uploadDir.resolve(path)));
+
+        when(storedFileRepository.deleteIfUnreferenced(path)).thenReturn(1);
+        when(storedFileRepository.existsByPath(path)).thenReturn(false);
+        service.deleteFile(path);
+        assertFalse(Files.exists(uploadDir.resolve(path)));
+    }
+
+    @Test
+    void testUntrackedFilesAreDeletedDirectly() throws Exception {
+        Path legacy = Files.createDirectories(uploadDir.resolve("receipts/7")).resolve("20250101_120000_abcd1234.jpg");
+        Files.writeString(legacy, "old upload");
+
+        service.deleteFile("receipts/7/20250101_120000_abcd1234.jpg");
+
+        assertFalse(Files.exists(legacy));
+    }
+
+    @Test
+    void testVariantUrlFallsBackToOriginalUntilGenerated() throws Exception {
+        String path = service.storeFile(receipt("a.jpg", "receipt"), "receipts/7");
+        verify(receiptThumbnailService).generateAsync(path);
+
+        assertEquals("/api/user/files/" + path, service.getFileUrl(path, Variant.THUMBNAIL));
+
+        String thumbPath = ReceiptThumbnailService.variantPath(path, Variant.THUMBNAIL);
+        Files.writeString(uploadDir.resolve(thumbPath), "thumb");
+        assertEquals("/api/user/files/" + thumbPath, service.getFileUrl(path, Variant.THUMBNAIL));
+    }
+
+    @Test
+    void testSignedUrlsWhenEnabled() {
+        ReflectionTestUtils.setField(service, "signedUrls", true);
+
+        String url = service.getFileUrl("receipts/7/ab/receipt.jpg");
+
+        assertTrue(url.matches("/api/user/files/signed/receipts/7/ab/receipt\\.jpg\\?expires=\\d+&signature=[A-Za-z0-9_-]{43}"), url);
+        assertEquals(url, service.getFileUrl("receipts/7/ab/receipt.jpg"));
+    }
+
+    @Test
+    void testStagedUploadIsMovedIntoPlace() throws Exception {
+        StagedUpload staged = service.stageUpload(new ByteArrayInputStream("same bytes".getBytes()));
+        assertTrue(Files.exists(uploadDir.resolve(staged.key())));
+
+        String path = service.storeStagedUpload(staged, "scan.jpg", "image/jpeg", "receipts/7");
+
+        assertEquals(service.storeFile(receipt("a.jpg", "same bytes"), "receipts/7"), path);
+        assertFalse(Files.exists(uploadDir.resolve(staged.key())));
+        assertEquals("same bytes", Files.readString(uploadDir.resolve(path)));
+    }
+
+    @Test
+    void testStagingStopsAtTheSizeLimit() {
+        assertThrows(FileStorageException.class,
+                () -> service.stageUpload(new ByteArrayInputStream(new byte[2048])));
+        try (var temp = Files.list(uploadDir.resolve(".tmp"))) {
+            assertEquals(0, temp.count());
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    void testRejectsOversizedUploads() {
+        assertThrows(FileStorageException.class,
+                () -> service.storeFile(receipt("big.jpg", "x".repeat(2048)), "receipts/7"));
+        verify(storedFileRepository, never()).addReference(anyString(), anyString(), anyLong());
+    }
+
+    @Test
+    void testStoredImagesAreHashedAndNearDuplicatesFound() throws Exception {
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, 0xFFFFFF);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        String path = service.storeFile(new MockMultipartFile("file", "r.png", "image/png", png.toByteArray()), "receipts/7");
+        verify(storedFileRepository).setPerceptualHash(eq(path), anyLong(), anyInt(), anyInt(), anyInt(), anyInt());
+
+        long hash = 0x0F0F_0F0F_0F0F_0F0FL;
+        // Distance 10 spread as evenly as possible (3, 3, 2, 2 bits per band), the hardest case for the band lookup
+        long near = hash ^ 0x0007_0007_0003_0003L;
+        when(storedFileRepository.findByPath(path)).thenReturn(Optional.of(StoredFile.builder().perceptualHash(hash).build()));
+        List<PerceptualHashRow> candidates = List.of(
+                new HashRow("receipts/7/aa/far.jpg", ~hash), new HashRow("receipts/7/bb/near.jpg", near));
+        when(storedFileRepository.findHashCandidates(eq("receipts/7/%"), eq(path), any(), any(), any(), any()))
+                .thenReturn(candidates);
+
+        assertEquals(List.of("receipts/7/bb/near.jpg"), service.findSimilarImages(path, "receipts/7"));
+
+        // The near hash is within the looked-up neighbours on at least one band, so the query would return it
+        ArgumentCaptor<List<Integer>> band0 = ArgumentCaptor.captor();
+        ArgumentCaptor<List<Integer>> band1 = ArgumentCaptor.captor();
+        ArgumentCaptor<List<Integer>> band2 = ArgumentCaptor.captor();
+        ArgumentCaptor<List<Integer>> band3 = ArgumentCaptor.captor();
+        verify(storedFileRepository).findHashCandidates(eq("receipts/7/%"), eq(path),
+                band0.capture(), band1.capture(), band2.capture(), band3.capture());
+        int[] nearBands = ReceiptPerceptualHasher.bands(near);
+        assertTrue(band0.getValue().contains(nearBands[0]) || band1.getValue().contains(nearBands[1])
+                || band2.getValue().contains(nearBands[2]) || band3.getValue().contains(nearBands[3]));
+    }
+
+    private record HashRow(String getPath, Long getPerceptualHash) implements PerceptualHashRow {
+    }
+
+    private static MockMultipartFile receipt(String name, String content) {
+        return new MockMultipartFile("file", name, "image/jpeg", content.getBytes());
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.user.userservice.serviceimpl;
+
+import com.example.user.userservice.dto.ExpenseRequest;
+import com.example.user.userservice.entity.Category;
+import com.example.user.userservice.repository.CategoryRepository;
+import com.example.user.userservice.service.AiCallLedger;
+import com.example.user.userservice.service.AiProviderRouter;
+import com.example.user.userservice.service.CategoryCache;
+import com.example.user.userservice.service.ExpenseCategoryClassifier;
+import com.example.user.userservice.service.ExpensePromptBuilder;
+import com.example.user.userservice.service.GeminiResponseParser;
+import com.example.user.userservice.service.MerchantCategoryMemory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class GeminiAIServiceImplTest {
+
+    private final AiProviderRouter router = mock(AiProviderRouter.class);
+    private final CategoryRepository categoryRepository = mock(CategoryRepository.class);
+    private final MerchantCategoryMemory memory = mock(MerchantCategoryMemory.class);
+    private final ExpenseCategoryClassifier classifier = mock(ExpenseCategoryClassifier.class);
+    private GeminiAIServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        when(categoryRepository.findAllByOrderByIdAsc()).thenReturn(List.of(
+                Category.builder().id(1L).name("Food & Dining").build(),
+                Category.builder().id(2L).name("Transportation").build(),
+                Category.builder().id(12L).name("Others").build()));
+        CategoryCache categoryCache = new CategoryCache(categoryRepository);
+        when(memory.lookup(anyLong(), anyString())).thenReturn(Optional.empty());
+        when(classifier.predict(anyString())).thenReturn(Optional.empty());
+        service = new GeminiAIServiceImpl(router, new ExpensePromptBuilder(categoryCache, 400), categoryCache,
+                new GeminiResponseParser(), memory, classifier, mock(AiCallLedger.class));
+    }
+
+    @Test
+    void testRememberedMerchantSkipsTheModel() {
+        when(memory.lookup(1L, "Uber to office")).thenReturn(Optional.of(2L));
+
+        List<ExpenseRequest> expenses = service.parseVoiceToExpenses(1L, "uber to office 180 yesterday");
+
+        assertEquals(1, expenses.size());
+        assertEquals(180.0, expenses.get(0).getAmount());
+        assertEquals(2L, expenses.get(0).getCategoryId());
+        assertEquals(LocalDate.now().minusDays(1), expenses.get(0).getDate());
+        assertEquals("MEMORY", expenses.get(0).getSource());
+        verifyNoInteractions(router);
+    }
+
+    @Test
+    void testMultipleAmountsGoToTheModel() {
+        when(router.complete(anyString(), isNull(), anyString(), any())).thenReturn(List.of());
+
+        service.parseVoiceToExpenses(1L, "lunch 250 and cab 180");
+
+        verify(router).complete(anyString(), isNull(), anyString(), any());
+    }
+}
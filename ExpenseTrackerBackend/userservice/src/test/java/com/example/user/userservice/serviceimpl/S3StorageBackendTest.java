@@ -0,0 +1,147 @@
+package com.example.user.userservice.serviceimpl;
+
+import com.example.user.userservice.exception.FileStorageException;
+import com.example.user.userservice.repository.StoredFileRepository;
+import com.example.user.userservice.security.ReceiptUrlSigner;
+import com.example.user.userservice.service.FileStorageService.StagedUpload;
+import com.example.user.userservice.service.ReceiptImageNormalizer;
+import com.example.user.userservice.service.ReceiptPerceptualHasher;
+import com.example.user.userservice.service.ReceiptThumbnailService;
+import com.example.user.userservice.simulator.FakeS3Server;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class S3StorageBackendTest {
+
+    private static final String BUCKET = "receipts";
+
+    @TempDir
+    Path scratch;
+
+    private FakeS3Server s3;
+    private S3StorageBackend backend;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        s3 = new FakeS3Server(BUCKET);
+        backend = new S3StorageBackend(BUCKET, "us-east-1", s3.endpoint(), true,
+                "test", "test", "", S3StorageBackend.MIN_PART_SIZE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        backend.shutdown();
+        s3.close();
+    }
+
+    @Test
+    void testSmallObjectRoundTrip() throws Exception {
+        backend.put("receipts/7/a.jpg", new ByteArrayInputStream("receipt".getBytes()), "image/jpeg");
+
+        assertEquals(0, s3.partUploads());
+        assertEquals(7L, backend.stat("receipts/7/a.jpg").orElseThrow().size());
+        try (InputStream in = backend.get("receipts/7/a.jpg")) {
+            assertEquals("receipt", new String(in.readAllBytes()));
+        }
+        assertTrue(backend.stat("receipts/7/missing.jpg").isEmpty());
+
+        backend.delete("receipts/7/a.jpg");
+        assertTrue(backend.stat("receipts/7/a.jpg").isEmpty());
+    }
+
+    @Test
+    void testLargeStreamIsUploadedInParts() throws Exception {
+        byte[] content = new byte[S3StorageBackend.MIN_PART_SIZE * 2 + 1234];
+        new Random(1).nextBytes(content);
+
+        backend.put("receipts/7/big.pdf", new ByteArrayInputStream(content), "application/pdf");
+
+        assertEquals(3, s3.partUploads());
+        assertEquals(0, s3.openMultipartUploads());
+        assertArrayEquals(content, s3.object("receipts/7/big.pdf"));
+    }
+
+    @Test
+    void testFailedStreamAbortsTheMultipartUpload() {
+        InputStream failing = new InputStream() {
+            private long read;
+
+            @Override
+            public int read() {
+                if (++read > S3StorageBackend.MIN_PART_SIZE + 10) {
+                    throw new FileStorageException("File size exceeds maximum allowed size");
+                }
+                return 1;
+            }
+        };
+
+        assertThrows(FileStorageException.class, () -> backend.put("receipts/7/big.pdf", failing, null));
+        assertEquals(0, s3.openMultipartUploads());
+        assertNull(s3.object("receipts/7/big.pdf"));
+    }
+
+    @Test
+    void testMoveIfAbsentCopiesServerSideOnce() throws Exception {
+        backend.put(".tmp/upload-1.part", new ByteArrayInputStream("bytes".getBytes()), null);
+        backend.put(".tmp/upload-2.part", new ByteArrayInputStream("bytes".getBytes()), null);
+
+        assertTrue(backend.moveIfAbsent(".tmp/upload-1.part", "receipts/7/ab/ab.jpg"));
+        assertFalse(backend.moveIfAbsent(".tmp/upload-2.part", "receipts/7/ab/ab.jpg"));
+
+        assertEquals(1, s3.objectCount());
+        assertEquals("bytes", new String(s3.object("receipts/7/ab/ab.jpg")));
+    }
+
+    @Test
+    void testPresignedUrlServesTheObject() throws Exception {
+        backend.put("receipts/7/a.jpg", new ByteArrayInputStream("receipt".getBytes()), "image/jpeg");
+
+        String url = backend.presignGet("receipts/7/a.jpg", Duration.ofMinutes(5)).orElseThrow();
+
+        assertTrue(url.startsWith(s3.endpoint() + "/" + BUCKET + "/receipts/7/a.jpg?"), url);
+        assertTrue(url.contains("X-Amz-Signature="), url);
+        HttpResponse<String> response = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals("receipt", response.body());
+        assertTrue(backend.localPath("receipts/7/a.jpg").isEmpty());
+    }
+
+    @Test
+    void testFileStorageServiceKeepsNoLocalCopies() throws Exception {
+        FileStorageServiceImpl service = new FileStorageServiceImpl(mock(StoredFileRepository.class),
+                mock(ReceiptThumbnailService.class), backend, mock(ReceiptImageNormalizer.class),
+                mock(ReceiptPerceptualHasher.class), mock(ReceiptUrlSigner.class));
+        ReflectionTestUtils.setField(service, "maxFileSize", 1024L);
+        ReflectionTestUtils.setField(service, "allowedExtensions", "jpg");
+        ReflectionTestUtils.setField(service, "contentAddressed", true);
+
+        String path = service.storeFile(new MockMultipartFile("file", "a.jpg", "image/jpeg", "receipt".getBytes()), "receipts/7");
+
+        assertEquals("receipt", new String(s3.object(path)));
+        assertEquals(1, s3.objectCount());
+
+        Path part = Files.writeString(scratch.resolve("assembled.part"), "resumable");
+        StagedUpload staged = service.stageFile(part);
+        assertFalse(Files.exists(part));
+        service.discardStagedUpload(staged);
+        assertEquals(1, s3.objectCount());
+    }
+}
@@ -0,0 +1,336 @@
+package com.example.user.userservice.simulator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Local stand-in for the two LLM backends, for load tests that must not hit the real APIs:
+ * <ul>
+ *   <li>Gemini {@code POST /v1beta/models/{model}:generateContent}</li>
+ *   <li>OpenAI-style {@code POST /v1/chat/completions} used by {@code hfWebClient}, including
+ *       {@code "stream": true} server-sent events</li>
+ * </ul>
+ * Completions come from a scripted {@link Responder}; latency, error rate and malformed output
+ * are configured through {@link Settings}. Point the service at it with
+ * {@code gemini.api-base=http://localhost:PORT} and {@code hf.api-base=http://localhost:PORT}.
+ * Standalone: run {@link #main} with {@code -Dsim.port=8089 -Dsim.latency.median-ms=400 ...}.
+ */
+public class AiProviderSimulator implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Settings settings;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong malformed = new AtomicLong();
+
+    /**
+     * What the model says for a request. {@code systemPrompt} is null when the caller sent none.
+     */
+    @FunctionalInterface
+    public interface Responder {
+        String complete(String systemPrompt, String userPrompt);
+    }
+
+    public AiProviderSimulator(Settings settings) throws IOException {
+        this.settings = settings;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", settings.port), 0);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(settings.threads, r -> {
+            Thread thread = new Thread(r, "ai-sim-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/v1beta/models/", exchange -> handle(exchange, this::gemini));
+        server.createContext("/v1/chat/completions", exchange -> handle(exchange, this::chatCompletions));
+        server.start();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = Settings.fromSystemProperties();
+        AiProviderSimulator simulator = new AiProviderSimulator(settings);
+        System.out.printf("AI provider simulator listening on %s (%s)%n", simulator.baseUrl(), settings);
+        Runtime.getRuntime().addShutdownHook(new Thread(simulator::close));
+        Thread.currentThread().join();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long errors() {
+        return errors.get();
+    }
+
+    public long malformed() {
+        return malformed.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange, ExchangeHandler handler) throws IOException {
+        try {
+            requests.incrementAndGet();
+            JsonNode body = MAPPER.readTree(readAll(exchange.getRequestBody()));
+            sleep(settings.latency.sampleMs());
+
+            if (ThreadLocalRandom.current().nextDouble() < settings.errorRate) {
+                errors.incrementAndGet();
+                send(exchange, 503, "application/json", "{\"error\":{\"code\":503,\"message\":\"simulated overload\"}}");
+                return;
+            }
+            handler.handle(exchange, body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            send(exchange, 400, "application/json", "{\"error\":{\"message\":\"bad request\"}}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void gemini(HttpExchange exchange, JsonNode body) throws IOException {
+        String system = textOrNull(body.path("systemInstruction").path("parts").path(0).path("text"));
+        String user = body.path("contents").path(0).path("parts").path(0).path("text").asText("");
+        String completion = maybeMalform(settings.responder.complete(system, user));
+
+        ObjectNode response = MAPPER.createObjectNode();
+        ObjectNode candidate = response.putArray("candidates").addObject();
+        candidate.putObject("content").put("role", "model").putArray("parts").addObject().put("text", completion);
+        candidate.put("finishReason", "STOP");
+        response.putObject("usageMetadata")
+                .put("promptTokenCount", tokens(system) + tokens(user))
+                .put("candidatesTokenCount", tokens(completion));
+        send(exchange, 200, "application/json", MAPPER.writeValueAsString(response));
+    }
+
+    private void chatCompletions(HttpExchange exchange, JsonNode body) throws IOException, InterruptedException {
+        String system = null;
+        String user = "";
+        for (JsonNode message : body.path("messages")) {
+            if ("system".equals(message.path("role").asText())) {
+                system = message.path("content").asText();
+            } else if ("user".equals(message.path("role").asText())) {
+                user = message.path("content").asText();
+            }
+        }
+        String model = body.path("model").asText("simulated");
+        String completion = maybeMalform(settings.responder.complete(system, user));
+
+        if (body.path("stream").asBoolean(false)) {
+            streamChatCompletion(exchange, model, completion);
+            return;
+        }
+
+        ObjectNode response = MAPPER.createObjectNode();
+        response.put("id", "sim-" + requests.get()).put("object", "chat.completion").put("model", model);
+        response.putArray("choices").addObject()
+                .put("index", 0)
+                .put("finish_reason", "stop")
+                .putObject("message").put("role", "assistant").put("content", completion);
+        response.putObject("usage")
+                .put("prompt_tokens", tokens(system) + tokens(user))
+                .put("completion_tokens", tokens(completion));
+        send(exchange, 200, "application/json", MAPPER.writeValueAsString(response));
+    }
+
+    private void streamChatCompletion(HttpExchange exchange, String model, String completion)
+            throws IOException, InterruptedException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        for (int from = 0; from < completion.length(); from += settings.streamChunkChars) {
+            String delta = completion.substring(from, Math.min(from + settings.streamChunkChars, completion.length()));
+            ObjectNode chunk = MAPPER.createObjectNode();
+            chunk.put("object", "chat.completion.chunk").put("model", model);
+            ArrayNode choices = chunk.putArray("choices");
+            choices.addObject().put("index", 0).putObject("delta").put("content", delta);
+            out.write(("data: " + MAPPER.writeValueAsString(chunk) + "\n\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            sleep(settings.streamChunkDelayMs);
+        }
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private String maybeMalform(String completion) {
+        if (ThreadLocalRandom.current().nextDouble() >= settings.malformedRate || completion.length() < 4) {
+            return completion;
+        }
+        malformed.incrementAndGet();
+        // Cut mid-value, like a model that hit its output limit
+        return completion.substring(0, completion.length() / 2);
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static String textOrNull(JsonNode node) {
+        return node.isMissingNode() || node.isNull() ? null : node.asText();
+    }
+
+    private static int tokens(String text) {
+        return text == null ? 0 : (text.length() + 3) / 4;
+    }
+
+    private static void sleep(long millis) throws InterruptedException {
+        if (millis > 0) {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ExchangeHandler {
+        void handle(HttpExchange exchange, JsonNode body) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Response latency per request. Log-normal matches LLM endpoints well: most calls near the
+     * median and a long tail set by the p99.
+     */
+    public interface LatencyModel {
+
+        long sampleMs();
+
+        static LatencyModel none() {
+            return () -> 0;
+        }
+
+        static LatencyModel fixed(long millis) {
+            return () -> millis;
+        }
+
+        static LatencyModel uniform(long minMs, long maxMs) {
+            return () -> ThreadLocalRandom.current().nextLong(minMs, maxMs + 1);
+        }
+
+        static LatencyModel logNormal(long medianMs, long p99Ms) {
+            double mu = Math.log(Math.max(1, medianMs));
+            // z(0.99) = 2.326
+            double sigma = Math.max(0, Math.log((double) Math.max(p99Ms, medianMs) / Math.max(1, medianMs)) / 2.326);
+            return () -> Math.round(Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian()));
+        }
+    }
+
+    public static final class Settings {
+
+        private int port;
+        private int threads = 64;
+        private LatencyModel latency = LatencyModel.none();
+        private String latencyDescription = "none";
+        private double errorRate;
+        private double malformedRate;
+        private int streamChunkChars = 8;
+        private long streamChunkDelayMs = 15;
+        private Responder responder = (system, user) -> "{}";
+
+        public static Settings defaults() {
+            return new Settings();
+        }
+
+        /**
+         * Reads {@code sim.*} system properties; answers come from the golden utterance set.
+         */
+        public static Settings fromSystemProperties() {
+            Settings settings = defaults()
+                    .port(Integer.getInteger("sim.port", 8089))
+                    .threads(Integer.getInteger("sim.threads", 64))
+                    .errorRate(Double.parseDouble(System.getProperty("sim.error-rate", "0")))
+                    .malformedRate(Double.parseDouble(System.getProperty("sim.malformed-rate", "0")))
+                    .streamChunks(Integer.getInteger("sim.stream.chunk-chars", 8),
+                            Long.getLong("sim.stream.chunk-delay-ms", 15))
+                    .responder(GoldenUtterances.load().responder(new Random(
+                            Long.getLong("sim.seed", 42)), Double.parseDouble(System.getProperty("sim.wrong-rate", "0"))));
+            long median = Long.getLong("sim.latency.median-ms", 0);
+            if (median > 0) {
+                settings.latency(LatencyModel.logNormal(median, Long.getLong("sim.latency.p99-ms", median * 4)),
+                        "lognormal(median=" + median + "ms)");
+            }
+            return settings;
+        }
+
+        public Settings port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Settings threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public Settings latency(LatencyModel latency, String description) {
+            this.latency = latency;
+            this.latencyDescription = description;
+            return this;
+        }
+
+        public Settings errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        public Settings malformedRate(double malformedRate) {
+            this.malformedRate = malformedRate;
+            return this;
+        }
+
+        public Settings streamChunks(int chars, long delayMs) {
+            this.streamChunkChars = Math.max(1, chars);
+            this.streamChunkDelayMs = delayMs;
+            return this;
+        }
+
+        public Settings responder(Responder responder) {
+            this.responder = responder;
+            return this;
+        }
+
+        public Settings responder(Function<String, String> byUserPrompt) {
+            return responder((system, user) -> byUserPrompt.apply(user));
+        }
+
+        @Override
+        public String toString() {
+            return "latency=" + latencyDescription + ", errorRate=" + errorRate + ", malformedRate=" + malformedRate
+                    + ", streamChunkChars=" + streamChunkChars;
+        }
+    }
+}
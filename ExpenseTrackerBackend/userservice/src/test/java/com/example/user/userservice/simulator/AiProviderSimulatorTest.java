@@ -0,0 +1,103 @@
+package com.example.user.userservice.simulator;
+
+import com.example.user.userservice.config.WebClientConfig;
+import com.example.user.userservice.service.AiCallBulkhead;
+import com.example.user.userservice.service.AiExpenseProvider.AiCompletion;
+import com.example.user.userservice.serviceimpl.GeminiExpenseProvider;
+import com.example.user.userservice.serviceimpl.HuggingFaceExpenseProvider;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AiProviderSimulatorTest {
+
+    private AiProviderSimulator simulator;
+    private AiCallBulkhead bulkhead;
+
+    @BeforeEach
+    void setUp() {
+        bulkhead = new AiCallBulkhead(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(bulkhead, "maxConcurrent", 4);
+        ReflectionTestUtils.setField(bulkhead, "maxQueued", 4);
+        ReflectionTestUtils.setField(bulkhead, "maxWaitMs", 500L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (simulator != null) {
+            simulator.close();
+        }
+    }
+
+    @Test
+    void testServesGeminiGenerateContentWithUsage() throws Exception {
+        simulator = new AiProviderSimulator(AiProviderSimulator.Settings.defaults()
+                .responder((system, user) -> "echo: " + user));
+        GeminiExpenseProvider gemini = new GeminiExpenseProvider(bulkhead, 5000);
+        ReflectionTestUtils.setField(gemini, "apiKey", "test");
+        ReflectionTestUtils.setField(gemini, "modelName", "gemini-sim");
+        ReflectionTestUtils.setField(gemini, "apiBase", simulator.baseUrl());
+
+        AiCompletion completion = gemini.completeWithUsage(null, "lunch 250");
+
+        assertEquals("echo: lunch 250", completion.text());
+        assertEquals(3, completion.promptTokens());
+        assertEquals(1, simulator.requests());
+    }
+
+    @Test
+    void testStreamsChatCompletionDeltas() throws Exception {
+        simulator = new AiProviderSimulator(AiProviderSimulator.Settings.defaults()
+                .streamChunks(4, 0)
+                .responder((system, user) -> "{\"amount\": 250}"));
+        HuggingFaceExpenseProvider huggingFace = new HuggingFaceExpenseProvider(
+                new WebClientConfig().hfWebClient(simulator.baseUrl(), "test"), bulkhead, new ObjectMapper());
+        ReflectionTestUtils.setField(huggingFace, "modelId", "hf-sim");
+        ReflectionTestUtils.setField(huggingFace, "callTimeoutMs", 5000L);
+
+        List<String> deltas = huggingFace.streamCompletion("system", "lunch 250").collectList().block();
+
+        assertEquals(4, deltas.size());
+        assertEquals("{\"amount\": 250}", String.join("", deltas));
+    }
+
+    @Test
+    void testInjectsErrorsAndMalformedOutput() throws Exception {
+        simulator = new AiProviderSimulator(AiProviderSimulator.Settings.defaults().errorRate(1.0));
+        GeminiExpenseProvider gemini = new GeminiExpenseProvider(bulkhead, 5000);
+        ReflectionTestUtils.setField(gemini, "apiKey", "test");
+        ReflectionTestUtils.setField(gemini, "modelName", "gemini-sim");
+        ReflectionTestUtils.setField(gemini, "apiBase", simulator.baseUrl());
+
+        assertThrows(RuntimeException.class, () -> gemini.complete(null, "lunch 250"));
+        assertEquals(1, simulator.errors());
+
+        simulator.close();
+        simulator = new AiProviderSimulator(AiProviderSimulator.Settings.defaults()
+                .malformedRate(1.0)
+                .responder((system, user) -> "[{\"name\": \"Lunch\", \"amount\": 250}]"));
+        ReflectionTestUtils.setField(gemini, "apiBase", simulator.baseUrl());
+
+        assertEquals("[{\"name\": \"Lunch\"", gemini.complete(null, "lunch 250"));
+    }
+
+    @Test
+    void testGoldenResponderAnswersVoiceAndTextPrompts() {
+        AiProviderSimulator.Responder responder = GoldenUtterances.load().responder(new Random(1), 0);
+
+        String voice = responder.complete(null, "Categories...\nInput: \"petrol 1500 and parking 60\"");
+        assertTrue(voice.startsWith("["));
+        assertTrue(voice.contains("\"amount\": 60.0, \"categoryId\": 2"));
+
+        String text = responder.complete("You are an expense parser.", "Text: \"netflix subscription 649\"\n");
+        assertTrue(text.contains("\"category\": \"Entertainment\""));
+    }
+}
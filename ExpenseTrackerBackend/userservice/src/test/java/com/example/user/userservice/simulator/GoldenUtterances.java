@@ -0,0 +1,154 @@
+package com.example.user.userservice.simulator;
+
+import com.example.user.userservice.entity.Category;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Voice and text utterances with the expenses a correct parse yields, read from
+ * {@code ai/golden-utterances.tsv}. Drives the simulator's scripted answers and the accuracy score.
+ */
+public final class GoldenUtterances {
+
+    /**
+     * The seeded categories in ID order (IDs 1..n), as {@code CategoryLoader} creates them.
+     */
+    public static final List<String> CATEGORIES = List.of(
+            "Food & Dining", "Transportation", "Housing & Utilities", "Health & Fitness", "Shopping",
+            "Entertainment", "Travel", "Education", "Savings & Investments", "Debt & Loans", "Personal Care", "Others");
+
+    private static final String RESOURCE = "/ai/golden-utterances.tsv";
+    // Voice prompts end with Input: "...", text-parse prompts with Text: "..."
+    private static final Pattern PROMPT_INPUT = Pattern.compile("(?:Input|Text): \"([^\\n]*)\"");
+
+    private final List<Utterance> utterances;
+    private final Map<String, Utterance> byKey = new LinkedHashMap<>();
+
+    public record Expected(double amount, String category) {
+    }
+
+    public record Utterance(String text, List<Expected> expenses) {
+    }
+
+    private GoldenUtterances(List<Utterance> utterances) {
+        this.utterances = List.copyOf(utterances);
+        utterances.forEach(utterance -> byKey.put(key(utterance.text()), utterance));
+    }
+
+    public static GoldenUtterances load() {
+        InputStream in = GoldenUtterances.class.getResourceAsStream(RESOURCE);
+        if (in == null) {
+            throw new IllegalStateException("Missing test resource " + RESOURCE);
+        }
+        List<Utterance> utterances = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] columns = line.split("\t");
+                List<Expected> expenses = new ArrayList<>();
+                for (String expense : columns[1].split("\\|")) {
+                    int colon = expense.indexOf(':');
+                    expenses.add(new Expected(Double.parseDouble(expense.substring(0, colon)), expense.substring(colon + 1)));
+                }
+                utterances.add(new Utterance(columns[0], List.copyOf(expenses)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new GoldenUtterances(utterances);
+    }
+
+    public List<Utterance> utterances() {
+        return utterances;
+    }
+
+    public static List<Category> categories() {
+        List<Category> categories = new ArrayList<>();
+        for (int i = 0; i < CATEGORIES.size(); i++) {
+            categories.add(Category.builder().id(i + 1L).name(CATEGORIES.get(i)).build());
+        }
+        return categories;
+    }
+
+    public static long categoryId(String name) {
+        int index = CATEGORIES.indexOf(name);
+        return index < 0 ? CATEGORIES.size() : index + 1;
+    }
+
+    /**
+     * Answers like a well-behaved model for golden utterances: a JSON array with category IDs for
+     * voice prompts, a single object with a category name for text-parse prompts (those carry a
+     * system prompt). {@code wrongRate} of the expenses get a random wrong category.
+     */
+    public AiProviderSimulator.Responder responder(Random random, double wrongRate) {
+        return (systemPrompt, userPrompt) -> {
+            Utterance utterance = find(userPrompt);
+            List<Expected> expenses = utterance == null
+                    ? List.of(new Expected(1, "Others"))
+                    : utterance.expenses();
+            String today = LocalDate.now().toString();
+
+            if (systemPrompt != null) {
+                Expected expense = expenses.get(0);
+                return "{\"amount\": " + expense.amount() + ", \"currency\": \"INR\", \"date\": \"" + today
+                        + "\", \"category\": \"" + maybeWrong(expense.category(), random, wrongRate)
+                        + "\", \"subcategory\": null, \"description\": \"" + describe(utterance)
+                        + "\", \"merchant\": null, \"confidence\": 0.9}";
+            }
+
+            StringBuilder json = new StringBuilder("[");
+            for (Expected expense : expenses) {
+                if (json.length() > 1) {
+                    json.append(", ");
+                }
+                json.append("{\"name\": \"").append(describe(utterance))
+                        .append("\", \"amount\": ").append(expense.amount())
+                        .append(", \"categoryId\": ").append(categoryId(maybeWrong(expense.category(), random, wrongRate)))
+                        .append(", \"date\": \"").append(today)
+                        .append("\", \"description\": \"").append(describe(utterance)).append("\"}");
+            }
+            return json.append(']').toString();
+        };
+    }
+
+    private Utterance find(String prompt) {
+        Matcher matcher = PROMPT_INPUT.matcher(prompt == null ? "" : prompt);
+        String input = null;
+        while (matcher.find()) {
+            input = matcher.group(1);
+        }
+        return input == null ? null : byKey.get(key(input));
+    }
+
+    private static String maybeWrong(String category, Random random, double wrongRate) {
+        if (wrongRate <= 0 || random.nextDouble() >= wrongRate) {
+            return category;
+        }
+        return CATEGORIES.get(random.nextInt(CATEGORIES.size()));
+    }
+
+    private static String describe(Utterance utterance) {
+        return utterance == null ? "Expense" : utterance.text().replace('"', '\'');
+    }
+
+    private static String key(String text) {
+        return text.replace('"', '\'').trim().toLowerCase(Locale.ROOT);
+    }
+}
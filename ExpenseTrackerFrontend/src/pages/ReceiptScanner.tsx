@@ -268,10 +268,10 @@ const ReceiptScanner = () => {
 
   // Calculate summary statistics
   const totalReceipts = receipts.length
-  const completedReceipts = receipts.filter((r: any) => r.status === 'completed').length
-  const processedReceipts = receipts.filter((r: any) => r.status === 'processed').length
-  const processingReceipts = receipts.filter((r: any) => r.status === 'processing').length
-  const errorReceipts = receipts.filter((r: any) => r.status === 'error').length
+  const completedReceipts = receipts.filter((r: any) => r.status === 'completed' || r.status === 'extracted').length
+  const processedReceipts = receipts.filter((r: any) => r.status === 'processed' || r.status === 'linked').length
+  const processingReceipts = receipts.filter((r: any) => r.status === 'processing' || r.status === 'pending').length
+  const errorReceipts = receipts.filter((r: any) => r.status === 'error' || r.status === 'failed').length
 
   const stats = [
     {
@@ -400,25 +400,25 @@ const ReceiptScanner = () => {
                    <div className="text-right">
                      <p className="text-sm text-gray-600 dark:text-gray-400">Status</p>
                      <div className="flex items-center space-x-2">
-                       {receipt.status === 'processing' && (
+                       {(receipt.status === 'processing' || receipt.status === 'pending') && (
                          <div className="flex items-center space-x-1 text-warning-600">
                            <Loader2 className="w-4 h-4 animate-spin" />
                            <span className="text-sm">Processing</span>
                          </div>
                        )}
-                       {receipt.status === 'completed' && (
+                       {(receipt.status === 'completed' || receipt.status === 'extracted') && (
                          <div className="flex items-center space-x-1 text-success-600">
                            <CheckCircle className="w-4 h-4" />
                            <span className="text-sm">Completed</span>
                          </div>
                        )}
-                       {receipt.status === 'error' && (
+                       {(receipt.status === 'error' || receipt.status === 'failed') && (
                          <div className="flex items-center space-x-1 text-danger-600">
                            <AlertCircle className="w-4 h-4" />
                            <span className="text-sm">Error</span>
                          </div>
                        )}
-                       {receipt.status === 'processed' && (
+                       {(receipt.status === 'processed' || receipt.status === 'linked') && (
                          <div className="flex items-center space-x-1 text-primary-600">
                            <CheckCircle className="w-4 h-4" />
                            <span className="text-sm">Saved</span>
@@ -427,7 +427,7 @@ const ReceiptScanner = () => {
                      </div>
                    </div>
                    
-                   {(receipt.status === 'completed' || receipt.status === 'processed') && receipt.extractedData && (
+                   {(receipt.status === 'completed' || receipt.status === 'extracted' || receipt.status === 'processed' || receipt.status === 'linked') && receipt.extractedData && (
                      <div className="text-right">
                        <p className="text-sm text-gray-600 dark:text-gray-400">Extracted</p>
                        <p className="font-medium text-gray-900 dark:text-white">
@@ -444,7 +444,7 @@ const ReceiptScanner = () => {
                      >
                        <Eye className="w-4 h-4" />
                      </button>
-                                           {(receipt.status === 'completed' || receipt.status === 'processed') && (
+                                           {(receipt.status === 'completed' || receipt.status === 'extracted' || receipt.status === 'processed' || receipt.status === 'linked') && (
                         <button
                           onClick={() => handleReviewReceipt(receipt)}
                           className="p-2 text-primary-600 hover:text-primary-700 dark:text-primary-400 dark:hover:text-primary-300"
@@ -528,19 +528,19 @@ const ReceiptScanner = () => {
                          Status
                        </label>
                        <div className="flex items-center space-x-2">
-                         {selectedReceipt.status === 'processing' && (
+                         {(selectedReceipt.status === 'processing' || selectedReceipt.status === 'pending') && (
                            <div className="flex items-center space-x-1 text-warning-600">
                              <Loader2 className="w-4 h-4 animate-spin" />
                              <span className="text-sm">Processing</span>
                            </div>
                          )}
-                         {selectedReceipt.status === 'completed' && (
+                         {(selectedReceipt.status === 'completed' || selectedReceipt.status === 'extracted') && (
                            <div className="flex items-center space-x-1 text-success-600">
                              <CheckCircle className="w-4 h-4" />
                              <span className="text-sm">Completed</span>
                            </div>
                          )}
-                         {selectedReceipt.status === 'error' && (
+                         {(selectedReceipt.status === 'error' || selectedReceipt.status === 'failed') && (
                            <div className="flex items-center space-x-1 text-danger-600">
                              <AlertCircle className="w-4 h-4" />
                              <span className="text-sm">Error</span>
@@ -556,7 +556,7 @@ const ReceiptScanner = () => {
                        <p className="text-gray-900 dark:text-white">{formatDate(selectedReceipt.createdAt)}</p>
                      </div>
 
-                     {selectedReceipt.status === 'completed' && selectedReceipt.extractedData && (
+                     {(selectedReceipt.status === 'completed' || selectedReceipt.status === 'extracted') && selectedReceipt.extractedData && (
                        <div className="space-y-3">
                          <h4 className="font-medium text-gray-900 dark:text-white">Extracted Information</h4>
                          
@@ -624,7 +624,7 @@ const ReceiptScanner = () => {
                        </div>
                      )}
 
-                                           {selectedReceipt.status === 'completed' && (
+                                           {(selectedReceipt.status === 'completed' || selectedReceipt.status === 'extracted') && (
                         <div className="pt-4">
                           <button
                             onClick={() => {
@@ -1,12 +1,17 @@
 import { createSlice, createAsyncThunk, PayloadAction } from '@reduxjs/toolkit'
 import { ExtractedData } from '../../utils/ocrUtils'
 
+export type ReceiptStatus =
+  | 'processing' | 'completed' | 'error' | 'processed'
+  | 'pending' | 'extracted' | 'linked' | 'failed'
+
 export interface Receipt {
   id: string
   fileName: string
   imageUrl: string
   extractedData: ExtractedData
-  status: 'processing' | 'completed' | 'error' | 'processed'
+  // Client-side scan states, then the server's processing states (lower-cased)
+  status: ReceiptStatus
   createdAt: string
   userId: string
 }
@@ -47,11 +52,12 @@ const convertBackendReceipt = (backendReceipt: any): Receipt => {
   const imageUrl = backendReceipt.imageUrl ? `/api/user/files/${backendReceipt.imageUrl}` : ''
 
   const convertedReceipt = {
-    id: backendReceipt.id.toString(),
+    // Receipts attached directly to an expense have no receipt ID of their own
+    id: backendReceipt.id != null ? backendReceipt.id.toString() : `expense-${backendReceipt.expenseId}`,
     fileName: backendReceipt.fileName,
     imageUrl: imageUrl,
     extractedData,
-    status: backendReceipt.status.toLowerCase() as 'processing' | 'completed' | 'error' | 'processed',
+    status: backendReceipt.status.toLowerCase() as ReceiptStatus,
     createdAt: backendReceipt.createdAt,
     userId: backendReceipt.userId.toString()
   }
@@ -9,6 +9,7 @@ export interface VoiceExpenseResponse {
   success: boolean
   message: string
   expense?: any
+  expenses?: any[]
   parsedText?: string
   confidence?: string
 }